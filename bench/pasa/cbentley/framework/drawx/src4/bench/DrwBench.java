@@ -0,0 +1,648 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.bench;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.byteobjects.src4.objects.color.BlendOp;
+import pasa.cbentley.byteobjects.src4.objects.color.ITechBlend;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.logging.ITechLvl;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.ctx.ToStringStaticDrawx;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.factories.FigureFactory;
+import pasa.cbentley.framework.drawx.src4.string.StringMetrics;
+import pasa.cbentley.framework.drawx.src4.string.Stringer;
+import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
+import pasa.cbentley.framework.drawx.src4.tech.ITechScaler;
+import pasa.cbentley.framework.drawx.src4.utils.RgbImageRotateUtils;
+
+/**
+ * Repeatable benchmark of the drawing hot paths, to compare a build against a baseline.
+ * <br>
+ * <br>
+ * Cases are
+ * <li>{@link DrwBench#BENCH_0_MERGE} opaque primitives flushed to the rgb array of a {@link ITechGraphicsX#MODE_2_RGB_IMAGE} {@link GraphicsX}
+ * <li>{@link DrwBench#BENCH_1_DRAW_RGB} {@link GraphicsX#drawRGB(int[], int, int, int, int, int, int, boolean)} with alpha, in modes 1, 2 and 3
+ * <li>{@link DrwBench#BENCH_2_BLEND} {@link RgbImage#blend(BlendOp, int, int, RgbImage)}
+ * <li>{@link DrwBench#BENCH_3_FIGURE} one case per figure type
+ * <li>{@link DrwBench#BENCH_4_SCALE} one case per scaler id
+ * <li>{@link DrwBench#BENCH_5_STYLE} a style with background, border and padding
+ * <li>{@link DrwBench#BENCH_6_STRING_METER} metering of a paragraph by {@link Stringer}
+ * <li>{@link DrwBench#BENCH_7_STRING_DRAW} drawing of the metered paragraph
+ * <li>{@link DrwBench#BENCH_8_CARET} caret queries on a large text, the line, x and y of a char index with {@link StringMetrics}.
+ * The cost must not grow with the number of lines
+ * <li>{@link DrwBench#BENCH_9_ROTATE} {@link RgbImageRotateUtils} nearest, bilinear and 90 degrees rotations,
+ * and the column major double precision rotation they replaced
+ * <br>
+ * <br>
+ * Inputs are built from fixed patterns so that runs are comparable. Each case is warmed up, then timed over several trials.
+ * The median of the trials, in nanoseconds per operation, is the result.
+ * <br>
+ * {@link System#currentTimeMillis()} may step by 10 or more milliseconds. The number of operations of a trial is doubled
+ * until a trial lasts at least {@link DrwBench#setMinTrialMillis(int)}. {@link DrwBench#getResolution(int)} gives
+ * the resulting resolution of a case.
+ * <br>
+ * {@link DrwBench#compare(long[], int)} reports the cases slower than a baseline of a previous {@link DrwBench#runAll()}.
+ * <br>
+ * <br>
+ * The bench runs on the {@link IImage} and {@link IGraphics} of the host {@link DrwCtx}. Rgb cases only touch int arrays.
+ * <br>
+ * Bench code lives in the bench source folder, it is not part of the shipped sources.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DrwBench extends ObjectDrw {
+
+   public static final int BENCH_0_MERGE        = 0;
+
+   public static final int BENCH_1_DRAW_RGB     = 1;
+
+   public static final int BENCH_2_BLEND        = 2;
+
+   public static final int BENCH_3_FIGURE       = 3;
+
+   public static final int BENCH_4_SCALE        = 4;
+
+   public static final int BENCH_5_STYLE        = 5;
+
+   public static final int BENCH_6_STRING_METER = 6;
+
+   public static final int BENCH_7_STRING_DRAW  = 7;
+
+   public static final int BENCH_8_CARET        = 8;
+
+   public static final int BENCH_9_ROTATE       = 9;
+
+   private static final int[] DRAW_RGB_MODES    = { ITechGraphicsX.MODE_1_IMAGE, ITechGraphicsX.MODE_2_RGB_IMAGE, ITechGraphicsX.MODE_3_RGB };
+
+   /**
+    * Upper bound of the operations of a trial
+    */
+   private static final int MAX_ITERATIONS      = 1 << 24;
+
+   private static final int ROTATE_0_FORMER     = 0;
+
+   private static final int ROTATE_1_NEAREST    = 1;
+
+   private static final int ROTATE_2_BILINEAR   = 2;
+
+   private static final int ROTATE_3_90         = 3;
+
+   private static final String[] ROTATE_NAMES   = { "former", "nearest", "bilinear", "90" };
+
+   private BlendOp         blendOp;
+
+   private int             caret;
+
+   private StringMetrics   caretMetrics;
+
+   private int             caretLen;
+
+   private int             caretLines           = 10000;
+
+   private int[]           caseBench;
+
+   /**
+    * Operations of a trial of each case in the last run
+    */
+   private int[]           caseIterations;
+
+   private String[]        caseNames;
+
+   private int[]           caseParam;
+
+   private int             check;
+
+   private ByteObject[]    figures;
+
+   private int             iterations           = 50;
+
+   private int             minTrialMillis       = 200;
+
+   private long[]          results;
+
+   private int             size                 = 256;
+
+   private int             rotateDegree         = 30;
+
+   private int[]           rotateDst;
+
+   private int             rotateH;
+
+   private int             rotateW;
+
+   private RgbImage        src;
+
+   private Stringer        stringer;
+
+   private ByteObject      style;
+
+   private ByteObject      textFigure;
+
+   private char[]          text;
+
+   private int             trials               = 5;
+
+   private int             warmup               = 10;
+
+   public DrwBench(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Logs and counts the cases slower than the baseline by more than tolerance percent.
+    * <br>
+    * Runs the cases first when {@link DrwBench#runAll()} was not called.
+    * @param baseline results of a previous {@link DrwBench#runAll()} with the same settings
+    * @param tolerance percent
+    * @return number of regressions
+    */
+   public int compare(long[] baseline, int tolerance) {
+      if (results == null) {
+         runAll();
+      }
+      int count = 0;
+      int num = Math.min(baseline.length, results.length);
+      for (int i = 0; i < num; i++) {
+         long limit = baseline[i] + baseline[i] * tolerance / 100;
+         if (results[i] > limit) {
+            count++;
+            //#debug
+            toDLog().pAlways("Regression " + caseNames[i] + " " + baseline[i] + "ns -> " + results[i] + "ns", this, DrwBench.class, "compare", ITechLvl.LVL_05_FINE, true);
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Pattern with gradients, a transparent border and semi transparent lines
+    * @param w
+    * @param h
+    * @return
+    */
+   public int[] createPixels(int w, int h) {
+      int[] data = new int[w * h];
+      int index = 0;
+      for (int y = 0; y < h; y++) {
+         for (int x = 0; x < w; x++) {
+            int alpha = 255;
+            if (x < 8 || y < 8 || x >= w - 8 || y >= h - 8) {
+               alpha = 0;
+            } else if ((y & 15) < 4) {
+               alpha = 128;
+            }
+            data[index++] = (alpha << 24) | ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | ((x ^ y) & 0xFF);
+         }
+      }
+      return data;
+   }
+
+   private void createCases() {
+      FigureFactory ff = drc.getFigureFactory();
+      figures = new ByteObject[] {
+            ff.getFigRect(0xFF336699),
+            ff.getFigRect(0x80336699),
+            ff.getFigRect(0xFF336699, 10, 10, null),
+            ff.getFigRectGrad(0xFF336699, 0xFFFFCC00, 100, 0),
+            ff.getFigEllipse(0xFF993366),
+            ff.getFigEllipseGrad(0xFF993366, 0xFF00CCFF, 100, 0),
+            ff.getFigTriangleType(0xFF669933, 0),
+            ff.getFigLosange(0xFF669933, 0, true, false, false, null),
+            ff.getFigBorder(4, 0xFF000000),
+            ff.getFigGrid(8, 8, 0xFF000000, 0xFF808080),
+            ff.getFigArlequin(0xFFFFFFFF, 0xFF000000),
+            ff.getFigSuperLines(2, 0xFF0000FF, 4, 10, true),
+            ff.getFigCrossHair(0xFFFF0000, 2, 2, 20, 20, 2, 2), };
+      String[] figNames = { "Rect", "RectAlpha", "RectRound", "RectGrad", "Ellipse", "EllipseGrad", "Triangle", "Losange", "Border", "Grid", "Arlequin", "SuperLines", "CrossHair" };
+      int numScalers = ITechScaler.SCALER_ID_MAX_CK + 1;
+      int num = 1 + DRAW_RGB_MODES.length + 1 + figures.length + numScalers + 3 + 1 + ROTATE_NAMES.length;
+      caseBench = new int[num];
+      caseParam = new int[num];
+      caseNames = new String[num];
+      int c = 0;
+      c = setCase(c, BENCH_0_MERGE, 0, "GraphicsX.merge");
+      for (int i = 0; i < DRAW_RGB_MODES.length; i++) {
+         c = setCase(c, BENCH_1_DRAW_RGB, DRAW_RGB_MODES[i], "GraphicsX.drawRGB " + ToStringStaticDrawx.toStringPaintMode(DRAW_RGB_MODES[i]));
+      }
+      c = setCase(c, BENCH_2_BLEND, 0, "RgbImage.blend");
+      for (int i = 0; i < figures.length; i++) {
+         c = setCase(c, BENCH_3_FIGURE, i, "FigureOperator.paintFigure " + figNames[i]);
+      }
+      for (int i = 0; i < numScalers; i++) {
+         c = setCase(c, BENCH_4_SCALE, i, "ScaleOperator.scaleRgbImage " + ToStringStaticDrawx.toStringScaleID(i));
+      }
+      c = setCase(c, BENCH_5_STYLE, 0, "StyleOperator.drawStyle");
+      c = setCase(c, BENCH_6_STRING_METER, 0, "Stringer meter");
+      c = setCase(c, BENCH_7_STRING_DRAW, 0, "Stringer.draw");
+      c = setCase(c, BENCH_8_CARET, 0, "StringMetrics caret " + caretLines + " lines");
+      for (int i = 0; i < ROTATE_NAMES.length; i++) {
+         c = setCase(c, BENCH_9_ROTATE, i, "RgbImageRotateUtils " + ROTATE_NAMES[i]);
+      }
+
+      src = drc.getCache().createImage(createPixels(size, size), size, size);
+      blendOp = new BlendOp(drc.getBOC(), ITechBlend.BLENDING_00_OVER);
+      ByteObject[] bg = new ByteObject[] { ff.getFigRectGrad(0xFF336699, 0xFFFFCC00, 100, 0), ff.getFigBorder(2, 0xFF000000) };
+      style = drc.getStyleFactory().getStyle(bg, 4, 2);
+
+      IMFont f = drc.getFontFactory().getDefaultFont();
+      textFigure = ff.getFigString(f, 0xFF000000);
+      StringBuffer sb = new StringBuffer();
+      for (int i = 0; i < 40; i++) {
+         sb.append("The quick brown fox jumps over the lazy dog ");
+         sb.append(i);
+         sb.append(". ");
+      }
+      text = sb.toString().toCharArray();
+      stringer = new Stringer(drc);
+      stringer.setAreaXYWH(0, 0, size, size * 4);
+      stringer.setString(text, 0, text.length);
+      stringer.buildForDisplayWith(textFigure);
+
+      char[] caretText = createText(caretLines, 60);
+      Stringer caretStringer = new Stringer(drc);
+      caretStringer.setAreaXYWH(0, 0, 1000, caretLines * f.getHeight());
+      caretStringer.setString(caretText, 0, caretText.length);
+      caretStringer.buildForDisplayWith(textFigure);
+      caretMetrics = caretStringer.getMetrics();
+      caretLen = caretText.length;
+      caret = 0;
+
+      RgbImageRotateUtils rotator = drc.getRgbImageRotateUtils();
+      double cos = Math.cos(Math.PI * rotateDegree / 180);
+      double sin = Math.sin(Math.PI * rotateDegree / 180);
+      rotateW = rotator.getRotatedWidth(rotateDegree, size, size, cos, sin);
+      rotateH = rotator.getRotatedHeight(rotateDegree, size, size, cos, sin);
+      rotateDst = new int[rotateW * rotateH];
+   }
+
+   /**
+    * Text of numLines lines of lineLen chars. Every other line has one more char so that lines are not monospaced.
+    * @param numLines
+    * @param lineLen
+    * @return
+    */
+   public char[] createText(int numLines, int lineLen) {
+      int len = 0;
+      for (int i = 0; i < numLines; i++) {
+         len += lineLen + (i & 1) + 1;
+      }
+      char[] chars = new char[len];
+      int index = 0;
+      for (int i = 0; i < numLines; i++) {
+         int ll = lineLen + (i & 1);
+         for (int j = 0; j < ll; j++) {
+            chars[index++] = (char) ('a' + ((i + j) % 26));
+         }
+         chars[index++] = '\n';
+      }
+      return chars;
+   }
+
+   public int getIterations() {
+      return iterations;
+   }
+
+   /**
+    * Names of the cases, in the order of the results
+    * @return
+    */
+   public String[] getNames() {
+      if (caseNames == null) {
+         createCases();
+      }
+      return caseNames;
+   }
+
+   /**
+    * Nanoseconds per operation of one step of {@link System#currentTimeMillis()} in the last run of the case.
+    * Results below it are not meaningful.
+    * @param index
+    * @return 0 when the case was not run
+    */
+   public long getResolution(int index) {
+      if (caseIterations == null || caseIterations[index] == 0) {
+         return 0;
+      }
+      return 1000000L / caseIterations[index];
+   }
+
+   /**
+    * Median nanoseconds per operation of each case of the last {@link DrwBench#runAll()}
+    * @return null when not run
+    */
+   public long[] getResults() {
+      return results;
+   }
+
+   /**
+    * Destination image of a case. Transparent for rgb modes, white for the image mode.
+    * @param bench
+    * @param param
+    * @return
+    */
+   private RgbImage createDest(int bench, int param) {
+      if (bench == BENCH_1_DRAW_RGB && param == ITechGraphicsX.MODE_1_IMAGE) {
+         return drc.getCache().create(size, size, 0xFFFFFFFF, false);
+      }
+      return drc.getCache().create(size, size, 0);
+   }
+
+   /**
+    * One operation of the case on g and dest
+    */
+   private void runOp(int bench, int param, GraphicsX g, RgbImage dest) {
+      switch (bench) {
+         case BENCH_0_MERGE:
+            for (int i = 0; i < 8; i++) {
+               g.setColor(0xFF000000 | (i * 0x1F1F1F));
+               g.fillRect(i * 16, i * 16, size / 2, size / 2);
+            }
+            g.flush();
+            break;
+         case BENCH_1_DRAW_RGB:
+            g.drawRGB(src.getRgbData(), 0, size, 0, 0, size, size, true);
+            g.flush();
+            break;
+         case BENCH_2_BLEND:
+            dest.blend(blendOp, 0, 0, src);
+            break;
+         case BENCH_3_FIGURE:
+            drc.getFigureOperator().paintFigure(g, 0, 0, size, size, figures[param]);
+            g.flush();
+            break;
+         case BENCH_4_SCALE:
+            ByteObject scaler = drc.getScalerFactory().getScaler(ITechScaler.SCALER_TYPE_1_FIT_BOTH, param);
+            RgbImage scaled = drc.getScaleOperator().scaleRgbImage(src, size * 3 / 4, size * 3 / 4, scaler);
+            check += scaled.getWidth();
+            if (scaled != src) {
+               scaled.dispose();
+            }
+            break;
+         case BENCH_5_STYLE:
+            drc.getStyleOperator().drawStyle(g, 0, 0, size, size, style);
+            g.flush();
+            break;
+         case BENCH_6_STRING_METER:
+            stringer.setString(text, 0, text.length);
+            stringer.buildForDisplayWith(textFigure);
+            check += stringer.getMetrics().getNumOfLines();
+            break;
+         case BENCH_7_STRING_DRAW:
+            stringer.draw(g);
+            g.flush();
+            break;
+         case BENCH_8_CARET:
+            //alternates a char step right with a line jump
+            caret += (caret & 1) == 0 ? 1 : 60 * 7 + 3;
+            if (caret >= caretLen) {
+               caret = caret % caretLen;
+            }
+            int lineIndex = caretMetrics.getLineIndexFromCharIndex(caret);
+            if (lineIndex != -1) {
+               check += caretMetrics.getCharX(caret) + caretMetrics.getCharY(caret);
+            }
+            break;
+         case BENCH_9_ROTATE:
+            runRotate(param);
+            break;
+         default:
+            throw new IllegalArgumentException("bench=" + bench);
+      }
+   }
+
+   /**
+    * Runs all the cases.
+    * @return median nanoseconds per operation of each case. See {@link DrwBench#getNames()}
+    */
+   public long[] runAll() {
+      if (caseNames == null) {
+         createCases();
+      }
+      long[] results = new long[caseNames.length];
+      for (int i = 0; i < caseNames.length; i++) {
+         results[i] = runCase(i);
+      }
+      this.results = results;
+      return results;
+   }
+
+   /**
+    * Warms up then times the case. A fresh destination is used for each case.
+    * <br>
+    * Operations of a trial start at {@link DrwBench#setIterations(int)} and are doubled until a trial lasts {@link DrwBench#setMinTrialMillis(int)}.
+    * @param index
+    * @return median nanoseconds per operation
+    */
+   public long runCase(int index) {
+      if (caseNames == null) {
+         createCases();
+      }
+      int bench = caseBench[index];
+      int param = caseParam[index];
+      RgbImage dest = createDest(bench, param);
+      int mode = bench == BENCH_1_DRAW_RGB ? param : ITechGraphicsX.MODE_2_RGB_IMAGE;
+      GraphicsX g = dest.getGraphicsX(mode);
+      for (int i = 0; i < warmup; i++) {
+         runOp(bench, param, g, dest);
+      }
+      int numOps = iterations;
+      while (numOps < MAX_ITERATIONS) {
+         long start = System.currentTimeMillis();
+         for (int i = 0; i < numOps; i++) {
+            runOp(bench, param, g, dest);
+         }
+         if (System.currentTimeMillis() - start >= minTrialMillis) {
+            break;
+         }
+         numOps *= 2;
+      }
+      if (caseIterations == null || caseIterations.length != caseNames.length) {
+         caseIterations = new int[caseNames.length];
+      }
+      caseIterations[index] = numOps;
+      long[] times = new long[trials];
+      for (int t = 0; t < trials; t++) {
+         long start = System.currentTimeMillis();
+         for (int i = 0; i < numOps; i++) {
+            runOp(bench, param, g, dest);
+         }
+         times[t] = (System.currentTimeMillis() - start) * 1000000L / numOps;
+      }
+      dest.dispose();
+      //insertion sort for the median
+      for (int i = 1; i < trials; i++) {
+         long v = times[i];
+         int j = i - 1;
+         while (j >= 0 && times[j] > v) {
+            times[j + 1] = times[j];
+            j--;
+         }
+         times[j + 1] = v;
+      }
+      long median = times[trials / 2];
+      //#debug
+      toDLog().pAlways(caseNames[index] + " " + median + "ns/op [" + times[0] + "-" + times[trials - 1] + "] x" + numOps + " resolution=" + getResolution(index) + "ns (check=" + check + ")", this, DrwBench.class, "runCase", ITechLvl.LVL_05_FINE, true);
+      return median;
+   }
+
+   private void runRotate(int param) {
+      RgbImageRotateUtils rotator = drc.getRgbImageRotateUtils();
+      int[] data = src.getRgbData();
+      double cos = Math.cos(Math.PI * rotateDegree / 180);
+      double sin = Math.sin(Math.PI * rotateDegree / 180);
+      switch (param) {
+         case ROTATE_0_FORMER:
+            rotateColumnMajor(data, size, size, cos, sin, rotateDst, rotateW, rotateH, 0);
+            break;
+         case ROTATE_1_NEAREST:
+            rotator.rotate(data, size, size, 0, 0, 0, cos, sin, rotateDst, rotateW, rotateH);
+            break;
+         case ROTATE_2_BILINEAR:
+            rotator.rotateBilinear(data, size, size, 0, cos, sin, rotateDst, rotateW, rotateH);
+            break;
+         case ROTATE_3_90:
+            int[] r = rotator.rotate(data, size, size, 90, 0, false);
+            check += r[r.length / 2];
+            return;
+         default:
+            throw new IllegalArgumentException("param=" + param);
+      }
+      check += rotateDst[rotateDst.length / 2];
+   }
+
+   /**
+    * The rotation replaced by {@link RgbImageRotateUtils}. x in the outer loop, 2 double multiplications per pixel.
+    */
+   private void rotateColumnMajor(int[] sourceRgbData, int width, int height, double degreeCos, double degreeSin, int[] rotatedRGB, int rotatedWidth, int rotatedHeight, int backgroundColor) {
+      int referenceX = rotatedWidth / 2;
+      int referenceY = rotatedHeight / 2;
+      int halfOfWidth = width / 2;
+      int halfOfHeigth = height / 2;
+      int refX, refY, newX, newY, srcXY;
+      for (int x = 0; x < rotatedWidth; x++) {
+         for (int y = 0; y < rotatedHeight; y++) {
+            refX = x - referenceX;
+            refY = y - referenceY;
+            newX = (int) (refX * degreeCos - refY * degreeSin);
+            newY = (int) (refX * degreeSin + refY * degreeCos);
+            newX += halfOfWidth;
+            newY += (halfOfHeigth);
+            if (newX >= 0 && newX < width && newY >= 0 && newY < height) {
+               srcXY = newX + newY * width;
+               rotatedRGB[x + y * rotatedWidth] = sourceRgbData[srcXY];
+            } else {
+               rotatedRGB[x + y * rotatedWidth] = backgroundColor;
+            }
+         }
+      }
+   }
+
+   private int setCase(int c, int bench, int param, String name) {
+      caseBench[c] = bench;
+      caseParam[c] = param;
+      caseNames[c] = name;
+      return c + 1;
+   }
+
+   /**
+    * Number of lines of the text of {@link DrwBench#BENCH_8_CARET}. Cases are built again.
+    * @param caretLines
+    */
+   public void setCaretLines(int caretLines) {
+      this.caretLines = caretLines;
+      caseNames = null;
+   }
+
+   /**
+    * Minimum number of operations timed by a trial
+    * @param iterations
+    */
+   public void setIterations(int iterations) {
+      if (iterations < 1) {
+         throw new IllegalArgumentException("iterations=" + iterations);
+      }
+      this.iterations = iterations;
+   }
+
+   /**
+    * Minimum duration of a trial. Operations of a trial are doubled until it is reached.
+    * @param minTrialMillis
+    */
+   public void setMinTrialMillis(int minTrialMillis) {
+      this.minTrialMillis = minTrialMillis;
+   }
+
+   /**
+    * Angle of the {@link DrwBench#BENCH_9_ROTATE} cases. Cases are built again.
+    * @param rotateDegree
+    */
+   public void setRotateDegree(int rotateDegree) {
+      this.rotateDegree = rotateDegree;
+      caseNames = null;
+   }
+
+   /**
+    * Width and height of the images. Cases are built again.
+    * @param size
+    */
+   public void setSize(int size) {
+      this.size = size;
+      caseNames = null;
+   }
+
+   /**
+    * Number of timed trials. The median is kept
+    * @param trials
+    */
+   public void setTrials(int trials) {
+      this.trials = trials;
+   }
+
+   /**
+    * Untimed operations before the trials
+    * @param warmup
+    */
+   public void setWarmup(int warmup) {
+      this.warmup = warmup;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DrwBench.class, 120);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      if (caseNames != null && results != null) {
+         for (int i = 0; i < results.length; i++) {
+            dc.nl();
+            dc.append(caseNames[i]);
+            dc.append(" = " + results[i] + "ns");
+         }
+      }
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", size);
+      dc.appendVarWithSpace("iterations", iterations);
+      dc.appendVarWithSpace("minTrialMillis", minTrialMillis);
+      dc.appendVarWithSpace("trials", trials);
+      dc.appendVarWithSpace("warmup", warmup);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DrwBench.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
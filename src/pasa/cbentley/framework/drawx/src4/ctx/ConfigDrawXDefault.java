@@ -28,6 +28,7 @@ public class ConfigDrawXDefault extends ConfigAbstractBO implements IConfigDrawX
 
    /**
     * {@link ITechCtxSettingsDrwx#CTX_DRW_FLAG_1_USER_IMAGE_CACHE}
+    * {@link ITechCtxSettingsDrwx#CTX_DRW_FLAG_2_FIGURE_CACHE}
     */
    public int getFlagsDrw() {
       return 0;
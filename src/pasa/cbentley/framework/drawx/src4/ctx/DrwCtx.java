@@ -29,6 +29,7 @@ import pasa.cbentley.framework.coredraw.src4.ctx.CoreDrawCtx;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IFontFactory;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IImageFactory;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsXFactory;
 import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
@@ -87,12 +88,18 @@ public class DrwCtx extends ABOCtx implements ITechCtxSettingsDrwx {
 
    private ArtifactFactory     artifactFactory;
 
+   private BlendKernel         blendKernel;
+
    private final BOCtx         boc;
 
    private BoxFactory          bx;
 
    private RgbCache            cache;
 
+   private final DrwLog        drwLog;
+
+   private final DrwMetrics    metrics;
+
    protected final CoreDrawCtx cdc;
 
    private IConfigDrawX        configDrawX;
@@ -167,6 +174,8 @@ public class DrwCtx extends ABOCtx implements ITechCtxSettingsDrwx {
       //we need a sizer and root
       module = new BOModuleDrawx(this);
 
+      drwLog = new DrwLog(this);
+      metrics = new DrwMetrics(this);
       cache = new RgbCache(this);
       facFig = new FigureFactory(this);
       bx = new BoxFactory(this);
@@ -192,6 +201,23 @@ public class DrwCtx extends ABOCtx implements ITechCtxSettingsDrwx {
 
    protected void applySettings(ByteObject settingsNew, ByteObject settingsOld) {
       cache.applySettings(settingsNew);
+      if (figureOperator != null) {
+         figureOperator.getFigureCache().applySettings(settingsNew);
+      }
+      if (styleOperator != null) {
+         styleOperator.invalidateStylePlans();
+      }
+   }
+
+   /**
+    * Call when values of the {@link LayouterCtx} change, e.g. screen size or font points.
+    * <br>
+    * Cached TBLR values of style plans are computed from them. See {@link StyleOperator#invalidateStylePlans()}
+    */
+   public void layoutContextChanged() {
+      if (styleOperator != null) {
+         styleOperator.invalidateStylePlans();
+      }
    }
 
    private StringAuxFactory stringAuxFactory;
@@ -219,6 +245,33 @@ public class DrwCtx extends ABOCtx implements ITechCtxSettingsDrwx {
       return artifactFactory;
    }
 
+   /**
+    * Categories of debug events of the hot paths. All off by default.
+    * @return
+    */
+   public DrwLog getDrwLog() {
+      return drwLog;
+   }
+
+   /**
+    * Per frame counters and timing spans. Disabled by default.
+    * @return
+    */
+   public DrwMetrics getMetrics() {
+      return metrics;
+   }
+
+   /**
+    * Row kernels used when blending int[] pixel arrays
+    * @return
+    */
+   public BlendKernel getBlendKernel() {
+      if (blendKernel == null) {
+         blendKernel = new BlendKernel(this);
+      }
+      return blendKernel;
+   }
+
    /**
     * Create a color composer
     * @param mod
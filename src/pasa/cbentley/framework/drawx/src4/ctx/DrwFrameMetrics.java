@@ -0,0 +1,216 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.ctx;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwMetrics;
+
+/**
+ * Counters of one frame, or the sum of frames of a paint mode. Created by {@link DrwMetrics}.
+ * <br>
+ * <br>
+ * Counters of {@link GraphicsX} and {@link RgbCache} are the differences between the start and the end of the frame.
+ * Times are in milliseconds.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DrwFrameMetrics extends ObjectDrw implements ITechDrwMetrics {
+
+   int    cacheFound;
+
+   int    cacheMiss;
+
+   long   frame;
+
+   /**
+    * Number of frames added in this object. 1 for a frame snapshot.
+    */
+   int    frameCount;
+
+   int    imageCreations;
+
+   int    merges;
+
+   long   millis;
+
+   int    paintMode;
+
+   long   pixelsMerged;
+
+   int    primitives;
+
+   int    pseudoSwaps;
+
+   int    rgbCalls;
+
+   int[]  spanCounts = new int[METRICS_SPAN_NUM];
+
+   long[] spanMillis = new long[METRICS_SPAN_NUM];
+
+   long   startMillis;
+
+   public DrwFrameMetrics(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Adds the counters of f to this
+    * @param f
+    */
+   void add(DrwFrameMetrics f) {
+      frame = f.frame;
+      frameCount += f.frameCount;
+      paintMode = f.paintMode;
+      millis += f.millis;
+      primitives += f.primitives;
+      rgbCalls += f.rgbCalls;
+      merges += f.merges;
+      pixelsMerged += f.pixelsMerged;
+      pseudoSwaps += f.pseudoSwaps;
+      cacheFound += f.cacheFound;
+      cacheMiss += f.cacheMiss;
+      imageCreations += f.imageCreations;
+      for (int i = 0; i < METRICS_SPAN_NUM; i++) {
+         spanCounts[i] += f.spanCounts[i];
+         spanMillis[i] += f.spanMillis[i];
+      }
+   }
+
+   public int getCacheFound() {
+      return cacheFound;
+   }
+
+   /**
+    * Found pool requests of {@link RgbCache} per thousand requests. -1 when there was no request.
+    * @return
+    */
+   public int getCacheHitPerMil() {
+      int total = cacheFound + cacheMiss;
+      if (total == 0) {
+         return -1;
+      }
+      return (int) (cacheFound * 1000L / total);
+   }
+
+   public int getCacheMiss() {
+      return cacheMiss;
+   }
+
+   /**
+    * Index of the frame since the {@link DrwMetrics} was enabled. Last frame for sums.
+    * @return
+    */
+   public long getFrame() {
+      return frame;
+   }
+
+   public int getFrameCount() {
+      return frameCount;
+   }
+
+   public int getImageCreations() {
+      return imageCreations;
+   }
+
+   public int getMerges() {
+      return merges;
+   }
+
+   /**
+    * Duration of the frame
+    * @return
+    */
+   public long getMillis() {
+      return millis;
+   }
+
+   /**
+    * {@link GraphicsX#getPaintMode()} at the end of the frame
+    * @return
+    */
+   public int getPaintMode() {
+      return paintMode;
+   }
+
+   /**
+    * Number of pixels blended by the merges. Overdraw of the primitive layer.
+    * @return
+    */
+   public long getPixelsMerged() {
+      return pixelsMerged;
+   }
+
+   /**
+    * Number of primitive calls. Overdraw of the frame.
+    * @return
+    */
+   public int getPrimitives() {
+      return primitives;
+   }
+
+   public int getPseudoSwaps() {
+      return pseudoSwaps;
+   }
+
+   public int getRgbCalls() {
+      return rgbCalls;
+   }
+
+   /**
+    * Number of spans recorded
+    * @param span {@link ITechDrwMetrics}
+    * @return
+    */
+   public int getSpanCount(int span) {
+      return spanCounts[span];
+   }
+
+   /**
+    * Time spent in the span
+    * @param span {@link ITechDrwMetrics}
+    * @return
+    */
+   public long getSpanMillis(int span) {
+      return spanMillis[span];
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DrwFrameMetrics.class, 200);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.append(" frame=" + frame);
+      dc.appendVarWithSpace("frameCount", frameCount);
+      dc.appendWithSpace(ToStringStaticDrawx.toStringPaintMode(paintMode));
+      dc.append(" millis=" + millis);
+      dc.appendVarWithSpace("primitives", primitives);
+      dc.appendVarWithSpace("rgbCalls", rgbCalls);
+      dc.appendVarWithSpace("merges", merges);
+      dc.append(" pixelsMerged=" + pixelsMerged);
+      dc.appendVarWithSpace("pseudoSwaps", pseudoSwaps);
+      dc.appendVarWithSpace("cacheFound", cacheFound);
+      dc.appendVarWithSpace("cacheMiss", cacheMiss);
+      dc.appendVarWithSpace("imageCreations", imageCreations);
+      dc.append(" paintFigure=" + spanCounts[METRICS_SPAN_0_PAINT_FIGURE] + "/" + spanMillis[METRICS_SPAN_0_PAINT_FIGURE] + "ms");
+      dc.append(" drawStyle=" + spanCounts[METRICS_SPAN_1_DRAW_STYLE] + "/" + spanMillis[METRICS_SPAN_1_DRAW_STYLE] + "ms");
+      dc.append(" merge=" + spanCounts[METRICS_SPAN_2_MERGE] + "/" + spanMillis[METRICS_SPAN_2_MERGE] + "ms");
+      dc.append(" paintToScreen=" + spanCounts[METRICS_SPAN_3_PAINT_TO_SCREEN] + "/" + spanMillis[METRICS_SPAN_3_PAINT_TO_SCREEN] + "ms");
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DrwFrameMetrics.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,131 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.ctx;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.logging.IStringable;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwLog;
+
+/**
+ * Debug events of the drawing hot paths, by category of {@link ITechDrwLog}.
+ * <br>
+ * <br>
+ * Without preprocessing, code between debug markers runs on every call. Hot paths build their messages
+ * inside a {@link DrwLog#isOn(int)} block, so that a category which is off costs a single branch and no string.
+ * <br>
+ * <pre>
+ * if (drc.getDrwLog().isOn(DRWLOG_2_MERGE)) {
+ *    drc.getDrwLog().pDraw(DRWLOG_2_MERGE, "count=" + count, this, GraphicsX.class, "merge", LVL_05_FINE, true);
+ * }
+ * </pre>
+ * Events go to {@link DrwCtx#toDLog()}, which still applies its own filters.
+ * <br>
+ * All categories are off by default.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DrwLog extends ObjectDrw implements ITechDrwLog {
+
+   private int categories;
+
+   public DrwLog(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Flags of the categories that are on
+    * @return
+    */
+   public int getCategories() {
+      return categories;
+   }
+
+   /**
+    * True when events of the category are logged
+    * @param category {@link ITechDrwLog}
+    * @return
+    */
+   public boolean isOn(int category) {
+      return (categories & category) != 0;
+   }
+
+   /**
+    * Draw event. Messages built by concatenation must be built inside an {@link DrwLog#isOn(int)} block.
+    * @param category
+    * @param msg
+    * @param o
+    * @param c
+    * @param method
+    * @param lvl
+    * @param oneLine
+    */
+   public void pDraw(int category, String msg, IStringable o, Class c, String method, int lvl, boolean oneLine) {
+      if ((categories & category) != 0) {
+         drc.toDLog().pDraw(msg, o, c, method, lvl, oneLine);
+      }
+   }
+
+   /**
+    * Init event. See {@link DrwLog#pDraw(int, String, IStringable, Class, String, int, boolean)}
+    * @param category
+    * @param msg
+    * @param o
+    * @param c
+    * @param method
+    */
+   public void pInit(int category, String msg, IStringable o, Class c, String method) {
+      if ((categories & category) != 0) {
+         drc.toDLog().pInit(msg, o, c, method);
+      }
+   }
+
+   /**
+    * Replaces the categories that are on
+    * @param categories flags of {@link ITechDrwLog}
+    */
+   public void setCategories(int categories) {
+      this.categories = categories;
+   }
+
+   /**
+    * Switches the category on or off
+    * @param category
+    * @param v
+    */
+   public void setOn(int category, boolean v) {
+      if (v) {
+         categories |= category;
+      } else {
+         categories &= ~category;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DrwLog.class, 100);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("blend", isOn(DRWLOG_1_BLEND));
+      dc.appendVarWithSpace("merge", isOn(DRWLOG_2_MERGE));
+      dc.appendVarWithSpace("drawRGB", isOn(DRWLOG_3_DRAW_RGB));
+      dc.appendVarWithSpace("drawRegion", isOn(DRWLOG_4_DRAW_REGION));
+      dc.appendVarWithSpace("figure", isOn(DRWLOG_5_FIGURE));
+      dc.appendVarWithSpace("graphics", isOn(DRWLOG_6_GRAPHICS));
+      dc.appendVarWithSpace("image", isOn(DRWLOG_7_IMAGE));
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DrwLog.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,335 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.ctx;
+
+import java.util.Vector;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.interfaces.IDrwMetricsListener;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwMetrics;
+import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
+
+/**
+ * Aggregates the counters of {@link GraphicsX} and {@link RgbCache} per frame and per paint mode,
+ * with the timing spans of {@link ITechDrwMetrics}.
+ * <br>
+ * <br>
+ * The host brackets its frames
+ * <pre>
+ * DrwMetrics metrics = drc.getMetrics();
+ * metrics.frameStart(g);
+ * //paint figures and styles
+ * g.paintToScreen(screen, 0);
+ * metrics.frameEnd(g);
+ * </pre>
+ * {@link DrwMetrics#frameEnd(GraphicsX)} keeps the {@link DrwFrameMetrics} in a ring of the last frames
+ * and gives it to the {@link IDrwMetricsListener}s.
+ * <br>
+ * <br>
+ * Disabled by default. Spans then cost a boolean check and no clock read.
+ * Spans are timed with {@link System#currentTimeMillis()}. Short spans count but may add up to 0 ms.
+ * <br>
+ * Spans of the tile threads of {@link pasa.cbentley.framework.drawx.src4.factories.FigureOperator} are added to the current frame.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DrwMetrics extends ObjectDrw implements ITechDrwMetrics {
+
+   private int                 baseCacheFound;
+
+   private int                 baseCacheMiss;
+
+   private int                 baseImageCreations;
+
+   private int                 baseMerges;
+
+   private long                baseMerged;
+
+   private int                 basePrimitives;
+
+   private int                 basePseudoSwaps;
+
+   private int                 baseRgbCalls;
+
+   /**
+    * Frame being recorded. null outside frames. Spans outside frames are ignored.
+    */
+   private DrwFrameMetrics     current;
+
+   private long                frameIndex;
+
+   /**
+    * Ring of the last frames. {@link DrwMetrics#ringNext} is the oldest when the ring is full.
+    */
+   private DrwFrameMetrics[]   ring;
+
+   private int                 ringCount;
+
+   private int                 ringNext;
+
+   private volatile boolean    isEnabled;
+
+   private Vector              listeners = new Vector(2);
+
+   /**
+    * Sums of the frames by paint mode
+    */
+   private DrwFrameMetrics[]   modeTotals;
+
+   public DrwMetrics(DrwCtx drc) {
+      super(drc);
+      ring = new DrwFrameMetrics[METRICS_DEFAULT_FRAMES];
+      modeTotals = new DrwFrameMetrics[ITechGraphicsX.MODE_5_MAX_MODULO];
+   }
+
+   public void addListener(IDrwMetricsListener listener) {
+      synchronized (listeners) {
+         if (!listeners.contains(listener)) {
+            listeners.addElement(listener);
+         }
+      }
+   }
+
+   private int delta(int value, int base) {
+      //counters reset by GraphicsX#clear during the frame
+      return value >= base ? value - base : value;
+   }
+
+   /**
+    * Ends the frame started by {@link DrwMetrics#frameStart(GraphicsX)}.
+    * <br>
+    * Keeps it in the ring, adds it to the sums of its paint mode and gives it to the listeners.
+    * @param g
+    * @return null when disabled or when no frame was started
+    */
+   public DrwFrameMetrics frameEnd(GraphicsX g) {
+      DrwFrameMetrics f = null;
+      synchronized (this) {
+         f = current;
+         if (f == null) {
+            return null;
+         }
+         current = null;
+         RgbCache cache = drc.getCache();
+         f.millis = System.currentTimeMillis() - f.startMillis;
+         f.paintMode = g.getPaintMode();
+         f.primitives = delta(g.getPrimitivetTally(), basePrimitives);
+         f.rgbCalls = delta(g.getRgbCount(), baseRgbCalls);
+         f.merges = g.getMergeCount() - baseMerges;
+         f.pixelsMerged = g.getNumPixelsMerged() - baseMerged;
+         f.pseudoSwaps = g.getPseudoSwapCount() - basePseudoSwaps;
+         f.cacheFound = cache.getStatCacheFound() - baseCacheFound;
+         f.cacheMiss = cache.getStatCacheMiss() - baseCacheMiss;
+         f.imageCreations = cache.getStatImageCreation() - baseImageCreations;
+
+         ring[ringNext] = f;
+         ringNext = (ringNext + 1) % ring.length;
+         if (ringCount < ring.length) {
+            ringCount++;
+         }
+         int mode = f.paintMode;
+         if (mode >= 0 && mode < modeTotals.length) {
+            if (modeTotals[mode] == null) {
+               modeTotals[mode] = new DrwFrameMetrics(drc);
+            }
+            modeTotals[mode].add(f);
+         }
+      }
+      IDrwMetricsListener[] ls = null;
+      synchronized (listeners) {
+         ls = new IDrwMetricsListener[listeners.size()];
+         listeners.copyInto(ls);
+      }
+      for (int i = 0; i < ls.length; i++) {
+         ls[i].frameMetrics(f);
+      }
+      return f;
+   }
+
+   /**
+    * Starts recording a frame painted with g. Does nothing when disabled.
+    * <br>
+    * A frame not ended is dropped.
+    * @param g
+    */
+   public synchronized void frameStart(GraphicsX g) {
+      if (!isEnabled) {
+         return;
+      }
+      RgbCache cache = drc.getCache();
+      basePrimitives = g.getPrimitivetTally();
+      baseRgbCalls = g.getRgbCount();
+      baseMerges = g.getMergeCount();
+      baseMerged = g.getNumPixelsMerged();
+      basePseudoSwaps = g.getPseudoSwapCount();
+      baseCacheFound = cache.getStatCacheFound();
+      baseCacheMiss = cache.getStatCacheMiss();
+      baseImageCreations = cache.getStatImageCreation();
+      current = new DrwFrameMetrics(drc);
+      current.frame = frameIndex++;
+      current.frameCount = 1;
+      current.startMillis = System.currentTimeMillis();
+   }
+
+   /**
+    * Frames of the ring, from the oldest to the last
+    * @return a new array
+    */
+   public synchronized DrwFrameMetrics[] getFrames() {
+      DrwFrameMetrics[] frames = new DrwFrameMetrics[ringCount];
+      int start = (ringNext - ringCount + ring.length) % ring.length;
+      for (int i = 0; i < ringCount; i++) {
+         frames[i] = ring[(start + i) % ring.length];
+      }
+      return frames;
+   }
+
+   /**
+    * Last ended frame
+    * @return null when no frame
+    */
+   public synchronized DrwFrameMetrics getLastFrame() {
+      if (ringCount == 0) {
+         return null;
+      }
+      return ring[(ringNext - 1 + ring.length) % ring.length];
+   }
+
+   /**
+    * Maximum number of frames kept
+    * @return
+    */
+   public int getMaxFrames() {
+      return ring.length;
+   }
+
+   /**
+    * Copy of the sums of all the frames ended in that paint mode. Later frames do not modify it.
+    * @param mode {@link ITechGraphicsX#MODE_0_SCREEN} to {@link ITechGraphicsX#MODE_4_NULL}
+    * @return null when no frame of that mode
+    * @throws IllegalArgumentException when mode is not a paint mode
+    */
+   public synchronized DrwFrameMetrics getModeTotals(int mode) {
+      if (mode < 0 || mode >= modeTotals.length) {
+         throw new IllegalArgumentException("mode=" + mode);
+      }
+      DrwFrameMetrics totals = modeTotals[mode];
+      if (totals == null) {
+         return null;
+      }
+      DrwFrameMetrics copy = new DrwFrameMetrics(drc);
+      copy.add(totals);
+      return copy;
+   }
+
+   public boolean isEnabled() {
+      return isEnabled;
+   }
+
+   public void removeListener(IDrwMetricsListener listener) {
+      synchronized (listeners) {
+         listeners.removeElement(listener);
+      }
+   }
+
+   /**
+    * Clears the frames, the sums and the frame being recorded
+    */
+   public synchronized void reset() {
+      for (int i = 0; i < ring.length; i++) {
+         ring[i] = null;
+      }
+      for (int i = 0; i < modeTotals.length; i++) {
+         modeTotals[i] = null;
+      }
+      ringCount = 0;
+      ringNext = 0;
+      current = null;
+      frameIndex = 0;
+   }
+
+   /**
+    * When disabled, the frame being recorded is dropped. Ended frames are kept.
+    * @param isEnabled
+    */
+   public synchronized void setEnabled(boolean isEnabled) {
+      this.isEnabled = isEnabled;
+      if (!isEnabled) {
+         current = null;
+      }
+   }
+
+   /**
+    * Sets the size of the ring. Clears it.
+    * @param maxFrames
+    * @throws IllegalArgumentException when maxFrames is smaller than 1
+    */
+   public synchronized void setMaxFrames(int maxFrames) {
+      if (maxFrames < 1) {
+         throw new IllegalArgumentException("maxFrames=" + maxFrames);
+      }
+      ring = new DrwFrameMetrics[maxFrames];
+      ringCount = 0;
+      ringNext = 0;
+   }
+
+   /**
+    * Ends a span started with {@link DrwMetrics#spanStart()}
+    * @param span {@link ITechDrwMetrics}
+    * @param start value returned by {@link DrwMetrics#spanStart()}
+    */
+   public void spanEnd(int span, long start) {
+      if (start == 0) {
+         return;
+      }
+      long time = System.currentTimeMillis() - start;
+      synchronized (this) {
+         if (current != null) {
+            current.spanCounts[span]++;
+            current.spanMillis[span] += time;
+         }
+      }
+   }
+
+   /**
+    * Starts a span
+    * @return 0 when disabled
+    */
+   public long spanStart() {
+      if (!isEnabled) {
+         return 0;
+      }
+      return System.currentTimeMillis();
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DrwMetrics.class, 290);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      dc.nlLvl(getLastFrame(), "LastFrame");
+      for (int i = 0; i < modeTotals.length; i++) {
+         dc.nlLvl(modeTotals[i], ToStringStaticDrawx.toStringPaintMode(i));
+      }
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("isEnabled", isEnabled);
+      dc.appendVarWithSpace("frames", ringCount + "/" + ring.length);
+      dc.appendVarWithSpace("listeners", listeners.size());
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DrwMetrics.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -15,6 +15,14 @@ public interface ITechCtxSettingsDrwx extends IBOCtxSettings {
     */
    public static final int CTX_DRW_FLAG_1_USER_IMAGE_CACHE = 1 << 0;
 
+   /**
+    * Enables the figure image cache of {@link pasa.cbentley.framework.drawx.src4.factories.FigureOperator#paintFigure(pasa.cbentley.framework.drawx.src4.engine.GraphicsX, int, int, int, int, pasa.cbentley.byteobjects.src4.core.ByteObject)}.
+    * <br>
+    * Cached figures are drawn from an image with {@link pasa.cbentley.framework.drawx.src4.engine.GraphicsX#drawRgbImage(pasa.cbentley.framework.drawx.src4.engine.RgbImage, int, int)}. 
+    * See {@link pasa.cbentley.framework.drawx.src4.factories.FigureCache}
+    */
+   public static final int CTX_DRW_FLAG_2_FIGURE_CACHE     = 1 << 1;
+
    public static final int CTX_DRW_OFFSET_01_FLAG1         = CTX_BASIC_SIZE;
 
    /**
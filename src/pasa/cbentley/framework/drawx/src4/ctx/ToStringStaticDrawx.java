@@ -161,7 +161,7 @@ public class ToStringStaticDrawx extends ToStringStaticBase {
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_2_MERGE_TRANS);
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_3_);
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_4_LAYOUT);
-      addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_5_);
+      addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_5_NO_CACHE);
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_6_);
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_7_AXIS);
       addFigFlagZ(itos, IBOFigure.FIG_FLAGZ_8_DIRECTION);
@@ -428,8 +428,8 @@ public class ToStringStaticDrawx extends ToStringStaticBase {
             return "3";
          case IBOFigure.FIG_FLAGZ_4_LAYOUT:
             return "4";
-         case IBOFigure.FIG_FLAGZ_5_:
-            return "5";
+         case IBOFigure.FIG_FLAGZ_5_NO_CACHE:
+            return "NoCache";
          case IBOFigure.FIG_FLAGZ_6_:
             return "6";
          case IBOFigure.FIG_FLAGZ_7_AXIS:
@@ -596,6 +596,10 @@ public class ToStringStaticDrawx extends ToStringStaticBase {
             return "Bi Linear";
          case ITechScaler.SCALER_ID_2_BI_CUBIC:
             return "Bi Cubic";
+         case ITechScaler.SCALER_ID_3_LANCZOS_3:
+            return "Lanczos 3";
+         case ITechScaler.SCALER_ID_4_AREA_AVERAGE:
+            return "Area Average";
          default:
             return "Unknown = " + id;
       }
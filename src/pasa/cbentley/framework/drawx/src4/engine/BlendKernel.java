@@ -0,0 +1,447 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.engine;
+
+import pasa.cbentley.byteobjects.src4.objects.color.BlendOp;
+import pasa.cbentley.byteobjects.src4.objects.color.ITechBlend;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.tech.ITechBlendKernel;
+import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
+
+/**
+ * Registry of hand written row kernels for blending int[] ARGB arrays.
+ * <br>
+ * <br>
+ * {@link BlendOp#blendPixel(int, int)} is a generic virtual call made for every pixel.
+ * For the most common blending modes, a kernel is selected once per blend call with
+ * {@link BlendKernel#getKernelID(BlendOp, boolean, boolean)} and the rows are then processed
+ * with a tight loop.
+ * <br>
+ * <br>
+ * Modes without a specialized kernel use {@link ITechBlendKernel#KERNEL_0_GENERIC} which keeps the {@link BlendOp} behavior.
+ * <br>
+ * <br>
+ * A premultiplied destination, see {@link ITechRgbImage#FLAG_21_PREMULTIPLIED}, takes straight or premultiplied sources.
+ * Premultiplied SRC_OVER is one multiplication and one division by 255 per channel without any branch on the destination alpha.
+ * {@link BlendOp} only knows straight pixels, so generic kernels on premultiplied pixels convert around {@link BlendOp#blendPixel(int, int)}
+ * with {@link BlendKernel#premultiply(int)} and {@link BlendKernel#unpremultiply(int)}.
+ * <br>
+ * <br>
+ * Integer rounding of {@link ITechBlendKernel#KERNEL_3_SRC_OVER} may differ by 1 from {@link BlendOp}.
+ *
+ * @author Charles-Philip Bentley
+ * @see RgbImage#blend(BlendOp, int, int, int[], int, int, int, int, int, int)
+ */
+public class BlendKernel extends ObjectDrw implements ITechBlendKernel {
+
+   /**
+    * Alpha mode of a {@link BlendOp} created without alpha mode. Straight alpha is used.
+    */
+   private final int          defaultAlphaMode;
+
+   /**
+    * 16.16 fixed point of 255 / alpha. Unpremultiplying a channel is a multiplication and a shift.
+    */
+   private static final int[] INV_ALPHA = createInvAlpha();
+
+   public BlendKernel(DrwCtx drc) {
+      super(drc);
+      defaultAlphaMode = new BlendOp(drc.getBOC(), ITechBlend.BLENDING_00_OVER).getAlphaMode();
+   }
+
+   /**
+    * Blends a rectangle of pixels with the given kernel.
+    *
+    * @param kernelID {@link ITechBlendKernel}
+    * @param bo used by {@link ITechBlendKernel#KERNEL_0_GENERIC}
+    * @param dst destination array
+    * @param dstIndex index of the first destination pixel
+    * @param dstScan scanline of the destination
+    * @param src source array
+    * @param srcIndex index of the first source pixel
+    * @param srcScan scanline of the source
+    * @param w
+    * @param h
+    */
+   public void blend(int kernelID, BlendOp bo, int[] dst, int dstIndex, int dstScan, int[] src, int srcIndex, int srcScan, int w, int h) {
+      for (int i = 0; i < h; i++) {
+         blendRow(kernelID, bo, dst, dstIndex, src, srcIndex, w);
+         dstIndex += dstScan;
+         srcIndex += srcScan;
+      }
+   }
+
+   /**
+    * Blends len pixels of src into dst.
+    *
+    * @param kernelID {@link ITechBlendKernel}
+    * @param bo used by {@link ITechBlendKernel#KERNEL_0_GENERIC}
+    * @param dst
+    * @param dstIndex
+    * @param src
+    * @param srcIndex
+    * @param len
+    */
+   public void blendRow(int kernelID, BlendOp bo, int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      switch (kernelID) {
+         case KERNEL_1_COPY:
+         case KERNEL_5_SRC_PRE:
+            System.arraycopy(src, srcIndex, dst, dstIndex, len);
+            break;
+         case KERNEL_2_OPAQUE:
+            rowOpaque(dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_3_SRC_OVER:
+            rowSrcOver(dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_4_SRC_OVER_PRE:
+            rowSrcOverPre(dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_6_SRC_OVER_TO_PRE:
+            rowSrcOverToPre(dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_7_SRC_TO_PRE:
+            rowSrcToPre(dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_8_GENERIC_TO_PRE:
+            rowGenericToPre(bo, dst, dstIndex, src, srcIndex, len);
+            break;
+         case KERNEL_9_GENERIC_PRE:
+            rowGenericPre(bo, dst, dstIndex, src, srcIndex, len);
+            break;
+         default:
+            rowGeneric(bo, dst, dstIndex, src, srcIndex, len);
+            break;
+      }
+   }
+
+   private static int[] createInvAlpha() {
+      int[] inv = new int[256];
+      for (int a = 1; a < 256; a++) {
+         inv[a] = ((255 << 16) + (a >> 1)) / a;
+      }
+      return inv;
+   }
+
+   /**
+    * Fast division by 255 of a value in [0, 255*255]
+    * @param v
+    * @return
+    */
+   private static int div255(int v) {
+      v += 128;
+      return (v + (v >> 8)) >> 8;
+   }
+
+   /**
+    * Chooses the kernel for the {@link BlendOp}.
+    *
+    * @param bo
+    * @param isSrcOpaque true when all source pixels are known to be fully opaque. {@link ITechRgbImage#FLAG_05_IGNORE_ALPHA}
+    * @param isPremultiplied true when source and destination pixels are premultiplied
+    * @return {@link ITechBlendKernel}
+    */
+   public int getKernelID(BlendOp bo, boolean isSrcOpaque, boolean isPremultiplied) {
+      return getKernelID(bo, isSrcOpaque, isPremultiplied, isPremultiplied);
+   }
+
+   /**
+    * Chooses the kernel for the {@link BlendOp} and the pixel formats of source and destination.
+    * <br>
+    * <br>
+    * Fully opaque pixels are the same in both formats, so an opaque source is copied whatever the destination.
+    *
+    * @param bo
+    * @param isSrcOpaque true when all source pixels are known to be fully opaque. {@link ITechRgbImage#FLAG_05_IGNORE_ALPHA}
+    * @param isSrcPremultiplied true when source pixels are premultiplied
+    * @param isDstPremultiplied true when destination pixels are premultiplied
+    * @return {@link ITechBlendKernel}
+    * @throws IllegalArgumentException when a premultiplied source is blended into a straight destination
+    */
+   public int getKernelID(BlendOp bo, boolean isSrcOpaque, boolean isSrcPremultiplied, boolean isDstPremultiplied) {
+      if (isSrcPremultiplied && !isDstPremultiplied) {
+         throw new IllegalArgumentException("premultiplied source on a straight destination");
+      }
+      int mode = bo.getMode();
+      int alphaMode = bo.getAlphaMode();
+      if (alphaMode == defaultAlphaMode) {
+         if (mode == ITechBlend.BLENDING_01_SRC) {
+            if (isDstPremultiplied) {
+               return isSrcPremultiplied ? KERNEL_5_SRC_PRE : KERNEL_7_SRC_TO_PRE;
+            }
+            return KERNEL_1_COPY;
+         } else if (mode == ITechBlend.BLENDING_00_OVER) {
+            if (isSrcOpaque) {
+               return KERNEL_1_COPY;
+            }
+            if (isDstPremultiplied) {
+               return isSrcPremultiplied ? KERNEL_4_SRC_OVER_PRE : KERNEL_6_SRC_OVER_TO_PRE;
+            }
+            return KERNEL_3_SRC_OVER;
+         }
+      } else if (alphaMode == ITechBlend.ALPHA_1_255 && !isSrcPremultiplied) {
+         if (mode == ITechBlend.BLENDING_00_OVER || mode == ITechBlend.BLENDING_01_SRC) {
+            return KERNEL_2_OPAQUE;
+         }
+      }
+      if (isDstPremultiplied) {
+         return isSrcPremultiplied ? KERNEL_9_GENERIC_PRE : KERNEL_8_GENERIC_TO_PRE;
+      }
+      return KERNEL_0_GENERIC;
+   }
+
+   /**
+    * Straight ARGB to premultiplied ARGB
+    * @param argb
+    * @return
+    */
+   public static int premultiply(int argb) {
+      int a = argb >>> 24;
+      if (a == 255) {
+         return argb;
+      }
+      if (a == 0) {
+         return 0;
+      }
+      int r = div255(((argb >> 16) & 0xFF) * a);
+      int g = div255(((argb >> 8) & 0xFF) * a);
+      int b = div255((argb & 0xFF) * a);
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   /**
+    * Premultiplies a rectangle of pixels in place
+    * @param data
+    * @param offset index of the first pixel
+    * @param scan
+    * @param w
+    * @param h
+    */
+   public static void premultiply(int[] data, int offset, int scan, int w, int h) {
+      for (int i = 0; i < h; i++) {
+         int index = offset + i * scan;
+         int end = index + w;
+         while (index < end) {
+            int p = data[index];
+            if ((p >>> 24) != 255) {
+               data[index] = premultiply(p);
+            }
+            index++;
+         }
+      }
+   }
+
+   /**
+    * Premultiplied ARGB to straight ARGB.
+    * <br>
+    * Channels bigger than alpha are invalid and clamped to alpha.
+    * @param argb
+    * @return
+    */
+   public static int unpremultiply(int argb) {
+      int a = argb >>> 24;
+      if (a == 255) {
+         return argb;
+      }
+      if (a == 0) {
+         return 0;
+      }
+      int inv = INV_ALPHA[a];
+      int r = (argb >> 16) & 0xFF;
+      int g = (argb >> 8) & 0xFF;
+      int b = argb & 0xFF;
+      if (r > a) {
+         r = a;
+      }
+      if (g > a) {
+         g = a;
+      }
+      if (b > a) {
+         b = a;
+      }
+      r = (r * inv + 0x8000) >> 16;
+      g = (g * inv + 0x8000) >> 16;
+      b = (b * inv + 0x8000) >> 16;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   /**
+    * Unpremultiplies a rectangle of pixels in place
+    * @param data
+    * @param offset index of the first pixel
+    * @param scan
+    * @param w
+    * @param h
+    */
+   public static void unpremultiply(int[] data, int offset, int scan, int w, int h) {
+      for (int i = 0; i < h; i++) {
+         int index = offset + i * scan;
+         int end = index + w;
+         while (index < end) {
+            int p = data[index];
+            if ((p >>> 24) != 255) {
+               data[index] = unpremultiply(p);
+            }
+            index++;
+         }
+      }
+   }
+
+   private void rowGeneric(BlendOp bo, int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         dst[dstIndex] = bo.blendPixel(dst[dstIndex], src[srcIndex]);
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   private void rowGenericToPre(BlendOp bo, int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         dst[dstIndex] = premultiply(bo.blendPixel(unpremultiply(dst[dstIndex]), src[srcIndex]));
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   private void rowGenericPre(BlendOp bo, int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         dst[dstIndex] = premultiply(bo.blendPixel(unpremultiply(dst[dstIndex]), unpremultiply(src[srcIndex])));
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   private void rowOpaque(int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         dst[dstIndex] = src[srcIndex] | 0xFF000000;
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   /**
+    * Straight alpha SRC_OVER.
+    * <br>
+    * Fully opaque and fully transparent source pixels do not compute anything.
+    */
+   private void rowSrcOver(int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         int s = src[srcIndex];
+         int sa = s >>> 24;
+         if (sa == 255) {
+            dst[dstIndex] = s;
+         } else if (sa != 0) {
+            int d = dst[dstIndex];
+            int da = d >>> 24;
+            if (da == 0) {
+               dst[dstIndex] = s;
+            } else {
+               int sr = (s >> 16) & 0xFF;
+               int sg = (s >> 8) & 0xFF;
+               int sb = s & 0xFF;
+               int dr = (d >> 16) & 0xFF;
+               int dg = (d >> 8) & 0xFF;
+               int db = d & 0xFF;
+               int inv = 255 - sa;
+               if (da == 255) {
+                  int r = div255(sr * sa + dr * inv);
+                  int g = div255(sg * sa + dg * inv);
+                  int b = div255(sb * sa + db * inv);
+                  dst[dstIndex] = 0xFF000000 | (r << 16) | (g << 8) | b;
+               } else {
+                  //weights of source and destination scaled by 255 to keep precision on small alphas
+                  int ws = sa * 255;
+                  int wd = da * inv;
+                  int sum = ws + wd;
+                  int half = sum >> 1;
+                  int oa = (sum + 127) / 255;
+                  int r = (sr * ws + dr * wd + half) / sum;
+                  int g = (sg * ws + dg * wd + half) / sum;
+                  int b = (sb * ws + db * wd + half) / sum;
+                  dst[dstIndex] = (oa << 24) | (r << 16) | (g << 8) | b;
+               }
+            }
+         }
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   /**
+    * Premultiplied SRC_OVER. Each channel is s + d * (255 - sa) / 255
+    */
+   private void rowSrcOverPre(int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         int s = src[srcIndex];
+         int sa = s >>> 24;
+         if (sa == 255) {
+            dst[dstIndex] = s;
+         } else if (sa != 0) {
+            int d = dst[dstIndex];
+            int inv = 255 - sa;
+            int a = sa + div255((d >>> 24) * inv);
+            int r = ((s >> 16) & 0xFF) + div255(((d >> 16) & 0xFF) * inv);
+            int g = ((s >> 8) & 0xFF) + div255(((d >> 8) & 0xFF) * inv);
+            int b = (s & 0xFF) + div255((d & 0xFF) * inv);
+            dst[dstIndex] = (a << 24) | (r << 16) | (g << 8) | b;
+         }
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   /**
+    * Straight source SRC_OVER premultiplied destination. Each channel is (s * sa + d * (255 - sa)) / 255
+    */
+   private void rowSrcOverToPre(int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         int s = src[srcIndex];
+         int sa = s >>> 24;
+         if (sa == 255) {
+            dst[dstIndex] = s;
+         } else if (sa != 0) {
+            int d = dst[dstIndex];
+            int inv = 255 - sa;
+            int a = sa + div255((d >>> 24) * inv);
+            int r = div255(((s >> 16) & 0xFF) * sa + ((d >> 16) & 0xFF) * inv);
+            int g = div255(((s >> 8) & 0xFF) * sa + ((d >> 8) & 0xFF) * inv);
+            int b = div255((s & 0xFF) * sa + (d & 0xFF) * inv);
+            dst[dstIndex] = (a << 24) | (r << 16) | (g << 8) | b;
+         }
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   private void rowSrcToPre(int[] dst, int dstIndex, int[] src, int srcIndex, int len) {
+      for (int j = 0; j < len; j++) {
+         dst[dstIndex] = premultiply(src[srcIndex]);
+         dstIndex++;
+         srcIndex++;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, BlendKernel.class, 220);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("defaultAlphaMode", defaultAlphaMode);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, BlendKernel.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
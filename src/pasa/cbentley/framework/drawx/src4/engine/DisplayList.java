@@ -0,0 +1,661 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.engine;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDisplayList;
+
+/**
+ * Drawing calls of a {@link GraphicsX} recorded between {@link GraphicsX#recordStart(DisplayList)} and {@link GraphicsX#recordEnd()}.
+ * <br>
+ * <br>
+ * Figures, styles and strings are recorded as the primitives they resolved to, so a replay does not read their {@link pasa.cbentley.byteobjects.src4.core.ByteObject}s.
+ * <br>
+ * Operations are stored in an int[] of {@link ITechDisplayList#DL_OP_SIZE} ints per operation. Color, alpha, stroke, font and clip
+ * are stored once per distinct state. Each operation has the index of its state and its bounding box, clipped by the clip of the state.
+ * Operations fully outside their clip are not recorded.
+ * <br>
+ * <br>
+ * Coordinates are those of the recording {@link GraphicsX}, translation included.
+ * {@link DisplayList#replay(GraphicsX, int, int)} draws them at dx,dy in the current coordinate system of the target.
+ * <br>
+ * Operations outside the clip of the target are skipped. States are only set on the target when they change.
+ * Color, alpha, font and stroke of the target are set back once the replay is done.
+ * <br>
+ * <br>
+ * {@link DisplayList#optimize()} moves operations next to a previous operation of the same state when they do not overlap the operations in between.
+ * <br>
+ * {@link DisplayList#cull(int, int, int, int)} keeps the operations of an area.
+ * <br>
+ * <br>
+ * Pixels of drawRGB and chars are copied. Immutable images are referenced.
+ * Blending modes are not recorded. The replay uses those of the target.
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DisplayList extends ObjectDrw implements ITechDisplayList {
+
+   private int      alpha;
+
+   private int      clipH;
+
+   private int      clipW;
+
+   private int      clipX;
+
+   private int      clipY;
+
+   private int      color;
+
+   private IMFont   font;
+
+   private boolean  isStateDirty;
+
+   private int[]    ops;
+
+   /**
+    * Number of ints used in {@link DisplayList#ops}
+    */
+   private int      opsLen;
+
+   private int      refCount;
+
+   private Object[] refs;
+
+   /**
+    * Index of the current state. -1 until the first operation.
+    */
+   private int      state;
+
+   private int      stateCount;
+
+   private IMFont[] stateFonts;
+
+   private int[]    states;
+
+   private int      stroke;
+
+   public DisplayList(DrwCtx drc) {
+      super(drc);
+      ops = new int[DL_OP_SIZE * 32];
+      refs = new Object[16];
+      states = new int[DL_STATE_SIZE * 8];
+      stateFonts = new IMFont[8];
+      state = -1;
+   }
+
+   private int addOp(int code, int bx, int by, int bw, int bh) {
+      //bounding box clipped by the current clip
+      int x2 = Math.min(bx + bw, clipX + clipW);
+      int y2 = Math.min(by + bh, clipY + clipH);
+      bx = Math.max(bx, clipX);
+      by = Math.max(by, clipY);
+      if (x2 <= bx || y2 <= by) {
+         return -1;
+      }
+      if (isStateDirty || state == -1) {
+         state = internState();
+         isStateDirty = false;
+      }
+      if (opsLen + DL_OP_SIZE > ops.length) {
+         int[] newOps = new int[ops.length * 2];
+         System.arraycopy(ops, 0, newOps, 0, opsLen);
+         ops = newOps;
+      }
+      int i = opsLen;
+      opsLen += DL_OP_SIZE;
+      ops[i + DL_OFFSET_00_CODE] = code;
+      ops[i + DL_OFFSET_01_STATE] = state;
+      ops[i + DL_OFFSET_02_BX] = bx;
+      ops[i + DL_OFFSET_03_BY] = by;
+      ops[i + DL_OFFSET_04_BW] = x2 - bx;
+      ops[i + DL_OFFSET_05_BH] = y2 - by;
+      for (int k = DL_OFFSET_06_ARGS; k < DL_OP_SIZE; k++) {
+         ops[i + k] = 0;
+      }
+      ops[i + DL_OFFSET_14_REF] = -1;
+      return i;
+   }
+
+   private int addRef(Object o) {
+      if (refCount == refs.length) {
+         Object[] newRefs = new Object[refs.length * 2];
+         System.arraycopy(refs, 0, newRefs, 0, refCount);
+         refs = newRefs;
+      }
+      refs[refCount] = o;
+      return refCount++;
+   }
+
+   /**
+    * Removes all operations and states
+    */
+   public void clear() {
+      opsLen = 0;
+      for (int i = 0; i < refCount; i++) {
+         refs[i] = null;
+      }
+      refCount = 0;
+      for (int i = 0; i < stateCount; i++) {
+         stateFonts[i] = null;
+      }
+      stateCount = 0;
+      state = -1;
+   }
+
+   /**
+    * A new {@link DisplayList} with the operations whose bounding box intersects the area
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @return
+    */
+   public DisplayList cull(int x, int y, int w, int h) {
+      DisplayList dl = new DisplayList(drc);
+      dl.ops = new int[Math.max(opsLen, DL_OP_SIZE)];
+      for (int i = 0; i < opsLen; i += DL_OP_SIZE) {
+         if (isIntersecting(i, x, y, w, h)) {
+            System.arraycopy(ops, i, dl.ops, dl.opsLen, DL_OP_SIZE);
+            dl.opsLen += DL_OP_SIZE;
+         }
+      }
+      dl.refs = new Object[Math.max(refCount, 1)];
+      System.arraycopy(refs, 0, dl.refs, 0, refCount);
+      dl.refCount = refCount;
+      dl.states = new int[Math.max(stateCount, 1) * DL_STATE_SIZE];
+      System.arraycopy(states, 0, dl.states, 0, stateCount * DL_STATE_SIZE);
+      dl.stateFonts = new IMFont[Math.max(stateCount, 1)];
+      System.arraycopy(stateFonts, 0, dl.stateFonts, 0, stateCount);
+      dl.stateCount = stateCount;
+      return dl;
+   }
+
+   private void draw(GraphicsX g, int i, int dx, int dy) {
+      int a = i + DL_OFFSET_06_ARGS;
+      switch (ops[i + DL_OFFSET_00_CODE]) {
+         case DL_OP_01_ARC:
+            g.drawArc(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3], ops[a + 4], ops[a + 5]);
+            break;
+         case DL_OP_02_FILL_ARC:
+            g.fillArc(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3], ops[a + 4], ops[a + 5]);
+            break;
+         case DL_OP_03_LINE:
+            g.drawLine(ops[a] + dx, ops[a + 1] + dy, ops[a + 2] + dx, ops[a + 3] + dy);
+            break;
+         case DL_OP_04_RECT:
+            g.drawRect(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3]);
+            break;
+         case DL_OP_05_FILL_RECT:
+            g.fillRect(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3]);
+            break;
+         case DL_OP_06_ROUND_RECT:
+            g.drawRoundRect(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3], ops[a + 4], ops[a + 5]);
+            break;
+         case DL_OP_07_FILL_ROUND_RECT:
+            g.fillRoundRect(ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3], ops[a + 4], ops[a + 5]);
+            break;
+         case DL_OP_08_TRIANGLE:
+            g.drawTriangle(ops[a] + dx, ops[a + 1] + dy, ops[a + 2] + dx, ops[a + 3] + dy, ops[a + 4] + dx, ops[a + 5] + dy);
+            break;
+         case DL_OP_09_FILL_TRIANGLE:
+            g.fillTriangle(ops[a] + dx, ops[a + 1] + dy, ops[a + 2] + dx, ops[a + 3] + dy, ops[a + 4] + dx, ops[a + 5] + dy);
+            break;
+         case DL_OP_10_STRING:
+            g.drawString((String) refs[ops[i + DL_OFFSET_14_REF]], ops[a] + dx, ops[a + 1] + dy, ops[a + 2]);
+            break;
+         case DL_OP_11_SUBSTRING:
+            g.drawSubstring((String) refs[ops[i + DL_OFFSET_14_REF]], ops[a], ops[a + 1], ops[a + 2] + dx, ops[a + 3] + dy, ops[a + 4]);
+            break;
+         case DL_OP_12_CHARS:
+            char[] chars = (char[]) refs[ops[i + DL_OFFSET_14_REF]];
+            g.drawChars(chars, 0, chars.length, ops[a] + dx, ops[a + 1] + dy, ops[a + 2]);
+            break;
+         case DL_OP_13_CHAR:
+            g.drawChar((char) ops[a], ops[a + 1] + dx, ops[a + 2] + dy, ops[a + 3]);
+            break;
+         case DL_OP_14_REGION:
+            IImage img = (IImage) refs[ops[i + DL_OFFSET_14_REF]];
+            g.drawRegion(img, ops[a], ops[a + 1], ops[a + 2], ops[a + 3], ops[a + 4], ops[a + 5] + dx, ops[a + 6] + dy, ops[a + 7]);
+            break;
+         case DL_OP_15_RGB:
+            int[] rgb = (int[]) refs[ops[i + DL_OFFSET_14_REF]];
+            g.drawRGB(rgb, 0, ops[a + 2], ops[a] + dx, ops[a + 1] + dy, ops[a + 2], ops[a + 3], ops[a + 4] != 0);
+            break;
+         default:
+            throw new IllegalArgumentException("op=" + ops[i + DL_OFFSET_00_CODE]);
+      }
+   }
+
+   /**
+    * Number of operations
+    * @return
+    */
+   public int getSize() {
+      return opsLen / DL_OP_SIZE;
+   }
+
+   /**
+    * Number of distinct states
+    * @return
+    */
+   public int getStateCount() {
+      return stateCount;
+   }
+
+   /**
+    * Number of state changes during a full replay
+    * @return
+    */
+   public int getStateRuns() {
+      int runs = 0;
+      int prev = -1;
+      for (int i = 0; i < opsLen; i += DL_OP_SIZE) {
+         int s = ops[i + DL_OFFSET_01_STATE];
+         if (s != prev) {
+            runs++;
+            prev = s;
+         }
+      }
+      return runs;
+   }
+
+   /**
+    * Index of the state equal to the current state. Added when new.
+    * @return
+    */
+   private int internState() {
+      for (int s = 0; s < stateCount; s++) {
+         int k = s * DL_STATE_SIZE;
+         if (states[k + DL_STATE_0_COLOR] == color && states[k + DL_STATE_1_ALPHA] == alpha && states[k + DL_STATE_2_STROKE] == stroke && stateFonts[s] == font && states[k + DL_STATE_3_CLIP_X] == clipX && states[k + DL_STATE_4_CLIP_Y] == clipY && states[k + DL_STATE_5_CLIP_W] == clipW && states[k + DL_STATE_6_CLIP_H] == clipH) {
+            return s;
+         }
+      }
+      if (stateCount == stateFonts.length) {
+         int[] newStates = new int[states.length * 2];
+         System.arraycopy(states, 0, newStates, 0, states.length);
+         states = newStates;
+         IMFont[] newFonts = new IMFont[stateFonts.length * 2];
+         System.arraycopy(stateFonts, 0, newFonts, 0, stateFonts.length);
+         stateFonts = newFonts;
+      }
+      int k = stateCount * DL_STATE_SIZE;
+      states[k + DL_STATE_0_COLOR] = color;
+      states[k + DL_STATE_1_ALPHA] = alpha;
+      states[k + DL_STATE_2_STROKE] = stroke;
+      states[k + DL_STATE_3_CLIP_X] = clipX;
+      states[k + DL_STATE_4_CLIP_Y] = clipY;
+      states[k + DL_STATE_5_CLIP_W] = clipW;
+      states[k + DL_STATE_6_CLIP_H] = clipH;
+      stateFonts[stateCount] = font;
+      return stateCount++;
+   }
+
+   private boolean isIntersecting(int i, int x, int y, int w, int h) {
+      int bx = ops[i + DL_OFFSET_02_BX];
+      int by = ops[i + DL_OFFSET_03_BY];
+      return bx < x + w && x < bx + ops[i + DL_OFFSET_04_BW] && by < y + h && y < by + ops[i + DL_OFFSET_05_BH];
+   }
+
+   private boolean isOverlapping(int i, int j) {
+      return isIntersecting(i, ops[j + DL_OFFSET_02_BX], ops[j + DL_OFFSET_03_BY], ops[j + DL_OFFSET_04_BW], ops[j + DL_OFFSET_05_BH]);
+   }
+
+   /**
+    * Groups operations of the same state to reduce the state changes of a replay.
+    * <br>
+    * <br>
+    * An operation moves back next to the last previous operation of its state when it does not overlap
+    * any of the operations in between. Pixels drawn are the same as before.
+    */
+   public void optimize() {
+      int[] tmp = new int[DL_OP_SIZE];
+      for (int i = DL_OP_SIZE; i < opsLen; i += DL_OP_SIZE) {
+         int s = ops[i + DL_OFFSET_01_STATE];
+         for (int k = i - DL_OP_SIZE; k >= 0; k -= DL_OP_SIZE) {
+            if (ops[k + DL_OFFSET_01_STATE] == s) {
+               int target = k + DL_OP_SIZE;
+               if (target < i) {
+                  System.arraycopy(ops, i, tmp, 0, DL_OP_SIZE);
+                  System.arraycopy(ops, target, ops, target + DL_OP_SIZE, i - target);
+                  System.arraycopy(tmp, 0, ops, target, DL_OP_SIZE);
+               }
+               break;
+            }
+            if (isOverlapping(k, i)) {
+               break;
+            }
+         }
+      }
+   }
+
+   void recordChar(char c, int x, int y, int anchor) {
+      int i = addOp(DL_OP_13_CHAR, clipX, clipY, clipW, clipH);
+      if (i >= 0) {
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = c;
+         ops[a + 1] = x;
+         ops[a + 2] = y;
+         ops[a + 3] = anchor;
+      }
+   }
+
+   void recordChars(char[] data, int offset, int length, int x, int y, int anchor) {
+      int i = addOp(DL_OP_12_CHARS, clipX, clipY, clipW, clipH);
+      if (i >= 0) {
+         char[] chars = new char[length];
+         System.arraycopy(data, offset, chars, 0, length);
+         ops[i + DL_OFFSET_14_REF] = addRef(chars);
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x;
+         ops[a + 1] = y;
+         ops[a + 2] = anchor;
+      }
+   }
+
+   /**
+    * Sets the state of the recording {@link GraphicsX} when it starts recording
+    * @param color
+    * @param alpha
+    * @param stroke -1 when unknown
+    * @param font null when unknown
+    * @param clipX
+    * @param clipY
+    * @param clipW
+    * @param clipH
+    */
+   void recordInit(int color, int alpha, int stroke, IMFont font, int clipX, int clipY, int clipW, int clipH) {
+      this.color = color;
+      this.alpha = alpha;
+      this.stroke = stroke;
+      this.font = font;
+      this.clipX = clipX;
+      this.clipY = clipY;
+      this.clipW = clipW;
+      this.clipH = clipH;
+      isStateDirty = true;
+   }
+
+   void recordLine(int x1, int y1, int x2, int y2) {
+      int bx = Math.min(x1, x2);
+      int by = Math.min(y1, y2);
+      int i = addOp(DL_OP_03_LINE, bx, by, Math.max(x1, x2) - bx + 1, Math.max(y1, y2) - by + 1);
+      if (i >= 0) {
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x1;
+         ops[a + 1] = y1;
+         ops[a + 2] = x2;
+         ops[a + 3] = y2;
+      }
+   }
+
+   /**
+    * Regions of mutable images are copied into a new image, the content of a mutable image may change before the replay
+    */
+   void recordRegion(IImage src, int x_src, int y_src, int width, int height, int transform, int x, int y, int anchor) {
+      int i = -1;
+      if (anchor == GraphicsX.ANCHOR && transform == IImage.TRANSFORM_0_NONE) {
+         i = addOp(DL_OP_14_REGION, x, y, width, height);
+      } else {
+         //anchor and transform are resolved by the IGraphics
+         i = addOp(DL_OP_14_REGION, clipX, clipY, clipW, clipH);
+      }
+      if (i >= 0) {
+         if (src.isMutable()) {
+            int[] data = drc.getCache().getImageData(src, x_src, y_src, width, height);
+            src = drc.getImageFactory().createRGBImage(data, width, height, true);
+            x_src = 0;
+            y_src = 0;
+         }
+         ops[i + DL_OFFSET_14_REF] = addRef(src);
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x_src;
+         ops[a + 1] = y_src;
+         ops[a + 2] = width;
+         ops[a + 3] = height;
+         ops[a + 4] = transform;
+         ops[a + 5] = x;
+         ops[a + 6] = y;
+         ops[a + 7] = anchor;
+      }
+   }
+
+   /**
+    * The pixels are copied
+    */
+   void recordRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha) {
+      int i = addOp(DL_OP_15_RGB, x, y, width, height);
+      if (i >= 0) {
+         int[] rgb = new int[width * height];
+         for (int row = 0; row < height; row++) {
+            System.arraycopy(rgbData, offset + row * scanlength, rgb, row * width, width);
+         }
+         ops[i + DL_OFFSET_14_REF] = addRef(rgb);
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x;
+         ops[a + 1] = y;
+         ops[a + 2] = width;
+         ops[a + 3] = height;
+         ops[a + 4] = processAlpha ? 1 : 0;
+      }
+   }
+
+   /**
+    * Arcs and rectangles.
+    * @param code {@link ITechDisplayList#DL_OP_01_ARC} to {@link ITechDisplayList#DL_OP_07_FILL_ROUND_RECT}
+    * @param x
+    * @param y
+    * @param width
+    * @param height
+    * @param a4 start angle or arc width
+    * @param a5 arc angle or arc height
+    */
+   void recordShape(int code, int x, int y, int width, int height, int a4, int a5) {
+      int bw = width;
+      int bh = height;
+      if (code == DL_OP_01_ARC || code == DL_OP_04_RECT || code == DL_OP_06_ROUND_RECT) {
+         //outlines cover one more pixel
+         bw++;
+         bh++;
+      }
+      int i = addOp(code, x, y, bw, bh);
+      if (i >= 0) {
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x;
+         ops[a + 1] = y;
+         ops[a + 2] = width;
+         ops[a + 3] = height;
+         ops[a + 4] = a4;
+         ops[a + 5] = a5;
+      }
+   }
+
+   /**
+    * The bounding box of strings is the clip
+    */
+   void recordString(String str, int x, int y, int anchor) {
+      int i = addOp(DL_OP_10_STRING, clipX, clipY, clipW, clipH);
+      if (i >= 0) {
+         ops[i + DL_OFFSET_14_REF] = addRef(str);
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x;
+         ops[a + 1] = y;
+         ops[a + 2] = anchor;
+      }
+   }
+
+   void recordSubstring(String str, int offset, int len, int x, int y, int anchor) {
+      int i = addOp(DL_OP_11_SUBSTRING, clipX, clipY, clipW, clipH);
+      if (i >= 0) {
+         ops[i + DL_OFFSET_14_REF] = addRef(str);
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = offset;
+         ops[a + 1] = len;
+         ops[a + 2] = x;
+         ops[a + 3] = y;
+         ops[a + 4] = anchor;
+      }
+   }
+
+   void recordTriangle(int code, int x1, int y1, int x2, int y2, int x3, int y3) {
+      int bx = Math.min(x1, Math.min(x2, x3));
+      int by = Math.min(y1, Math.min(y2, y3));
+      int bw = Math.max(x1, Math.max(x2, x3)) - bx + 1;
+      int bh = Math.max(y1, Math.max(y2, y3)) - by + 1;
+      int i = addOp(code, bx, by, bw, bh);
+      if (i >= 0) {
+         int a = i + DL_OFFSET_06_ARGS;
+         ops[a] = x1;
+         ops[a + 1] = y1;
+         ops[a + 2] = x2;
+         ops[a + 3] = y2;
+         ops[a + 4] = x3;
+         ops[a + 5] = y3;
+      }
+   }
+
+   /**
+    * Draws the operations at dx,dy in the current coordinate system of g.
+    * <br>
+    * <br>
+    * Operations outside the clip of g are skipped. Recorded clips are intersected with the clip of g,
+    * which is the same when the replay is done. So are the color, alpha, font and stroke of g.
+    * @param g
+    * @param dx
+    * @param dy
+    */
+   public void replay(GraphicsX g, int dx, int dy) {
+      //state of g set back after the replay. font and stroke are those of the host graphics
+      int oldColor = g.getActiveColor();
+      int oldAlpha = g.getAlpha();
+      IMFont oldFont = null;
+      int oldStroke = -1;
+      if (g.g != null) {
+         oldFont = g.getFont();
+         oldStroke = g.getStrokeStyle();
+      }
+      //clip of g in the coordinates of the list
+      int cx = g.getClipX() - g.getTranslateX() - dx;
+      int cy = g.getClipY() - g.getTranslateY() - dy;
+      int cw = g.getClipWidth();
+      int ch = g.getClipHeight();
+      int prev = -1;
+      boolean isClipped = false;
+      for (int i = 0; i < opsLen; i += DL_OP_SIZE) {
+         if (!isIntersecting(i, cx, cy, cw, ch)) {
+            continue;
+         }
+         int s = ops[i + DL_OFFSET_01_STATE];
+         if (s != prev) {
+            int k = s * DL_STATE_SIZE;
+            int p = prev * DL_STATE_SIZE;
+            boolean isFirst = prev == -1;
+            int sAlpha = states[k + DL_STATE_1_ALPHA];
+            boolean isAlphaChange = isFirst || states[p + DL_STATE_1_ALPHA] != sAlpha;
+            if (isAlphaChange) {
+               g.setAlpha(sAlpha);
+            }
+            if (isAlphaChange || states[p + DL_STATE_0_COLOR] != states[k + DL_STATE_0_COLOR]) {
+               g.setColor(states[k + DL_STATE_0_COLOR]);
+            }
+            int sStroke = states[k + DL_STATE_2_STROKE];
+            if (sStroke != -1 && (isFirst || states[p + DL_STATE_2_STROKE] != sStroke)) {
+               g.setStrokeStyle(sStroke);
+            }
+            if (stateFonts[s] != null && (isFirst || stateFonts[prev] != stateFonts[s])) {
+               g.setFont(stateFonts[s]);
+            }
+            if (isFirst || states[p + DL_STATE_3_CLIP_X] != states[k + DL_STATE_3_CLIP_X] || states[p + DL_STATE_4_CLIP_Y] != states[k + DL_STATE_4_CLIP_Y] || states[p + DL_STATE_5_CLIP_W] != states[k + DL_STATE_5_CLIP_W]
+                  || states[p + DL_STATE_6_CLIP_H] != states[k + DL_STATE_6_CLIP_H]) {
+               if (isClipped) {
+                  g.clipReset();
+               }
+               g.clipSet(states[k + DL_STATE_3_CLIP_X] + dx, states[k + DL_STATE_4_CLIP_Y] + dy, states[k + DL_STATE_5_CLIP_W], states[k + DL_STATE_6_CLIP_H]);
+               isClipped = true;
+            }
+            prev = s;
+         }
+         draw(g, i, dx, dy);
+      }
+      if (isClipped) {
+         g.clipReset();
+      }
+      if (prev != -1) {
+         g.setAlpha(oldAlpha);
+         g.setColor(oldColor);
+         if (oldFont != null) {
+            g.setFont(oldFont);
+         }
+         if (oldStroke != -1) {
+            g.setStrokeStyle(oldStroke);
+         }
+      }
+   }
+
+   void setAlpha(int alpha) {
+      if (this.alpha != alpha) {
+         this.alpha = alpha;
+         isStateDirty = true;
+      }
+   }
+
+   void setClip(int x, int y, int w, int h) {
+      if (clipX != x || clipY != y || clipW != w || clipH != h) {
+         clipX = x;
+         clipY = y;
+         clipW = w;
+         clipH = h;
+         isStateDirty = true;
+      }
+   }
+
+   void setColor(int color) {
+      if (this.color != color) {
+         this.color = color;
+         isStateDirty = true;
+      }
+   }
+
+   void setFont(IMFont font) {
+      if (this.font != font) {
+         this.font = font;
+         isStateDirty = true;
+      }
+   }
+
+   void setStroke(int stroke) {
+      if (this.stroke != stroke) {
+         this.stroke = stroke;
+         isStateDirty = true;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DisplayList.class, 560);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("ops", getSize());
+      dc.appendVarWithSpace("states", stateCount);
+      dc.appendVarWithSpace("runs", getStateRuns());
+      dc.appendVarWithSpace("refs", refCount);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DisplayList.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -28,11 +28,14 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwMetrics;
 import pasa.cbentley.framework.drawx.src4.ctx.IToStringFlagsDrw;
 import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
 import pasa.cbentley.framework.drawx.src4.ctx.ToStringStaticDrawx;
 import pasa.cbentley.framework.drawx.src4.factories.FigureOperator;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOAnchor;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwLog;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwMetrics;
 import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
 import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
 import pasa.cbentley.framework.drawx.src4.tech.ITechStyle;
@@ -181,6 +184,32 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     */
    private int       clipY             = 0;
 
+   /**
+    * Damage region of the {@link GraphicsX#imageLayer}. Left coordinate, inclusive.
+    * <br>
+    * <br>
+    * Union of the bounds of all primitives drawn on the layer since the last {@link GraphicsX#clearLayer()}.
+    * Outside this region, the layer is filled with {@link GraphicsX#excludeColor}.
+    * <br>
+    * Region is empty when {@link GraphicsX#damageX2} <= {@link GraphicsX#damageX1}
+    */
+   private int       damageX1;
+
+   /**
+    * Right coordinate of the damage region, exclusive.
+    */
+   private int       damageX2;
+
+   /**
+    * Top coordinate of the damage region, inclusive.
+    */
+   private int       damageY1;
+
+   /**
+    * Bottom coordinate of the damage region, exclusive.
+    */
+   private int       damageY2;
+
    private int       excludeColor;
 
    /**
@@ -253,6 +282,13 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
 
    private int       mycolor;
 
+   /**
+    * Replaces the colors of {@link GraphicsX#setColor(int)} when {@link GraphicsX#isColorOverride} is true
+    */
+   private int       colorOverride;
+
+   private boolean   isColorOverride;
+
    /**
     * Counts the number of pixels that were merged
     */
@@ -286,6 +322,11 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
 
    private Vector    postpones;
 
+   /**
+    * Not null between {@link GraphicsX#recordStart(DisplayList)} and {@link GraphicsX#recordEnd()}
+    */
+   private DisplayList recorder;
+
    /**
     * Counts all the primitive calls during a paint cycle
     */
@@ -301,6 +342,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     */
    int               rgbCount          = 0;
 
+   /**
+    * Lazily created. See {@link GraphicsX#getRasterizer()}
+    */
+   private RgbRasterizer rasterizer;
+
+   /**
+    * Lazily created. See {@link GraphicsX#getTriangleBatch()}
+    */
+   private TriangleBatch triangleBatch;
+
    private BlendOp   saved;
 
    private int       switches;
@@ -411,8 +462,11 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param h
     */
    public void changeDimension(int w, int h) {
-      //#debug
-      toDLog().pDraw("w=" + w + " h=" + h, this, GraphicsX.class, "changeDimension", ITechLvl.LVL_05_FINE, true);
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, "w=" + w + " h=" + h, this, GraphicsX.class, "changeDimension", ITechLvl.LVL_05_FINE, true);
+      }
+      //#enddebug
       //in all cases do a merge
       merge();
       switch (paintMode) {
@@ -432,6 +486,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       if (imageLayer.getWidth() != w || imageLayer.getHeight() != h) {
          imageLayer = drc.getImageFactory().createImage(w, h);
          g = imageLayer.getGraphics();
+         damageReset();
       }
    }
 
@@ -460,14 +515,38 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
    }
 
    /**
+    * Clears the damage region of the layer with the pseudo transparent color.
+    * <br>
+    * <br>
+    * Pixels outside the damage region already have the pseudo transparent color.
+    * <br>
     * Since our {@link IGraphics} is never translated
     */
    private void clearLayer() {
+      if (damageX2 > damageX1 && damageY2 > damageY1) {
+         int oldColor = g.getColor();
+         g.setColor(excludeColor);
+         //clear only what was drawn since the last clear
+         g.fillRect(damageX1, damageY1, damageX2 - damageX1, damageY2 - damageY1);
+         g.setColor(oldColor);
+      }
+      damageReset();
+      pOpaqueLayerCount = 0;
+   }
+
+   /**
+    * Clears the whole layer with the pseudo transparent color.
+    * <br>
+    * <br>
+    * Used when the pseudo transparent color was swapped and the whole layer must use the new one.
+    */
+   private void clearLayerFull() {
       int oldColor = g.getColor();
       g.setColor(excludeColor);
       //clear layer
       g.fillRect(0, 0, imageLayer.getWidth(), imageLayer.getHeight());
       g.setColor(oldColor);
+      damageReset();
       pOpaqueLayerCount = 0;
    }
 
@@ -475,7 +554,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * Using current clip, fill draw area with background color
     */
    public void clearWithBgColor() {
-      clearLayer();
+      clearLayerFull();
    }
 
    /**
@@ -587,10 +666,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       clipIndex += CLIP_INDEX_INCREMENT;
       if (clipIndex >= clipList.length) {
          clipList = drc.getMem().increaseCapacity(clipList, CLIP_INDEX_INCREMENT);
-         //#debug
-         String msg = "extending clipList to " + clipList.length + " clip area [" + x + "," + y + " " + width + "," + height + "]";
-         //#debug
-         toDLog().pDraw(msg, this, GraphicsX.class, "clipSet", ITechLvl.LVL_05_FINE, true);
+         //#mdebug
+         if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+            String msg = "extending clipList to " + clipList.length + " clip area [" + x + "," + y + " " + width + "," + height + "]";
+            drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, msg, this, GraphicsX.class, "clipSet", ITechLvl.LVL_05_FINE, true);
+         }
+         //#enddebug
       }
       //take into account the translation
       x += translateX;
@@ -637,6 +718,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       if (paintMode != MODE_3_RGB) {
          g = imageLayer.getGraphics();
       }
+      damageReset();
       pOpaqueLayerCount = 0;
       primitiveTally = 0;
    }
@@ -677,6 +759,102 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       return img;
    }
 
+   /**
+    * Adds the rectangle to the damage region of the {@link GraphicsX#imageLayer}.
+    * <br>
+    * <br>
+    * The rectangle is first clipped with the current clip. Coordinates have already been translated.
+    * <br>
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    */
+   private void damageAdd(int x, int y, int w, int h) {
+      int x1 = x;
+      int y1 = y;
+      int x2 = x + w;
+      int y2 = y + h;
+      if (x1 < clipX) {
+         x1 = clipX;
+      }
+      if (y1 < clipY) {
+         y1 = clipY;
+      }
+      if (x2 > clipX + clipW) {
+         x2 = clipX + clipW;
+      }
+      if (y2 > clipY + clipH) {
+         y2 = clipY + clipH;
+      }
+      if (x2 <= x1 || y2 <= y1) {
+         return;
+      }
+      //our IGraphics is never translated, so those are layer coordinates
+      if (damageX2 <= damageX1 || damageY2 <= damageY1) {
+         damageX1 = x1;
+         damageY1 = y1;
+         damageX2 = x2;
+         damageY2 = y2;
+      } else {
+         if (x1 < damageX1) {
+            damageX1 = x1;
+         }
+         if (y1 < damageY1) {
+            damageY1 = y1;
+         }
+         if (x2 > damageX2) {
+            damageX2 = x2;
+         }
+         if (y2 > damageY2) {
+            damageY2 = y2;
+         }
+      }
+   }
+
+   /**
+    * Adds the whole current clip to the damage region.
+    * <br>
+    * Used by primitives whose bounds are not cheap to compute, like text.
+    */
+   private void damageAddClip() {
+      damageAdd(clipX, clipY, clipW, clipH);
+   }
+
+   /**
+    * Adds the bounding box of the line to the damage region.
+    * @param x1
+    * @param y1
+    * @param x2
+    * @param y2
+    */
+   private void damageAddLine(int x1, int y1, int x2, int y2) {
+      int minX = Math.min(x1, x2);
+      int minY = Math.min(y1, y2);
+      damageAdd(minX, minY, Math.max(x1, x2) - minX + 1, Math.max(y1, y2) - minY + 1);
+   }
+
+   /**
+    * Adds the bounding box of the triangle to the damage region.
+    */
+   private void damageAddTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+      int minX = Math.min(x1, Math.min(x2, x3));
+      int minY = Math.min(y1, Math.min(y2, y3));
+      int maxX = Math.max(x1, Math.max(x2, x3));
+      int maxY = Math.max(y1, Math.max(y2, y3));
+      damageAdd(minX, minY, maxX - minX + 1, maxY - minY + 1);
+   }
+
+   /**
+    * Empties the damage region.
+    */
+   private void damageReset() {
+      damageX1 = 0;
+      damageY1 = 0;
+      damageX2 = 0;
+      damageY2 = 0;
+   }
+
    /**
     * Draws the outline of a circular or elliptical arc covering the specified rectangle, using the current color and stroke style.
     * @param x
@@ -687,12 +865,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param arcAngle
     */
    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_01_ARC, x + translateX, y + translateY, width, height, startAngle, arcAngle);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawArc(x, y, width, height, startAngle, arcAngle);
+      damageAdd(x, y, width + 1, height + 1);
       postPrimitiveWork();
    }
 
@@ -704,12 +886,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param anchor
     */
    public void drawChar(char character, int x, int y, int anchor) {
+      if (recorder != null) {
+         recorder.recordChar(character, x + translateX, y + translateY, anchor);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawChar(character, x, y, anchor);
+      damageAddClip();
       postPrimitiveWork();
    }
 
@@ -723,12 +909,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param anchor
     */
    public void drawChars(char[] data, int offset, int length, int x, int y, int anchor) {
+      if (recorder != null) {
+         recorder.recordChars(data, offset, length, x + translateX, y + translateY, anchor);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawChars(data, offset, length, x, y, anchor);
+      damageAddClip();
       postPrimitiveWork();
    }
 
@@ -819,14 +1009,31 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param y2
     */
    public void drawLine(int x1, int y1, int x2, int y2) {
-      if (!prePrimitiveWork()) {
+      if (recorder != null) {
+         recorder.recordLine(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY);
+      }
+      if (paintMode == MODE_4_NULL || hasSwitchOff(SWITCHOFF_5_PAINT)) {
          return;
       }
       x1 += translateX;
       y1 += translateY;
       x2 += translateX;
       y2 += translateY;
+      RgbRasterizer rast = null;
+      if (g == null || g.getStrokeStyle() == STROKE_0_FILL) {
+         rast = getRasterizer();
+      }
+      if (rast != null) {
+         //the rasterizer writes the rgb array. the layer is not damaged
+         rast.drawLine(x1, y1, x2, y2);
+         primitiveTally++;
+         return;
+      }
+      if (!prePrimitiveWork()) {
+         return;
+      }
       g.drawLine(x1, y1, x2, y2);
+      damageAddLine(x1, y1, x2, y2);
       postPrimitiveWork();
    }
 
@@ -864,12 +1071,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param height
     */
    public void drawRect(int x, int y, int width, int height) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_04_RECT, x + translateX, y + translateY, width, height, 0, 0);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawRect(x, y, width, height);
+      damageAdd(x, y, width + 1, height + 1);
       postPrimitiveWork();
    }
 
@@ -908,6 +1119,9 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       if (transform < 0 || transform > IImage.TRANSFORM_MAX) {
          throw new IllegalArgumentException("Transform not valid " + transform);
       }
+      if (recorder != null) {
+         recorder.recordRegion(src, x_src, y_src, width, height, transform, x + translateX, y + translateY, anchor);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
@@ -916,9 +1130,11 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       imageDraws++;
       if (paintMode == MODE_2_RGB_IMAGE) {
          //complex stuff
-         //#debug
-         //#debug
-         toDLog().pDraw("x y=" + x + "," + y, this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
+         //#mdebug
+         if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_4_DRAW_REGION)) {
+            drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_4_DRAW_REGION, "x y=" + x + "," + y, this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
+         }
+         //#enddebug
          //pixel blending. we don't know the alpha
          int refX = x + x_src;
          int refY = y + y_src;
@@ -937,19 +1153,22 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
          //3rd if an intersection exists, get that portion into a pixel int[] array and draw/blends it with data.
          if (sec != null) {
             //fetch intersection
-            int[] data = drc.getCache().getImageData(src, sec[0], sec[1], sec[2], sec[3]);
+            int[] scratch = drc.getCache().getImageDataScratch(src, sec[0], sec[1], sec[2], sec[3]);
+            int[] data = scratch;
             //draw intersected image data into our root pixel data.
             //check if there are transparent pixels
             //Image img = cache.createImageImmutable(data, sec[2], sec[3], true);
             //half transparent pixels not shown correctly
             //g.drawRegion(img, x_src, y_src, width, height, transform, x, y, anchor);
 
-            //#debug
-            String msg = "Trans=" + ToStringStaticUc.toStringTrans(transform) + " Src xy=[" + x_src + "," + y_src + ":" + width + "-" + height + "] at position " + x + ";" + y;
-            //#debug
-            toDLog().pDraw(msg, this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
-            //#debug
-            toDLog().pDraw("Trans=" + ToStringStaticUc.toStringTrans(transform) + " w=" + sec[2] + " h=" + sec[3] + " Clipped To " + getIntUtils().debugString(sec), this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
+            //#mdebug
+            if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_4_DRAW_REGION)) {
+               String msg = "Trans=" + ToStringStaticUc.toStringTrans(transform) + " Src xy=[" + x_src + "," + y_src + ":" + width + "-" + height + "] at position " + x + ";" + y;
+               drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_4_DRAW_REGION, msg, this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
+               msg = "Trans=" + ToStringStaticUc.toStringTrans(transform) + " w=" + sec[2] + " h=" + sec[3] + " Clipped To " + getIntUtils().debugString(sec);
+               drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_4_DRAW_REGION, msg, this, GraphicsX.class, "drawRegion", ITechLvl.LVL_05_FINE, true);
+            }
+            //#enddebug
 
             data = TransformUtils.transform(data, sec[2], sec[3], transform);
             BlendOp op = blendOpImages;
@@ -957,10 +1176,13 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
             sec = getGeo2dUtils().getIntersection(clipX, clipY, clipW, clipH, refX, refY, width, height);
             //toLog().pDraw("drawRegion data=" + data.length + " should be = " + (sec[2] * sec[3]) + " Drawing at " + MUtils.debugString(sec), GraphicsX.class);
             imageRgbData.blend(op, sec[0], sec[1], data, 0, sec[2], 0, 0, sec[2], sec[3]);
+            drc.getCache().returnScratch(scratch);
             //NOTE: translation of x_dest and y_dest will occur inside drawRGB method
          }
       } else {
          g.drawRegion(src, x_src, y_src, width, height, transform, x, y, anchor);
+         //anchor and transform are resolved by the IGraphics
+         damageAddClip();
       }
       postPrimitiveWork();
    }
@@ -984,6 +1206,46 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * no transparency in the rgbData
     */
    public void drawRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha) {
+      drawRGB(rgbData, offset, scanlength, x, y, width, height, processAlpha, false);
+   }
+
+   /**
+    * Renders straight or premultiplied RGBa values.
+    * <br>
+    * <br>
+    * Premultiplied pixels are blended as they are into a premultiplied {@link RgbImage}, see {@link RgbImage#isPremultiplied()}.
+    * Otherwise, {@link IGraphics} and the recorder of {@link GraphicsX#recordStart(DisplayList)} taking straight pixels,
+    * a straight copy of the region is drawn.
+    * @param rgbData
+    * @param offset
+    * @param scanlength
+    * @param x
+    * @param y
+    * @param width
+    * @param height
+    * @param processAlpha
+    * @param isPremultiplied true when rgbData pixels are premultiplied
+    */
+   public void drawRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha, boolean isPremultiplied) {
+      //the recorder, the host graphics and straight images take straight pixels
+      int[] straight = null;
+      if (isPremultiplied) {
+         boolean isStraightDest = paintMode != MODE_4_NULL && (imageRgbData == null || paintMode == MODE_0_SCREEN || paintMode == MODE_1_IMAGE || !imageRgbData.isPremultiplied());
+         if (recorder != null || isStraightDest) {
+            straight = drc.getCache().borrowScratch(width * height);
+            for (int i = 0; i < height; i++) {
+               System.arraycopy(rgbData, offset + i * scanlength, straight, i * width, width);
+            }
+            BlendKernel.unpremultiply(straight, 0, width, width, height);
+            rgbData = straight;
+            offset = 0;
+            scanlength = width;
+            isPremultiplied = false;
+         }
+      }
+      if (recorder != null) {
+         recorder.recordRGB(rgbData, offset, scanlength, x + translateX, y + translateY, width, height, processAlpha);
+      }
       rgbCount++;
       switch (paintMode) {
          case MODE_0_SCREEN:
@@ -991,11 +1253,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
             x += translateX;
             y += translateY;
             g.drawRGB(rgbData, offset, scanlength, x, y, width, height, processAlpha);
+            damageAdd(x, y, width, height);
             pOpaqueLayerCount++;
             primitiveTally++;
             break;
          case MODE_4_NULL:
-            return;
+            break;
          default:
 
             //merge layer and do the alpha blending with the RGB
@@ -1010,10 +1273,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
             int[] sec = getGeo2dUtils().getIntersectionDest(clipX, clipY, clipW, clipH, x, y, width, height);
             if (sec != null) {
                //#mdebug
-               String msg1 = "intersection clip=" + clipX + "," + clipY + " : " + clipW + "," + clipH + " and " + " and [" + x + "," + y + " : " + width + "," + height + "]";
-               toDLog().pDraw(msg1, this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
-               String msg2 = "data=" + rgbData.length + " at x,y [" + x + "," + y + "] Drawing at " + getIntUtils().debugString(sec);
-               toDLog().pDraw(msg2, this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
+               if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_3_DRAW_RGB)) {
+                  String msg1 = "intersection clip=" + clipX + "," + clipY + " : " + clipW + "," + clipH + " and " + " and [" + x + "," + y + " : " + width + "," + height + "]";
+                  drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_3_DRAW_RGB, msg1, this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
+                  String msg2 = "data=" + rgbData.length + " at x,y [" + x + "," + y + "] Drawing at " + getIntUtils().debugString(sec);
+                  drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_3_DRAW_RGB, msg2, this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
+               }
                //#enddebug
                //update the rgbdata values based on the intersection. actually only the offset changes. the scan stays the same
                int newscan = scanlength;
@@ -1025,11 +1290,18 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
                }
                sec = getGeo2dUtils().getIntersection(clipX, clipY, clipW, clipH, x, y, width, height);
 
-               //#debug
-               toDLog().pDraw("newoffset=" + newoffset + " newscan=" + newscan + " Drawing at " + getIntUtils().debugString(sec), this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
-               imageRgbData.blend(op, sec[0], sec[1], rgbData, newoffset, scanlength, 0, 0, sec[2], sec[3]);
+               //#mdebug
+               if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_3_DRAW_RGB)) {
+                  String msg = "newoffset=" + newoffset + " newscan=" + newscan + " Drawing at " + getIntUtils().debugString(sec);
+                  drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_3_DRAW_RGB, msg, this, GraphicsX.class, "drawRGB", ITechLvl.LVL_05_FINE, true);
+               }
+               //#enddebug
+               imageRgbData.blend(op, sec[0], sec[1], rgbData, newoffset, scanlength, 0, 0, sec[2], sec[3], false, isPremultiplied);
             }
       }
+      if (straight != null) {
+         drc.getCache().returnScratch(straight);
+      }
    }
 
    //   /**
@@ -1111,6 +1383,10 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
             }
             break;
          case MODE_4_NULL:
+            if (recorder != null) {
+               //pixels reach the recorder through drawRGB or drawRegion. nothing is drawn in this mode
+               data.draw(this, x, y, anchor);
+            }
             return;
          default:
       }
@@ -1145,12 +1421,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param arcHeight
     */
    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_06_ROUND_RECT, x + translateX, y + translateY, width, height, arcWidth, arcHeight);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawRoundRect(x, y, width, height, arcWidth, arcHeight);
+      damageAdd(x, y, width + 1, height + 1);
       postPrimitiveWork();
    }
 
@@ -1166,12 +1446,16 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param anchor
     */
    public void drawString(String str, int x, int y, int anchor) {
+      if (recorder != null) {
+         recorder.recordString(str, x + translateX, y + translateY, anchor);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawString(str, x, y, anchor);
+      damageAddClip();
       postPrimitiveWork();
    }
 
@@ -1185,23 +1469,31 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param anchor
     */
    public void drawSubstring(String str, int offset, int len, int x, int y, int anchor) {
+      if (recorder != null) {
+         recorder.recordSubstring(str, offset, len, x + translateX, y + translateY, anchor);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.drawSubstring(str, offset, len, x, y, anchor);
+      damageAddClip();
       postPrimitiveWork();
 
    }
 
    public void drawTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+      if (recorder != null) {
+         recorder.recordTriangle(DisplayList.DL_OP_08_TRIANGLE, x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       g.drawLine(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY);
       g.drawLine(x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
       g.drawLine(x1 + translateX, y1 + translateY, x3 + translateX, y3 + translateY);
+      damageAddTriangle(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
       postPrimitiveWork();
 
    }
@@ -1216,8 +1508,11 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
          excludeColor = GraphicsX.PRIMITIVE_COLOR_BASE;
       }
 
-      //#debug
-      toDLog().pDraw(ToStringStaticDrawx.toStringColor(excludeColor), this, GraphicsX.class, "excludeColorSwap", ITechLvl.LVL_05_FINE, true);
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, ToStringStaticDrawx.toStringColor(excludeColor), this, GraphicsX.class, "excludeColorSwap", ITechLvl.LVL_05_FINE, true);
+      }
+      //#enddebug
    }
 
    /**
@@ -1250,12 +1545,24 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * Using the {@link #setColor(int)} method will switch automatically
     */
    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_02_FILL_ARC, x + translateX, y + translateY, width, height, startAngle, arcAngle);
+      }
+      RgbRasterizer rast = getRasterizer();
+      if (rast != null) {
+         x += translateX;
+         y += translateY;
+         rast.fillArc(x, y, width, height, startAngle, arcAngle);
+         primitiveTally++;
+         return;
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.fillArc(x, y, width, height, startAngle, arcAngle);
+      damageAdd(x, y, width, height);
       postPrimitiveWork();
    }
 
@@ -1267,12 +1574,24 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param height
     */
    public void fillRect(int x, int y, int width, int height) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_05_FILL_RECT, x + translateX, y + translateY, width, height, 0, 0);
+      }
+      RgbRasterizer rast = getRasterizer();
+      if (rast != null) {
+         x += translateX;
+         y += translateY;
+         rast.fillRect(x, y, width, height);
+         primitiveTally++;
+         return;
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.fillRect(x, y, width, height);
+      damageAdd(x, y, width, height);
       postPrimitiveWork();
    }
 
@@ -1286,12 +1605,24 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param arcHeight
     */
    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+      if (recorder != null) {
+         recorder.recordShape(DisplayList.DL_OP_07_FILL_ROUND_RECT, x + translateX, y + translateY, width, height, arcWidth, arcHeight);
+      }
+      RgbRasterizer rast = getRasterizer();
+      if (rast != null) {
+         x += translateX;
+         y += translateY;
+         rast.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
+         primitiveTally++;
+         return;
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       x += translateX;
       y += translateY;
       g.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
+      damageAdd(x, y, width, height);
       postPrimitiveWork();
    }
 
@@ -1305,13 +1636,72 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param y3
     */
    public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+      if (recorder != null) {
+         recorder.recordTriangle(DisplayList.DL_OP_09_FILL_TRIANGLE, x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
+      }
+      RgbRasterizer rast = getRasterizer();
+      if (rast != null) {
+         rast.fillTriangle(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
+         primitiveTally++;
+         return;
+      }
       if (!prePrimitiveWork()) {
          return;
       }
       g.fillTriangle(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
+      damageAddTriangle(x1 + translateX, y1 + translateY, x2 + translateX, y2 + translateY, x3 + translateX, y3 + translateY);
       postPrimitiveWork();
    }
 
+   /**
+    * Fills the triangles of the batch, in order, each with its color. The batch is cleared.
+    * <br>
+    * <br>
+    * When {@link RgbRasterizer} is used, the set up of the int[] target and the blending is done once for the whole batch.
+    * Triangles are written in the rgb array, the layer is not damaged.
+    * <br>
+    * Otherwise, it is the same as calling {@link GraphicsX#setColor(int)} and {@link GraphicsX#fillTriangle(int, int, int, int, int, int)}
+    * for each triangle.
+    * <br>
+    * The current color is the color of the last triangle.
+    * @param batch
+    */
+   public void fillTriangles(TriangleBatch batch) {
+      int num = batch.getSize();
+      if (num == 0) {
+         return;
+      }
+      int[] xy = batch.getVertices();
+      int[] colors = batch.getColors();
+      RgbRasterizer rast = null;
+      if (paintMode != MODE_4_NULL && !hasSwitchOff(SWITCHOFF_5_PAINT)) {
+         rast = getRasterizer();
+      }
+      //a recording records each triangle with its color
+      if (rast == null || recorder != null) {
+         for (int i = 0; i < num; i++) {
+            int k = i * 6;
+            setColor(colors[i]);
+            fillTriangle(xy[k], xy[k + 1], xy[k + 2], xy[k + 3], xy[k + 4], xy[k + 5]);
+         }
+         batch.clear();
+         return;
+      }
+      int a = alpha << 24;
+      for (int i = 0; i < num; i++) {
+         int rgb = isColorOverride ? colorOverride : colors[i];
+         if (g != null) {
+            rgb = g.getDisplayColor(rgb);
+         }
+         rast.setColor(a | (rgb & 0xFFFFFF));
+         int k = i * 6;
+         rast.fillTriangle(xy[k] + translateX, xy[k + 1] + translateY, xy[k + 2] + translateX, xy[k + 3] + translateY, xy[k + 4] + translateX, xy[k + 5] + translateY);
+      }
+      primitiveTally += num;
+      setColor(colors[num - 1]);
+      batch.clear();
+   }
+
    /**
     * Flush data from the top layer to the Rgb array
     * If rgb int array is null, nothing happens.
@@ -1320,6 +1710,14 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       merge();
    }
 
+   /**
+    * The color given to {@link GraphicsX#setColor(int)}, before its conversion to a display color.
+    * @return
+    */
+   public int getActiveColor() {
+      return mycolor;
+   }
+
    public int getAlpha() {
       return alpha;
    }
@@ -1332,6 +1730,62 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       return blendOpImages;
    }
 
+   /**
+    * Empty {@link TriangleBatch} owned by this {@link GraphicsX}, for {@link GraphicsX#fillTriangles(TriangleBatch)}.
+    * @return
+    */
+   public TriangleBatch getTriangleBatch() {
+      if (triangleBatch == null) {
+         triangleBatch = new TriangleBatch(drc, 64);
+      }
+      triangleBatch.clear();
+      return triangleBatch;
+   }
+
+   /**
+    * The {@link RgbRasterizer} set up for the next primitive, when primitives can be written directly into the int[] array.
+    * <br>
+    * <br>
+    * <li>{@link ITechGraphicsX#MODE_2_RGB_IMAGE} or {@link ITechGraphicsX#MODE_3_RGB} with a non null int[] array
+    * <li>{@link ITechGraphicsX#OPTION_2_PRIMITIVES_ON_LAYER} is not set
+    * <br>
+    * <br>
+    * Primitives pending on the layer are merged first so that drawing order is kept.
+    * <br>
+    * The color is the display color of {@link GraphicsX#setColor(int)} with the alpha of {@link GraphicsX#setAlpha(int)}.
+    * It is blended with {@link GraphicsX#getBlendOp()}.
+    * <br>
+    * The rasterizer writes straight pixels. A premultiplied {@link RgbImage} goes through the layer and {@link GraphicsX#merge()}.
+    * @return null when primitives must go through {@link IGraphics}
+    */
+   private RgbRasterizer getRasterizer() {
+      if (paintMode != MODE_2_RGB_IMAGE && paintMode != MODE_3_RGB) {
+         return null;
+      }
+      if (hasFlagOptions(OPTION_2_PRIMITIVES_ON_LAYER) || hasSwitchOff(SWITCHOFF_5_PAINT)) {
+         return null;
+      }
+      if (imageRgbData == null || imageRgbData.rgbData == null || imageRgbData.isNullImage() || imageRgbData.isPremultiplied()) {
+         return null;
+      }
+      if (pOpaqueLayerCount != 0) {
+         mergeAndClear();
+      }
+      if (rasterizer == null) {
+         rasterizer = new RgbRasterizer(drc);
+      }
+      int rgb = mycolor;
+      if (g != null) {
+         rgb = g.getDisplayColor(rgb);
+      }
+      rasterizer.setColor((alpha << 24) | (rgb & 0xFFFFFF), blendOpImages);
+      int scan = imageRgbData.getScanLength();
+      //pixel 0,0 of a region image is at m,n in the array
+      int offset = imageRgbData.getOffset() + imageRgbData.getM() + imageRgbData.getN() * scan;
+      rasterizer.setTarget(imageRgbData.rgbData, offset, scan, imageRgbData.getWidth(), imageRgbData.getHeight(), clipX, clipY, clipW, clipH);
+      return rasterizer;
+   }
+
    /**
     * Gets the blue component of the current color.
     * @return
@@ -1477,6 +1931,10 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @return
     */
    public int getDisplayColor(int color) {
+      if (g == null) {
+         //int[] array displays all colors
+         return color;
+      }
       return g.getDisplayColor(color);
    }
 
@@ -1529,6 +1987,30 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       return drc.getUC().getIU();
    }
 
+   /**
+    * Number of merges of the primitive layer. Never reset.
+    * @return
+    */
+   public int getMergeCount() {
+      return mergeCount;
+   }
+
+   /**
+    * Number of pixels blended by the merges. Never reset.
+    * @return
+    */
+   public long getNumPixelsMerged() {
+      return numPixelsMerged;
+   }
+
+   /**
+    * Number of pseudo color swaps between white and cyan. Never reset.
+    * @return
+    */
+   public int getPseudoSwapCount() {
+      return pseudoSwapCount;
+   }
+
    /**
     * The current paint mode
     * <li> {@link GraphicsX#MODE_0_SCREEN}
@@ -1541,6 +2023,15 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       return paintMode;
    }
 
+   /**
+    * True when fi methods fill, false when they draw the outline.
+    * @return
+    * @see GraphicsX#setFillMode(boolean)
+    */
+   public boolean isFillMode() {
+      return isFillMode;
+   }
+
    /**
     * Return the pixel value for reading purposes. <br>
     * <br>
@@ -1743,10 +2234,10 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       int[] sec = getGeo2dUtils().getIntersection(0, 0, imageRgbData.getWidth(), imageRgbData.getHeight(), x, y, w, h);
       //#mdebug
       if (sec == null) {
-         //#debug
-         String msg = "x=" + x + " y=" + y + " w=" + w + " h=" + h;
-         //#debug
-         toDLog().pDraw(msg, this, GraphicsX.class, "initializeClip", ITechLvl.LVL_05_FINE, true);
+         if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+            String msg = "x=" + x + " y=" + y + " w=" + w + " h=" + h;
+            drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, msg, this, GraphicsX.class, "initializeClip", ITechLvl.LVL_05_FINE, true);
+         }
          throw new IllegalArgumentException("Null Intersection");
       }
       //#enddebug
@@ -1805,40 +2296,66 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * <br>
     * Alpha primitives are always merged in the postWork method of the primitive method call.
     * <br>
-    * Use the boundary compute to ease the work of the merge
+    * Only the damage region of the layer is read back and blended.
+    * See {@link GraphicsX#damageAdd(int, int, int, int)}
     */
    private boolean merge() {
       if (pOpaqueLayerCount != 0 && imageRgbData != null && imageLayer != null && !imageRgbData.isNullImage()) {
          if (imageRgbData.rgbData != null) {
 
-            //#debug
-            String msg = "pOpaqueLayerCount=" + pOpaqueLayerCount + " TColor=" + ToStringStaticDrawx.toStringColor(excludeColor) + " " + ToStringStaticDrawx.toStringPaintMode(paintMode);
-            //#debug
-            toDLog().pDraw(msg, this, GraphicsX.class, "merge", ITechLvl.LVL_05_FINE, true);
+            //#mdebug
+            if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_2_MERGE)) {
+               String msg = "pOpaqueLayerCount=" + pOpaqueLayerCount + " TColor=" + ToStringStaticDrawx.toStringColor(excludeColor) + " " + ToStringStaticDrawx.toStringPaintMode(paintMode) + " damage=[" + damageX1 + "," + damageY1 + " " + damageX2 + "," + damageY2 + "]";
+               drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_2_MERGE, msg, this, GraphicsX.class, "merge", ITechLvl.LVL_05_FINE, true);
+            }
+            //#enddebug
 
+            DrwMetrics metrics = drc.getMetrics();
+            long start = metrics.spanStart();
             int srcH = imageRgbData.getHeight();
             int srcW = imageRgbData.getWidth();
-            int[] layerRgb = cache.getImageData(imageLayer, 0, 0, srcW, srcH);
-            int[] rgbData = imageRgbData.rgbData; //cannot be null?
-            //merge only on the clip
-            int srcIndex = 0;
-            for (int i = 0; i < srcH; i++) {
-               for (int j = 0; j < srcW; j++) {
-                  int basePix = rgbData[srcIndex];
-                  int blendPix = layerRgb[srcIndex];
-                  int newPixel = 0;
-                  if (isPseudoColorMode && excludeColor == blendPix) {
-                     newPixel = basePix;
-                  } else {
-                     //full support of alpha
-                     newPixel = blendOpImages.blendPixel(basePix, blendPix);
+            //bound the damage region by the image and the layer
+            int x1 = Math.max(damageX1, 0);
+            int y1 = Math.max(damageY1, 0);
+            int x2 = Math.min(damageX2, Math.min(srcW, imageLayer.getWidth()));
+            int y2 = Math.min(damageY2, Math.min(srcH, imageLayer.getHeight()));
+            if (x2 > x1 && y2 > y1) {
+               int dw = x2 - x1;
+               int dh = y2 - y1;
+               int[] layerRgb = cache.getImageDataScratch(imageLayer, x1, y1, dw, dh);
+               int[] rgbData = imageRgbData.rgbData; //cannot be null?
+               boolean isDstPremultiplied = imageRgbData.isPremultiplied();
+               if (isPseudoColorMode) {
+                  int layerIndex = 0;
+                  for (int i = 0; i < dh; i++) {
+                     int srcIndex = (y1 + i) * srcW + x1;
+                     for (int j = 0; j < dw; j++) {
+                        int blendPix = layerRgb[layerIndex];
+                        //pseudo transparent pixels keep the base pixel
+                        if (excludeColor != blendPix) {
+                           //full support of alpha
+                           if (isDstPremultiplied) {
+                              rgbData[srcIndex] = BlendKernel.premultiply(blendOpImages.blendPixel(BlendKernel.unpremultiply(rgbData[srcIndex]), blendPix));
+                           } else {
+                              rgbData[srcIndex] = blendOpImages.blendPixel(rgbData[srcIndex], blendPix);
+                           }
+                        }
+                        srcIndex++;
+                        layerIndex++;
+                     }
                   }
-                  rgbData[srcIndex] = newPixel;
-                  srcIndex++;
+               } else {
+                  //layer has a real transparent background. blend with the row kernel
+                  BlendKernel kernel = drc.getBlendKernel();
+                  int kernelID = kernel.getKernelID(blendOpImages, false, false, isDstPremultiplied);
+                  kernel.blend(kernelID, blendOpImages, rgbData, y1 * srcW + x1, srcW, layerRgb, 0, dw, dw, dh);
                }
+               cache.returnScratch(layerRgb);
+               numPixelsMerged += dw * dh;
             }
             pOpaqueLayerCount = 0;
             mergeCount++;
+            metrics.spanEnd(ITechDrwMetrics.METRICS_SPAN_2_MERGE, start);
             return true;
          }
       }
@@ -1861,6 +2378,8 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param trans
     */
    public void paintToScreen(IGraphics screenGraphics, int trans) {
+      DrwMetrics metrics = drc.getMetrics();
+      long start = metrics.spanStart();
       //either the layer or
       switch (paintMode) {
          case MODE_0_SCREEN:
@@ -1873,6 +2392,40 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
             screenGraphics.drawRegion(img, 0, 0, img.getWidth(), img.getHeight(), trans, 0, 0, GraphicsX.ANCHOR);
             break;
       }
+      metrics.spanEnd(ITechDrwMetrics.METRICS_SPAN_3_PAINT_TO_SCREEN, start);
+   }
+
+   /**
+    * Starts recording the drawing calls of this {@link GraphicsX} into list. Calls are still drawn.
+    * <br>
+    * <br>
+    * Figures, styles and strings are recorded as the primitives they draw.
+    * In {@link GraphicsX#MODE_4_NULL}, calls are recorded without drawing.
+    * @param list
+    */
+   public void recordStart(DisplayList list) {
+      int stroke = -1;
+      IMFont font = null;
+      if (g != null) {
+         stroke = g.getStrokeStyle();
+         font = g.getFont();
+      }
+      list.recordInit(mycolor, alpha, stroke, font, clipX, clipY, clipW, clipH);
+      recorder = list;
+   }
+
+   /**
+    * Stops the recording started by {@link GraphicsX#recordStart(DisplayList)}
+    * @return the list. null when not recording
+    */
+   public DisplayList recordEnd() {
+      DisplayList list = recorder;
+      recorder = null;
+      return list;
+   }
+
+   public boolean isRecording() {
+      return recorder != null;
    }
 
    /**
@@ -1918,6 +2471,9 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
          mergeAndClear();
       }
       if (paintMode == MODE_3_RGB) {
+         if (hasFlagOptions(OPTION_3_RGB_ONLY)) {
+            throw new IllegalStateException("Primitive needs a layer in RGB only mode");
+         }
          setPaintMode(MODE_2_RGB_IMAGE, clipW, clipH);
       }
       return true;
@@ -1960,6 +2516,9 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     */
    public void setAlpha(int alpha) {
       this.alpha = alpha & 0xFF;
+      if (recorder != null) {
+         recorder.setAlpha(this.alpha);
+      }
       if (this.alpha != 255) {
          hasAlpha = true;
          if (paintMode == MODE_1_IMAGE) {
@@ -2031,13 +2590,23 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * 
     */
    public void setColor(int RGB) {
+      if (isColorOverride) {
+         RGB = colorOverride;
+      }
       this.mycolor = RGB;
+      if (recorder != null) {
+         recorder.setColor(RGB);
+      }
       //#debug
       //toLog().pDraw("setColor " + ColorConstants.debugColor(RGB) + " DisplayColor = " + ColorConstants.debugColor(g.getDisplayColor(RGB)), GraphicsX.class);
       if (g == null) {
          if (paintMode == MODE_4_NULL) {
             return;
          }
+         if (paintMode == MODE_3_RGB && hasFlagOptions(OPTION_3_RGB_ONLY)) {
+            //color is read by the rasterizer
+            return;
+         }
          setPaintMode(MODE_2_RGB_IMAGE, clipW, clipH);
       }
       //There may be a disparity between SET color and display color. For example if RGB is 255,254,254,254. 
@@ -2065,12 +2634,30 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       this.setColor(ColorUtils.getRGBInt(red, green, blue));
    }
 
+   /**
+    * All colors given to {@link GraphicsX#setColor(int)} are replaced by color until {@link GraphicsX#clearColorOverride()}.
+    * <br>
+    * <br>
+    * Used for drawing a figure as a shape, for example in black for a mask, without modifying the figure definition.
+    * The override belongs to this {@link GraphicsX}, so the same figure may be drawn at the same time on other {@link GraphicsX}.
+    * @param color
+    */
+   public void setColorOverride(int color) {
+      colorOverride = color;
+      isColorOverride = true;
+      setColor(color);
+   }
+
+   public void clearColorOverride() {
+      isColorOverride = false;
+   }
+
    /**
     * 
     */
    private void setColorChangePseudoColor() {
       //#debug
-      toDLog().pDraw("", this, GraphicsX.class, "setColorChangePseudoColor");
+      drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, "", this, GraphicsX.class, "setColorChangePseudoColor", ITechLvl.LVL_05_FINE, true);
 
       pseudoSwapCount++;
       //if mode is Graphics. throw an exception
@@ -2090,7 +2677,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       merge();
       excludeColorSwap();
       //clears the whole image layer by filling with new transparent color
-      clearLayer();
+      clearLayerFull();
 
    }
 
@@ -2107,7 +2694,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param font
     */
    public void setFont(IMFont font) {
-      g.setFont(font);
+      if (recorder != null) {
+         recorder.setFont(font);
+      }
+      if (g != null) {
+         g.setFont(font);
+      }
    }
 
    /**
@@ -2117,6 +2709,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     */
    public void setGraphics(IGraphics g) {
       this.g = g;
+      damageReset();
       pOpaqueLayerCount = 0;
       primitiveTally = 0;
    }
@@ -2165,13 +2758,19 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       clipHistory.addInt(width);
       clipHistory.addInt(height);
 
+      if (recorder != null) {
+         recorder.setClip(x, y, width, height);
+      }
+
       if (g != null) {
          g.setClip(x, y, width, height);
 
-         //#debug
-         String str = " clip is " + ((isReset) ? "reset" : "set  ") + " to \t[" + g.getClipX() + "," + g.getClipY() + " " + g.getClipWidth() + "," + g.getClipHeight() + "] cached=" + toStringClip();
-         //#debug
-         toDLog().pDraw(str, this, GraphicsX.class, "setMyClip", LVL_05_FINE, true);
+         //#mdebug
+         if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+            String str = " clip is " + ((isReset) ? "reset" : "set  ") + " to \t[" + g.getClipX() + "," + g.getClipY() + " " + g.getClipWidth() + "," + g.getClipHeight() + "] cached=" + toStringClip();
+            drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_6_GRAPHICS, str, this, GraphicsX.class, "setMyClip", LVL_05_FINE, true);
+         }
+         //#enddebug
 
       }
    }
@@ -2225,6 +2824,11 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       }
       g = imageLayer.getGraphics();
       g.setTranslate(translateX, translateY);
+      //layer content is opaque, the whole of it is damaged
+      damageX1 = 0;
+      damageY1 = 0;
+      damageX2 = imageLayer.getWidth();
+      damageY2 = imageLayer.getHeight();
       isAlphaMode = false;
       isPseudoColorMode = false;
    }
@@ -2249,6 +2853,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       }
       if (imageLayer == null) {
          imageLayer = createImageLayer(w, h);
+         damageReset();
       }
       g = imageLayer.getGraphics();
       g.setTranslate(translateX, translateY);
@@ -2274,7 +2879,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param style
     */
    public void setStrokeStyle(int style) {
-      g.setStrokeStyle(style);
+      if (recorder != null) {
+         recorder.setStroke(style);
+      }
+      if (g != null) {
+         g.setStrokeStyle(style);
+      }
    }
 
    public void setSwitchOff(int flag, boolean v) {
@@ -2301,10 +2911,12 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
     * @param y
     */
    public void setTranslationShift(int x, int y) {
-      //#debug
-      String msg = "[translateX=" + translateX + " + (x=" + x + ")] translateY=" + translateY + " (y=" + y + ")] Mode=" + ToStringStaticDrawx.toStringPaintMode(paintMode);
-      //#debug
-      toDLog().pSetADraw(msg, this, toStringGetLine(GraphicsX.class, "setTranslationShift", 2331), LVL_04_FINER, true);
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_6_GRAPHICS)) {
+         String msg = "[translateX=" + translateX + " + (x=" + x + ")] translateY=" + translateY + " (y=" + y + ")] Mode=" + ToStringStaticDrawx.toStringPaintMode(paintMode);
+         toDLog().pSetADraw(msg, this, toStringGetLine(GraphicsX.class, "setTranslationShift", 2331), LVL_04_FINER, true);
+      }
+      //#enddebug
       translateX += x;
       translateY += y;
       //modify the clip roots ? why?
@@ -2385,6 +2997,7 @@ public class GraphicsX extends ObjectDrw implements IStringable, ITechGraphicsX,
       dc.appendVarWithSpace("pseudoSwapCount", pseudoSwapCount);
       dc.appendVarWithSpace("mergeCount", mergeCount);
       dc.appendVarWithSpace("pOpaqueLayerCount", pOpaqueLayerCount);
+      dc.appendVarWithSpace("numPixelsMerged", numPixelsMerged);
       dc.appendVarWithSpace("primitiveTally", primitiveTally);
       dc.appendVarWithSpace("rgbCount", rgbCount);
 
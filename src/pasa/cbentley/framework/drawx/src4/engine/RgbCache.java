@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
 
 import pasa.cbentley.byteobjects.src4.core.ByteObject;
 import pasa.cbentley.core.src4.ctx.UCtx;
@@ -103,6 +104,22 @@ import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
  *
  */
 public class RgbCache implements IMemFreeable {
+   /**
+    * Number of size classes of the memory area pool. <br>
+    * Class k holds the free memory areas with a length in [2^k, 2^(k+1)[
+    */
+   private static final int POOL_CLASSES = 31;
+
+   /**
+    * Number of free lists in a size class. Each list holds a 1/8 of the lengths of its class.
+    */
+   private static final int POOL_SUBS    = 8;
+
+   /**
+    * Maximum number of scratch arrays kept by {@link RgbCache#returnScratch(int[])}
+    */
+   private static final int SCRATCH_MAX  = 8;
+
    /**
     * Use of the {@link ITechRgbImage#FLAG_09_USED} to know which Image may be
     * garbaged collected. This require strict programming to avoid memory
@@ -145,6 +162,19 @@ public class RgbCache implements IMemFreeable {
     */
    private int[]         areaToRgb     = new int[4];
 
+   /**
+    * Position of the memory area in the free stack of its size class. <br>
+    * -1 when the memory area is not in the pool, i.e. used or null.
+    */
+   private int[]         areaPoolPos   = new int[] { -1, -1, -1, -1 };
+
+   /**
+    * Stack of memory area ids with a null array. Top of the stack is the next id to be filled.
+    */
+   private int[]         areaNullIds   = new int[] { 3, 2, 1, 0 };
+
+   private int           areaNullCount = 4;
+
    /**
    * 
    */
@@ -188,10 +218,78 @@ public class RgbCache implements IMemFreeable {
     */
    private RgbImage[]    rgbImages     = new RgbImage[0];
 
+   /**
+    * Stack of {@link RgbCache#rgbImages} indexes flagged {@link ITechRgbImage#FLAG_12_DISPOSED}
+    */
+   private int[]         rgbDisposedIds = new int[4];
+
+   private int           rgbDisposedCount;
+
+   /**
+    * Number of {@link RgbImage} in {@link RgbCache#rgbImages}. The array grows geometrically.
+    */
+   private int           rgbImageCount;
+
+   /**
+    * For each free list, a stack of free memory area ids. See {@link RgbCache#getPoolList(int)}. <br>
+    * A memory area is in the pool when its array is not null and {@link RgbCache#areaToRgb} is -1.
+    */
+   private int[][]       poolFree      = new int[POOL_CLASSES * POOL_SUBS][];
+
+   private int[]         poolFreeCount = new int[POOL_CLASSES * POOL_SUBS];
+
+   /**
+    * For each size class, bit s is set when the free list s of the class is not empty
+    */
+   private int[]         poolSubMask   = new int[POOL_CLASSES];
+
+   /**
+    * Pool hits. A free memory area was reused.
+    */
    private int           statCacheFound;
 
+   /**
+    * Pool misses. A new array had to be created.
+    */
    private int           statCacheMiss;
 
+   /**
+    * Hits served by the size class above the requested one.
+    */
+   private int           statPoolHitUpper;
+
+   /**
+    * Sum of the pixels lent beyond the requested lengths on hits. Measures the internal fragmentation of the pool.
+    */
+   private long          statPoolSlack;
+
+   /**
+    * Free scratch arrays. See {@link RgbCache#borrowScratch(int)}
+    */
+   private int[][]       scratchFree   = new int[SCRATCH_MAX][];
+
+   private int           scratchFreeCount;
+
+   /**
+    * {@link IMemFreeable} holding {@link RgbImage}s of this cache. Freed first by {@link RgbCache#freeMemory()}
+    */
+   private Vector        memFreeables  = new Vector();
+
+   /**
+    * Number of calls to {@link RgbCache#borrowScratch(int)}
+    */
+   private int           statScratchBorrow;
+
+   /**
+    * Number of arrays created by {@link RgbCache#borrowScratch(int)}. Zero growth in steady state frames.
+    */
+   private int           statScratchAlloc;
+
+   /**
+    * Number of pixels allocated by {@link RgbCache#borrowScratch(int)}
+    */
+   private long          statScratchAllocPixels;
+
    private int           statConvertPrimitive;
 
    private int           statConvertRgb;
@@ -227,6 +325,23 @@ public class RgbCache implements IMemFreeable {
       }
    }
 
+   /**
+    * Registers a holder of {@link RgbImage}s, such as a cache, which must release them
+    * before this cache reclaims its memory areas.
+    * @param freeable
+    */
+   public void addMemFreeable(IMemFreeable freeable) {
+      if (!memFreeables.contains(freeable)) {
+         memFreeables.addElement(freeable);
+      }
+   }
+
+   private void freeMemoryFreeables() {
+      for (int i = 0; i < memFreeables.size(); i++) {
+         ((IMemFreeable) memFreeables.elementAt(i)).freeMemory();
+      }
+   }
+
    public DrwCtx getDC() {
       return dc;
    }
@@ -318,12 +433,13 @@ public class RgbCache implements IMemFreeable {
 
          }
       }
-      // creates immutable image
+      // creates immutable image. premultiplied pixels are converted to straight
       IImage img = rgbImage.getImage(false);
       rgbImage.img = img;
       rgbImage.rgbData = null;
+      rgbImage.setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, false);
       if (cacheType == TYPE_FULL && rgbImage.cacheIntID != -1) {
-         areaToRgb[rgbImage.cacheIntID] = -1;
+         areaRelease(rgbImage.cacheIntID);
       }
       rgbImage.cacheIntID = -1;
       rgbImage.setFlag(ITechRgbImage.FLAG_13_RGB, false);
@@ -349,10 +465,7 @@ public class RgbCache implements IMemFreeable {
       int len = img.getWidth() * img.getHeight();
       int[] imgData = null;
       if (cacheType == TYPE_FULL) {
-         int id = findMemoryAreaIndex(len);
-         imgData = memoryAreas[id];
-         rgbImage.cacheIntID = id;
-         areaToRgb[id] = rgbImage.cacheRgbIndex;
+         imgData = areaTake(rgbImage, len);
       } else {
          imgData = drc.getMem().createIntArray(len);
       }
@@ -492,10 +605,7 @@ public class RgbCache implements IMemFreeable {
       int[] ar = null;
       if (cacheType == TYPE_FULL) {
          // find a free memory area. may call GC
-         int id = findMemoryAreaIndex(len, color);
-         ar = memoryAreas[id];
-         areaToRgb[id] = ri.cacheRgbIndex;
-         ri.cacheIntID = id;
+         ar = areaTake(ri, len);
       } else {
          IMemory mem = drc.getMem();
          ar = mem.createIntArray(len);
@@ -614,9 +724,7 @@ public class RgbCache implements IMemFreeable {
 
    int[] createImageArray(int len) {
       if (cacheType == TYPE_FULL) {
-         int id = findMemoryAreaIndex(len);
-         areaToRgb[id] = -1;
-         return memoryAreas[id];
+         return areaBorrow(len);
       } else {
          return drc.getMem().createIntArray(len);
       }
@@ -632,7 +740,7 @@ public class RgbCache implements IMemFreeable {
     */
    public RgbImage createImageLink(int sig, int transform) {
       int rootID = -1;
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          RgbImage check = rgbImages[i];
          // sig match and this is the root
          if (check.signature == sig) {
@@ -695,7 +803,7 @@ public class RgbCache implements IMemFreeable {
     *         scratch?
     */
    public RgbImage createImageLink(int w, int h, int sig, int transform) {
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          RgbImage check = rgbImages[i];
          if (check.width == w && check.height == h) {
             if (check.signature == sig) {
@@ -1010,7 +1118,7 @@ public class RgbCache implements IMemFreeable {
     * 
     * @param rgbImage
     */
-   public void dispose(RgbImage rgbImage) {
+   public synchronized void dispose(RgbImage rgbImage) {
       if (cacheType != TYPE_FULL) {
          return;
       }
@@ -1019,13 +1127,16 @@ public class RgbCache implements IMemFreeable {
       }
       if (!rgbImage.isRegion()) {
          if (rgbImage.cacheIntID != -1) {
-            areaToRgb[rgbImage.cacheIntID] = -1;
+            areaRelease(rgbImage.cacheIntID);
          }
       }
       rgbImage.releaseFreeMemory();
       if (rgbImage.sourceLocator != null) {
 
       } else {
+         if (!rgbImage.hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
+            rgbDisposedPush(rgbImage.cacheRgbIndex);
+         }
          rgbImage.cacheIntID = -1;
          // rgbImage.cacheRgbIndex = -1;
          rgbImage.sourceLocator = null;
@@ -1048,33 +1159,41 @@ public class RgbCache implements IMemFreeable {
     * <li>{@link ITechRgbImage#FLAG_16_VIRGIN} true
     * <li>{@link ITechRgbImage#FLAG_09_USED} true <br>
     * <br>
+    * Synchronized with {@link RgbCache#findMemoryAreaIndex(int, int)} and {@link RgbCache#dispose(RgbImage)}
+    * so that threads painting tiles may create and dispose images. See {@link pasa.cbentley.framework.drawx.src4.factories.FigureTilePainter}.
     * 
     * @param id
     *            The Cache ID to use
     * @return
     */
-   private RgbImage fetchFreeRgbImage() {
+   private synchronized RgbImage fetchFreeRgbImage() {
       statImageCreation++;
       if (cacheType == TYPE_NONE) {
          return new RgbImage(drc, this);
       }
       RgbImage img = null;
-      for (int i = 0; i < rgbImages.length; i++) {
-         if (rgbImages[i].hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
-            img = rgbImages[i];
+      while (rgbDisposedCount > 0) {
+         rgbDisposedCount--;
+         int index = rgbDisposedIds[rgbDisposedCount];
+         if (index >= 0 && index < rgbImageCount && rgbImages[index].hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
+            img = rgbImages[index];
+            //index may have been reset by freeMemory
+            img.cacheRgbIndex = index;
             break;
          }
       }
       if (img == null) {
          // else create a new one
-         RgbImage[] old = rgbImages;
-         rgbImages = new RgbImage[old.length + 1];
-         for (int i = 0; i < old.length; i++) {
-            rgbImages[i] = old[i];
+         if (rgbImageCount == rgbImages.length) {
+            //geometric growth
+            RgbImage[] old = rgbImages;
+            rgbImages = new RgbImage[old.length + Math.max(4, old.length)];
+            System.arraycopy(old, 0, rgbImages, 0, old.length);
          }
-         rgbImages[old.length] = new RgbImage(drc, this);
-         rgbImages[old.length].cacheRgbIndex = old.length;
-         img = rgbImages[old.length];
+         img = new RgbImage(drc, this);
+         img.cacheRgbIndex = rgbImageCount;
+         rgbImages[rgbImageCount] = img;
+         rgbImageCount++;
       }
       img.setFlag(ITechRgbImage.FLAG_12_DISPOSED, false);
       img.setFlag(ITechRgbImage.FLAG_16_VIRGIN, true);
@@ -1088,7 +1207,15 @@ public class RgbCache implements IMemFreeable {
 
 
    /**
-    * Look for an unused memory area with at least len of capacity
+    * Look for an unused memory area with at least len of capacity. <br>
+    * <br>
+    * Free memory areas are pooled in free lists by length. See {@link RgbCache#getPoolList(int)}.
+    * The lookup does not depend on the number of free areas. 
+    * The top of the list of len is taken when it is long enough, otherwise the top of the first non empty list above,
+    * in the class of len or in the class above. Otherwise a new array of len is created. <br>
+    * <br>
+    * The memory area is taken out of the pool. Caller must set {@link RgbCache#areaToRgb}
+    * or call {@link RgbCache#areaRelease(int)} while holding the lock. See {@link RgbCache#areaTake(RgbImage, int)}.
     * 
     * @param len
     *            The number of pixels needed.
@@ -1097,59 +1224,263 @@ public class RgbCache implements IMemFreeable {
     * @return The index of the memory area where it is possible to store len
     *         pixels.
     */
-   public int findMemoryAreaIndex(int len, int color) {
-      int nullIndex = -1;
-      for (int i = 0; i < memoryAreas.length; i++) {
-         if (memoryAreas[i] != null) {
-            if (areaToRgb[i] == -1) {
-               if (memoryAreas[i].length >= len) {
-                  statCacheFound++;
-                  return i;
-               }
-            }
-         } else {
-            nullIndex = i;
-         }
+   public synchronized int findMemoryAreaIndex(int len, int color) {
+      int id = poolFind(len);
+      if (id != -1) {
+         poolRemove(id);
+         statCacheFound++;
+         statPoolSlack += memoryAreas[id].length - len;
+         return id;
       }
       statCacheMiss++;
       // this code may call freeMemory; make sure it does not interfere with
       // state of Cache.
       int[] data = drc.getMem().createIntArray(len);
-      int id = 0;
-      // when no null areas
-      if (nullIndex == -1) {
-         // we could not find a free memory area with enough capacity.
-         memoryAreas = drc.getMem().increaseCapacityNonEmpty(memoryAreas, 1, 0);
-         areaToRgb = drc.getMem().increaseCapacity(areaToRgb, 1);
-         id = memoryAreas.length - 1;
-      } else {
-         id = nullIndex;
+      if (areaNullCount == 0) {
+         // no null areas. geometric growth
+         int add = Math.max(4, memoryAreas.length);
+         int oldLen = memoryAreas.length;
+         memoryAreas = drc.getMem().increaseCapacityNonEmpty(memoryAreas, add, 0);
+         areaToRgb = drc.getMem().increaseCapacity(areaToRgb, add);
+         areaPoolPos = drc.getMem().increaseCapacity(areaPoolPos, add);
+         if (areaNullIds.length < memoryAreas.length) {
+            areaNullIds = drc.getMem().increaseCapacity(areaNullIds, memoryAreas.length - areaNullIds.length);
+         }
+         for (int i = memoryAreas.length - 1; i >= oldLen; i--) {
+            areaPoolPos[i] = -1;
+            areaNullIds[areaNullCount++] = i;
+         }
       }
+      areaNullCount--;
+      id = areaNullIds[areaNullCount];
       //#debug
-      //toDLog().printDraw("#RgbCache#findMemoryAreaIndex " + id + " " + nullIndex);
+      //toDLog().printDraw("#RgbCache#findMemoryAreaIndex " + id);
       memoryAreas[id] = data;
       return id;
    }
 
+   /**
+    * Size class of an array of len. floor of log2(len). 0 for len smaller than 2
+    * @param len
+    * @return
+    */
+   private static int getSizeClass(int len) {
+      int c = 0;
+      if (len >= 1 << 16) {
+         c += 16;
+         len >>>= 16;
+      }
+      if (len >= 1 << 8) {
+         c += 8;
+         len >>>= 8;
+      }
+      if (len >= 1 << 4) {
+         c += 4;
+         len >>>= 4;
+      }
+      if (len >= 1 << 2) {
+         c += 2;
+         len >>>= 2;
+      }
+      if (len >= 1 << 1) {
+         c += 1;
+      }
+      return c;
+   }
+
+   /**
+    * Free list of len. The size class of len, floor of log2, split in {@link RgbCache#POOL_SUBS} lists
+    * by the 3 bits following the highest bit of len.
+    * <br>
+    * All the areas of a list above the list of len have at least len pixels.
+    * @param len
+    * @return index in {@link RgbCache#poolFree}
+    */
+   private static int getPoolList(int len) {
+      int sizeClass = getSizeClass(len);
+      int sub;
+      if (sizeClass >= 3) {
+         sub = (len >>> (sizeClass - 3)) & 7;
+      } else {
+         sub = (len << (3 - sizeClass)) & 7;
+      }
+      return sizeClass * POOL_SUBS + sub;
+   }
+
+   /**
+    * Free memory area with at least len, in constant time.
+    * <br>
+    * The top of the list of len if it fits, else the top of the first non empty list above it,
+    * in the size class of len or the class above.
+    * @param len
+    * @return -1 if none
+    */
+   private int poolFind(int len) {
+      int list = getPoolList(len);
+      int count = poolFreeCount[list];
+      if (count != 0) {
+         int id = poolFree[list][count - 1];
+         if (memoryAreas[id].length >= len) {
+            return id;
+         }
+      }
+      int sizeClass = list / POOL_SUBS;
+      int sub = list % POOL_SUBS;
+      //lists of the class above sub
+      int mask = poolSubMask[sizeClass] & (0xFF << (sub + 1)) & 0xFF;
+      if (mask == 0 && sizeClass + 1 < POOL_CLASSES) {
+         sizeClass++;
+         mask = poolSubMask[sizeClass];
+         if (mask != 0) {
+            statPoolHitUpper++;
+         }
+      }
+      if (mask == 0) {
+         return -1;
+      }
+      //lowest set bit
+      list = sizeClass * POOL_SUBS + getSizeClass(mask & -mask);
+      return poolFree[list][poolFreeCount[list] - 1];
+   }
+
+   /**
+    * Pushes the memory area on its free list
+    * @param id
+    */
+   private void poolAdd(int id) {
+      int list = getPoolList(memoryAreas[id].length);
+      int[] stack = poolFree[list];
+      int count = poolFreeCount[list];
+      if (stack == null) {
+         stack = new int[4];
+         poolFree[list] = stack;
+      } else if (count == stack.length) {
+         stack = drc.getMem().increaseCapacity(stack, stack.length);
+         poolFree[list] = stack;
+      }
+      stack[count] = id;
+      areaPoolPos[id] = count;
+      poolFreeCount[list] = count + 1;
+      poolSubMask[list / POOL_SUBS] |= 1 << (list % POOL_SUBS);
+   }
+
+   /**
+    * Removes the memory area from its free list. Last element takes its place.
+    * @param id
+    */
+   private void poolRemove(int id) {
+      int pos = areaPoolPos[id];
+      if (pos == -1) {
+         return;
+      }
+      int list = getPoolList(memoryAreas[id].length);
+      int[] stack = poolFree[list];
+      int last = poolFreeCount[list] - 1;
+      int lastID = stack[last];
+      stack[pos] = lastID;
+      areaPoolPos[lastID] = pos;
+      poolFreeCount[list] = last;
+      areaPoolPos[id] = -1;
+      if (last == 0) {
+         poolSubMask[list / POOL_SUBS] &= ~(1 << (list % POOL_SUBS));
+      }
+   }
+
+   /**
+    * Takes a memory area of at least len pixels for rgbImage.
+    * <br>
+    * Ids and arrays are read and written under the lock, since a concurrent {@link RgbCache#findMemoryAreaIndex(int, int)}
+    * may grow {@link RgbCache#memoryAreas} and {@link RgbCache#areaToRgb}.
+    * @param rgbImage
+    * @param len
+    * @return the array of the memory area
+    */
+   private synchronized int[] areaTake(RgbImage rgbImage, int len) {
+      int id = findMemoryAreaIndex(len);
+      rgbImage.cacheIntID = id;
+      areaToRgb[id] = rgbImage.cacheRgbIndex;
+      return memoryAreas[id];
+   }
+
+   /**
+    * Scratch array of a memory area of at least len pixels. The area is back in the pool right away.
+    * @param len
+    * @return
+    */
+   private synchronized int[] areaBorrow(int len) {
+      int id = findMemoryAreaIndex(len);
+      areaRelease(id);
+      return memoryAreas[id];
+   }
+
+   /**
+    * Flags the memory area as not used by any {@link RgbImage} and gives it back to the pool.
+    * @param id
+    */
+   private synchronized void areaRelease(int id) {
+      areaToRgb[id] = -1;
+      if (memoryAreas[id] != null && areaPoolPos[id] == -1) {
+         poolAdd(id);
+      }
+   }
+
+   /**
+    * Nulls the array reference of the memory area so it can be garbage collected.
+    * @param id
+    */
+   private synchronized void areaNull(int id) {
+      if (memoryAreas[id] != null) {
+         poolRemove(id);
+         memoryAreas[id] = null;
+         areaNullIds[areaNullCount++] = id;
+      }
+   }
+
+   /**
+    * 
+    * @param index
+    */
+   private void rgbDisposedPush(int index) {
+      if (index < 0) {
+         return;
+      }
+      if (rgbDisposedCount == rgbDisposedIds.length) {
+         rgbDisposedIds = drc.getMem().increaseCapacity(rgbDisposedIds, rgbDisposedIds.length);
+      }
+      rgbDisposedIds[rgbDisposedCount++] = index;
+   }
+
    /**
     * Method sets to null int[] array references for memory areas flagged as
     * not used Image with a source path are freed
+    * <br>
+    * The {@link IMemFreeable}s are called first, outside the lock of the cache. They dispose images under their own lock.
     */
    public void freeMemory() {
+      freeMemoryFreeables();
+      freeMemoryUnused();
+   }
+
+   /**
+    * Memory areas of the images not used, under the lock of the cache like the pool and the free lists
+    */
+   private synchronized void freeMemoryUnused() {
       if (imagesByName != null) {
          imagesByName.clear();
       }
+      scratchClear();
       // clear cache memory
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          if (rgbImages[i] != null) {
             RgbImage ri = rgbImages[i];
             if (!ri.hasFlag(ITechRgbImage.FLAG_09_USED)) {
                ri.releaseFreeMemory();
                if (ri.cacheIntID != -1)
-                  memoryAreas[ri.cacheIntID] = null;
-               if (ri.sourceLocator == null) {
+                  areaNull(ri.cacheIntID);
+               if (ri.sourceLocator == null && !ri.hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
                   // no source locator. so dispose it
                   ri.setFlag(ITechRgbImage.FLAG_12_DISPOSED, true);
+                  rgbDisposedPush(i);
                }
                ri.cacheIntID = -1;
                ri.cacheRgbIndex = -1;
@@ -1164,7 +1495,7 @@ public class RgbCache implements IMemFreeable {
       }
       for (int i = 0; i < areaToRgb.length; i++) {
          if (areaToRgb[i] == -1) {
-            memoryAreas[i] = null;
+            areaNull(i);
          }
       }
       //#debug
@@ -1199,9 +1530,16 @@ public class RgbCache implements IMemFreeable {
    /**
     * Free all arrays and set the RgbImages to empty. Used images will have to
     * be recreate when needed from sourceLocator or drawing on Graphics context
+    * <br>
+    * The {@link IMemFreeable}s are called first, outside the lock of the cache.
     */
    public void freeMemoryAll() {
-      for (int i = 0; i < rgbImages.length; i++) {
+      freeMemoryFreeables();
+      freeMemoryAreas();
+   }
+
+   private synchronized void freeMemoryAreas() {
+      for (int i = 0; i < rgbImageCount; i++) {
          if (rgbImages[i] != null) {
             RgbImage ri = rgbImages[i];
             ri.rgbData = null;
@@ -1210,8 +1548,9 @@ public class RgbCache implements IMemFreeable {
          }
       }
       for (int i = 0; i < memoryAreas.length; i++) {
-         memoryAreas[i] = null;
+         areaNull(i);
       }
+      scratchClear();
    }
 
    /**
@@ -1223,14 +1562,14 @@ public class RgbCache implements IMemFreeable {
     */
    public synchronized RgbImage[] getActiveImages() {
       int count = 0;
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          if (!rgbImages[i].hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
             count++;
          }
       }
       RgbImage[] ar = new RgbImage[count];
       count = 0;
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          if (!rgbImages[i].hasFlag(ITechRgbImage.FLAG_12_DISPOSED)) {
             ar[count] = rgbImages[i];
             count++;
@@ -1325,6 +1664,171 @@ public class RgbCache implements IMemFreeable {
       return imgData;
    }
 
+   /**
+    * Same as {@link RgbCache#getImageData(IImage, int, int, int, int)} but the pixels are read into a scratch array
+    * from {@link RgbCache#borrowScratch(int)}.
+    * <br>
+    * <br>
+    * Pixel of row r and column c is at index r * w + c. The array may be longer than w * h.
+    * <br>
+    * Caller gives it back with {@link RgbCache#returnScratch(int[])} once done.
+    * 
+    * @param img
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @return
+    * @throws IllegalArgumentException
+    *             if region does not fall into the image
+    */
+   public int[] getImageDataScratch(IImage img, int x, int y, int w, int h) {
+      if (x < 0 || y < 0) {
+         throw new IllegalArgumentException();
+      }
+      if (x + w > img.getWidth() || y + h > img.getHeight()) {
+         throw new IllegalArgumentException();
+      }
+      int[] imgData = borrowScratch(w * h);
+      img.getRGB(imgData, 0, w, x, y, w, h);
+      return imgData;
+   }
+
+   /**
+    * Borrows a scratch array of at least len pixels for a short lived read back.
+    * <br>
+    * <br>
+    * The smallest free scratch array that fits is lent. A new array is created only when none fits.
+    * <br>
+    * Content of the array is undefined. Unlike {@link RgbCache#createImageArray(int)}, the array is not shared
+    * with any other borrower until returned, so several threads or {@link GraphicsX} may borrow at the same time.
+    * 
+    * @param len number of pixels needed
+    * @return
+    */
+   public synchronized int[] borrowScratch(int len) {
+      statScratchBorrow++;
+      int best = -1;
+      for (int i = 0; i < scratchFreeCount; i++) {
+         int[] ar = scratchFree[i];
+         if (ar.length >= len && (best == -1 || ar.length < scratchFree[best].length)) {
+            best = i;
+         }
+      }
+      if (best != -1) {
+         int[] ar = scratchFree[best];
+         scratchFreeCount--;
+         scratchFree[best] = scratchFree[scratchFreeCount];
+         scratchFree[scratchFreeCount] = null;
+         return ar;
+      }
+      statScratchAlloc++;
+      statScratchAllocPixels += len;
+      return drc.getMem().createIntArray(len);
+   }
+
+   /**
+    * Gives back an array lent by {@link RgbCache#borrowScratch(int)}.
+    * <br>
+    * When the scratch pool is full, the smallest array is dropped.
+    * 
+    * @param ar the borrowed array. Must not be used by the caller afterwards. null is ignored.
+    */
+   public synchronized void returnScratch(int[] ar) {
+      if (ar == null) {
+         return;
+      }
+      if (scratchFreeCount < SCRATCH_MAX) {
+         scratchFree[scratchFreeCount++] = ar;
+         return;
+      }
+      int smallest = 0;
+      for (int i = 1; i < scratchFreeCount; i++) {
+         if (scratchFree[i].length < scratchFree[smallest].length) {
+            smallest = i;
+         }
+      }
+      if (scratchFree[smallest].length < ar.length) {
+         scratchFree[smallest] = ar;
+      }
+   }
+
+   /**
+    * Number of pool requests served by a free memory area since the cache creation.
+    * @return
+    */
+   public int getStatCacheFound() {
+      return statCacheFound;
+   }
+
+   /**
+    * Number of pool requests that created a new array since the cache creation.
+    * @return
+    */
+   public int getStatCacheMiss() {
+      return statCacheMiss;
+   }
+
+   /**
+    * Number of pool requests served by a memory area of the size class above the requested length.
+    * @return
+    */
+   public int getStatPoolHitUpper() {
+      return statPoolHitUpper;
+   }
+
+   /**
+    * Sum of the pixels lent beyond the requested lengths since the cache creation.
+    * @return
+    */
+   public long getStatPoolSlack() {
+      return statPoolSlack;
+   }
+
+   /**
+    * Number of images created since the cache creation.
+    * @return
+    */
+   public int getStatImageCreation() {
+      return statImageCreation;
+   }
+
+   /**
+    * Number of scratch arrays created since the cache creation.
+    * <br>
+    * Sampled before and after a frame, no change means the read backs of the frame did not allocate.
+    * @return
+    */
+   public int getStatScratchAlloc() {
+      return statScratchAlloc;
+   }
+
+   /**
+    * Number of pixels allocated for scratch arrays since the cache creation.
+    * @return
+    */
+   public long getStatScratchAllocPixels() {
+      return statScratchAllocPixels;
+   }
+
+   /**
+    * Number of scratch arrays borrowed since the cache creation.
+    * @return
+    */
+   public int getStatScratchBorrow() {
+      return statScratchBorrow;
+   }
+
+   /**
+    * Drops the free scratch arrays
+    */
+   private synchronized void scratchClear() {
+      for (int i = 0; i < scratchFreeCount; i++) {
+         scratchFree[i] = null;
+      }
+      scratchFreeCount = 0;
+   }
+
    /**
     * 
     * @param img
@@ -1347,7 +1851,7 @@ public class RgbCache implements IMemFreeable {
     * @return
     */
    public RgbImage getImageLink(int sig, int transform) {
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          RgbImage check = rgbImages[i];
          // sig match and this is the root
          if (check.signature == sig && check.transform == transform) {
@@ -1574,6 +2078,14 @@ public class RgbCache implements IMemFreeable {
          dc.append(" statCacheMiss=" + statCacheMiss);
       if (statCacheFound != 0)
          dc.append(" statCacheFound=" + statCacheFound);
+      if (statPoolHitUpper != 0)
+         dc.append(" statPoolHitUpper=" + statPoolHitUpper);
+      if (statPoolSlack != 0)
+         dc.append(" statPoolSlack=" + statPoolSlack);
+      if (statScratchBorrow != 0)
+         dc.append(" statScratchBorrow=" + statScratchBorrow);
+      if (statScratchAlloc != 0)
+         dc.append(" statScratchAlloc=" + statScratchAlloc + " (" + statScratchAllocPixels + " pixels)");
       if (statConvertPrimitive != 0)
          dc.append(" statConvertPrimitive=" + statConvertPrimitive);
       if (statConvertRgb != 0)
@@ -1607,7 +2119,7 @@ public class RgbCache implements IMemFreeable {
       }
       dc.nl();
       dc.append("#RgbImages");
-      for (int i = 0; i < rgbImages.length; i++) {
+      for (int i = 0; i < rgbImageCount; i++) {
          dc.append("#" + (i + 1));
          dc.append('\t');
          if (rgbImages[i] == null) {
@@ -25,6 +25,7 @@ import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
 import pasa.cbentley.framework.drawx.src4.ctx.IToStringFlagsDrw;
 import pasa.cbentley.framework.drawx.src4.ctx.ToStringStaticDrawx;
 import pasa.cbentley.framework.drawx.src4.interfaces.IRgbLoader;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwLog;
 import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
 import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
 
@@ -36,6 +37,7 @@ import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
  * <li>encapsulate an image transformation
  * <li>read and write locks
  * <li>performance optimization with IgnoreAlpha, Virgin, BackgroundColor RGB 
+ * <li>straight or premultiplied pixel format. See {@link RgbImage#setPremultiplied(boolean)}
  * <br>
  * <br>
  * <b>Image Sharing</b>: <br>
@@ -295,9 +297,10 @@ public class RgbImage implements IStringable, ITechRgbImage {
       int ih = sec[3];
       //SystemLog.printDraw(debugBlending(img, this, x, y, ix, iy, iw, ih));
       //this extracts pseudo transparent colors from the Image.
-      int[] layerRgb = cache.getImageData(img, ix, iy, iw, ih);
+      int[] layerRgb = cache.getImageDataScratch(img, ix, iy, iw, ih);
       //SystemLog.printDraw(RgbImage.debugAlphas(layerRgb, iw, ih));
       blend(bo, x, y, layerRgb, 0, iw, 0, 0, iw, ih);
+      cache.returnScratch(layerRgb);
    }
 
    /**
@@ -343,7 +346,41 @@ public class RgbImage implements IStringable, ITechRgbImage {
     * @param srcH the height of the source
     * @throws IllegalArgumentException when x or y are negative
     */
-   public synchronized void blend(BlendOp bo, int x, int y, int[] srcRGB, int srcOffset, int srcScan, int srcM, int srcN, int srcW, int srcH) {
+   public void blend(BlendOp bo, int x, int y, int[] srcRGB, int srcOffset, int srcScan, int srcM, int srcN, int srcW, int srcH) {
+      blend(bo, x, y, srcRGB, srcOffset, srcScan, srcM, srcN, srcW, srcH, false);
+   }
+
+   /**
+    * Blends the straight rgb array into the RgbImage.
+    * <br>
+    * See {@link RgbImage#blend(BlendOp, int, int, int[], int, int, int, int, int, int, boolean, boolean)}
+    */
+   public void blend(BlendOp bo, int x, int y, int[] srcRGB, int srcOffset, int srcScan, int srcM, int srcN, int srcW, int srcH, boolean isSrcOpaque) {
+      blend(bo, x, y, srcRGB, srcOffset, srcScan, srcM, srcN, srcW, srcH, isSrcOpaque, false);
+   }
+
+   /**
+    * Blends the rgb array into the RgbImage.
+    * <br>
+    * <br>
+    * The row kernel is chosen once for the whole call with {@link BlendKernel#getKernelID(BlendOp, boolean, boolean, boolean)}
+    * from the pixel formats of the source and of this image.
+    * <br>
+    * @param bo {@link BlendOp}
+    * @param x coordinate relative to TOP LEFT coordinate of RgbImage
+    * @param y coordinate relative to TOP LEFT coordinate of RgbImage
+    * @param srcRGB the pixel data to blend into the current image
+    * @param srcOffset starting offset when reading rgb int[] array
+    * @param srcScan 'width' of the scan in rgb int[] array
+    * @param srcM the x coordinate in the srcRGB array 
+    * @param srcN the y coordinate in the srcRGB array
+    * @param srcW the width of the source
+    * @param srcH the height of the source
+    * @param isSrcOpaque true when all source pixels are known to be fully opaque
+    * @param isSrcPremultiplied true when source pixels are premultiplied. This image must then be premultiplied too.
+    * @throws IllegalArgumentException when x or y are negative
+    */
+   public synchronized void blend(BlendOp bo, int x, int y, int[] srcRGB, int srcOffset, int srcScan, int srcM, int srcN, int srcW, int srcH, boolean isSrcOpaque, boolean isSrcPremultiplied) {
       //case of Image with pending graphicsx.
       //we cannot call getRgbData because code will loop if a merge happens during the flush
       //SystemLog.printDraw("#Blend in RgbImage "+ this.toString("\t\n"));
@@ -363,42 +400,28 @@ public class RgbImage implements IStringable, ITechRgbImage {
       int destOff = getOffset();
       int destIndex = destOff + destM + x + (destScan * (destN + y));
 
-      //#debug
-      String msg = "destIndex=" + destIndex + "\t destMN=" + destM + "," + destN + " destScan=" + destScan + " destOff=" + destOff + " destLength=" + getLength();
-      //#debug
-      toDLog().pDraw(msg, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
-
       int srcIndex = srcOffset + srcM + (srcScan * srcN);
-      int minDest = destScan - srcW;
-      int minSrc = srcScan - srcW;
 
-      //#debug
-      String msg2 = "blend srcOffset=" + srcOffset + "\t srcScan=" + srcScan + " srcMN=" + srcM + "," + srcN + " srcWH=" + srcW + "," + srcH + " x=" + x + " y=" + y;
-      //#debug
-      toDLog().pDraw(msg2, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_1_BLEND)) {
+         String msg = "destIndex=" + destIndex + "\t destMN=" + destM + "," + destN + " destScan=" + destScan + " destOff=" + destOff + " destLength=" + getLength();
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_1_BLEND, msg, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
+         String msg2 = "blend srcOffset=" + srcOffset + "\t srcScan=" + srcScan + " srcMN=" + srcM + "," + srcN + " srcWH=" + srcW + "," + srcH + " x=" + x + " y=" + y;
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_1_BLEND, msg2, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
+      }
+      //#enddebug
 
+      BlendKernel kernel = drc.getBlendKernel();
+      int kernelID = kernel.getKernelID(bo, isSrcOpaque, isSrcPremultiplied, isPremultiplied());
       try {
-         for (int i = 0; i < srcH; i++) {
-            for (int j = 0; j < srcW; j++) {
-               int basePix = rgbData[destIndex];
-               int blendPix = srcRGB[srcIndex];
-               //only blend if pixel is not virgin
-               //if (rgbData[destIndex] != VIRGIN_PIXEL) {
-               rgbData[destIndex] = bo.blendPixel(basePix, blendPix);
-               //} else {
-               // rgbData[destIndex] = rgb[srcIndex];
-               //}
-               destIndex++;
-               srcIndex++;
-            }
-            destIndex += minDest;
-            srcIndex += minSrc;
-         }
+         kernel.blend(kernelID, bo, rgbData, destIndex, destScan, srcRGB, srcIndex, srcScan, srcW, srcH);
       } catch (ArrayIndexOutOfBoundsException e) {
-         //#debug
-         String msg3 = "Array Index Error for " + rgbData.length + "=" + destIndex + " " + srcRGB.length + "=" + srcIndex + " srcWH=" + srcW + "," + srcH;
-         //#debug
-         toDLog().pDraw(msg3, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
+         //#mdebug
+         if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_1_BLEND)) {
+            String msg3 = "Array Index Error for " + rgbData.length + "=" + destIndex + " " + srcRGB.length + "=" + srcIndex + " srcWH=" + srcW + "," + srcH;
+            drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_1_BLEND, msg3, this, RgbImage.class, "blend", ITechLvl.LVL_05_FINE, true);
+         }
+         //#enddebug
          //#debug
          e.printStackTrace();
       }
@@ -408,6 +431,8 @@ public class RgbImage implements IStringable, ITechRgbImage {
    /**
     * Blends input image into {@link RgbImage}.
     * Automatically sets by precaution {@link ITechRgbImage#FLAG_05_IGNORE_ALPHA} to false.
+    * <br>
+    * A premultiplied img is converted to straight pixels when this image is straight.
     * @param bo
     * @param x
     * @param y
@@ -416,7 +441,13 @@ public class RgbImage implements IStringable, ITechRgbImage {
    public void blend(BlendOp bo, int x, int y, RgbImage img) {
       if (img.isRgb()) {
          //blend the image. the image might be a region of another image
-         blend(bo, x, y, img.rgbData, img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight());
+         boolean isSrcOpaque = img.hasFlag(ITechRgbImage.FLAG_05_IGNORE_ALPHA);
+         if (img.isPremultiplied() && !isPremultiplied()) {
+            int[] straight = img.getRgbCopy(false);
+            blend(bo, x, y, straight, 0, img.getWidth(), 0, 0, img.getWidth(), img.getHeight(), isSrcOpaque, false);
+         } else {
+            blend(bo, x, y, img.rgbData, img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), isSrcOpaque, img.isPremultiplied());
+         }
       } else {
          blend(bo, x, y, img.img);
       }
@@ -672,7 +703,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
             if ((anchor & ITechGraphics.RIGHT) == ITechGraphics.RIGHT) {
                x = x - w;
             }
-            g.drawRGB(rgbData, 0, w, x, y, w, h, !hasFlag(ITechRgbImage.FLAG_05_IGNORE_ALPHA));
+            g.drawRGB(rgbData, 0, w, x, y, w, h, !hasFlag(ITechRgbImage.FLAG_05_IGNORE_ALPHA), isPremultiplied());
          } else {
             //case Image is a region of another Image.
             IImage img = getImage();
@@ -721,13 +752,17 @@ public class RgbImage implements IStringable, ITechRgbImage {
       if (hasFlag(ITechRgbImage.FLAG_16_VIRGIN) && backgroundColor == color)
          return;
       if (isRgb()) {
+         int pixel = color;
+         if (isPremultiplied()) {
+            pixel = BlendKernel.premultiply(color);
+         }
          int w = getWidth();
          int h = getHeight();
          int index = getOffset() + getM() + (getScanLength() * getN());
          int add = getScanLength() - w;
          for (int i = 0; i < h; i++) {
             for (int j = 0; j < w; j++) {
-               rgbData[index] = color;
+               rgbData[index] = pixel;
                index++;
             }
             index += add;
@@ -919,8 +954,9 @@ public class RgbImage implements IStringable, ITechRgbImage {
    public IImage getImage(boolean mutable) {
       if (img == null) {
          int[] data = rgbData;
-         if (isRegion() || getOffset() != 0) {
+         if (isRegion() || getOffset() != 0 || isPremultiplied()) {
             //we must take a copy because a region does not uses all the pixels 
+            //hosts take straight pixels
             data = getRgbCopy();
          }
          if (mutable) {
@@ -991,7 +1027,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
    }
 
    /**
-    * Returns the ARGB pixel value at x,y.
+    * Returns the straight ARGB pixel value at x,y.
     * <p>
     * When mode does not have rgb array, Image creates one b
     * </p>
@@ -1003,6 +1039,9 @@ public class RgbImage implements IStringable, ITechRgbImage {
       flushReload();
       int index = getOffset() + getM() + x + (getScanLength() * (getN() + y));
       checkModeRgb();
+      if (isPremultiplied()) {
+         return BlendKernel.unpremultiply(rgbData[index]);
+      }
       return rgbData[index];
    }
 
@@ -1036,7 +1075,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
    }
 
    /**
-    * A new fresh arry is created. Data is copied into.
+    * A new fresh arry is created. Straight data is copied into.
     * @param x
     * @param y
     * @param w
@@ -1071,6 +1110,9 @@ public class RgbImage implements IStringable, ITechRgbImage {
             count++;
          }
       }
+      if (isPremultiplied()) {
+         BlendKernel.unpremultiply(rgb, 0, newWidth, newWidth, newHeight);
+      }
       return rgb;
    }
 
@@ -1079,12 +1121,24 @@ public class RgbImage implements IStringable, ITechRgbImage {
    }
 
    /**
-    * Gets a clean cut array with the Image/Region inside
+    * Gets a clean cut array with the Image/Region inside in straight ARGB.
     * <br>
     * <br>
     * @return
     */
    public int[] getRgbCopy() {
+      return getRgbCopy(false);
+   }
+
+   /**
+    * Gets a clean cut array with the Image/Region inside
+    * <br>
+    * <br>
+    * Pixels are converted when the requested format is not the format of this image.
+    * @param isPremultiplied true for premultiplied ARGB, false for straight ARGB
+    * @return
+    */
+   public int[] getRgbCopy(boolean isPremultiplied) {
       //auto check load with getLen
       int len = getLength();
       int[] fullData = cache.createImageArray(len);
@@ -1104,6 +1158,13 @@ public class RgbImage implements IStringable, ITechRgbImage {
       } else {
          System.arraycopy(rgbData, offset, fullData, 0, getLength());
       }
+      if (isPremultiplied != isPremultiplied()) {
+         if (isPremultiplied) {
+            BlendKernel.premultiply(fullData, 0, len, len, 1);
+         } else {
+            BlendKernel.unpremultiply(fullData, 0, len, len, 1);
+         }
+      }
       return fullData;
    }
 
@@ -1122,6 +1183,9 @@ public class RgbImage implements IStringable, ITechRgbImage {
     * The flag {@link ITechRgbImage#FLAG_16_VIRGIN} is set to false
     * <br>
     * <br>
+    * Pixels are in the stored format. They are premultiplied when {@link RgbImage#isPremultiplied()}.
+    * Use {@link RgbImage#getRgbCopy(boolean)} for a given format.
+    * <br>
     * 
     * @return int array
     * @throws NullPointerException if not enough memory to host rgb array
@@ -1172,6 +1236,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
          flush();
          int[] rgb = TransformUtils.transform(getRgbData(), getWidth(), getHeight(), trans);
          img = cache.createImage(rgb, w, h);
+         img.setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, isPremultiplied());
       } else {
          //img = cache.createImage(w, h, 0);
          img = cache.createPrimitiveRgb(w, h, ColorUtils.FULLY_OPAQUE_BLACK);
@@ -1262,10 +1327,12 @@ public class RgbImage implements IStringable, ITechRgbImage {
       int index = off + m + x + (scan * (n + y));
       int minDest = scan - w;
 
-      //#debug
-      String msg = "x=" + x + " y=" + y + " w=" + w + " h=" + h + " off=" + off + " scan=" + scan + " m=" + m + " n=" + n;
-      //#debug
-      toDLog().pDraw(msg, this, RgbImage.class, "isAreaColored", ITechLvl.LVL_05_FINE, true);
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_7_IMAGE)) {
+         String msg = "x=" + x + " y=" + y + " w=" + w + " h=" + h + " off=" + off + " scan=" + scan + " m=" + m + " n=" + n;
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_7_IMAGE, msg, this, RgbImage.class, "isAreaColored", ITechLvl.LVL_05_FINE, true);
+      }
+      //#enddebug
 
       for (int i = 0; i < h; i++) {
          for (int j = 0; j < w; j++) {
@@ -1315,6 +1382,14 @@ public class RgbImage implements IStringable, ITechRgbImage {
       return this == cache.NULL_IMAGE;
    }
 
+   /**
+    * True when the rgb array stores premultiplied ARGB. Read on the root image.
+    * @return
+    */
+   public boolean isPremultiplied() {
+      return getRootImage().hasFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED);
+   }
+
    public boolean isRegion() {
       return hasFlag(ITechRgbImage.FLAG_01_REGION);
    }
@@ -1357,11 +1432,11 @@ public class RgbImage implements IStringable, ITechRgbImage {
          //try to reload the image data if possible
          cache.reload(this);
          //#debug
-         toDLog().pInit("Asking RgbCache to load Image Data", this, RgbImage.class, "reload");
+         drc.getDrwLog().pInit(ITechDrwLog.DRWLOG_7_IMAGE, "Asking RgbCache to load Image Data", this, RgbImage.class, "reload");
          if (img == null && rgbData == null) {
             //TODO how to smoothly go out of htis?
             //#debug
-            toDLog().pInit("Both Image and RGB array are null", this, RgbImage.class, "reload");
+            drc.getDrwLog().pInit(ITechDrwLog.DRWLOG_7_IMAGE, "Both Image and RGB array are null", this, RgbImage.class, "reload");
             throw new IllegalArgumentException("No Data for Image");
          }
       }
@@ -1386,7 +1461,38 @@ public class RgbImage implements IStringable, ITechRgbImage {
    }
 
    /**
-    * At X,Y, set a rectangle of data, reading from pixels
+    * Converts the pixels of the rgb array in place to premultiplied or straight ARGB. {@link ITechRgbImage#FLAG_21_PREMULTIPLIED}
+    * <br>
+    * <br>
+    * Premultiplied pixels make compositing of translucent layers cheaper,
+    * see {@link BlendKernel}, and bilinear sampling does not bleed the color of transparent pixels.
+    * <br>
+    * Pixels going to the host, {@link RgbImage#getImage()}, {@link RgbImage#getRgbCopy()} and {@link RgbImage#getPixel(int, int)}
+    * are straight. The image is switched to rgb mode.
+    * <br>
+    * Switching back to primitive mode converts the pixels to straight.
+    * @param isPremultiplied
+    * @throws IllegalArgumentException when the image is a region. Regions share the format of their root.
+    */
+   public void setPremultiplied(boolean isPremultiplied) {
+      if (isRegion()) {
+         throw new IllegalArgumentException("region of " + getRootImage().getName());
+      }
+      if (isPremultiplied == hasFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED) || isNullImage()) {
+         return;
+      }
+      int[] data = getRgbData();
+      int w = getWidth();
+      if (isPremultiplied) {
+         BlendKernel.premultiply(data, getOffset(), w, w, getHeight());
+      } else {
+         BlendKernel.unpremultiply(data, getOffset(), w, w, getHeight());
+      }
+      setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, isPremultiplied);
+   }
+
+   /**
+    * At X,Y, set a rectangle of data, reading from straight pixels
     * @param x
     * @param y
     * @param width
@@ -1396,9 +1502,10 @@ public class RgbImage implements IStringable, ITechRgbImage {
    public void setRGB(int x, int y, int width, int height, int[] pixels) {
       int index = x + y * getWidth();
       int count = 0;
+      boolean isPre = isPremultiplied();
       for (int i = 0; i < height; i++) {
          for (int k = 0; k < width; k++) {
-            rgbData[index] = pixels[count];
+            rgbData[index] = isPre ? BlendKernel.premultiply(pixels[count]) : pixels[count];
             index++;
             count++;
          }
@@ -1715,6 +1822,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
       toStringFlag(sb, ITechRgbImage.FLAG_06_WRITE_LOCK, " WriteLock");
       toStringFlag(sb, ITechRgbImage.FLAG_07_READ_LOCK, " ReadLock");
       toStringFlag(sb, ITechRgbImage.FLAG_16_VIRGIN, " Virgin");
+      toStringFlag(sb, ITechRgbImage.FLAG_21_PREMULTIPLIED, " Premultiplied");
       if (graphicsX != null) {
          sb.append(" g=" + ToStringStaticDrawx.toStringPaintMode(graphicsX.getPaintMode()));
       }
@@ -1891,6 +1999,7 @@ public class RgbImage implements IStringable, ITechRgbImage {
       toStringFlag(sb, ITechRgbImage.FLAG_06_WRITE_LOCK, " WriteLock");
       toStringFlag(sb, ITechRgbImage.FLAG_07_READ_LOCK, " ReadLock");
       toStringFlag(sb, ITechRgbImage.FLAG_16_VIRGIN, " Virgin");
+      toStringFlag(sb, ITechRgbImage.FLAG_21_PREMULTIPLIED, " Premultiplied");
       sb.nl();
       if (sourceLocator != null) {
          sb.append(" ");
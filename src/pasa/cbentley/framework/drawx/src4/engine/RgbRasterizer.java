@@ -0,0 +1,444 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.engine;
+
+import pasa.cbentley.byteobjects.src4.objects.color.BlendOp;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.tech.ITechBlendKernel;
+import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
+
+/**
+ * Pure java rasterizer of {@link GraphicsX} primitives in {@link ITechGraphicsX#MODE_2_RGB_IMAGE} and {@link ITechGraphicsX#MODE_3_RGB}.
+ * <br>
+ * <br>
+ * Primitives are written straight into the int[] array of the {@link RgbImage}.
+ * No platform image layer, no read back of the layer and no pseudo transparent color.
+ * <br>
+ * <br>
+ * Coordinates are translated and clipped by the caller with {@link RgbRasterizer#setTarget(int[], int, int, int, int, int, int, int, int)}.
+ * <br>
+ * Each covered pixel is blended with the color using {@link BlendOp#blendPixel(int, int)}. When the color is opaque and the {@link BlendOp}
+ * is a plain {@link ITechBlendKernel#KERNEL_3_SRC_OVER}, pixels are simply set.
+ * <br>
+ * <br>
+ * A pixel is covered when its center is inside the shape. Computations are done with integers in doubled coordinates so that pixel centers are integers.
+ * Results do not depend on the host.
+ * <li>{@link RgbRasterizer#fillRect(int, int, int, int)}
+ * <li>{@link RgbRasterizer#drawLine(int, int, int, int)} Bresenham, both ends included
+ * <li>{@link RgbRasterizer#fillTriangle(int, int, int, int, int, int)}
+ * <li>{@link RgbRasterizer#fillRoundRect(int, int, int, int, int, int)}
+ * <li>{@link RgbRasterizer#fillArc(int, int, int, int, int, int)} angles relative to the bounding rectangle, like MIDP
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class RgbRasterizer extends ObjectDrw {
+
+   /**
+    * Fixed point scale of the arc direction vectors
+    */
+   private static final int ARC_ONE = 1 << 16;
+
+   private int              clipX1;
+
+   private int              clipX2;
+
+   private int              clipY1;
+
+   private int              clipY2;
+
+   private int              color;
+
+   private int[]            data;
+
+   /**
+    * True when pixels are set with the color without blending
+    */
+   private boolean          isCopy;
+
+   /**
+    * True when the {@link BlendOp} is a plain {@link ITechBlendKernel#KERNEL_3_SRC_OVER}
+    */
+   private boolean          isSrcOver;
+
+   private int              offset;
+
+   private BlendOp          op;
+
+   private int              scan;
+
+   public RgbRasterizer(DrwCtx drc) {
+      super(drc);
+   }
+
+   private long ceilDiv(long a, long b) {
+      return -floorDiv(-a, b);
+   }
+
+   /**
+    * Draws a line with both ends included.
+    * @param x1
+    * @param y1
+    * @param x2
+    * @param y2
+    */
+   public void drawLine(int x1, int y1, int x2, int y2) {
+      if (y1 == y2) {
+         span(y1, Math.min(x1, x2), Math.max(x1, x2) + 1);
+         return;
+      }
+      int dx = Math.abs(x2 - x1);
+      int dy = -Math.abs(y2 - y1);
+      int sx = x1 < x2 ? 1 : -1;
+      int sy = y1 < y2 ? 1 : -1;
+      int err = dx + dy;
+      int x = x1;
+      int y = y1;
+      while (true) {
+         pixel(x, y);
+         if (x == x2 && y == y2) {
+            break;
+         }
+         int e2 = 2 * err;
+         if (e2 >= dy) {
+            err += dy;
+            x += sx;
+         }
+         if (e2 <= dx) {
+            err += dx;
+            y += sy;
+         }
+      }
+   }
+
+   /**
+    * Fills the elliptical arc inscribed in the rectangle x,y,w,h.
+    * <br>
+    * 0 degree is 3 o'clock. Positive angles are counter clockwise. 45 degrees is always the direction of the top right corner.
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param startAngle
+    * @param arcAngle
+    */
+   public void fillArc(int x, int y, int w, int h, int startAngle, int arcAngle) {
+      if (w <= 0 || h <= 0 || arcAngle == 0) {
+         return;
+      }
+      boolean isFull = arcAngle >= 360 || arcAngle <= -360;
+      if (arcAngle < 0) {
+         startAngle += arcAngle;
+         arcAngle = -arcAngle;
+      }
+      startAngle %= 360;
+      if (startAngle < 0) {
+         startAngle += 360;
+      }
+      double rs = Math.toRadians(startAngle);
+      double re = Math.toRadians(startAngle + arcAngle);
+      long sx = (long) Math.floor(Math.cos(rs) * ARC_ONE + 0.5);
+      long sy = (long) Math.floor(Math.sin(rs) * ARC_ONE + 0.5);
+      long ex = (long) Math.floor(Math.cos(re) * ARC_ONE + 0.5);
+      long ey = (long) Math.floor(Math.sin(re) * ARC_ONE + 0.5);
+
+      int cx2 = x + x + w;
+      int cy2 = y + y + h;
+      long ww = (long) w * w;
+      long hh = (long) h * h;
+      int yStart = Math.max(y, clipY1);
+      int yEnd = Math.min(y + h, clipY2);
+      for (int py = yStart; py < yEnd; py++) {
+         long dy = py + py + 1 - cy2;
+         //dx*dx*hh + dy*dy*ww <= ww*hh
+         long rem = ww * hh - dy * dy * ww;
+         if (rem < 0) {
+            continue;
+         }
+         long dxMax = (long) Math.sqrt((double) rem / hh);
+         while (dxMax * dxMax * hh > rem) {
+            dxMax--;
+         }
+         while ((dxMax + 1) * (dxMax + 1) * hh <= rem) {
+            dxMax++;
+         }
+         //pixels with |2px + 1 - cx2| <= dxMax
+         int pxStart = (int) ceilDiv(cx2 - dxMax - 1, 2);
+         int pxEnd = (int) floorDiv(cx2 + dxMax - 1, 2) + 1;
+         if (isFull) {
+            span(py, pxStart, pxEnd);
+            continue;
+         }
+         int xs = Math.max(pxStart, clipX1);
+         int xe = Math.min(pxEnd, clipX2);
+         for (int px = xs; px < xe; px++) {
+            //vector in the square space of the bounding rectangle, y axis up
+            long vx = (long) (px + px + 1 - cx2) * h;
+            long vy = -dy * w;
+            if (isInsideSector(vx, vy, sx, sy, ex, ey, arcAngle)) {
+               pixel(px, py);
+            }
+         }
+      }
+   }
+
+   /**
+    * Fills pixels [x,x+w[ x [y,y+h[
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    */
+   public void fillRect(int x, int y, int w, int h) {
+      if (w <= 0 || h <= 0) {
+         return;
+      }
+      int yStart = Math.max(y, clipY1);
+      int yEnd = Math.min(y + h, clipY2);
+      for (int py = yStart; py < yEnd; py++) {
+         span(py, x, x + w);
+      }
+   }
+
+   /**
+    * Fills the rectangle with corners rounded by ellipses of size arcw x arch.
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param arcw
+    * @param arch
+    */
+   public void fillRoundRect(int x, int y, int w, int h, int arcw, int arch) {
+      if (w <= 0 || h <= 0) {
+         return;
+      }
+      int aw = Math.min(arcw, w);
+      int ah = Math.min(arch, h);
+      if (aw <= 0 || ah <= 0) {
+         fillRect(x, y, w, h);
+         return;
+      }
+      int yStart = Math.max(y, clipY1);
+      int yEnd = Math.min(y + h, clipY2);
+      for (int py = yStart; py < yEnd; py++) {
+         int cy2 = py + py + 1;
+         int ey = 0;
+         if (cy2 < y + y + ah) {
+            ey = cy2 - (y + y + ah);
+         } else if (cy2 > 2 * (y + h) - ah) {
+            ey = cy2 - (2 * (y + h) - ah);
+         }
+         int inset = 0;
+         if (ey != 0) {
+            //pixels excluded on the left. same number on the right by symmetry
+            int maxInset = (w + 1) / 2;
+            while (inset < maxInset) {
+               int ex = (x + inset) * 2 + 1 - (x + x + aw);
+               if (ex >= 0 || (long) ex * ex * ah * ah + (long) ey * ey * aw * aw <= (long) aw * aw * ah * ah) {
+                  break;
+               }
+               inset++;
+            }
+         }
+         span(py, x + inset, x + w - inset);
+      }
+   }
+
+   /**
+    * Fills the pixels whose center is inside the triangle.
+    */
+   public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+      int minY = Math.min(y1, Math.min(y2, y3));
+      int maxY = Math.max(y1, Math.max(y2, y3));
+      int yStart = Math.max(minY, clipY1);
+      int yEnd = Math.min(maxY, clipY2);
+      for (int py = yStart; py < yEnd; py++) {
+         int yc = py + py + 1;
+         long left = Long.MAX_VALUE;
+         long right = Long.MIN_VALUE;
+         long t = triangleCross(x1, y1, x2, y2, yc);
+         if (t != Long.MIN_VALUE) {
+            left = Math.min(left, t);
+            right = Math.max(right, t);
+         }
+         t = triangleCross(x2, y2, x3, y3, yc);
+         if (t != Long.MIN_VALUE) {
+            left = Math.min(left, t);
+            right = Math.max(right, t);
+         }
+         t = triangleCross(x3, y3, x1, y1, yc);
+         if (t != Long.MIN_VALUE) {
+            left = Math.min(left, t);
+            right = Math.max(right, t);
+         }
+         if (right > left) {
+            span(py, (int) left, (int) right);
+         }
+      }
+   }
+
+   private long floorDiv(long a, long b) {
+      if (a >= 0) {
+         return a / b;
+      }
+      return -((-a + b - 1) / b);
+   }
+
+   /**
+    * Is the vector inside the arc from direction s to direction e, counter clockwise.
+    * @param arcAngle in ]0,360[
+    */
+   private boolean isInsideSector(long vx, long vy, long sx, long sy, long ex, long ey, int arcAngle) {
+      if (vx == 0 && vy == 0) {
+         return true;
+      }
+      long crossSV = sx * vy - sy * vx;
+      long crossVE = vx * ey - vy * ex;
+      if (arcAngle <= 180) {
+         return crossSV >= 0 && crossVE >= 0;
+      } else {
+         //outside only when strictly inside the complementary arc
+         return !(crossSV < 0 && crossVE < 0);
+      }
+   }
+
+   private void pixel(int x, int y) {
+      if (x < clipX1 || x >= clipX2 || y < clipY1 || y >= clipY2) {
+         return;
+      }
+      int index = offset + y * scan + x;
+      if (isCopy) {
+         data[index] = color;
+      } else {
+         data[index] = op.blendPixel(data[index], color);
+      }
+   }
+
+   /**
+    * Changes the color, keeping the {@link BlendOp} of {@link RgbRasterizer#setColor(int, BlendOp)}
+    * @param argb
+    */
+   public void setColor(int argb) {
+      this.color = argb;
+      isCopy = isSrcOver && (argb >>> 24) == 255;
+   }
+
+   /**
+    * Sets the color of the next primitives.
+    * @param argb color with its alpha
+    * @param op blending of the color with the pixels
+    */
+   public void setColor(int argb, BlendOp op) {
+      this.op = op;
+      BlendKernel kernel = drc.getBlendKernel();
+      isSrcOver = kernel.getKernelID(op, false, false) == ITechBlendKernel.KERNEL_3_SRC_OVER;
+      setColor(argb);
+   }
+
+   /**
+    * Sets the pixel array and the clip of the next primitives.
+    * @param data
+    * @param offset index of pixel 0,0
+    * @param scan
+    * @param w width of the pixel area
+    * @param h height of the pixel area
+    * @param clipX
+    * @param clipY
+    * @param clipW
+    * @param clipH
+    */
+   public void setTarget(int[] data, int offset, int scan, int w, int h, int clipX, int clipY, int clipW, int clipH) {
+      this.data = data;
+      this.offset = offset;
+      this.scan = scan;
+      clipX1 = Math.max(clipX, 0);
+      clipY1 = Math.max(clipY, 0);
+      clipX2 = Math.min(clipX + clipW, w);
+      clipY2 = Math.min(clipY + clipH, h);
+   }
+
+   /**
+    * Covers pixels [xStart,xEnd[ of row y
+    */
+   private void span(int y, int xStart, int xEnd) {
+      if (y < clipY1 || y >= clipY2) {
+         return;
+      }
+      if (xStart < clipX1) {
+         xStart = clipX1;
+      }
+      if (xEnd > clipX2) {
+         xEnd = clipX2;
+      }
+      if (xEnd <= xStart) {
+         return;
+      }
+      int index = offset + y * scan + xStart;
+      int end = index + xEnd - xStart;
+      if (isCopy) {
+         for (int i = index; i < end; i++) {
+            data[i] = color;
+         }
+      } else {
+         for (int i = index; i < end; i++) {
+            data[i] = op.blendPixel(data[i], color);
+         }
+      }
+   }
+
+   /**
+    * First pixel of row yc whose center is right of the edge, if the row crosses the edge.
+    * <br>
+    * Edges are half open on y so that a vertex row is counted once.
+    * @param yc doubled y of the row center
+    * @return {@link Long#MIN_VALUE} if the row does not cross the edge
+    */
+   private long triangleCross(int xa, int ya, int xb, int yb, int yc) {
+      if (ya == yb) {
+         return Long.MIN_VALUE;
+      }
+      if (ya > yb) {
+         int tx = xa;
+         xa = xb;
+         xb = tx;
+         int ty = ya;
+         ya = yb;
+         yb = ty;
+      }
+      long ya2 = ya + ya;
+      long yb2 = yb + yb;
+      if (yc < ya2 || yc >= yb2) {
+         return Long.MIN_VALUE;
+      }
+      long dY = yb2 - ya2;
+      //doubled x of the crossing is xa2 + (yc - ya2) * dX / dY. first px with 2px + 1 >= crossing
+      long num = (xa + xa - 1L) * dY + (yc - ya2) * (xb + xb - xa - xa);
+      return ceilDiv(num, 2 * dY);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, RgbRasterizer.class, 380);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("isCopy", isCopy);
+      dc.appendVarWithSpace("clip", clipX1 + "," + clipY1 + " " + clipX2 + "," + clipY2);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, RgbRasterizer.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
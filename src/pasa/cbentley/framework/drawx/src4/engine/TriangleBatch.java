@@ -0,0 +1,115 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.engine;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+
+/**
+ * List of triangles, each with its own color, drawn at once with {@link GraphicsX#fillTriangles(TriangleBatch)}.
+ * <br>
+ * <br>
+ * Tessellation figures draw thousands of small triangles. Recording them first avoids the per primitive set up of {@link GraphicsX}.
+ * <br>
+ * Triangles are drawn in the order they were added. Colors are set colors, as given to {@link GraphicsX#setColor(int)}.
+ * <br>
+ * <br>
+ * Arrays grow as needed and are kept by {@link TriangleBatch#clear()}. Use {@link GraphicsX#getTriangleBatch()} to reuse the batch of a {@link GraphicsX}.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class TriangleBatch extends ObjectDrw {
+
+   private int[] colors;
+
+   private int   count;
+
+   /**
+    * x1,y1,x2,y2,x3,y3 for each triangle
+    */
+   private int[] vertices;
+
+   public TriangleBatch(DrwCtx drc) {
+      this(drc, 16);
+   }
+
+   /**
+    *
+    * @param drc
+    * @param capacity initial number of triangles
+    */
+   public TriangleBatch(DrwCtx drc, int capacity) {
+      super(drc);
+      if (capacity < 1) {
+         capacity = 1;
+      }
+      colors = new int[capacity];
+      vertices = new int[capacity * 6];
+   }
+
+   public void addTriangle(int x1, int y1, int x2, int y2, int x3, int y3, int color) {
+      if (count == colors.length) {
+         int add = colors.length;
+         colors = drc.getMem().increaseCapacity(colors, add);
+         vertices = drc.getMem().increaseCapacity(vertices, add * 6);
+      }
+      int index = count * 6;
+      vertices[index] = x1;
+      vertices[index + 1] = y1;
+      vertices[index + 2] = x2;
+      vertices[index + 3] = y2;
+      vertices[index + 4] = x3;
+      vertices[index + 5] = y3;
+      colors[count] = color;
+      count++;
+   }
+
+   public void clear() {
+      count = 0;
+   }
+
+   /**
+    * Set colors of the triangles. Valid up to {@link TriangleBatch#getSize()}
+    * @return
+    */
+   public int[] getColors() {
+      return colors;
+   }
+
+   public int getSize() {
+      return count;
+   }
+
+   /**
+    * 6 ints per triangle. Valid up to 6 * {@link TriangleBatch#getSize()}
+    * @return
+    */
+   public int[] getVertices() {
+      return vertices;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, TriangleBatch.class, 90);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("count", count);
+      dc.appendVarWithSpace("capacity", colors.length);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, TriangleBatch.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,317 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+
+/**
+ * Downscales ARGB int[] pixels by averaging the area of source pixels covered by each output pixel.
+ * <br>
+ * <br>
+ * Source rows are read once, in order. Each source row is first reduced horizontally, then added to the accumulator of the output row.
+ * A source pixel partially covered by two output pixels gives its share to each. Weights are integers:
+ * a source pixel is newWidth units wide and an output pixel is srcWidth units wide, same for heights.
+ * <br>
+ * Colors are weighted by their alpha so that transparent pixels do not bleed their color.
+ * Premultiplied pixels, see {@link AreaAverageScaler#setPremultiplied(boolean)}, are already weighted and all channels are averaged alike.
+ * <br>
+ * <br>
+ * With halving, the image is first reduced by 2x2 boxes while it stays at least twice the new size, like mip maps.
+ * Each halving reads the pixels in order with fixed weights. The last column and row of an odd size are dropped.
+ * The area average does the remaining reduction.
+ * <br>
+ * <br>
+ * New sizes must not be bigger than the source sizes.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class AreaAverageScaler extends ObjectDrw {
+
+   /**
+    * Source and destination pixels are premultiplied
+    */
+   private boolean isPremultiplied;
+
+   public AreaAverageScaler(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Averages the areas of src into a new array of newWidth x newHeight
+    * @param src
+    * @param offset
+    * @param scan
+    * @param srcWidth
+    * @param srcHeight
+    * @param newWidth
+    * @param newHeight
+    * @return
+    */
+   public int[] areaAverage(int[] src, int offset, int scan, int srcWidth, int srcHeight, int newWidth, int newHeight) {
+      checkSizes(srcWidth, srcHeight, newWidth, newHeight);
+      int[] dst = drc.getMem().createIntArray(newWidth * newHeight);
+      int len = newWidth * 4;
+      long[] hacc = new long[len];
+      long[] vacc = new long[len];
+      long total = (long) srcWidth * (long) srcHeight;
+      int oy = 0;
+      //end of the current output row, in vertical units
+      int oyEnd = srcHeight;
+      for (int sy = 0; sy < srcHeight; sy++) {
+         reduceRow(src, offset + sy * scan, srcWidth, newWidth, hacc);
+         int syStart = sy * newHeight;
+         int syEnd = syStart + newHeight;
+         if (syEnd <= oyEnd) {
+            addRow(vacc, hacc, newHeight, len);
+            if (syEnd == oyEnd) {
+               writeRow(dst, oy * newWidth, vacc, total, newWidth);
+               oy++;
+               oyEnd += srcHeight;
+            }
+         } else {
+            //source row is shared by 2 output rows
+            int w1 = oyEnd - syStart;
+            addRow(vacc, hacc, w1, len);
+            writeRow(dst, oy * newWidth, vacc, total, newWidth);
+            oy++;
+            oyEnd += srcHeight;
+            addRow(vacc, hacc, newHeight - w1, len);
+         }
+      }
+      return dst;
+   }
+
+   private void addRow(long[] vacc, long[] hacc, int weight, int len) {
+      for (int i = 0; i < len; i++) {
+         vacc[i] += hacc[i] * weight;
+      }
+   }
+
+   private void checkSizes(int srcWidth, int srcHeight, int newWidth, int newHeight) {
+      if (newWidth <= 0 || newHeight <= 0 || newWidth > srcWidth || newHeight > srcHeight) {
+         throw new IllegalArgumentException(srcWidth + "x" + srcHeight + " to " + newWidth + "x" + newHeight);
+      }
+   }
+
+   /**
+    * Halves src by 2x2 boxes. The last column and row of odd sizes are dropped
+    * @param src
+    * @param offset
+    * @param scan
+    * @param w
+    * @param h
+    * @return w/2 x h/2 pixels
+    */
+   public int[] halve(int[] src, int offset, int scan, int w, int h) {
+      int nw = w / 2;
+      int nh = h / 2;
+      int[] dst = drc.getMem().createIntArray(nw * nh);
+      int di = 0;
+      for (int y = 0; y < nh; y++) {
+         int i0 = offset + (y * 2) * scan;
+         int i1 = i0 + scan;
+         for (int x = 0; x < nw; x++) {
+            int p0 = src[i0++];
+            int p1 = src[i0++];
+            int p2 = src[i1++];
+            int p3 = src[i1++];
+            if (isPremultiplied) {
+               dst[di++] = average4Premultiplied(p0, p1, p2, p3);
+            } else {
+               dst[di++] = average4(p0, p1, p2, p3);
+            }
+         }
+      }
+      return dst;
+   }
+
+   private static int average4(int p0, int p1, int p2, int p3) {
+      if ((p0 & p1 & p2 & p3) >>> 24 == 255) {
+         //opaque. plain average per channel
+         int rb = (p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF) + (p3 & 0xFF00FF) + 0x20002;
+         int g = (p0 & 0xFF00) + (p1 & 0xFF00) + (p2 & 0xFF00) + (p3 & 0xFF00) + 0x200;
+         return 0xFF000000 | ((rb >> 2) & 0xFF00FF) | ((g >> 2) & 0xFF00);
+      }
+      int a0 = p0 >>> 24;
+      int a1 = p1 >>> 24;
+      int a2 = p2 >>> 24;
+      int a3 = p3 >>> 24;
+      int sa = a0 + a1 + a2 + a3;
+      if (sa == 0) {
+         return 0;
+      }
+      int half = sa >> 1;
+      int r = (a0 * ((p0 >> 16) & 0xFF) + a1 * ((p1 >> 16) & 0xFF) + a2 * ((p2 >> 16) & 0xFF) + a3 * ((p3 >> 16) & 0xFF) + half) / sa;
+      int g = (a0 * ((p0 >> 8) & 0xFF) + a1 * ((p1 >> 8) & 0xFF) + a2 * ((p2 >> 8) & 0xFF) + a3 * ((p3 >> 8) & 0xFF) + half) / sa;
+      int b = (a0 * (p0 & 0xFF) + a1 * (p1 & 0xFF) + a2 * (p2 & 0xFF) + a3 * (p3 & 0xFF) + half) / sa;
+      int a = (sa + 2) >> 2;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   /**
+    * Plain average of each channel
+    */
+   private static int average4Premultiplied(int p0, int p1, int p2, int p3) {
+      int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+      int rb = (p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF) + (p3 & 0xFF00FF) + 0x20002;
+      int g = (p0 & 0xFF00) + (p1 & 0xFF00) + (p2 & 0xFF00) + (p3 & 0xFF00) + 0x200;
+      return (a << 24) | ((rb >> 2) & 0xFF00FF) | ((g >> 2) & 0xFF00);
+   }
+
+   /**
+    * Reduces the source row of srcWidth pixels into newWidth sums of alpha, alpha*red, alpha*green and alpha*blue.
+    * Sums of alpha, red, green and blue when premultiplied.
+    * <br>
+    * Weights of the sums add up to srcWidth for each output pixel.
+    * @param src
+    * @param index
+    * @param srcWidth
+    * @param newWidth
+    * @param hacc
+    */
+   private void reduceRow(int[] src, int index, int srcWidth, int newWidth, long[] hacc) {
+      for (int i = 0; i < hacc.length; i++) {
+         hacc[i] = 0;
+      }
+      int ai = 0;
+      int oxEnd = srcWidth;
+      for (int sx = 0; sx < srcWidth; sx++) {
+         int p = src[index + sx];
+         int a = p >>> 24;
+         int ar = (p >> 16) & 0xFF;
+         int ag = (p >> 8) & 0xFF;
+         int ab = p & 0xFF;
+         if (!isPremultiplied) {
+            ar *= a;
+            ag *= a;
+            ab *= a;
+         }
+         int sxStart = sx * newWidth;
+         int sxEnd = sxStart + newWidth;
+         if (sxEnd <= oxEnd) {
+            hacc[ai] += a * newWidth;
+            hacc[ai + 1] += (long) ar * newWidth;
+            hacc[ai + 2] += (long) ag * newWidth;
+            hacc[ai + 3] += (long) ab * newWidth;
+            if (sxEnd == oxEnd) {
+               ai += 4;
+               oxEnd += srcWidth;
+            }
+         } else {
+            int w1 = oxEnd - sxStart;
+            int w2 = newWidth - w1;
+            hacc[ai] += a * w1;
+            hacc[ai + 1] += (long) ar * w1;
+            hacc[ai + 2] += (long) ag * w1;
+            hacc[ai + 3] += (long) ab * w1;
+            ai += 4;
+            oxEnd += srcWidth;
+            hacc[ai] += a * w2;
+            hacc[ai + 1] += (long) ar * w2;
+            hacc[ai + 2] += (long) ag * w2;
+            hacc[ai + 3] += (long) ab * w2;
+         }
+      }
+   }
+
+   /**
+    * Downscales src to newWidth x newHeight.
+    * @param src
+    * @param offset index of the first pixel
+    * @param scan scanline length
+    * @param srcWidth
+    * @param srcHeight
+    * @param newWidth smaller or equal to srcWidth
+    * @param newHeight smaller or equal to srcHeight
+    * @param isHalving true to halve the image first while it is at least twice the new size
+    * @return a new array of newWidth x newHeight pixels
+    * @throws IllegalArgumentException when a new size is bigger than the source size
+    */
+   public int[] scale(int[] src, int offset, int scan, int srcWidth, int srcHeight, int newWidth, int newHeight, boolean isHalving) {
+      checkSizes(srcWidth, srcHeight, newWidth, newHeight);
+      if (isHalving && srcWidth >= newWidth * 2 && srcHeight >= newHeight * 2) {
+         while (srcWidth >= newWidth * 2 && srcHeight >= newHeight * 2) {
+            src = halve(src, offset, scan, srcWidth, srcHeight);
+            srcWidth = srcWidth / 2;
+            srcHeight = srcHeight / 2;
+            offset = 0;
+            scan = srcWidth;
+         }
+         if (srcWidth == newWidth && srcHeight == newHeight) {
+            //halved to the exact size
+            return src;
+         }
+      }
+      return areaAverage(src, offset, scan, srcWidth, srcHeight, newWidth, newHeight);
+   }
+
+   /**
+    * When true, src pixels are premultiplied and the returned pixels are premultiplied. No conversion is done.
+    * @param isPremultiplied
+    */
+   public void setPremultiplied(boolean isPremultiplied) {
+      this.isPremultiplied = isPremultiplied;
+   }
+
+   /**
+    * Divides the accumulated row and writes it. Accumulator is cleared
+    * @param dst
+    * @param index
+    * @param vacc
+    * @param total sum of the weights of an output pixel
+    * @param newWidth
+    */
+   private void writeRow(int[] dst, int index, long[] vacc, long total, int newWidth) {
+      int ai = 0;
+      long halfTotal = total >> 1;
+      for (int x = 0; x < newWidth; x++) {
+         long sa = vacc[ai];
+         int argb = 0;
+         if (isPremultiplied) {
+            int a = (int) ((sa + halfTotal) / total);
+            int r = (int) ((vacc[ai + 1] + halfTotal) / total);
+            int g = (int) ((vacc[ai + 2] + halfTotal) / total);
+            int b = (int) ((vacc[ai + 3] + halfTotal) / total);
+            argb = (a << 24) | (r << 16) | (g << 8) | b;
+         } else if (sa != 0) {
+            long half = sa >> 1;
+            int a = (int) ((sa + halfTotal) / total);
+            int r = (int) ((vacc[ai + 1] + half) / sa);
+            int g = (int) ((vacc[ai + 2] + half) / sa);
+            int b = (int) ((vacc[ai + 3] + half) / sa);
+            argb = (a << 24) | (r << 16) | (g << 8) | b;
+         }
+         dst[index + x] = argb;
+         vacc[ai] = 0;
+         vacc[ai + 1] = 0;
+         vacc[ai + 2] = 0;
+         vacc[ai + 3] = 0;
+         ai += 4;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, AreaAverageScaler.class, 250);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("isPremultiplied", isPremultiplied);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, AreaAverageScaler.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,499 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories;
+
+import java.util.Hashtable;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.memory.IMemFreeable;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.IBOTypesDrawX;
+import pasa.cbentley.framework.drawx.src4.ctx.ITechCtxSettingsDrwx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOArtifact;
+import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOFigTesson;
+import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOFigure;
+import pasa.cbentley.framework.drawx.src4.tech.ITechFigure;
+import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
+
+/**
+ * Bounded LRU cache of figure images created by {@link FigureOperator#getFigImage(ByteObject, int, int, boolean, boolean, int)}.
+ * <br>
+ * <br>
+ * The key is a structural hash of the figure {@link ByteObject} bytes, sub objects included, plus the w,h and background color of the image.
+ * Two different {@link ByteObject} instances with the same definition share the same image.
+ * <br>
+ * <br>
+ * The cache is enabled with {@link ITechCtxSettingsDrwx#CTX_DRW_FLAG_2_FIGURE_CACHE}.
+ * <br>
+ * Images are budgeted in bytes, 4 bytes per pixel. When the budget is exceeded, the least recently used images are disposed.
+ * <br>
+ * Images returned by {@link FigureCache#getFigImage(ByteObject, int, int, int)} are pinned until {@link FigureCache#releaseFigImage(RgbImage)}.
+ * An evicted image that is pinned leaves the cache at once but is disposed by the last release, so another thread may still draw it.
+ * The cache registers itself with {@link RgbCache#addMemFreeable(IMemFreeable)} so that {@link RgbCache#freeMemory()} empties it.
+ * <br>
+ * <br>
+ * Figures that are not cached:
+ * <li>{@link IBOFigure#FIG_FLAG_6_ANIMATED}
+ * <li>{@link IBOFigure#FIG_FLAGZ_5_NO_CACHE}
+ * <li>{@link ITechFigure#FIG_TYPE_09_PIXELS}
+ * <li>{@link ITechFigure#FIG_TYPE_35_TESSON} without a seed
+ * <li>Figures with an artifact without a seed
+ * <br>
+ * The same rules apply to the sub figures.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class FigureCache extends ObjectDrw implements IMemFreeable {
+
+   /**
+    * Entry of the LRU list.
+    */
+   private class FigEntry {
+
+      int      bgColor;
+
+      int      bytes;
+
+      long     figHash;
+
+      int      h;
+
+      RgbImage img;
+
+      Long     key;
+
+      FigEntry next;
+
+      FigEntry prev;
+
+      /**
+       * Removed from the cache while pinned. Disposed by the last release.
+       */
+      boolean  isRemoved;
+
+      /**
+       * Number of pins
+       */
+      int      users;
+
+      int      w;
+   }
+
+   public static final int        DEFAULT_BUDGET_BYTES = 1024 * 1024;
+
+   private static final long      FNV_OFFSET           = 0xcbf29ce484222325L;
+
+   private static final long      FNV_PRIME            = 0x100000001b3L;
+
+   private int                    budgetBytes          = DEFAULT_BUDGET_BYTES;
+
+   private int                    bytesUsed;
+
+   private Hashtable              entries              = new Hashtable();
+
+   private final FigureOperator   figureOperator;
+
+   /**
+    * Most recently used
+    */
+   private FigEntry               head;
+
+   private boolean                isEnabled;
+
+   /**
+    * Pinned images to their entry
+    */
+   private Hashtable              pinned               = new Hashtable();
+
+   /**
+    * Threads painting a figure for the cache. Sub figures are part of the image and are not looked up.
+    * <br>
+    * Figures are painted outside the lock of the cache, so several threads may render at the same time.
+    */
+   private Hashtable              renderingThreads     = new Hashtable();
+
+   private int                    statEvict;
+
+   private int                    statHit;
+
+   private int                    statMiss;
+
+   /**
+    * Least recently used
+    */
+   private FigEntry               tail;
+
+   public FigureCache(DrwCtx drc, FigureOperator figureOperator) {
+      super(drc);
+      this.figureOperator = figureOperator;
+      drc.getCache().addMemFreeable(this);
+      applySettings(drc.getSettingsCtxDrw());
+   }
+
+   /**
+    * Reads {@link ITechCtxSettingsDrwx#CTX_DRW_FLAG_2_FIGURE_CACHE}. Disabling the cache empties it.
+    * @param settings
+    */
+   public synchronized void applySettings(ByteObject settings) {
+      isEnabled = settings.hasFlag(ITechCtxSettingsDrwx.CTX_DRW_OFFSET_01_FLAG1, ITechCtxSettingsDrwx.CTX_DRW_FLAG_2_FIGURE_CACHE);
+      if (!isEnabled) {
+         clear();
+      }
+   }
+
+   /**
+    * Disposes all the cached images
+    */
+   public synchronized void clear() {
+      FigEntry e = head;
+      while (e != null) {
+         FigEntry next = e.next;
+         dispose(e);
+         e = next;
+      }
+      head = null;
+      tail = null;
+      entries.clear();
+      bytesUsed = 0;
+   }
+
+   public synchronized void freeMemory() {
+      clear();
+   }
+
+   public int getBudgetBytes() {
+      return budgetBytes;
+   }
+
+   public int getBytesUsed() {
+      return bytesUsed;
+   }
+
+   /**
+    * Returns the cached image of the figure in a w,h transparent image, creating it if needed.
+    * <br>
+    * The image is owned by the cache and must not be disposed or modified by the caller.
+    * It is pinned, the caller must call {@link FigureCache#releaseFigImage(RgbImage)} once drawn.
+    * <br>
+    * <br>
+    * The figure is painted without holding the lock of the cache, so figures drawing masks or other cached figures
+    * do not block other threads. When two threads paint the same figure, the first image published is kept.
+    *
+    * @param fig
+    * @param w
+    * @param h
+    * @param bgColor
+    * @return null when the figure cannot be cached. Caller draws the figure itself.
+    */
+   public RgbImage getFigImage(ByteObject fig, int w, int h, int bgColor) {
+      Thread thread = Thread.currentThread();
+      if (!isEnabled || renderingThreads.containsKey(thread)) {
+         return null;
+      }
+      int bytes = w * h * 4;
+      if (bytes > budgetBytes || bytes <= 0) {
+         return null;
+      }
+      long figHash = getStructuralHash(fig);
+      if (figHash == 0) {
+         return null;
+      }
+      long hk = figHash;
+      hk = (hk ^ w) * FNV_PRIME;
+      hk = (hk ^ h) * FNV_PRIME;
+      hk = (hk ^ bgColor) * FNV_PRIME;
+      Long key = new Long(hk);
+      RgbImage cached = getEntry(key, figHash, w, h, bgColor);
+      if (cached != null) {
+         return cached;
+      }
+      RgbImage img = null;
+      renderingThreads.put(thread, thread);
+      try {
+         img = figureOperator.getFigImage(fig, w, h, false, false, bgColor);
+      } finally {
+         renderingThreads.remove(thread);
+      }
+      return publish(key, figHash, w, h, bgColor, bytes, img);
+   }
+
+   /**
+    * Looks up the image of the key, counting a hit or a miss.
+    * @return null on a miss
+    */
+   private synchronized RgbImage getEntry(Long key, long figHash, int w, int h, int bgColor) {
+      FigEntry e = (FigEntry) entries.get(key);
+      if (e != null) {
+         if (e.figHash == figHash && e.w == w && e.h == h && e.bgColor == bgColor && isValid(e.img)) {
+            statHit++;
+            moveToHead(e);
+            return pin(e);
+         }
+         remove(e);
+      }
+      statMiss++;
+      return null;
+   }
+
+   /**
+    * Stores the image painted for the key, unless another thread published it first.
+    * @return the image in the cache
+    */
+   private synchronized RgbImage publish(Long key, long figHash, int w, int h, int bgColor, int bytes, RgbImage img) {
+      FigEntry e;
+      if (!isEnabled) {
+         //disabled while painting. the image is disposed when released
+         e = new FigEntry();
+         e.img = img;
+         e.isRemoved = true;
+         return pin(e);
+      }
+      e = (FigEntry) entries.get(key);
+      if (e != null) {
+         if (e.figHash == figHash && e.w == w && e.h == h && e.bgColor == bgColor && isValid(e.img)) {
+            img.dispose();
+            moveToHead(e);
+            return pin(e);
+         }
+         remove(e);
+      }
+      e = new FigEntry();
+      e.key = key;
+      e.figHash = figHash;
+      e.w = w;
+      e.h = h;
+      e.bgColor = bgColor;
+      e.img = img;
+      e.bytes = bytes;
+      entries.put(key, e);
+      addHead(e);
+      bytesUsed += bytes;
+      while (bytesUsed > budgetBytes && tail != e) {
+         statEvict++;
+         FigEntry lru = tail;
+         remove(lru);
+         dispose(lru);
+      }
+      return pin(e);
+   }
+
+   /**
+    * Hash of the definition of bo. Two {@link ByteObject}s with the same bytes and the same sub objects have the same hash.
+    * <br>
+    * Used as a cache key for images drawn from bo.
+    * @param bo
+    * <br>
+    * Does not lock the cache.
+    * @return 0 when bo or one of its sub figures draws different pixels between calls. See {@link FigureCache} for the rules.
+    */
+   public long getStructuralHash(ByteObject bo) {
+      boolean[] isVolatile = new boolean[1];
+      long hash = hash(FNV_OFFSET, bo, isVolatile);
+      if (isVolatile[0]) {
+         return 0;
+      }
+      if (hash == 0) {
+         hash = FNV_OFFSET;
+      }
+      return hash;
+   }
+
+   public int getStatEvict() {
+      return statEvict;
+   }
+
+   public int getStatHit() {
+      return statHit;
+   }
+
+   public int getStatMiss() {
+      return statMiss;
+   }
+
+   public boolean isEnabled() {
+      return isEnabled;
+   }
+
+   /**
+    * Sets the byte budget. Evicts least recently used images until the budget is met.
+    * @param budgetBytes
+    */
+   public synchronized void setBudgetBytes(int budgetBytes) {
+      this.budgetBytes = budgetBytes;
+      while (bytesUsed > budgetBytes && tail != null) {
+         statEvict++;
+         FigEntry lru = tail;
+         remove(lru);
+         dispose(lru);
+      }
+   }
+
+   /**
+    * Unpins an image returned by {@link FigureCache#getFigImage(ByteObject, int, int, int)}.
+    * Disposes it when it was evicted while pinned.
+    * @param img
+    */
+   public synchronized void releaseFigImage(RgbImage img) {
+      FigEntry e = (FigEntry) pinned.get(img);
+      if (e == null) {
+         return;
+      }
+      e.users--;
+      if (e.users == 0) {
+         pinned.remove(img);
+         if (e.isRemoved) {
+            e.img.dispose();
+         }
+      }
+   }
+
+   private void addHead(FigEntry e) {
+      e.prev = null;
+      e.next = head;
+      if (head != null) {
+         head.prev = e;
+      }
+      head = e;
+      if (tail == null) {
+         tail = e;
+      }
+   }
+
+   /**
+    * 64 bits FNV-1a hash of the bytes of bo and recursively of its sub objects.
+    * <br>
+    * @param hash
+    * @param bo
+    * @param isVolatile set to true when a figure draws non deterministic pixels
+    * @return
+    */
+   private long hash(long hash, ByteObject bo, boolean[] isVolatile) {
+      if (bo == null) {
+         return hash * FNV_PRIME;
+      }
+      int type = bo.getType();
+      if (type == IBOTypesDrawX.TYPE_DRWX_00_FIGURE) {
+         if (bo.hasFlag(IBOFigure.FIG__OFFSET_02_FLAG, IBOFigure.FIG_FLAG_6_ANIMATED) || bo.hasFlag(IBOFigure.FIG__OFFSET_07_FLAGZ1, IBOFigure.FIG_FLAGZ_5_NO_CACHE)) {
+            isVolatile[0] = true;
+         } else {
+            int figType = bo.get1(IBOFigure.FIG__OFFSET_01_TYPE1);
+            if (figType == ITechFigure.FIG_TYPE_09_PIXELS) {
+               isVolatile[0] = true;
+            } else if (figType == ITechFigure.FIG_TYPE_35_TESSON && !bo.hasFlag(IBOFigTesson.FIG_TESSON_OFFSET_1_FLAG, IBOFigTesson.FIG_TESSON_FLAG_2_USE_SEED)) {
+               isVolatile[0] = true;
+            }
+         }
+      } else if (type == IBOTypesDrawX.TYPE_DRWX_02_FIG_ARTIFACT) {
+         if (bo.get4(IBOArtifact.ARTIFACT_OFFSET_07_SEED4) == 0) {
+            isVolatile[0] = true;
+         }
+      }
+      if (isVolatile[0]) {
+         return hash;
+      }
+      byte[] data = bo.getByteObjectData();
+      int offset = bo.getByteObjectOffset();
+      int end = offset + bo.getLength();
+      for (int i = offset; i < end; i++) {
+         hash = (hash ^ (data[i] & 0xFF)) * FNV_PRIME;
+      }
+      ByteObject[] subs = bo.getSubs();
+      if (subs != null) {
+         hash = (hash ^ subs.length) * FNV_PRIME;
+         for (int i = 0; i < subs.length && !isVolatile[0]; i++) {
+            hash = hash(hash, subs[i], isVolatile);
+         }
+      }
+      return hash;
+   }
+
+   /**
+    * Disposes the image of an entry removed from the cache, or defers it to the last release when pinned
+    * @param e
+    */
+   private void dispose(FigEntry e) {
+      if (e.users == 0) {
+         e.img.dispose();
+      } else {
+         e.isRemoved = true;
+      }
+   }
+
+   private boolean isValid(RgbImage img) {
+      return !img.hasFlag(ITechRgbImage.FLAG_12_DISPOSED) && !img.hasFlag(ITechRgbImage.FLAG_10_NO_DATA);
+   }
+
+   private RgbImage pin(FigEntry e) {
+      if (e.users == 0) {
+         pinned.put(e.img, e);
+      }
+      e.users++;
+      return e.img;
+   }
+
+   private void moveToHead(FigEntry e) {
+      if (e != head) {
+         unlink(e);
+         addHead(e);
+      }
+   }
+
+   /**
+    * Removes the entry from the table and the list. The image is not disposed.
+    * @param e
+    */
+   private void remove(FigEntry e) {
+      unlink(e);
+      entries.remove(e.key);
+      bytesUsed -= e.bytes;
+   }
+
+   private void unlink(FigEntry e) {
+      if (e.prev != null) {
+         e.prev.next = e.next;
+      } else {
+         head = e.next;
+      }
+      if (e.next != null) {
+         e.next.prev = e.prev;
+      } else {
+         tail = e.prev;
+      }
+      e.prev = null;
+      e.next = null;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, FigureCache.class, 240);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("isEnabled", isEnabled);
+      dc.appendVarWithSpace("entries", entries.size());
+      dc.appendVarWithSpace("pinned", pinned.size());
+      dc.appendVarWithSpace("bytesUsed", bytesUsed);
+      dc.appendVarWithSpace("budgetBytes", budgetBytes);
+      dc.appendVarWithSpace("hit", statHit);
+      dc.appendVarWithSpace("miss", statMiss);
+      dc.appendVarWithSpace("evict", statEvict);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, FigureCache.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -4,6 +4,7 @@
  */
 package pasa.cbentley.framework.drawx.src4.factories;
 
+import java.util.Hashtable;
 import java.util.Random;
 
 import pasa.cbentley.byteobjects.src4.core.ByteObject;
@@ -21,10 +22,12 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
 import pasa.cbentley.framework.drawx.src4.ctx.BOModuleDrawx;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwMetrics;
 import pasa.cbentley.framework.drawx.src4.ctx.IBOTypesDrawX;
 import pasa.cbentley.framework.drawx.src4.ctx.ToStringStaticDrawx;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
 import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.factories.drawer.DrawerGradient;
 import pasa.cbentley.framework.drawx.src4.factories.drawer.DrawerString;
 import pasa.cbentley.framework.drawx.src4.factories.drawer.DrawerTriangle;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOArtifact;
@@ -46,6 +49,8 @@ import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOFigure;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.ITechArtifact;
 import pasa.cbentley.framework.drawx.src4.string.interfaces.IBOFigString;
 import pasa.cbentley.framework.drawx.src4.tech.ITechAnchor;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwLog;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwMetrics;
 import pasa.cbentley.framework.drawx.src4.tech.ITechFigure;
 import pasa.cbentley.framework.drawx.src4.tech.ITechMergeFigure;
 import pasa.cbentley.framework.drawx.src4.tech.ITechMergeFigureRect;
@@ -72,10 +77,22 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
 
    protected DrawerString   stringDrawer;
 
+   protected DrawerGradient drawerGradient;
+
+   protected FigureCache    figureCache;
+
+   /**
+    * Threads inside a timed {@link FigureOperator#paintFigure(GraphicsX, int, int, int, int, ByteObject)}.
+    * Sub figures are painted by the same thread and are not timed again.
+    */
+   private Hashtable        spanThreads = new Hashtable();
+
    public FigureOperator(DrwCtx drc) {
       super(drc);
       drawerTriangle = new DrawerTriangle(drc);
       stringDrawer = new DrawerString(drc);
+      drawerGradient = new DrawerGradient(drc);
+      figureCache = new FigureCache(drc, this);
    }
 
    public void addArtifact(ByteObject fig, ByteObject artifac) {
@@ -551,10 +568,25 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       int amplitude = p.get2(IBOFigEllipse.FIG_ELLIPSE_OFFSET_06_ANGLE_END2);
       int slip = p.get2(IBOFigEllipse.FIG_ELLIPSE_OFFSET_07_ANGLE_SLIP2);
       ColorIterator ci = drc.getColorFunctionFactory().getColorIterator(color, grad, gradSize);
+      int[] r = new int[4];
+      boolean isManyTypes = grad.hasFlag(IBOGradient.GRADIENT_OFFSET_04_FLAGX1, IBOGradient.GRADIENT_FLAGX_8_MANY_TYPES);
+      boolean isFullEllipse = amplitude >= 360 || amplitude <= -360;
+      if (!isManyTypes && isFullEllipse && getEllipseGradientStep(type, 0, x, y, w, h, r) && drawerGradient.isRasterizable(g)) {
+         //target is a RgbImage. each pixel is computed once
+         boolean isFillArea = grad.hasFlag(IBOGradient.GRADIENT_OFFSET_04_FLAGX1, IBOGradient.GRADIENT_FLAGX_1_FILL_AREA);
+         int baseColor = ci.getCurrentColor();
+         int[] steps = drawerGradient.createSteps(gradSize);
+         while ((count = ci.iteratePixelCount(g)) != -1) {
+            getEllipseGradientStep(type, count, x, y, w, h, r);
+            steps = drawerGradient.addStep(steps, r[0], r[1], r[2], r[3], ci.getCurrentColor());
+         }
+         drawerGradient.raster(g, x, y, w, h, DrawerGradient.SHAPE_1_ELLIPSE, 0, 0, steps, isEllipseGradientNested(type), isFillArea, baseColor);
+         return;
+      }
       fillArea(g, x, y, w, h, grad, ci);
 
       int[] types = new int[] { type };
-      if (grad.hasFlag(IBOGradient.GRADIENT_OFFSET_04_FLAGX1, IBOGradient.GRADIENT_FLAGX_8_MANY_TYPES)) {
+      if (isManyTypes) {
          ByteObject ar = grad.getSubAtIndex(type);
          types = boc.getLitteralIntOperator().getLitteralArray(ar);
       }
@@ -567,39 +599,6 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
          for (int i = 0; i < types.length; i++) {
             int mtype = types[i];
             switch (mtype) {
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_00_NORMAL:
-                  g.fiArc(x + count, y + count, w - count2, h - count2, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_01_HORIZ:
-                  g.fiArc(x, y + count, w, h - count2, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_02_VERT:
-                  g.fiArc(x + count, y, w - count2, h, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_03_TOP_FLAMME:
-                  g.fiArc(x + count, y, w - count2, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_04_BOT_FLAMME:
-                  g.fiArc(x + count, y + count, w - count2, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_05_LEFT_FLAMME:
-                  g.fiArc(x, y + count, w - count, h - count2, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_06_RIGHT_FLAMME:
-                  g.fiArc(x + count, y + count, w - count, h - count2, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_07_CLOCHE_TOP:
-                  g.fiArc(x, y, w, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_08_CLOCHE_BOT:
-                  g.fiArc(x, y + count, w, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_09_CLOCHE_LEFT:
-                  g.fiArc(x + count, y, w - count, h, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_10_CLOCHE_RIGHT:
-                  g.fiArc(x, y, w - count, h, start, amplitude);
-                  break;
                case ITechGradient.GRADIENT_TYPE_ELLIPSE_11_WATER_DROP_TOP:
                   g.fiArc(x + count, y - count, w - count2, h, start, amplitude);
                   break;
@@ -612,18 +611,6 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
                case ITechGradient.GRADIENT_TYPE_ELLIPSE_14_WATER_DROP_RIGHT:
                   g.fiArc(x + count, y + count, w, h - count2, start, amplitude);
                   break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_15_TOP_LEFT_BUBBLE:
-                  g.fiArc(x, y, w - count, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_16_TOP_RIGHT_BUBBLE:
-                  g.fiArc(x + count, y, w - count, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_17_BOT_LEFT_BUBBLE:
-                  g.fiArc(x, y + count, w - count, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_18_BOT_RIGHT_BUBBLE:
-                  g.fiArc(x + count, y + count, w - count, h - count, start, amplitude);
-                  break;
                case ITechGradient.GRADIENT_TYPE_ELLIPSE_19_TEST:
                   g.fiArc(x + count, y + count, w - count, h - count, start - count, amplitude);
                   break;
@@ -692,19 +679,10 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
                case ITechGradient.GRADIENT_TYPE_ELLIPSE_44_WATER_DROP_RIGHT:
                   g.fiArc(x + count, y + h / 2 - count, w - count2, h / 2 + count, start, amplitude);
                   break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_45_OBUS_TOP:
-                  g.fiArc(x, y, w, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_46_OBUS_BOT:
-                  g.fiArc(x, y + count, w, h - count, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_47_OBUS_LEFT:
-                  g.fiArc(x + count, y, w - count, h, start, amplitude);
-                  break;
-               case ITechGradient.GRADIENT_TYPE_ELLIPSE_48_OBUS_RIGHT:
-                  g.fiArc(x, y, w - count, h, start, amplitude);
-                  break;
                default:
+                  if (getEllipseGradientStep(mtype, count, x, y, w, h, r)) {
+                     g.fiArc(r[0], r[1], r[2], r[3], start, amplitude);
+                  }
                   break;
             }
          }
@@ -712,6 +690,153 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       }
    }
 
+   /**
+    * True when the ellipse of a step of {@link FigureOperator#getEllipseGradientStep(int, int, int, int, int, int, int[])} contains the ellipse of the next step.
+    * <br>
+    * Only the ellipses sharing the center of the figure are nested. Flamme, cloche, bubble and obus ellipses are not.
+    * @param type
+    * @return
+    */
+   public boolean isEllipseGradientNested(int type) {
+      return type == ITechGradient.GRADIENT_TYPE_ELLIPSE_00_NORMAL || type == ITechGradient.GRADIENT_TYPE_ELLIPSE_01_HORIZ || type == ITechGradient.GRADIENT_TYPE_ELLIPSE_02_VERT;
+   }
+
+   /**
+    * Bounding rectangle of the ellipse filled at step count by the ellipse gradient types made of shrinking ellipses.
+    * <br>
+    * See {@link FigureOperator#isEllipseGradientNested(int)} for the types whose steps contain each other.
+    * 
+    * @param type
+    * @param count
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param r x,y,w,h of the step
+    * @return false if the type is not a shrinking ellipse type
+    */
+   public boolean getEllipseGradientStep(int type, int count, int x, int y, int w, int h, int[] r) {
+      int countX2 = count * 2;
+      switch (type) {
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_00_NORMAL:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_01_HORIZ:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_02_VERT:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - countX2;
+            r[3] = h;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_03_TOP_FLAMME:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_04_BOT_FLAMME:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_05_LEFT_FLAMME:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_06_RIGHT_FLAMME:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_07_CLOCHE_TOP:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_08_CLOCHE_BOT:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_09_CLOCHE_LEFT:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_10_CLOCHE_RIGHT:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_15_TOP_LEFT_BUBBLE:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_16_TOP_RIGHT_BUBBLE:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_17_BOT_LEFT_BUBBLE:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_18_BOT_RIGHT_BUBBLE:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_45_OBUS_TOP:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_46_OBUS_BOT:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_47_OBUS_LEFT:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_ELLIPSE_48_OBUS_RIGHT:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h;
+            return true;
+         default:
+            return false;
+      }
+   }
+
    void drawFigArlequin(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
 
       if (p.hasFlag(IBOFigArlequin.FIG_ARLEQUIN_OFFSET_1_FLAG, IBOFigArlequin.FIG_ARLEQUIN_FLAG_1_FILL_BG)) {
@@ -880,11 +1005,10 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
                int color = rect.get4(FIG__OFFSET_06_COLOR4);
                g.setColor(color);
                g.fillRect(dx, dy, w, h);
-               rect.set1(FIG_RECTANGLE_OFFSET_5_SIZE_GRAD1, size);
+               paintFigureRectangleSized(g, dx, dy, w, h, rect, -1, size);
             } else {
-               rect.set1(FIG_RECTANGLE_OFFSET_4_SIZE_FILL1, size);
+               paintFigureRectangleSized(g, dx, dy, w, h, rect, size, -1);
             }
-            paintFigureSwitch(g, dx, dy, w, h, rect);
          } else {
             if (cornerShift >= size) {
                return;
@@ -1180,6 +1304,21 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
     * @param p
     */
    public void drawFigRectangle(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
+      drawFigRectangle(g, x, y, w, h, p, -1, -1);
+   }
+
+   /**
+    * Draws the rectangle figure p with fill and gradient sizes given for this draw only. p is not modified.
+    * @param g
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param p
+    * @param sizeFill -1 for the value of {@link IBOFigRectangle#FIG_RECTANGLE_OFFSET_4_SIZE_FILL1}
+    * @param sizeGrad -1 for the value of {@link IBOFigRectangle#FIG_RECTANGLE_OFFSET_5_SIZE_GRAD1}
+    */
+   public void drawFigRectangle(GraphicsX g, int x, int y, int w, int h, ByteObject p, int sizeFill, int sizeGrad) {
       //4 cases. opaque rectangle,
       int color = p.get4(FIG__OFFSET_06_COLOR4);
       boolean hasGradient = p.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_2_GRADIENT);
@@ -1196,17 +1335,26 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
          ByteObject sizer = p.getSubAtIndex(arch);
          arch = layOp.getPixelSizeH(sizer, w, h);
       }
-      int sizeFill = p.get1(FIG_RECTANGLE_OFFSET_4_SIZE_FILL1);
-      if (p.hasFlag(FIG_RECTANGLE_OFFSET_1_FLAG, FIG_RECTANGLE_FLAG_7_FILL_SIZER)) {
-         ByteObject sizer = p.getSubAtIndex(arcw);
-         sizeFill = layOp.getPixelSize(sizer, w, h);
+      if (sizeFill == -1) {
+         sizeFill = p.get1(FIG_RECTANGLE_OFFSET_4_SIZE_FILL1);
+         if (p.hasFlag(FIG_RECTANGLE_OFFSET_1_FLAG, FIG_RECTANGLE_FLAG_7_FILL_SIZER)) {
+            ByteObject sizer = p.getSubAtIndex(arcw);
+            sizeFill = layOp.getPixelSize(sizer, w, h);
+         }
       }
 
       if (hasGradient) {
          gradient = p.getSubFirst(IBOTypesBOC.TYPE_038_GRADIENT);
       }
       if (g.hasGradient() && gradient != null) {
-         drawRectangleGradient(g, x, y, w, h, p, color, arcw, arch, sizeFill, gradient);
+         if (sizeFill != 0) {
+            drawRectangleGradientBorder(g, x, y, w - 1, h - 1, p, arcw, arch, color, sizeFill, gradient);
+         } else {
+            if (sizeGrad == -1) {
+               sizeGrad = p.get1(FIG_RECTANGLE_OFFSET_5_SIZE_GRAD1);
+            }
+            drawRectangleGradientSized(g, x, y, w, h, p, arcw, arch, color, gradient, sizeGrad);
+         }
       } else {
          drawRectangleSingleColor(g, x, y, w, h, p, color, arcw, arch, sizeFill);
       }
@@ -1265,8 +1413,11 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       int numX = w / fw;
       int numY = h / fh;
 
-      //#debug
-      g.toDLog().pDraw("numX=" + numX + " numY=" + numY + " fw=" + fw + " fh=" + fh, p, FigureOperator.class, "drawFigRepeater");
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_5_FIGURE)) {
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_5_FIGURE, "numX=" + numX + " numY=" + numY + " fw=" + fw + " fh=" + fh, p, FigureOperator.class, "drawFigRepeater", LVL_05_FINE, true);
+      }
+      //#enddebug
 
       if (p.hasFlag(IBOFigRepeater.FIG_REPEATER_OFFSET_1_FLAG, IBOFigRepeater.FIG_REPEATER_FLAG_1_FORCECOPYAREA) || figure.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAGP_3_OPAQUE)) {
          if (p.hasFlag(IBOFigRepeater.FIG_REPEATER_OFFSET_1_FLAG, IBOFigRepeater.FIG_REPEATER_FLAG_2_USE_BGCOLOR)) {
@@ -1713,6 +1864,24 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
 
    public void drawRectangleGradient(GraphicsX g, int x, int y, int w, int h, ByteObject rect, int arcw, int arch, int color, ByteObject grad) {
       int gradSize = rect.get1(FIG_RECTANGLE_OFFSET_5_SIZE_GRAD1);
+      drawRectangleGradientSized(g, x, y, w, h, rect, arcw, arch, color, grad, gradSize);
+   }
+
+   /**
+    * 
+    * @param g
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param rect
+    * @param arcw
+    * @param arch
+    * @param color
+    * @param grad
+    * @param gradSize number of iterations. 0 for the default size of the gradient type
+    */
+   public void drawRectangleGradientSized(GraphicsX g, int x, int y, int w, int h, ByteObject rect, int arcw, int arch, int color, ByteObject grad, int gradSize) {
       if (gradSize == 0) {
          int type = grad.get1(IBOGradient.GRADIENT_OFFSET_07_TYPE1);
          gradSize = getRectGradSize(w, h, arcw, arch, type); //number of iteration
@@ -1751,100 +1920,32 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       }
       int count = 0;
       ColorIterator ci = drc.getColorFunctionFactory().getColorIterator(color, grad, gradSize);
+      int[] r = new int[4];
+      if (artifact == null && getRectGradientStep(type, 0, x, y, w, h, r) && drawerGradient.isRasterizable(g)) {
+         //target is a RgbImage. each pixel is computed once
+         boolean isFillArea = grad.hasFlag(IBOGradient.GRADIENT_OFFSET_04_FLAGX1, IBOGradient.GRADIENT_FLAGX_1_FILL_AREA);
+         int baseColor = ci.getCurrentColor();
+         int[] steps = drawerGradient.createSteps(gradSize);
+         while ((count = ci.iteratePixelCount(g)) != -1) {
+            getRectGradientStep(type, count, x, y, w, h, r);
+            steps = drawerGradient.addStep(steps, r[0], r[1], r[2], r[3], ci.getCurrentColor());
+         }
+         drawerGradient.raster(g, x, y, w, h, DrawerGradient.SHAPE_0_ROUND_RECT, arcw, arch, steps, true, isFillArea, baseColor);
+         return;
+      }
       fillArea(g, x, y, w, h, grad, ci);
       while ((count = ci.iteratePixelCount(g)) != -1) {
          int countX2 = count * 2;
          int countD2 = count / 2;
          switch (type) {
-            case ITechGradient.GRADIENT_TYPE_RECT_00_SQUARE:
-               g.fillRoundRect(x + count, y + count, w - countX2, h - countX2, arcw, arch);
-               break;
             case ITechGradient.GRADIENT_TYPE_RECT_01_HORIZ:
-               //g.drawLine(x + count, y, x + count, y + height - 1);
-               g.fillRoundRect(x + count, y, w - count, h, arcw, arch);
-               if (artifact != null) {
-                  drawArtifactRectHoriz(g, ci.currentColor, x + count, y, w - count, h, artifact, arcw, arch);
-               }
-               break;
             case ITechGradient.GRADIENT_TYPE_RECT_02_VERT:
-               //g.drawLine(x, y + count, x + width - 1, y + count);
-               g.fillRoundRect(x, y + count, w, h - count, arcw, arch);
+               getRectGradientStep(type, count, x, y, w, h, r);
+               g.fillRoundRect(r[0], r[1], r[2], r[3], arcw, arch);
                if (artifact != null) {
-                  drawArtifactRectHoriz(g, ci.currentColor, x, y + count, w, h - count, artifact, arcw, arch);
+                  drawArtifactRectHoriz(g, ci.currentColor, r[0], r[1], r[2], r[3], artifact, arcw, arch);
                }
                break;
-            case ITechGradient.GRADIENT_TYPE_RECT_03_TOPLEFT:
-               g.fillRoundRect(x, y, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_04_TOPRIGHT:
-               g.fillRoundRect(x + count, y, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_05_BOTLEFT:
-               g.fillRoundRect(x, y + count, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_06_BOTRIGHT:
-               g.fillRoundRect(x + count, y + count, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_07_L_TOP:
-               g.fillRoundRect(x + count, y, w - countX2, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_08_L_BOT:
-               g.fillRoundRect(x + count, y + count, w - countX2, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_09_L_LEFT:
-               g.fillRoundRect(x, y + count, w - count, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_10_L_RIGHT:
-               g.fillRoundRect(x + count, y + count, w - count, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_11_L_THIN_TOP:
-               g.fillRoundRect(x + countD2, y, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_12_L_THIN_BOT:
-               g.fillRoundRect(x + countD2, y + count, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_13_L_THIN_LEFT:
-               g.fillRoundRect(x, y + countD2, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_14_L_THIN_RIGHT:
-               g.fillRoundRect(x + count, y + countD2, w - count, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_15_PIC_TOP_LEFT:
-               g.fillRoundRect(x + countD2, y + countD2, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_16_PIC_TOP_MID:
-               g.fillRoundRect(x + count, y + countD2, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_17_PIC_TOP_RIGHT:
-               g.fillRoundRect(x + count + countD2, y + countD2, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_18_PIC_MID_RIGHT:
-               g.fillRoundRect(x + count + countD2, y + count, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_19_PIC_BOT_RIGHT:
-               g.fillRoundRect(x + countD2 + count, y + countD2 + count, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_20_PIC_BOT_MID:
-               g.fillRoundRect(x + count, y + count + countD2, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_21_PIC_BOT_LEFT:
-               g.fillRoundRect(x + countD2, y + count + countD2, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_22_PIC_MID_LEFT:
-               g.fillRoundRect(x + countD2, y + count, w - countX2, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_23_WIN_TOP:
-               g.fillRoundRect(x + countD2, y + countD2, w - count, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_24_WIN_BOT:
-               g.fillRoundRect(x + countD2, y + count + countD2, w - count, h - countX2, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_25_WIN_LEFT:
-               g.fillRoundRect(x + countD2, y + countD2, w - countX2, h - count, arcw, arch);
-               break;
-            case ITechGradient.GRADIENT_TYPE_RECT_26_WIN_RIGHT:
-               g.fillRoundRect(x + count + countD2, y + countD2, w - countX2, h - count, arcw, arch);
-               break;
             case ITechGradient.GRADIENT_TYPE_RECT_27_:
                int countm = count % 4;
                int extra = 8;
@@ -1924,7 +2025,11 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
                drawRectangleGradientTrig(g, x, y, w, h, arcw, arch, color, gradSize, count, type);
                break;
             default:
-               throw new IllegalArgumentException();
+               if (!getRectGradientStep(type, count, x, y, w, h, r)) {
+                  throw new IllegalArgumentException();
+               }
+               g.fillRoundRect(r[0], r[1], r[2], r[3], arcw, arch);
+               break;
          }
       }
       if(artifact != null) {
@@ -1954,6 +2059,192 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       }
    }
 
+   /**
+    * Rectangle filled at step count by the rectangle gradient types made of shrinking rectangles.
+    * <br>
+    * Types {@link ITechGradient#GRADIENT_TYPE_RECT_00_SQUARE} to {@link ITechGradient#GRADIENT_TYPE_RECT_26_WIN_RIGHT}.
+    * The rectangle of a step contains the rectangle of the next step.
+    * 
+    * @param type
+    * @param count
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param r x,y,w,h of the step
+    * @return false if the type is not a shrinking rectangle type
+    */
+   public boolean getRectGradientStep(int type, int count, int x, int y, int w, int h, int[] r) {
+      int countX2 = count * 2;
+      int countD2 = count / 2;
+      switch (type) {
+         case ITechGradient.GRADIENT_TYPE_RECT_00_SQUARE:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_01_HORIZ:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_02_VERT:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_03_TOPLEFT:
+            r[0] = x;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_04_TOPRIGHT:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_05_BOTLEFT:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_06_BOTRIGHT:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_07_L_TOP:
+            r[0] = x + count;
+            r[1] = y;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_08_L_BOT:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_09_L_LEFT:
+            r[0] = x;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_10_L_RIGHT:
+            r[0] = x + count;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_11_L_THIN_TOP:
+            r[0] = x + countD2;
+            r[1] = y;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_12_L_THIN_BOT:
+            r[0] = x + countD2;
+            r[1] = y + count;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_13_L_THIN_LEFT:
+            r[0] = x;
+            r[1] = y + countD2;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_14_L_THIN_RIGHT:
+            r[0] = x + count;
+            r[1] = y + countD2;
+            r[2] = w - count;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_15_PIC_TOP_LEFT:
+            r[0] = x + countD2;
+            r[1] = y + countD2;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_16_PIC_TOP_MID:
+            r[0] = x + count;
+            r[1] = y + countD2;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_17_PIC_TOP_RIGHT:
+            r[0] = x + count + countD2;
+            r[1] = y + countD2;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_18_PIC_MID_RIGHT:
+            r[0] = x + count + countD2;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_19_PIC_BOT_RIGHT:
+            r[0] = x + countD2 + count;
+            r[1] = y + countD2 + count;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_20_PIC_BOT_MID:
+            r[0] = x + count;
+            r[1] = y + count + countD2;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_21_PIC_BOT_LEFT:
+            r[0] = x + countD2;
+            r[1] = y + count + countD2;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_22_PIC_MID_LEFT:
+            r[0] = x + countD2;
+            r[1] = y + count;
+            r[2] = w - countX2;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_23_WIN_TOP:
+            r[0] = x + countD2;
+            r[1] = y + countD2;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_24_WIN_BOT:
+            r[0] = x + countD2;
+            r[1] = y + count + countD2;
+            r[2] = w - count;
+            r[3] = h - countX2;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_25_WIN_LEFT:
+            r[0] = x + countD2;
+            r[1] = y + countD2;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         case ITechGradient.GRADIENT_TYPE_RECT_26_WIN_RIGHT:
+            r[0] = x + count + countD2;
+            r[1] = y + countD2;
+            r[2] = w - countX2;
+            r[3] = h - count;
+            return true;
+         default:
+            return false;
+      }
+   }
+
    public void drawRectangleGradientTrig(GraphicsX g, int x, int y, int w, int h, int arcw, int arch, int color, int gradSize, int count, int type) {
       int x1 = x;
       int y1 = y;
@@ -2256,6 +2547,14 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       return drawerTriangle;
    }
 
+   public DrawerGradient getDrawerGradient() {
+      return drawerGradient;
+   }
+
+   public FigureCache getFigureCache() {
+      return figureCache;
+   }
+
    /**
     * Gets an image of the figure parameters in the rectangle [w,h] <br>
     * For performance reasons, one might want to draw figure of primitives using given pseudo background color
@@ -2656,8 +2955,33 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
    
     */
    public void paintFigure(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
-      //#debug
-      g.toDLog().pDraw("area x=" + x + " y=" + y + "  w=" + w + ", h=" + h, p, FigureOperator.class, "paintFigure@line884", LVL_04_FINER, true);
+      DrwMetrics metrics = drc.getMetrics();
+      if (!metrics.isEnabled()) {
+         paintFigureBody(g, x, y, w, h, p);
+         return;
+      }
+      Thread thread = Thread.currentThread();
+      if (spanThreads.containsKey(thread)) {
+         //nested. time is in the span of the outermost figure
+         paintFigureBody(g, x, y, w, h, p);
+         return;
+      }
+      long start = metrics.spanStart();
+      spanThreads.put(thread, thread);
+      try {
+         paintFigureBody(g, x, y, w, h, p);
+      } finally {
+         spanThreads.remove(thread);
+         metrics.spanEnd(ITechDrwMetrics.METRICS_SPAN_0_PAINT_FIGURE, start);
+      }
+   }
+
+   private void paintFigureBody(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
+      //#mdebug
+      if (drc.getDrwLog().isOn(ITechDrwLog.DRWLOG_5_FIGURE)) {
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_5_FIGURE, "area x=" + x + " y=" + y + "  w=" + w + ", h=" + h, p, FigureOperator.class, "paintFigure@line884", LVL_04_FINER, true);
+      }
+      //#enddebug
 
       if (p == null || w <= 0 || h <= 0) {
          //there is nothing to draw
@@ -2668,6 +2992,17 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
          g.postpone(x, y, w, h, p);
          return;
       }
+      if (figureCache.isEnabled()) {
+         RgbImage cached = figureCache.getFigImage(p, w, h, 0);
+         if (cached != null) {
+            try {
+               g.drawRgbImage(cached, x, y);
+            } finally {
+               figureCache.releaseFigImage(cached);
+            }
+            return;
+         }
+      }
       ByteObject filter = null;
       if (p.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_5_FILTER)) {
          filter = p.getSubOrder(IBOTypesBOC.TYPE_040_COLOR_FILTER, 0);
@@ -2765,6 +3100,95 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
       }
    }
 
+   /**
+    * Paints the figure in the area x,y,w,h of the rgb image img, with tiles of tileSize painted by numThreads threads.
+    * <br>
+    * <br>
+    * Each tile has its own {@link GraphicsX} in {@link GraphicsX#MODE_3_RGB} clipped to the tile, see {@link FigureTilePainter}.
+    * The result is the same as {@link FigureOperator#paintFigure(GraphicsX, int, int, int, int, ByteObject)} with the {@link GraphicsX} of img.
+    * <br>
+    * <br>
+    * The figure is painted by a single thread when
+    * <li>the figure is not tile safe. See {@link FigureOperator#isFigureTileSafe(ByteObject)}
+    * <li>img is not in rgb mode
+    * <li>numThreads is 1 or the area fits in one tile
+    * <br>
+    * A tile failing because a primitive could not be drawn in the int[] array is restored and painted again by the calling thread.
+    * <br>
+    * @param img
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param fig
+    * @param tileSize width and height of a tile
+    * @param numThreads number of threads painting tiles, calling thread included
+    */
+   public void paintFigureTiled(RgbImage img, int x, int y, int w, int h, ByteObject fig, int tileSize, int numThreads) {
+      if (fig == null || w <= 0 || h <= 0) {
+         return;
+      }
+      if (tileSize <= 0) {
+         throw new IllegalArgumentException("tileSize=" + tileSize);
+      }
+      boolean isTiled = numThreads > 1 && (w > tileSize || h > tileSize) && img.isRgb() && !img.isNullImage() && isFigureTileSafe(fig);
+      if (isTiled) {
+         FigureTilePainter painter = new FigureTilePainter(drc, img, x, y, w, h, fig, tileSize, numThreads);
+         if (painter.getNumTiles() <= 1) {
+            isTiled = false;
+         } else {
+            painter.paint();
+         }
+      }
+      if (!isTiled) {
+         paintFigure(img.getGraphicsX(GraphicsX.MODE_3_RGB), x, y, w, h, fig);
+      }
+   }
+
+   /**
+    * True when the figure and its sub figures can be painted in tiles by several threads.
+    * <br>
+    * <br>
+    * A tile paints the whole figure clipped to the tile. Figures which do not paint the same pixels each time are not tile safe
+    * <li>{@link ITechFigure#FIG_TYPE_09_PIXELS} and {@link ITechFigure#FIG_TYPE_35_TESSON} use a {@link Random}
+    * <li>figures with artifacts use the {@link Random} of {@link DrwCtx}
+    * <li>animated figures
+    * <br>
+    * Neither are figures drawn through buffers and platform images: masks, filters, postponed figures,
+    * strings, chars and repeaters.
+    * @param fig
+    * @return
+    */
+   public boolean isFigureTileSafe(ByteObject fig) {
+      int type = fig.get1(FIG__OFFSET_01_TYPE1);
+      switch (type) {
+         case ITechFigure.FIG_TYPE_04_CHAR:
+         case ITechFigure.FIG_TYPE_09_PIXELS:
+         case ITechFigure.FIG_TYPE_10_STRING:
+         case ITechFigure.FIG_TYPE_13_REPEATER:
+         case ITechFigure.FIG_TYPE_35_TESSON:
+            return false;
+         default:
+            break;
+      }
+      if (fig.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_4_MASK) || fig.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_5_FILTER) || fig.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_6_ANIMATED) || fig.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_8_ARTIFACT)) {
+         return false;
+      }
+      if (fig.hasFlag(FIG__OFFSET_03_FLAGP, FIG_FLAGP_8_POSTPONE)) {
+         return false;
+      }
+      if (fig.hasFlag(FIG__OFFSET_02_FLAG, FIG_FLAG_7_SUB_FIGURE)) {
+         ByteObject subs = fig.getSubFirst(IBOTypesDrawX.TYPE_DRWX_01_FIG_SUB_STRUCT);
+         ByteObject[] subFigures = subs.getSubs(IBOTypesDrawX.TYPE_DRWX_00_FIGURE);
+         for (int i = 0; i < subFigures.length; i++) {
+            if (!isFigureTileSafe(subFigures[i])) {
+               return false;
+            }
+         }
+      }
+      return true;
+   }
+
    /**
     * Check if figure is directional. If it is not, ignore direction directive.
     * @param g
@@ -2780,6 +3204,23 @@ public class FigureOperator extends AbstractDrwOperator implements ITechMergeFig
 
    }
 
+   /**
+    * {@link FigureOperator#paintFigureSwitch(GraphicsX, int, int, int, int, ByteObject)} for a rectangle figure with fill and gradient
+    * sizes of this draw. Used by borders which size the rectangle of their definition.
+    * <br>
+    * Figures are never modified while painting, so one figure may be painted by several threads at the same time.
+    * @param sizeFill -1 for the definition value
+    * @param sizeGrad -1 for the definition value
+    */
+   private void paintFigureRectangleSized(GraphicsX g, int x, int y, int w, int h, ByteObject rect, int sizeFill, int sizeGrad) {
+      if (rect.get1(FIG__OFFSET_01_TYPE1) == ITechFigure.FIG_TYPE_01_RECTANGLE) {
+         drawFigRectangle(g, x, y, w, h, rect, sizeFill, sizeGrad);
+         paintFigureSwitchSubFigures(g, x, y, w, h, rect);
+      } else {
+         paintFigureSwitch(g, x, y, w, h, rect);
+      }
+   }
+
    void paintFigureSwitch(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
       final int type = p.getValue(FIG__OFFSET_01_TYPE1, 1);
       switch (type) {
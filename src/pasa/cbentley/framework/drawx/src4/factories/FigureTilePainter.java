@@ -0,0 +1,278 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.logging.ITechLvl;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwLog;
+import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
+
+/**
+ * Paints one figure into a {@link RgbImage} in tiles, by several threads. Used by {@link FigureOperator#paintFigureTiled(RgbImage, int, int, int, int, ByteObject, int, int)}.
+ * <br>
+ * <br>
+ * Each tile has its own {@link GraphicsX} in {@link ITechGraphicsX#MODE_3_RGB} with {@link ITechGraphicsX#OPTION_3_RGB_ONLY}, clipped to the tile.
+ * All tiles write in the int[] array of the image. The figure is painted in each tile with its full area, the clip keeps pixels inside the tile.
+ * Tiles do not overlap so threads never write the same pixel.
+ * <br>
+ * <br>
+ * Threads take the next tile to paint until none are left. Before painting, a thread keeps a copy of the pixels of its tile.
+ * When a primitive cannot be drawn in the int[] array, {@link GraphicsX} throws an {@link IllegalStateException}. The tile pixels are restored and the tile is painted again by the calling thread
+ * with the {@link GraphicsX} of the image clipped to the tile. Other exceptions and errors are thrown by {@link FigureTilePainter#paint()}.
+ * <br>
+ * One instance per paint.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class FigureTilePainter extends ObjectDrw implements Runnable {
+
+   /**
+    * First error thrown by a tile. Thrown again by {@link FigureTilePainter#paint()}
+    */
+   private Throwable   error;
+
+   /**
+    * Tiles painted again by the calling thread
+    */
+   private boolean[]   failedTiles;
+
+   private ByteObject  fig;
+
+   private int         h;
+
+   private RgbImage    img;
+
+   private int         nextTile;
+
+   private int         numFailedTiles;
+
+   private int         numThreads;
+
+   /**
+    * x,y,w,h in the image of each tile
+    */
+   private int[]       tileRects;
+
+   private GraphicsX[] tiles;
+
+   private int         w;
+
+   private int         x;
+
+   private int         y;
+
+   /**
+    *
+    * @param drc
+    * @param img rgb image
+    * @param x area of the figure
+    * @param y
+    * @param w
+    * @param h
+    * @param fig
+    * @param tileSize
+    * @param numThreads
+    */
+   public FigureTilePainter(DrwCtx drc, RgbImage img, int x, int y, int w, int h, ByteObject fig, int tileSize, int numThreads) {
+      super(drc);
+      this.img = img;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+      this.fig = fig;
+      this.numThreads = numThreads;
+      //tiles cover the figure area inside the image
+      int x1 = Math.max(0, x);
+      int y1 = Math.max(0, y);
+      int x2 = Math.min(img.getWidth(), x + w);
+      int y2 = Math.min(img.getHeight(), y + h);
+      if (x2 <= x1 || y2 <= y1) {
+         tiles = new GraphicsX[0];
+         tileRects = new int[0];
+         failedTiles = new boolean[0];
+         return;
+      }
+      int numX = (x2 - x1 + tileSize - 1) / tileSize;
+      int numY = (y2 - y1 + tileSize - 1) / tileSize;
+      tiles = new GraphicsX[numX * numY];
+      tileRects = new int[tiles.length * 4];
+      failedTiles = new boolean[tiles.length];
+      int count = 0;
+      for (int ty = y1; ty < y2; ty += tileSize) {
+         int th = Math.min(tileSize, y2 - ty);
+         for (int tx = x1; tx < x2; tx += tileSize) {
+            int tw = Math.min(tileSize, x2 - tx);
+            GraphicsX g = drc.getGraphicsXFactory().createGraphicsX(img, ITechGraphicsX.MODE_3_RGB, tx, ty, tw, th);
+            g.setFlagOptions(ITechGraphicsX.OPTION_3_RGB_ONLY, true);
+            tileRects[count * 4] = tx;
+            tileRects[count * 4 + 1] = ty;
+            tileRects[count * 4 + 2] = tw;
+            tileRects[count * 4 + 3] = th;
+            tiles[count++] = g;
+         }
+      }
+   }
+
+   /**
+    * Copies the pixels of the tile between the image and save
+    * @param index
+    * @param save
+    * @param isSave true to copy from the image to save
+    */
+   private void copyTile(int index, int[] save, boolean isSave) {
+      int[] data = img.getRgbData();
+      int scan = img.getScanLength();
+      int tw = tileRects[index * 4 + 2];
+      int th = tileRects[index * 4 + 3];
+      int offset = img.getOffset() + img.getM() + tileRects[index * 4] + scan * (img.getN() + tileRects[index * 4 + 1]);
+      for (int j = 0; j < th; j++) {
+         if (isSave) {
+            System.arraycopy(data, offset + j * scan, save, j * tw, tw);
+         } else {
+            System.arraycopy(save, j * tw, data, offset + j * scan, tw);
+         }
+      }
+   }
+
+   /**
+    * Number of tiles painted again by the calling thread, because a primitive could not be drawn in the int[] array.
+    * @return
+    */
+   public int getNumFailedTiles() {
+      return numFailedTiles;
+   }
+
+   public int getNumTiles() {
+      return tiles.length;
+   }
+
+   /**
+    * Index of the next tile to paint, -1 when all tiles were taken or a tile threw an error.
+    * @return
+    */
+   private synchronized int nextTile() {
+      if (error != null || nextTile >= tiles.length) {
+         return -1;
+      }
+      return nextTile++;
+   }
+
+   /**
+    * Paints all the tiles and returns when they are done. The calling thread paints tiles as well.
+    * @throws RuntimeException thrown by a tile or by the figure painted in a failed tile
+    * @throws Error thrown by a tile
+    */
+   public void paint() {
+      int numWorkers = Math.min(numThreads, tiles.length) - 1;
+      Thread[] workers = new Thread[Math.max(0, numWorkers)];
+      for (int i = 0; i < workers.length; i++) {
+         workers[i] = new Thread(this, "FigureTile" + i);
+         workers[i].start();
+      }
+      run();
+      for (int i = 0; i < workers.length; i++) {
+         boolean isJoined = false;
+         while (!isJoined) {
+            try {
+               workers[i].join();
+               isJoined = true;
+            } catch (InterruptedException e) {
+               //keep waiting. tiles are written in the image
+            }
+         }
+      }
+      if (error instanceof Error) {
+         throw (Error) error;
+      } else if (error instanceof RuntimeException) {
+         throw (RuntimeException) error;
+      } else if (error != null) {
+         //checked throwable. no cause constructor in CLDC
+         throw new RuntimeException(error.toString());
+      }
+      if (numFailedTiles != 0) {
+         //#debug
+         drc.getDrwLog().pDraw(ITechDrwLog.DRWLOG_5_FIGURE, "Painting " + numFailedTiles + " failed tiles in a single thread", this, FigureTilePainter.class, "paint", ITechLvl.LVL_05_FINE, true);
+         GraphicsX g = img.getGraphicsX(ITechGraphicsX.MODE_3_RGB);
+         FigureOperator figOp = drc.getFigureOperator();
+         for (int i = 0; i < failedTiles.length; i++) {
+            if (failedTiles[i]) {
+               g.clipSet(tileRects[i * 4], tileRects[i * 4 + 1], tileRects[i * 4 + 2], tileRects[i * 4 + 3]);
+               figOp.paintFigure(g, x, y, w, h, fig);
+               g.clipReset();
+            }
+         }
+      }
+   }
+
+   public void run() {
+      FigureOperator figOp = drc.getFigureOperator();
+      RgbCache cache = drc.getCache();
+      int index = nextTile();
+      while (index != -1) {
+         int[] save = cache.borrowScratch(tileRects[index * 4 + 2] * tileRects[index * 4 + 3]);
+         copyTile(index, save, true);
+         try {
+            figOp.paintFigure(tiles[index], x, y, w, h, fig);
+         } catch (Throwable e) {
+            if (e instanceof IllegalStateException) {
+               //the calling thread paints the tile again
+               copyTile(index, save, false);
+               setFailedTile(index);
+            } else {
+               setError(e);
+            }
+         }
+         cache.returnScratch(save);
+         index = nextTile();
+      }
+   }
+
+   private synchronized void setError(Throwable e) {
+      if (error == null) {
+         error = e;
+      }
+   }
+
+   private synchronized void setFailedTile(int index) {
+      failedTiles[index] = true;
+      numFailedTiles++;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, FigureTilePainter.class, 150);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      dc.nlLvl(fig, "Figure");
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("x", x);
+      dc.appendVarWithSpace("y", y);
+      dc.appendVarWithSpace("w", w);
+      dc.appendVarWithSpace("h", h);
+      dc.appendVarWithSpace("tiles", tiles.length);
+      dc.appendVarWithSpace("numThreads", numThreads);
+      dc.appendVarWithSpace("failedTiles", numFailedTiles);
+      dc.appendVarWithSpace("hasError", error != null);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, FigureTilePainter.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,411 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.memory.IMemFreeable;
+import pasa.cbentley.core.src4.utils.interfaces.IColors;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
+
+/**
+ * Atlas of masked glyphs for {@link MaskOperator#drawMask(GraphicsX, int, int, ByteObject, char, IMFont)}.
+ * <br>
+ * <br>
+ * A masked glyph is the image given by {@link MaskOperator#createMaskedFigure(ByteObject, RgbImage)} for the char image of
+ * {@link RgbImageFactory#getCharImage(int, char, IMFont, int)}. It only depends on the font, the char and the mask definition.
+ * <br>
+ * Masked glyphs are created once and stored as tiles of a single shared {@link RgbImage} page.
+ * Drawing a masked string becomes a series of region blits with {@link GraphicsX#drawRGB(int[], int, int, int, int, int, int, boolean)}.
+ * <br>
+ * <br>
+ * Tiles are packed in shelves. When the page is full, its height is doubled up to {@link GlyphAtlas#MAX_PAGE_H}. After that, the atlas is reset.
+ * <br>
+ * Masks are identified with {@link FigureCache#getStructuralHash(ByteObject)}. Masks with an animated or random background figure are not stored.
+ * <br>
+ * <br>
+ * The lock of the atlas is held to look up or insert a tile. The blit is done outside the lock. The atlas is pinned while tiles are blitted:
+ * tiles are not reset and pages are not disposed until the last blit ends.
+ * <br>
+ * The atlas registers itself with {@link RgbCache#addMemFreeable(IMemFreeable)}.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class GlyphAtlas extends ObjectDrw implements IMemFreeable {
+
+   public static final int MAX_PAGE_H    = 1024;
+
+   public static final int PAGE_H        = 64;
+
+   public static final int PAGE_W        = 256;
+
+   /**
+    * Returned by {@link GlyphAtlas#acquireTile(ByteObject, long, char, IMFont)} when the glyph is not in the atlas
+    */
+   private static final long TILE_NONE   = -1;
+
+   /**
+    * {@link GlyphAtlas#freeMemory()} was called while pinned
+    */
+   private boolean         isFreePending;
+
+   private final MaskOperator maskOperator;
+
+   /**
+    * Volatile so that a blit outside the lock sees the pixels of a grown page
+    */
+   private volatile RgbImage page;
+
+   /**
+    * Pages replaced while pinned. Disposed by the last blit.
+    */
+   private Vector          pagesOld      = new Vector(2);
+
+   private int             pageH;
+
+   private int             shelfH;
+
+   private int             shelfX;
+
+   private int             shelfY;
+
+   private boolean[]       slotAlpha     = new boolean[16];
+
+   private char[]          slotChar      = new char[16];
+
+   private int             slotCount;
+
+   private Object[]        slotFont      = new Object[16];
+
+   private int[]           slotH         = new int[16];
+
+   private long[]          slotMask      = new long[16];
+
+   /**
+    * Key mixing mask hash, font and char to slot index
+    */
+   private Hashtable       slots         = new Hashtable();
+
+   private int[]           slotW         = new int[16];
+
+   private int[]           slotX         = new int[16];
+
+   private int[]           slotY         = new int[16];
+
+   private int             statHit;
+
+   private int             statMiss;
+
+   private int             statReset;
+
+   /**
+    * Number of blits in progress. Guarded by the lock of the atlas
+    */
+   private int             users;
+
+   public GlyphAtlas(DrwCtx drc, MaskOperator maskOperator) {
+      super(drc);
+      this.maskOperator = maskOperator;
+      drc.getCache().addMemFreeable(this);
+   }
+
+   /**
+    * Draws the masked glyph of c at x,y. Top left anchor.
+    * <br>
+    * <br>
+    * The mask hash is computed before the atlas is locked, so that the atlas lock is never held while the figure cache is used.
+    * The tile is blitted outside the lock.
+    *
+    * @param g
+    * @param x
+    * @param y
+    * @param mask
+    * @param c
+    * @param f
+    * @return false when the mask cannot be stored in the atlas. Caller draws the masked glyph itself.
+    */
+   public boolean drawMask(GraphicsX g, int x, int y, ByteObject mask, char c, IMFont f) {
+      long maskHash = drc.getFigureOperator().getFigureCache().getStructuralHash(mask);
+      if (maskHash == 0) {
+         return false;
+      }
+      if (f.charWidth(c) <= 0 || f.getHeight() <= 0) {
+         //nothing to draw
+         return true;
+      }
+      long tile = acquireTile(mask, maskHash, c, f);
+      if (tile == TILE_NONE) {
+         return false;
+      }
+      try {
+         int offset = (int) (tile & 0xFFFFF);
+         int w = (int) ((tile >> 20) & 0x1FF);
+         int h = (int) ((tile >> 29) & 0x7FF);
+         boolean isAlpha = (tile >> 40) != 0;
+         RgbImage page = this.page;
+         g.drawRGB(page.getRgbData(), page.getOffset() + offset, PAGE_W, x, y, w, h, isAlpha);
+      } finally {
+         releaseTile();
+      }
+      return true;
+   }
+
+   /**
+    * Looks up the tile of the masked glyph, creating it if needed. The atlas is pinned until {@link GlyphAtlas#releaseTile()}.
+    * @param mask
+    * @param maskHash
+    * @param c
+    * @param f
+    * @return the tile packed in a long. index in the page on 20 bits, w on 9 bits, h on 11 bits and the alpha flag.
+    * {@link GlyphAtlas#TILE_NONE} when the glyph cannot be stored. Atlas is not pinned.
+    */
+   private synchronized long acquireTile(ByteObject mask, long maskHash, char c, IMFont f) {
+      long k = maskHash;
+      k = k * 31 + System.identityHashCode(f);
+      k = k * 31 + c;
+      Long key = new Long(k);
+      Integer slot = (Integer) slots.get(key);
+      if (slot != null) {
+         int index = slot.intValue();
+         if (slotChar[index] == c && slotFont[index] == f && slotMask[index] == maskHash) {
+            statHit++;
+            return pin(index);
+         }
+      }
+      statMiss++;
+      RgbImage figImg = drc.getRgbImageFactory().getCharImage(IColors.FULLY_OPAQUE_BLACK, c, f, IColors.FULLY_OPAQUE_WHITE);
+      RgbImage maskedImg = maskOperator.createMaskedFigure(mask, figImg);
+      figImg.dispose();
+      int index = allocate(maskedImg.getWidth(), maskedImg.getHeight());
+      if (index == -1) {
+         //glyph larger than a page or full page being blitted
+         maskedImg.dispose();
+         return TILE_NONE;
+      }
+      slotChar[index] = c;
+      slotFont[index] = f;
+      slotMask[index] = maskHash;
+      slotAlpha[index] = !maskedImg.hasFlag(ITechRgbImage.FLAG_05_IGNORE_ALPHA);
+      copyTile(maskedImg, index);
+      maskedImg.dispose();
+      slots.put(key, new Integer(index));
+      return pin(index);
+   }
+
+   /**
+    * Disposes the page. Deferred to the last blit when tiles are being blitted.
+    */
+   public synchronized void freeMemory() {
+      if (users != 0) {
+         isFreePending = true;
+         return;
+      }
+      isFreePending = false;
+      if (page != null) {
+         page.dispose();
+         page = null;
+      }
+      reset();
+   }
+
+   public int getStatHit() {
+      return statHit;
+   }
+
+   public int getStatMiss() {
+      return statMiss;
+   }
+
+   public int getStatReset() {
+      return statReset;
+   }
+
+   /**
+    * Finds a w,h area in the page for a new slot.
+    * @param w
+    * @param h
+    * @return -1 if the tile cannot fit in a page, or when the page is full and tiles are being blitted
+    */
+   private int allocate(int w, int h) {
+      if (w > PAGE_W || h > MAX_PAGE_H) {
+         return -1;
+      }
+      if (shelfX + w > PAGE_W) {
+         shelfY += shelfH;
+         shelfX = 0;
+         shelfH = 0;
+      }
+      if (!ensurePage(shelfY + h)) {
+         if (users != 0) {
+            //tiles cannot be overwritten
+            return -1;
+         }
+         statReset++;
+         reset();
+         ensurePage(h);
+      }
+      if (slotCount == slotX.length) {
+         growSlots();
+      }
+      int index = slotCount++;
+      slotX[index] = shelfX;
+      slotY[index] = shelfY;
+      slotW[index] = w;
+      slotH[index] = h;
+      shelfX += w;
+      if (h > shelfH) {
+         shelfH = h;
+      }
+      return index;
+   }
+
+   private long pin(int index) {
+      users++;
+      long tile = slotY[index] * PAGE_W + slotX[index];
+      tile |= (long) slotW[index] << 20;
+      tile |= (long) slotH[index] << 29;
+      if (slotAlpha[index]) {
+         tile |= 1L << 40;
+      }
+      return tile;
+   }
+
+   /**
+    * Ends a blit started by {@link GlyphAtlas#acquireTile(ByteObject, long, char, IMFont)}.
+    * The last one disposes replaced pages and frees memory when it was asked meanwhile.
+    */
+   private synchronized void releaseTile() {
+      users--;
+      if (users == 0) {
+         for (int i = 0; i < pagesOld.size(); i++) {
+            ((RgbImage) pagesOld.elementAt(i)).dispose();
+         }
+         pagesOld.removeAllElements();
+         if (isFreePending) {
+            freeMemory();
+         }
+      }
+   }
+
+   private void copyTile(RgbImage img, int index) {
+      int[] src = img.getRgbData();
+      int srcScan = img.getScanLength();
+      int srcIndex = img.getOffset();
+      int[] dst = page.getRgbData();
+      int dstIndex = page.getOffset() + slotY[index] * PAGE_W + slotX[index];
+      int w = slotW[index];
+      for (int j = 0; j < slotH[index]; j++) {
+         System.arraycopy(src, srcIndex, dst, dstIndex, w);
+         srcIndex += srcScan;
+         dstIndex += PAGE_W;
+      }
+   }
+
+   /**
+    * Makes sure the page is at least minH pixels high. Existing tiles are kept.
+    * @param minH
+    * @return false when minH is bigger than {@link GlyphAtlas#MAX_PAGE_H}
+    */
+   private boolean ensurePage(int minH) {
+      if (minH > MAX_PAGE_H) {
+         return false;
+      }
+      if (page == null) {
+         pageH = PAGE_H;
+         while (pageH < minH) {
+            pageH <<= 1;
+         }
+         page = drc.getCache().create(PAGE_W, pageH, 0);
+      } else if (minH > pageH) {
+         int newH = pageH;
+         while (newH < minH) {
+            newH <<= 1;
+         }
+         RgbImage newPage = drc.getCache().create(PAGE_W, newH, 0);
+         //creation may have called freeMemory which resets the atlas
+         if (page != null) {
+            //same width, rows are contiguous
+            System.arraycopy(page.getRgbData(), page.getOffset(), newPage.getRgbData(), newPage.getOffset(), PAGE_W * pageH);
+            if (users != 0) {
+               pagesOld.addElement(page);
+            } else {
+               page.dispose();
+            }
+         }
+         page = newPage;
+         pageH = newH;
+      }
+      return true;
+   }
+
+   private void growSlots() {
+      int add = slotX.length;
+      slotX = drc.getMem().increaseCapacity(slotX, add);
+      slotY = drc.getMem().increaseCapacity(slotY, add);
+      slotW = drc.getMem().increaseCapacity(slotW, add);
+      slotH = drc.getMem().increaseCapacity(slotH, add);
+      long[] newMask = new long[slotMask.length + add];
+      System.arraycopy(slotMask, 0, newMask, 0, slotMask.length);
+      slotMask = newMask;
+      char[] newChar = new char[slotChar.length + add];
+      System.arraycopy(slotChar, 0, newChar, 0, slotChar.length);
+      slotChar = newChar;
+      boolean[] newAlpha = new boolean[slotAlpha.length + add];
+      System.arraycopy(slotAlpha, 0, newAlpha, 0, slotAlpha.length);
+      slotAlpha = newAlpha;
+      Object[] newFont = new Object[slotFont.length + add];
+      System.arraycopy(slotFont, 0, newFont, 0, slotFont.length);
+      slotFont = newFont;
+   }
+
+   /**
+    * Forgets all the tiles. The page is kept.
+    */
+   private void reset() {
+      slots.clear();
+      for (int i = 0; i < slotCount; i++) {
+         slotFont[i] = null;
+      }
+      slotCount = 0;
+      shelfX = 0;
+      shelfY = 0;
+      shelfH = 0;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, GlyphAtlas.class, 240);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("slots", slotCount);
+      dc.appendVarWithSpace("pageH", pageH);
+      dc.appendVarWithSpace("users", users);
+      dc.appendVarWithSpace("hit", statHit);
+      dc.appendVarWithSpace("miss", statMiss);
+      dc.appendVarWithSpace("reset", statReset);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, GlyphAtlas.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -29,8 +29,15 @@ import pasa.cbentley.framework.drawx.src4.utils.AnchorUtils;
  */
 public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColors {
 
+   protected GlyphAtlas glyphAtlas;
+
    public MaskOperator(DrwCtx drc) {
       super(drc);
+      glyphAtlas = new GlyphAtlas(drc, this);
+   }
+
+   public GlyphAtlas getGlyphAtlas() {
+      return glyphAtlas;
    }
 
    /**
@@ -49,12 +56,27 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
       figImg.dispose();
    }
 
+   /**
+    * Draws the masked char from the {@link GlyphAtlas}.
+    * <br>
+    * When the mask cannot be stored in the atlas, the masked char image is created and drawn.
+    * @param g
+    * @param x
+    * @param y
+    * @param mask
+    * @param c
+    * @param f
+    */
    public void drawMask(GraphicsX g, int x, int y, ByteObject mask, char c, IMFont f) {
+      if (glyphAtlas.drawMask(g, x, y, mask, c, f)) {
+         return;
+      }
       int bgColor = FULLY_OPAQUE_WHITE;
       RgbImage figImg = drc.getRgbImageFactory().getCharImage(FULLY_OPAQUE_BLACK, c, f, bgColor);
       RgbImage maskedImg = createMaskedFigure(mask, figImg);
       g.drawRgbImage(maskedImg, x, y);
       figImg.dispose();
+      maskedImg.dispose();
    }
 
    public void drawMask(GraphicsX g, int x, int y, ByteObject mask, char[] chars, int offset, int len, IMFont f, int w, int h) {
@@ -63,6 +85,7 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
       RgbImage maskedImg = createMaskedFigure(mask, figImg);
       g.drawRgbImage(maskedImg, x, y);
       figImg.dispose();
+      maskedImg.dispose();
    }
 
    /**
@@ -80,6 +103,7 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
       RgbImage maskedImg = createMaskedFigure(mask, figImg);
       g.drawRgbImage(maskedImg, x, y, anchor);
       figImg.dispose();
+      maskedImg.dispose();
    }
 
    /**
@@ -196,7 +220,10 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
    public RgbImage createShapeMask(ByteObject mask, int wi, int hi, ByteObject fig, int percent, ByteObject anchor) {
       RgbImage figImg = drc.getCache().createPrimitiveRgb(wi, hi, -1);
       GraphicsX figGraphics = figImg.getGraphicsX(GraphicsX.MODE_1_IMAGE);
-      fig = getClonedFigureForMask(fig);
+      //draw the shape in black without gradient. the figure itself is not modified
+      figGraphics.setColorOverride(FULLY_OPAQUE_BLACK);
+      boolean isGradientOff = figGraphics.hasSwitchOff(GraphicsX.SWITCHOFF_1_GRADIENT);
+      figGraphics.setSwitchOff(GraphicsX.SWITCHOFF_1_GRADIENT, true);
       if (percent == 100) {
          drc.getFigureOperator().paintFigureSwitch(figGraphics, 0, 0, wi, hi, fig);
       } else {
@@ -206,6 +233,8 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
          int y = AnchorUtils.getYAlign(anchor, 0, hi, hFig);
          drc.getFigureOperator().paintFigureSwitch(figGraphics, x, y, wFig, hFig, fig);
       }
+      figGraphics.clearColorOverride();
+      figGraphics.setSwitchOff(GraphicsX.SWITCHOFF_1_GRADIENT, isGradientOff);
       figImg.disposeGraphics();
 
       if (mask.hasFlag(MASK_OFFSET_1_FLAG1, MASK_FLAG_1_MASK_FILTER)) {
@@ -216,6 +245,13 @@ public class MaskOperator extends AbstractDrwOperator implements IBOMask, IColor
       return figImg;
    }
 
+   /**
+    * Clone of the figure in black, without gradient, animation, mask and filter.
+    * <br>
+    * Mask drawing does not need it anymore, it uses {@link GraphicsX#setColorOverride(int)} on the mask image.
+    * @param fig
+    * @return
+    */
    public ByteObject getClonedFigureForMask(ByteObject fig) {
       ByteObject figureCloned = fig.cloneCopyHeadRefParams();
       figureCloned.setValue(IBOFigure.FIG__OFFSET_06_COLOR4, FULLY_OPAQUE_BLACK, 4);
@@ -18,12 +18,30 @@ import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
 
 public class RgbImageOperator extends AbstractDrwOperator {
 
+   private int skewThreads = 1;
+
    public RgbImageOperator(DrwCtx drc) {
       super(drc);
    }
 
+   public int getSkewThreads() {
+      return skewThreads;
+   }
+
+   /**
+    * Number of threads for the bilinear skew of large images, calling thread included. See {@link SkewImplementationJava#numThreads}
+    * @param skewThreads
+    */
+   public void setSkewThreads(int skewThreads) {
+      if (skewThreads < 1) {
+         throw new IllegalArgumentException("skewThreads=" + skewThreads);
+      }
+      this.skewThreads = skewThreads;
+   }
+
    public RgbImage skewImage(RgbImage img, ByteObject tech, float x0, float y0, float x1, float y1, float x2, float y2, float x3, float y3) {
       SkewImplementationJava s = new SkewImplementationJava(drc, img, tech);
+      s.numThreads = skewThreads;
       return s.setCorners(x0, y0, x1, y1, x2, y2, x3, y3);
    }
 
@@ -31,12 +49,36 @@ public class RgbImageOperator extends AbstractDrwOperator {
       return drc.getScaleOperator().scaleRgbImage(rgbImage, newWidth, newHeight, scaler);
    }
 
+   /**
+    * Filters and alpha setters work on straight ARGB.
+    * <br>
+    * Converts the root of img to straight pixels when it is premultiplied.
+    * @param img
+    * @return true when {@link RgbImageOperator#endStraight(RgbImage, boolean)} must premultiply the pixels back
+    */
+   private boolean beginStraight(RgbImage img) {
+      RgbImage root = img.getRootImage();
+      if (root.isPremultiplied()) {
+         root.setPremultiplied(false);
+         return true;
+      }
+      return false;
+   }
+
+   private void endStraight(RgbImage img, boolean isPremultiplied) {
+      if (isPremultiplied) {
+         img.getRootImage().setPremultiplied(true);
+      }
+   }
+
    public void filterTBLR(RgbImage img, ByteObject filter) {
       if (img == null) {
          throw new NullPointerException("RgbImage is null");
       }
+      boolean isPre = beginStraight(img);
       //we have to manage the filter acceptor mask color here.? TODO 
       drc.getFilterOperator().filterTBLR(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), filter);
+      endStraight(img, isPre);
    }
 
    /**
@@ -46,11 +88,13 @@ public class RgbImageOperator extends AbstractDrwOperator {
     */
    public void filterRGB(RgbImage img, Function fct) {
       FilterOperator filterOperator = drc.getFilterOperator();
+      boolean isPre = beginStraight(img);
       if (img.isRegion()) {
          filterOperator.filterRGB(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), fct);
       } else {
          filterOperator.filterRGB(img.getRgbData(), img.getOffset(), img.getLength(), fct);
       }
+      endStraight(img, isPre);
    }
 
    /**
@@ -64,7 +108,9 @@ public class RgbImageOperator extends AbstractDrwOperator {
       Function fct = getFilterFactory().getFilterFunction(filter);
       int touchColor = filter.getValue(IBOFilter.FILTER_OFFSET_05_COLOR4, 4);
       boolean or48 = filter.hasFlag(IBOFilter.FILTER_OFFSET_03_FLAGP1, IBOFilter.FILTER_FLAGP_1_TOP);
+      boolean isPre = beginStraight(img);
       filterOperator.filterTouches(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), touchColor, or48, fct);
+      endStraight(img, isPre);
    }
 
    /**
@@ -77,6 +123,7 @@ public class RgbImageOperator extends AbstractDrwOperator {
       if (filter == null) {
          return;
       }
+      boolean isPre = beginStraight(img);
       int[] ar = img.getRgbData();
       FilterOperator filterOperator = drc.getFilterOperator();
 
@@ -87,6 +134,7 @@ public class RgbImageOperator extends AbstractDrwOperator {
       int width = img.getWidth();
       int height = img.getHeight();
       filterOperator.applyColorFilter(filter, ar, offset, scanLength, m, n, width, height);
+      endStraight(img, isPre);
 
       //     SystemLog.printDraw(RgbImage.debugAlphas(ar, img.getWidth(), img.getHeight()));
       //     if(ar != img.getRgbData()) {
@@ -103,6 +151,8 @@ public class RgbImageOperator extends AbstractDrwOperator {
       if (filter == null) {
          return;
       }
+      boolean isPre = beginStraight(img);
+      boolean isPreExtra = beginStraight(imgExtra);
       int[] ar = img.getRgbData();
       FilterOperator filterOperator = drc.getFilterOperator();
 
@@ -115,6 +165,8 @@ public class RgbImageOperator extends AbstractDrwOperator {
       
       int[] extra = imgExtra.getRgbData();
       filterOperator.applyColorFilter(filter, ar, offset, scanLength, m, n, width, height,extra);
+      endStraight(imgExtra, isPreExtra);
+      endStraight(img, isPre);
 
    }
 
@@ -125,10 +177,12 @@ public class RgbImageOperator extends AbstractDrwOperator {
     * @return
     */
    public RgbImage crop(RgbImage img, int color) {
+      boolean isPre = beginStraight(img);
       int[] rgb = img.getRgbData();
       int w = img.getWidth();
       int h = img.getHeight();
       int[] vals = RgbUtils.cropTBLRDistances(rgb, w, h, color);
+      endStraight(img, isPre);
       int minLeftCount = vals[2];
       int minRightCount = vals[3];
       int minTopCount = vals[0];
@@ -142,11 +196,15 @@ public class RgbImageOperator extends AbstractDrwOperator {
    }
 
    public void setAlpha(RgbImage img, int alpha) {
+      boolean isPre = beginStraight(img);
       RgbUtils.setAlpha(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), alpha);
+      endStraight(img, isPre);
    }
 
    public void setAlphaToColorARGB(RgbImage img, int alpha, int color) {
+      boolean isPre = beginStraight(img);
       RgbUtils.setAlphaToColorARGB(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), alpha, color);
+      endStraight(img, isPre);
    }
 
    /**
@@ -156,7 +214,9 @@ public class RgbImageOperator extends AbstractDrwOperator {
     * @param color
     */
    public void setAlphaToColorRGB(RgbImage img, int alpha, int color) {
+      boolean isPre = beginStraight(img);
       RgbUtils.setAlphaToColorRGB(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), alpha, color);
+      endStraight(img, isPre);
    }
 
    public void apply(RgbImage img, int numBits, int size, int[] rgbs, int[] indexes, int offset, int len, int width) {
@@ -176,6 +236,15 @@ public class RgbImageOperator extends AbstractDrwOperator {
     * @return null if all image is of color and padding is 0
     */
    public RgbImage trim(RgbImage img, int pad, int color) {
+      boolean isPre = beginStraight(img);
+      try {
+         return trimStraight(img, pad, color);
+      } finally {
+         endStraight(img, isPre);
+      }
+   }
+
+   private RgbImage trimStraight(RgbImage img, int pad, int color) {
       int[] rgb = img.getRgbData();
       int w = img.getWidth();
       int h = img.getHeight();
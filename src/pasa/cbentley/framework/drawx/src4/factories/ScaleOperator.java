@@ -8,24 +8,49 @@ import pasa.cbentley.byteobjects.src4.core.ByteObject;
 import pasa.cbentley.byteobjects.src4.ctx.IBOTypesBOC;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
 import pasa.cbentley.framework.drawx.src4.ctx.IBOTypesDrawX;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
 import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOPass;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOScaler;
+import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
 import pasa.cbentley.framework.drawx.src4.tech.ITechScaler;
 
 /**
  * Scaling done by the Bentley framework.
  * <br>
  * Ask the Host, if no support for scaling
+ * <br>
+ * <br>
+ * Scaled pixels are in the format of the source, straight or premultiplied. See {@link RgbImage#isPremultiplied()}
  * @author Charles Bentley
  *
  */
 public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
 
+   /**
+    * Threads used by scalers flagged {@link IBOScaler#SCALE_FLAG_02_PARALLEL}
+    */
+   private int numThreads = 1;
+
    public ScaleOperator(DrwCtx drc) {
       super(drc);
    }
 
+   public int getNumThreads() {
+      return numThreads;
+   }
+
+   /**
+    * Number of threads used by scalers with the flag {@link IBOScaler#SCALE_FLAG_02_PARALLEL}, calling thread included
+    * @param numThreads
+    */
+   public void setNumThreads(int numThreads) {
+      if (numThreads < 1) {
+         throw new IllegalArgumentException("numThreads=" + numThreads);
+      }
+      this.numThreads = numThreads;
+   }
+
    public ByteObject mergeScale(ByteObject root, ByteObject merge) {
       if (root == null) {
          return merge;
@@ -81,6 +106,7 @@ public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
             inOffset += w;
          }
       }
+      //nearest pixels keep the format of img
       return rawOutput;
    }
 
@@ -125,7 +151,10 @@ public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
             break;
       }
       int id = scaler.get1(IBOScaler.SCALE_OFFSET_03_ID1);
-
+      int threads = 1;
+      if (scaler.hasFlag(IBOScaler.SCALE_OFFSET_01_FLAG, IBOScaler.SCALE_FLAG_02_PARALLEL)) {
+         threads = numThreads;
+      }
       switch (id) {
          case SCALER_ID_0_LINEAR:
             nr = scaleRGB(rgb, newWidth, newHeight);
@@ -134,7 +163,12 @@ public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
             nr = scaleBiLinear(rgb, newWidth, newHeight);
             break;
          case SCALER_ID_2_BI_CUBIC:
-            nr = scaleBiCubic(rgb, newWidth, newHeight);
+         case SCALER_ID_3_LANCZOS_3:
+            nr = scaleSeparable(rgb, newWidth, newHeight, id, threads);
+            break;
+         case SCALER_ID_4_AREA_AVERAGE:
+            boolean isHalving = scaler.hasFlag(IBOScaler.SCALE_OFFSET_01_FLAG, IBOScaler.SCALE_FLAG_03_HALVING);
+            nr = scaleAreaAverage(rgb, newWidth, newHeight, isHalving);
             break;
          default:
             break;
@@ -143,55 +177,133 @@ public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
          ByteObject postFilter = scaler.getSubOrder(IBOTypesBOC.TYPE_040_COLOR_FILTER, num);
          drc.getFilterOperator().applyColorFilter(postFilter, nr, 0, newWidth, newHeight);
       }
-      return rgb.getRgbCache().createImage(nr, newWidth, newHeight);
+      RgbImage scaled = rgb.getRgbCache().createImage(nr, newWidth, newHeight);
+      scaled.setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, rgb.isPremultiplied());
+      return scaled;
    }
 
+   /**
+    * Bi cubic scaling with a Catmull-Rom kernel. See {@link SeparableResampler}
+    * @param rgb
+    * @param newWidth
+    * @param newHeight
+    * @return
+    */
    public int[] scaleBiCubic(RgbImage rgb, int newWidth, int newHeight) {
-      return scaleBiLinear(rgb, newWidth, newHeight);
+      return scaleSeparable(rgb, newWidth, newHeight, SCALER_ID_2_BI_CUBIC, 1);
    }
 
-   public class CubicInterpolator {
-      public double getValue(double[] p, double x) {
-         return p[1] + 0.5 * x * (p[2] - p[0] + x * (2.0 * p[0] - 5.0 * p[1] + 4.0 * p[2] - p[3] + x * (3.0 * (p[1] - p[2]) + p[3] - p[0])));
-      }
+   /**
+    * Lanczos-3 scaling. See {@link SeparableResampler}
+    * @param rgb
+    * @param newWidth
+    * @param newHeight
+    * @return
+    */
+   public int[] scaleLanczos3(RgbImage rgb, int newWidth, int newHeight) {
+      return scaleSeparable(rgb, newWidth, newHeight, SCALER_ID_3_LANCZOS_3, 1);
    }
 
-   public class BicubicInterpolator extends CubicInterpolator {
-      private double[] arr = new double[4];
+   /**
+    * Scales the pixels of rgb with a two pass {@link SeparableResampler}. rgb is not modified.
+    * @param rgb
+    * @param newWidth
+    * @param newHeight
+    * @param scalerID {@link ITechScaler#SCALER_ID_2_BI_CUBIC} or {@link ITechScaler#SCALER_ID_3_LANCZOS_3}
+    * @param numThreads threads resampling rows, calling thread included
+    * @return a new array of newWidth x newHeight pixels
+    */
+   public int[] scaleSeparable(RgbImage rgb, int newWidth, int newHeight, int scalerID, int numThreads) {
+      if (rgb.isNullImage()) {
+         throw new NullPointerException();
+      }
+      SeparableResampler resampler = new SeparableResampler(drc, scalerID);
+      //premultiplied pixels are filtered as they are
+      resampler.setPremultiplied(rgb.isPremultiplied());
+      int[] data = rgb.getRgbData();
+      int scan = rgb.getScanLength();
+      int offset = rgb.getOffset() + rgb.getM() + rgb.getN() * scan;
+      return resampler.resample(data, offset, scan, rgb.getWidth(), rgb.getHeight(), newWidth, newHeight, numThreads);
+   }
 
-      public double getValue(double[][] p, double x, double y) {
-         arr[0] = getValue(p[0], y);
-         arr[1] = getValue(p[1], y);
-         arr[2] = getValue(p[2], y);
-         arr[3] = getValue(p[3], y);
-         return getValue(arr, x);
+   /**
+    * Downscales rgb by averaging the source area of each new pixel. See {@link AreaAverageScaler}.
+    * <br>
+    * When a new size is bigger than the size of rgb, bi linear scaling is used.
+    * @param rgb
+    * @param newWidth
+    * @param newHeight
+    * @param isHalving halves the image while it is twice the new size before averaging
+    * @return a new array of newWidth x newHeight pixels
+    */
+   public int[] scaleAreaAverage(RgbImage rgb, int newWidth, int newHeight, boolean isHalving) {
+      if (rgb.isNullImage()) {
+         throw new NullPointerException();
+      }
+      if (newWidth > rgb.getWidth() || newHeight > rgb.getHeight()) {
+         return scaleBiLinear(rgb, newWidth, newHeight);
       }
+      AreaAverageScaler scaler = new AreaAverageScaler(drc);
+      scaler.setPremultiplied(rgb.isPremultiplied());
+      int[] data = rgb.getRgbData();
+      int scan = rgb.getScanLength();
+      int offset = rgb.getOffset() + rgb.getM() + rgb.getN() * scan;
+      return scaler.scale(data, offset, scan, rgb.getWidth(), rgb.getHeight(), newWidth, newHeight, isHalving);
    }
 
-   public class TricubicInterpolator extends BicubicInterpolator {
-      private double[] arr = new double[4];
+   /**
+    * New image of the scaled pixels in the format of rgb
+    * @param rgb
+    * @param data
+    * @param newWidth
+    * @param newHeight
+    * @return
+    */
+   private RgbImage createScaledImage(RgbImage rgb, int[] data, int newWidth, int newHeight) {
+      RgbImage scaled = drc.getCache().createImage(data, newWidth, newHeight);
+      scaled.setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, rgb.isPremultiplied());
+      return scaled;
+   }
 
-      public double getValue(double[][][] p, double x, double y, double z) {
-         arr[0] = getValue(p[0], y, z);
-         arr[1] = getValue(p[1], y, z);
-         arr[2] = getValue(p[2], y, z);
-         arr[3] = getValue(p[3], y, z);
-         return getValue(arr, x);
-      }
+   public RgbImage getScaledAreaAverage(RgbImage rgb, int newWidth, int newHeight, boolean isHalving) {
+      int[] data = scaleAreaAverage(rgb, newWidth, newHeight, isHalving);
+      return createScaledImage(rgb, data, newWidth, newHeight);
    }
 
    public RgbImage getScaledBiCubic(RgbImage rgb, int newWidth, int newHeight) {
       int[] data = scaleBiCubic(rgb, newWidth, newHeight);
-      return drc.getCache().createImage(data, newWidth, newHeight);
+      return createScaledImage(rgb, data, newWidth, newHeight);
+   }
+
+   public RgbImage getScaledLanczos3(RgbImage rgb, int newWidth, int newHeight) {
+      int[] data = scaleLanczos3(rgb, newWidth, newHeight);
+      return createScaledImage(rgb, data, newWidth, newHeight);
    }
 
    public RgbImage getScaledBiLinear(RgbImage rgb, int newWidth, int newHeight) {
       int[] data = scaleBiLinear(rgb, newWidth, newHeight);
-      return drc.getCache().createImage(data, newWidth, newHeight);
+      return createScaledImage(rgb, data, newWidth, newHeight);
    }
 
+   /**
+    * Bi linear scaling. Channels are interpolated independently on premultiplied pixels,
+    * so that transparent pixels do not darken the edges of their opaque neighbours.
+    * <br>
+    * <br>
+    * A premultiplied rgb is read as it is. A straight rgb is premultiplied in a copy and the new pixels are unpremultiplied.
+    * @param rgb
+    * @param newWidth
+    * @param newHeight
+    * @return a new array of newWidth x newHeight pixels in the format of rgb
+    */
    public int[] scaleBiLinear(RgbImage rgb, int newWidth, int newHeight) {
-      int[] srcInput = rgb.getRgbData();
+      boolean isPremultiplied = rgb.isPremultiplied();
+      int[] srcInput = null;
+      if (isPremultiplied && !rgb.isRegion() && rgb.getOffset() == 0) {
+         srcInput = rgb.getRgbData();
+      } else {
+         srcInput = rgb.getRgbCopy(true);
+      }
       int srcWidth = rgb.getWidth();
       int srcHeight = rgb.getHeight();
       int srcLength = srcWidth * srcHeight;
@@ -300,6 +412,9 @@ public class ScaleOperator extends AbstractDrwOperator implements ITechScaler {
             srcOffset += srcWidth;
          }
       }
+      if (!isPremultiplied) {
+         BlendKernel.unpremultiply(destOutput, 0, destLength, destLength, 1);
+      }
       return destOutput;
    }
 
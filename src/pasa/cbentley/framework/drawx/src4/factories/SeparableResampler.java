@@ -0,0 +1,472 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.tech.ITechScaler;
+
+/**
+ * Two pass resampling of ARGB int[] pixels with a bicubic or a Lanczos-3 kernel.
+ * <br>
+ * <br>
+ * The first pass resamples each source row horizontally into a buffer of newWidth x srcHeight. The second pass resamples
+ * the columns of that buffer vertically. Kernel weights are computed once per output column and once per output row,
+ * in 14 bits fixed point, and summed with integers.
+ * <br>
+ * When downscaling, the kernel is widened by the scale factor so that all source pixels contribute.
+ * <br>
+ * <br>
+ * Colors are premultiplied by alpha before filtering so that transparent pixels do not bleed their color.
+ * Overshoot of negative lobes is clamped.
+ * <br>
+ * Pixels already premultiplied are filtered as they are with {@link SeparableResampler#setPremultiplied(boolean)}.
+ * <br>
+ * <br>
+ * With more than one thread, each pass is split in bands of rows painted by plain {@link Thread}s.
+ * <br>
+ * One instance per resample. See {@link ScaleOperator#scaleSeparable(pasa.cbentley.framework.drawx.src4.engine.RgbImage, int, int, int, int)}
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class SeparableResampler extends ObjectDrw implements Runnable {
+
+   /**
+    * Number of rows of a band
+    */
+   private static final int BAND_SIZE     = 16;
+
+   /**
+    * Fraction bits of the intermediate buffer values
+    */
+   private static final int BUFFER_SHIFT  = 6;
+
+   /**
+    * Fixed point weight of 1.0
+    */
+   private static final int WEIGHT_ONE    = 1 << 14;
+
+   private static final int WEIGHT_SHIFT  = 14;
+
+   private int[]            buffer;
+
+   private int[]            dst;
+
+   /**
+    * Source and destination pixels are premultiplied
+    */
+   private boolean          isPremultiplied;
+
+   private int              dstHeight;
+
+   private int              dstWidth;
+
+   private int              nextBand;
+
+   private int              numBands;
+
+   private int              numThreads;
+
+   private int              pass;
+
+   private int              scalerID;
+
+   private int[]            src;
+
+   private int              srcHeight;
+
+   private int              srcOffset;
+
+   private int              srcScan;
+
+   private int              srcWidth;
+
+   /**
+    * Source index of each tap of each output column. tapsX per column
+    */
+   private int[]            tableXIndex;
+
+   private int[]            tableXWeight;
+
+   private int[]            tableYIndex;
+
+   private int[]            tableYWeight;
+
+   private int              tapsX;
+
+   private int              tapsY;
+
+   /**
+    *
+    * @param drc
+    * @param scalerID {@link ITechScaler#SCALER_ID_2_BI_CUBIC} or {@link ITechScaler#SCALER_ID_3_LANCZOS_3}
+    */
+   public SeparableResampler(DrwCtx drc, int scalerID) {
+      super(drc);
+      if (scalerID != ITechScaler.SCALER_ID_2_BI_CUBIC && scalerID != ITechScaler.SCALER_ID_3_LANCZOS_3) {
+         throw new IllegalArgumentException("scalerID=" + scalerID);
+      }
+      this.scalerID = scalerID;
+   }
+
+   /**
+    * Builds the table of taps for resampling srcLen pixels into dstLen pixels.
+    * <br>
+    * Source index are clamped to the edges.
+    * @param srcLen
+    * @param dstLen
+    * @param taps number of taps per output pixel, see {@link SeparableResampler#getTaps(int, int)}
+    * @param index filled with source index
+    * @param weights filled with weights, summing to {@link SeparableResampler#WEIGHT_ONE} for each output pixel
+    */
+   private void buildTable(int srcLen, int dstLen, int taps, int[] index, int[] weights) {
+      double scale = (double) srcLen / (double) dstLen;
+      double filterScale = Math.max(1.0, scale);
+      double support = getSupport() * filterScale;
+      double[] ws = new double[taps];
+      for (int i = 0; i < dstLen; i++) {
+         double center = (i + 0.5) * scale - 0.5;
+         int left = (int) Math.floor(center - support) + 1;
+         double sum = 0;
+         for (int k = 0; k < taps; k++) {
+            double w = kernel((left + k - center) / filterScale);
+            ws[k] = w;
+            sum += w;
+         }
+         int offset = i * taps;
+         int total = 0;
+         int maxK = 0;
+         for (int k = 0; k < taps; k++) {
+            int j = left + k;
+            if (j < 0) {
+               j = 0;
+            } else if (j >= srcLen) {
+               j = srcLen - 1;
+            }
+            index[offset + k] = j;
+            int w = (int) Math.floor(ws[k] / sum * WEIGHT_ONE + 0.5);
+            weights[offset + k] = w;
+            total += w;
+            if (w > weights[offset + maxK]) {
+               maxK = k;
+            }
+         }
+         //rounding residue goes to the heaviest tap
+         weights[offset + maxK] += WEIGHT_ONE - total;
+      }
+   }
+
+   private double getSupport() {
+      if (scalerID == ITechScaler.SCALER_ID_3_LANCZOS_3) {
+         return 3.0;
+      }
+      return 2.0;
+   }
+
+   /**
+    * Number of taps for each output pixel
+    * @param srcLen
+    * @param dstLen
+    * @return
+    */
+   private int getTaps(int srcLen, int dstLen) {
+      double filterScale = Math.max(1.0, (double) srcLen / (double) dstLen);
+      return (int) Math.ceil(getSupport() * filterScale) * 2;
+   }
+
+   /**
+    * Kernel value at distance x, in source pixels at the output scale
+    * @param x
+    * @return
+    */
+   private double kernel(double x) {
+      if (x < 0) {
+         x = -x;
+      }
+      if (scalerID == ITechScaler.SCALER_ID_3_LANCZOS_3) {
+         if (x < 1e-8) {
+            return 1.0;
+         }
+         if (x >= 3.0) {
+            return 0.0;
+         }
+         double px = Math.PI * x;
+         return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+      }
+      //Keys cubic convolution with a = -0.5 (Catmull-Rom)
+      if (x < 1.0) {
+         return (1.5 * x - 2.5) * x * x + 1.0;
+      }
+      if (x < 2.0) {
+         return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+      }
+      return 0.0;
+   }
+
+   private synchronized int nextBand() {
+      if (nextBand >= numBands) {
+         return -1;
+      }
+      return nextBand++;
+   }
+
+   /**
+    * Horizontal pass of the source rows [y1,y2[ into the buffer
+    * @param y1
+    * @param y2
+    * @param row premultiplied source row
+    */
+   private void passHorizontal(int y1, int y2, int[] row) {
+      for (int y = y1; y < y2; y++) {
+         int offset = srcOffset + y * srcScan;
+         if (isPremultiplied) {
+            System.arraycopy(src, offset, row, 0, srcWidth);
+         } else {
+            for (int x = 0; x < srcWidth; x++) {
+               row[x] = premultiply(src[offset + x]);
+            }
+         }
+         int bi = y * dstWidth * 4;
+         int ti = 0;
+         for (int x = 0; x < dstWidth; x++) {
+            int sa = 0;
+            int sr = 0;
+            int sg = 0;
+            int sb = 0;
+            for (int k = 0; k < tapsX; k++) {
+               int p = row[tableXIndex[ti]];
+               int w = tableXWeight[ti];
+               ti++;
+               sa += (p >>> 24) * w;
+               sr += ((p >> 16) & 0xFF) * w;
+               sg += ((p >> 8) & 0xFF) * w;
+               sb += (p & 0xFF) * w;
+            }
+            int shift = WEIGHT_SHIFT - BUFFER_SHIFT;
+            int round = 1 << (shift - 1);
+            buffer[bi++] = clamp((sa + round) >> shift, 255 << BUFFER_SHIFT);
+            buffer[bi++] = clamp((sr + round) >> shift, 255 << BUFFER_SHIFT);
+            buffer[bi++] = clamp((sg + round) >> shift, 255 << BUFFER_SHIFT);
+            buffer[bi++] = clamp((sb + round) >> shift, 255 << BUFFER_SHIFT);
+         }
+      }
+   }
+
+   /**
+    * Vertical pass of the buffer into the destination rows [y1,y2[
+    * @param y1
+    * @param y2
+    * @param acc accumulator of one destination row, 4 per pixel
+    */
+   private void passVertical(int y1, int y2, int[] acc) {
+      int rowLen = dstWidth * 4;
+      int shift = WEIGHT_SHIFT + BUFFER_SHIFT;
+      int round = 1 << (shift - 1);
+      for (int y = y1; y < y2; y++) {
+         for (int i = 0; i < rowLen; i++) {
+            acc[i] = 0;
+         }
+         int ti = y * tapsY;
+         for (int k = 0; k < tapsY; k++) {
+            int w = tableYWeight[ti + k];
+            if (w == 0) {
+               continue;
+            }
+            int bi = tableYIndex[ti + k] * rowLen;
+            for (int i = 0; i < rowLen; i++) {
+               acc[i] += buffer[bi + i] * w;
+            }
+         }
+         int di = y * dstWidth;
+         int ai = 0;
+         for (int x = 0; x < dstWidth; x++) {
+            int a = clamp((acc[ai++] + round) >> shift, 255);
+            int r = clamp((acc[ai++] + round) >> shift, a);
+            int g = clamp((acc[ai++] + round) >> shift, a);
+            int b = clamp((acc[ai++] + round) >> shift, a);
+            if (isPremultiplied) {
+               dst[di++] = (a << 24) | (r << 16) | (g << 8) | b;
+            } else {
+               dst[di++] = unpremultiply(a, r, g, b);
+            }
+         }
+      }
+   }
+
+   private static int clamp(int v, int max) {
+      if (v < 0) {
+         return 0;
+      }
+      if (v > max) {
+         return max;
+      }
+      return v;
+   }
+
+   private static int premultiply(int argb) {
+      int a = argb >>> 24;
+      if (a == 255) {
+         return argb;
+      }
+      if (a == 0) {
+         return 0;
+      }
+      int r = (argb >> 16) & 0xFF;
+      int g = (argb >> 8) & 0xFF;
+      int b = argb & 0xFF;
+      r = r * a + 128;
+      r = (r + (r >> 8)) >> 8;
+      g = g * a + 128;
+      g = (g + (g >> 8)) >> 8;
+      b = b * a + 128;
+      b = (b + (b >> 8)) >> 8;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   private static int unpremultiply(int a, int r, int g, int b) {
+      if (a == 255) {
+         return 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+      if (a == 0) {
+         return 0;
+      }
+      int half = a >> 1;
+      r = (r * 255 + half) / a;
+      g = (g * 255 + half) / a;
+      b = (b * 255 + half) / a;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   /**
+    * Resamples the srcWidth x srcHeight pixels of src into a new array of newWidth x newHeight.
+    * @param src
+    * @param offset index of the first pixel
+    * @param scan scanline length
+    * @param srcWidth
+    * @param srcHeight
+    * @param newWidth
+    * @param newHeight
+    * @param numThreads number of threads, calling thread included. 1 for no parallelism
+    * @return
+    */
+   public int[] resample(int[] src, int offset, int scan, int srcWidth, int srcHeight, int newWidth, int newHeight, int numThreads) {
+      if (srcWidth <= 0 || srcHeight <= 0 || newWidth <= 0 || newHeight <= 0) {
+         throw new IllegalArgumentException(srcWidth + "x" + srcHeight + " to " + newWidth + "x" + newHeight);
+      }
+      this.src = src;
+      this.srcOffset = offset;
+      this.srcScan = scan;
+      this.srcWidth = srcWidth;
+      this.srcHeight = srcHeight;
+      this.dstWidth = newWidth;
+      this.dstHeight = newHeight;
+      this.numThreads = Math.max(1, numThreads);
+
+      tapsX = getTaps(srcWidth, newWidth);
+      tableXIndex = new int[newWidth * tapsX];
+      tableXWeight = new int[newWidth * tapsX];
+      buildTable(srcWidth, newWidth, tapsX, tableXIndex, tableXWeight);
+      tapsY = getTaps(srcHeight, newHeight);
+      tableYIndex = new int[newHeight * tapsY];
+      tableYWeight = new int[newHeight * tapsY];
+      buildTable(srcHeight, newHeight, tapsY, tableYIndex, tableYWeight);
+
+      buffer = drc.getMem().createIntArray(newWidth * srcHeight * 4);
+      dst = drc.getMem().createIntArray(newWidth * newHeight);
+
+      runPass(0, srcHeight);
+      runPass(1, newHeight);
+
+      int[] result = dst;
+      buffer = null;
+      dst = null;
+      this.src = null;
+      return result;
+   }
+
+   /**
+    * When true, src pixels are premultiplied and the returned pixels are premultiplied. No conversion is done.
+    * @param isPremultiplied
+    */
+   public void setPremultiplied(boolean isPremultiplied) {
+      this.isPremultiplied = isPremultiplied;
+   }
+
+   public void run() {
+      int[] rowBuffer = null;
+      if (pass == 0) {
+         rowBuffer = new int[srcWidth];
+      } else {
+         rowBuffer = new int[dstWidth * 4];
+      }
+      int band = nextBand();
+      while (band != -1) {
+         int y1 = band * BAND_SIZE;
+         if (pass == 0) {
+            passHorizontal(y1, Math.min(srcHeight, y1 + BAND_SIZE), rowBuffer);
+         } else {
+            passVertical(y1, Math.min(dstHeight, y1 + BAND_SIZE), rowBuffer);
+         }
+         band = nextBand();
+      }
+   }
+
+   /**
+    * Runs a pass over rows bands, with the calling thread and numThreads - 1 other threads
+    * @param pass 0 for horizontal, 1 for vertical
+    * @param rows
+    */
+   private void runPass(int pass, int rows) {
+      this.pass = pass;
+      this.nextBand = 0;
+      this.numBands = (rows + BAND_SIZE - 1) / BAND_SIZE;
+      int numWorkers = Math.min(numThreads, numBands) - 1;
+      Thread[] workers = new Thread[Math.max(0, numWorkers)];
+      for (int i = 0; i < workers.length; i++) {
+         workers[i] = new Thread(this, "Resampler" + i);
+         workers[i].start();
+      }
+      run();
+      for (int i = 0; i < workers.length; i++) {
+         boolean isJoined = false;
+         while (!isJoined) {
+            try {
+               workers[i].join();
+               isJoined = true;
+            } catch (InterruptedException e) {
+               //the pass must be finished before the next one
+            }
+         }
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, SeparableResampler.class, 300);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("scalerID", scalerID);
+      dc.appendVarWithSpace("src", srcWidth + "x" + srcHeight);
+      dc.appendVarWithSpace("dst", dstWidth + "x" + dstHeight);
+      dc.appendVarWithSpace("tapsX", tapsX);
+      dc.appendVarWithSpace("tapsY", tapsY);
+      dc.appendVarWithSpace("numThreads", numThreads);
+      dc.appendVarWithSpace("isPremultiplied", isPremultiplied);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, SeparableResampler.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -14,7 +14,24 @@ import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOPassSkewer;
 import pasa.cbentley.framework.drawx.src4.tech.ITechSkew;
 
-public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer {
+public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer, Runnable {
+
+   /**
+    * Rows of a band of the parallel bilinear skew
+    */
+   private static final int BAND_SIZE           = 16;
+
+   /**
+    * Outputs with fewer pixels are skewed by the calling thread only
+    */
+   public static final int  PARALLEL_MIN_PIXELS = 1 << 16;
+
+   /**
+    * Number of threads for the bilinear skew of large outputs, calling thread included.
+    * <br>
+    * Set by {@link RgbImageOperator#setSkewThreads(int)}
+    */
+   public int               numThreads          = 1;
 
    public int       edgeAction    = ITechSkew.SKEW_EDGE_0_ZERO;
 
@@ -44,6 +61,14 @@ public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer {
 
    private RgbImage dst;
 
+   private int[]    inPixels;
+
+   private int[]    outPixels;
+
+   private int      nextBand;
+
+   private int      numBands;
+
    public SkewImplementationJava(DrwCtx drc, RgbImage src) {
       super(drc);
       this.src = src;
@@ -176,32 +201,99 @@ public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer {
 
    }
 
+   /**
+    * Bilinear skew into a new {@link RgbImage}.
+    * <br>
+    * <br>
+    * Pixels are written in the rgb array of the new image by {@link SkewImplementationJava#filterBilinearRows(int, int)}.
+    * Outputs of {@link SkewImplementationJava#PARALLEL_MIN_PIXELS} pixels or more are done by {@link SkewImplementationJava#numThreads} threads,
+    * in bands of rows.
+    * @param src
+    * @param width
+    * @param height
+    * @param inPixels
+    * @return
+    */
    protected RgbImage filterBilinear(RgbImage src, int width, int height, int[] inPixels) {
-      int srcWidth = width;
-      int srcHeight = height;
-      int srcWidth1 = width - fuzzyBorder;
-      int srcHeight1 = height - fuzzyBorder;
       int outWidth = transformedSpace[2];
       int outHeight = transformedSpace[3];
-      int outX, outY;
-      //int index = 0;
-      int[] outPixels = new int[outWidth];
       this.dst = src.getRgbCache().createNonNull(outWidth, outHeight);
-      outX = transformedSpace[0];
-      outY = transformedSpace[1];
-      float[] out = new float[2];
+      this.inPixels = inPixels;
+      this.outPixels = dst.getRgbData();
+      if (numThreads > 1 && outWidth * outHeight >= PARALLEL_MIN_PIXELS) {
+         nextBand = 0;
+         numBands = (outHeight + BAND_SIZE - 1) / BAND_SIZE;
+         int numWorkers = Math.min(numThreads, numBands) - 1;
+         Thread[] workers = new Thread[numWorkers];
+         for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this, "Skew" + i);
+            workers[i].start();
+         }
+         run();
+         for (int i = 0; i < workers.length; i++) {
+            boolean isJoined = false;
+            while (!isJoined) {
+               try {
+                  workers[i].join();
+                  isJoined = true;
+               } catch (InterruptedException e) {
+                  //rows must be done before the image is returned
+               }
+            }
+         }
+      } else {
+         filterBilinearRows(0, outHeight);
+      }
+      this.inPixels = null;
+      this.outPixels = null;
+      return dst;
+   }
 
-      //#debug
-      //StringBuilder sb = StringBuilder.getBigMain();
-      for (int y = 0; y < outHeight; y++) {
+   /**
+    * Bilinear skew of the output rows [y1,y2[ directly in the rgb array of {@link SkewImplementationJava#dst}.
+    * <br>
+    * <br>
+    * The homogeneous source coordinates of {@link SkewImplementationJava#transformInverse(int, int, float[])} are linear in x.
+    * They are computed once per row and stepped along the row. A pixel costs one division, and weights are 8 bits integers.
+    * @param y1
+    * @param y2
+    */
+   private void filterBilinearRows(int y1, int y2) {
+      int srcWidth = originalSpace[2];
+      int srcHeight = originalSpace[3];
+      int srcWidth1 = srcWidth - fuzzyBorder;
+      int srcHeight1 = srcHeight - fuzzyBorder;
+      int outWidth = transformedSpace[2];
+      int outX = transformedSpace[0];
+      int outY = transformedSpace[1];
+      int[] inPixels = this.inPixels;
+      int[] outPixels = this.outPixels;
+      int scan = dst.getScanLength();
+      //steps along x of the homogeneous coordinates
+      double du = (double) srcWidth * A;
+      double dv = (double) srcHeight * D;
+      double dw = G;
+      for (int y = y1; y < y2; y++) {
+         int oy = outY + y;
+         double u = (double) srcWidth * (A * outX + B * oy + C);
+         double v = (double) srcHeight * (D * outX + E * oy + F);
+         double w = G * outX + H * oy + I;
+         int index = dst.getOffset() + y * scan;
          for (int x = 0; x < outWidth; x++) {
-            transformInverse(outX + x, outY + y, out);
-            int srcX = (int) Math.floor(out[0]);
-            int srcY = (int) Math.floor(out[1]);
-            float xWeight = out[0] - srcX;
-            float yWeight = out[1] - srcY;
+            double iw = 1.0 / w;
+            double fx = u * iw;
+            double fy = v * iw;
+            int srcX = (int) fx;
+            if (fx < srcX) {
+               srcX--;
+            }
+            int srcY = (int) fy;
+            if (fy < srcY) {
+               srcY--;
+            }
+            int xWeight = (int) ((fx - srcX) * 256);
+            int yWeight = (int) ((fy - srcY) * 256);
             int nw, ne, sw, se;
-            boolean border = false;
             if (srcX >= 0 && srcX < srcWidth1 && srcY >= 0 && srcY < srcHeight1) {
                // Easy case, all corners are in the image
                int i = srcWidth * srcY + srcX;
@@ -210,26 +302,38 @@ public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer {
                sw = inPixels[i + srcWidth];
                se = inPixels[i + srcWidth + 1];
             } else {
-               //System.out.println("srcX=" + srcX + " srcWidth1=" + srcWidth1 + " srcY=" + srcY + " srcHeight1=" + srcHeight1);
                // Some of the corners are off the image
-               border = true;
                nw = getEdgePixel(inPixels, srcX, srcY, srcWidth, srcHeight);
                ne = getEdgePixel(inPixels, srcX + 1, srcY, srcWidth, srcHeight);
                sw = getEdgePixel(inPixels, srcX, srcY + 1, srcWidth, srcHeight);
                se = getEdgePixel(inPixels, srcX + 1, srcY + 1, srcWidth, srcHeight);
             }
-            //System.out.println("nw=" + nw + " ne=" + ne + " sw=" + sw + " se=" + se);
-            outPixels[x] = bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
-            if (border) {
-               //sb.append(ColorConstants.debugColor(outPixels[x]));
-               //sb.append("\n");
-            }
+            outPixels[index++] = bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
+            u += du;
+            v += dv;
+            w += dw;
          }
-         //System.out.println(sb.toString());
-         //System.out.println("y" + y + " outWidth=" + outWidth + " srcWidth=" + srcWidth);
-         dst.setRGB(0, y, outWidth, 1, outPixels);
       }
-      return dst;
+   }
+
+   private synchronized int nextBand() {
+      if (nextBand >= numBands) {
+         return -1;
+      }
+      return nextBand++;
+   }
+
+   /**
+    * Thread of the parallel {@link SkewImplementationJava#filterBilinear(RgbImage, int, int, int[])}
+    */
+   public void run() {
+      int outHeight = transformedSpace[3];
+      int band = nextBand();
+      while (band != -1) {
+         int y1 = band * BAND_SIZE;
+         filterBilinearRows(y1, Math.min(outHeight, y1 + BAND_SIZE));
+         band = nextBand();
+      }
    }
 
    /**
@@ -531,6 +635,22 @@ public class SkewImplementationJava extends ObjectDrw implements IBOPassSkewer {
       return a;
    }
 
+   /**
+    * Bilinear interpolation of ARGB values with 8 bits weights.
+    * @param x the X weight 0..255
+    * @param y the Y weight 0..255
+    * @return the interpolated value
+    */
+   private static int bilinearInterpolate(int x, int y, int nw, int ne, int sw, int se) {
+      int cx = 256 - x;
+      int cy = 256 - y;
+      int a = (cy * (cx * (nw >>> 24) + x * (ne >>> 24)) + y * (cx * (sw >>> 24) + x * (se >>> 24))) >> 16;
+      int r = (cy * (cx * ((nw >> 16) & 0xff) + x * ((ne >> 16) & 0xff)) + y * (cx * ((sw >> 16) & 0xff) + x * ((se >> 16) & 0xff))) >> 16;
+      int g = (cy * (cx * ((nw >> 8) & 0xff) + x * ((ne >> 8) & 0xff)) + y * (cx * ((sw >> 8) & 0xff) + x * ((se >> 8) & 0xff))) >> 16;
+      int b = (cy * (cx * (nw & 0xff) + x * (ne & 0xff)) + y * (cx * (sw & 0xff) + x * (se & 0xff))) >> 16;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
    /**
     * Bilinear interpolation of ARGB values.
     * @param x the X interpolation parameter 0..1
@@ -13,6 +13,7 @@ import pasa.cbentley.core.src4.structs.BufferObject;
 import pasa.cbentley.core.src4.structs.IntBuffer;
 import pasa.cbentley.core.src4.utils.Geo2dUtils;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.TriangleBatch;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOFigTesson;
 import pasa.cbentley.framework.drawx.src4.utils.Trig;
 
@@ -35,6 +36,7 @@ public class TessonUtilz {
       int dx1 = x;
       int dy1 = y;
       int totalW = 0;
+      TriangleBatch batch = g.getTriangleBatch();
       boolean isContinueW = true;
       while (isContinueW) {
          int colW = minSize + r.nextInt(maxSizeTesson);
@@ -45,11 +47,12 @@ public class TessonUtilz {
          int dy2 = dy1;
          int dx2 = dx1 + colW;
          cif.iterateColor(g);
-         g.fillTriangle(dw, dh, dx1, dy1, dx2, dy2);
+         batch.addTriangle(dw, dh, dx1, dy1, dx2, dy2, g.getActiveColor());
 
          totalW += colW;
          dx1 += colW;
       }
+      g.fillTriangles(batch);
    }
 
    public static IntBuffer getBufDistruted(Random r, UCtx uc, int min, int max, int size) {
@@ -173,10 +176,12 @@ public class TessonUtilz {
          }
       }
 
+      TriangleBatch batch = g.getTriangleBatch();
       for (int i = 0; i < trigsFinal.getSize(); i++) {
          Trig tr = (Trig) trigsFinal.get(i);
-         tr.draw(g, cif);
+         tr.draw(batch, g, cif);
       }
+      g.fillTriangles(batch);
    }
 
    public static void drawFigSierpinksy(GraphicsX g, int x, int y, int w, int h, ByteObject p, Random r, BOCtx boc) {
@@ -197,10 +202,9 @@ public class TessonUtilz {
       int yB = y + h; // (bas-droite)
       int xC = x + w / 2;
       int yC = y;
-      int[] xs = { xA, xB, xC };
-      int[] ys = { yA, yB, yC };
-
-      drawSierpinskiTriangle(g, xs, ys, w / 2, minSize, cif); // démarrer la récursion
+      TriangleBatch batch = g.getTriangleBatch();
+      drawSierpinskiTriangle(batch, g, xA, yA, xB, yB, xC, yC, w / 2, minSize, cif); // démarrer la récursion
+      g.fillTriangles(batch);
 
    }
 
@@ -219,32 +223,22 @@ public class TessonUtilz {
       }
    }
 
-   private static void drawTriangle(GraphicsX g, int[] x, int[] y, ColorIteratorFun cif) {
+   private static void drawTriangle(TriangleBatch batch, GraphicsX g, int x0, int y0, int x1, int y1, int x2, int y2, ColorIteratorFun cif) {
       cif.iterateColor(g);
-      g.fillTriangle(x[0], y[0], x[1], y[1], x[2], y[2]);
+      batch.addTriangle(x0, y0, x1, y1, x2, y2, g.getActiveColor());
    }
 
-   private static void drawSierpinskiTriangle(GraphicsX g, int[] x, int[] y, int d, int minSize, ColorIteratorFun cif) {
-      if (d < minSize) {
-         drawTriangle(g, x, y, cif);
-      } else {
-         drawTriangle(g, x, y, cif);
+   private static void drawSierpinskiTriangle(TriangleBatch batch, GraphicsX g, int x0, int y0, int x1, int y1, int x2, int y2, int d, int minSize, ColorIteratorFun cif) {
+      drawTriangle(batch, g, x0, y0, x1, y1, x2, y2, cif);
+      if (d >= minSize) {
          // milieux des côtés du triangle:
-         int xMc = (x[0] + x[1]) / 2, yMc = (y[0] + y[1]) / 2;
-         int xMb = (x[0] + x[2]) / 2, yMb = (y[0] + y[2]) / 2;
-         int xMa = (x[1] + x[2]) / 2, yMa = (y[1] + y[2]) / 2;
-
-         int[] xNouveau1 = { x[0], xMc, xMb };
-         int[] yNouveau1 = { y[0], yMc, yMb };
-         drawSierpinskiTriangle(g, xNouveau1, yNouveau1, d / 2, minSize, cif);
-
-         int[] xNouveau2 = { x[1], xMc, xMa };
-         int[] yNouveau2 = { y[1], yMc, yMa };
-         drawSierpinskiTriangle(g, xNouveau2, yNouveau2, d / 2, minSize, cif);
+         int xMc = (x0 + x1) / 2, yMc = (y0 + y1) / 2;
+         int xMb = (x0 + x2) / 2, yMb = (y0 + y2) / 2;
+         int xMa = (x1 + x2) / 2, yMa = (y1 + y2) / 2;
 
-         int[] xNouveau3 = { x[2], xMb, xMa };
-         int[] yNouveau3 = { y[2], yMb, yMa };
-         drawSierpinskiTriangle(g, xNouveau3, yNouveau3, d / 2, minSize, cif);
+         drawSierpinskiTriangle(batch, g, x0, y0, xMc, yMc, xMb, yMb, d / 2, minSize, cif);
+         drawSierpinskiTriangle(batch, g, x1, y1, xMc, yMc, xMa, yMa, d / 2, minSize, cif);
+         drawSierpinskiTriangle(batch, g, x2, y2, xMb, yMb, xMa, yMa, d / 2, minSize, cif);
       }
    }
 
@@ -272,29 +266,39 @@ public class TessonUtilz {
 
       int x1 = x + r.nextInt(w);
       int y1 = y + r.nextInt(h);
-      drawX(ibws1, x, y, x1, y1, cif, g);
-      drawX(ibws2, x, y + h, x1, y1, cif, g);
+      TriangleBatch batch = g.getTriangleBatch();
+      drawX(ibws1, x, y, x1, y1, cif, g, batch);
+      drawX(ibws2, x, y + h, x1, y1, cif, g, batch);
 
-      drawY(ibhs1, x, y, x1, y1, cif, g);
-      drawY(ibhs2, x + w, y, x1, y1, cif, g);
+      drawY(ibhs1, x, y, x1, y1, cif, g, batch);
+      drawY(ibhs2, x + w, y, x1, y1, cif, g, batch);
+      g.fillTriangles(batch);
 
    }
 
-   public static void drawX(IntBuffer work, int x, int y, int x1, int y1, ColorIteratorFun cif, GraphicsX g) {
+   /**
+    * Adds the triangles from x1,y1 to the segments of the horizontal line y.
+    * @param batch drawn by the caller with {@link GraphicsX#fillTriangles(TriangleBatch)}
+    */
+   public static void drawX(IntBuffer work, int x, int y, int x1, int y1, ColorIteratorFun cif, GraphicsX g, TriangleBatch batch) {
       for (int j = 0; j < work.getSize() - 1; j++) {
          int x2 = x + work.get(j);
          int x3 = x + work.get(j + 1);
          cif.iterateColor(g);
-         g.fillTriangle(x1, y1, x2, y, x3, y);
+         batch.addTriangle(x1, y1, x2, y, x3, y, g.getActiveColor());
       }
    }
 
-   public static void drawY(IntBuffer work, int x, int y, int x1, int y1, ColorIteratorFun cif, GraphicsX g) {
+   /**
+    * Adds the triangles from x1,y1 to the segments of the vertical line x.
+    * @param batch drawn by the caller with {@link GraphicsX#fillTriangles(TriangleBatch)}
+    */
+   public static void drawY(IntBuffer work, int x, int y, int x1, int y1, ColorIteratorFun cif, GraphicsX g, TriangleBatch batch) {
       for (int j = 0; j < work.getSize() - 1; j++) {
          int y2 = y + work.get(j);
          int y3 = y + work.get(j + 1);
          cif.iterateColor(g);
-         g.fillTriangle(x1, y1, x, y2, x, y3);
+         batch.addTriangle(x1, y1, x, y2, x, y3, g.getActiveColor());
       }
    }
 
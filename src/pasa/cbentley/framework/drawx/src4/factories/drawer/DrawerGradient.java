@@ -0,0 +1,289 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.factories.drawer;
+
+import pasa.cbentley.byteobjects.src4.objects.color.ColorIterator;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.RgbCache;
+import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.tech.ITechBlendKernel;
+import pasa.cbentley.framework.drawx.src4.tech.ITechGraphicsX;
+
+/**
+ * Scanline rasterizer for gradients made of shrinking shapes.
+ * <br>
+ * <br>
+ * The primitive path fills one shape per {@link ColorIterator} step, each step painting over the previous ones.
+ * In {@link ITechGraphicsX#MODE_2_RGB_IMAGE}, each step may also trigger a merge of the layer.
+ * <br>
+ * <br>
+ * Here, the steps are first recorded with {@link DrawerGradient#addStep(int[], int, int, int, int, int)}.
+ * Then for each pixel, the last step whose shape contains the pixel gives its color.
+ * The pixels are written once in a scratch int[] array drawn with {@link GraphicsX#drawRGB(int[], int, int, int, int, int, int, boolean)}.
+ * <br>
+ * <br>
+ * Shapes:
+ * <li>{@link DrawerGradient#SHAPE_0_ROUND_RECT} filled rectangle with rounded corners like {@link GraphicsX#fillRoundRect(int, int, int, int, int, int)}
+ * <li>{@link DrawerGradient#SHAPE_1_ELLIPSE} filled ellipse inscribed in the rectangle
+ * <li>{@link DrawerGradient#SHAPE_2_LOSANGE} filled diamond inscribed in the rectangle
+ * <br>
+ * <br>
+ * When the steps are nested, the last step containing a pixel is found with a binary search.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DrawerGradient extends ObjectDrw {
+
+   public static final int SHAPE_0_ROUND_RECT = 0;
+
+   public static final int SHAPE_1_ELLIPSE    = 1;
+
+   public static final int SHAPE_2_LOSANGE    = 2;
+
+   /**
+    * Number of ints per recorded step. x,y,w,h,color
+    */
+   private static final int STEP_SIZE          = 5;
+
+   public DrawerGradient(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Records a step. Steps with an empty rectangle are recorded and contain no pixel.
+    *
+    * @param steps array created by {@link DrawerGradient#createSteps(int)}
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param color color given by the {@link ColorIterator}
+    * @return the steps array, grown if needed
+    */
+   public int[] addStep(int[] steps, int x, int y, int w, int h, int color) {
+      int count = steps[0];
+      int index = 1 + count * STEP_SIZE;
+      if (index + STEP_SIZE > steps.length) {
+         steps = drc.getMem().increaseCapacity(steps, steps.length);
+      }
+      steps[index] = x;
+      steps[index + 1] = y;
+      steps[index + 2] = w;
+      steps[index + 3] = h;
+      steps[index + 4] = color;
+      steps[0] = count + 1;
+      return steps;
+   }
+
+   /**
+    * Array for recording the steps. First int is the number of steps.
+    * @param gradSize expected number of steps
+    * @return
+    */
+   public int[] createSteps(int gradSize) {
+      return new int[1 + (gradSize + 2) * STEP_SIZE];
+   }
+
+   /**
+    * True when the rasterizer gives the same pixels as the primitive path.
+    * <br>
+    * <br>
+    * <li>{@link GraphicsX} draws on a {@link RgbImage}, i.e. {@link ITechGraphicsX#MODE_2_RGB_IMAGE} or {@link ITechGraphicsX#MODE_3_RGB}
+    * <li>Fill mode.
+    * <li>Blending is a plain SRC_OVER. {@link ITechBlendKernel#KERNEL_3_SRC_OVER}
+    * <li>Alpha is 255. Rastered steps are opaque like the primitives.
+    * <br>
+    * Screen and image modes keep the primitive path.
+    * @param g
+    * @return
+    */
+   public boolean isRasterizable(GraphicsX g) {
+      int mode = g.getPaintMode();
+      if (mode != ITechGraphicsX.MODE_2_RGB_IMAGE && mode != ITechGraphicsX.MODE_3_RGB) {
+         return false;
+      }
+      if (!g.isFillMode() || g.getAlpha() != 255) {
+         return false;
+      }
+      BlendKernel kernel = drc.getBlendKernel();
+      return kernel.getKernelID(g.getBlendOp(), false, false) == ITechBlendKernel.KERNEL_3_SRC_OVER;
+   }
+
+   /**
+    * Rasterizes the recorded steps in the area x,y,w,h of g.
+    * <br>
+    * <br>
+    * Primitives are drawn with opaque display colors, see {@link GraphicsX#setColor(int)}. So a pixel takes the opaque
+    * display color of the last step containing it. Pixels outside all the steps take baseColor.
+    * <br>
+    * Only the pixels inside the clip of g are computed.
+    *
+    * @param g
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param shape {@link DrawerGradient#SHAPE_0_ROUND_RECT}, {@link DrawerGradient#SHAPE_1_ELLIPSE} or {@link DrawerGradient#SHAPE_2_LOSANGE}
+    * @param arcw arc width for {@link DrawerGradient#SHAPE_0_ROUND_RECT}
+    * @param arch arc height for {@link DrawerGradient#SHAPE_0_ROUND_RECT}
+    * @param steps
+    * @param isNested true when the shape of each step contains the shape of the next step.
+    * @param isFillArea when true, pixels outside the steps are filled with baseColor. Otherwise they are left untouched.
+    * @param baseColor
+    */
+   public void raster(GraphicsX g, int x, int y, int w, int h, int shape, int arcw, int arch, int[] steps, boolean isNested, boolean isFillArea, int baseColor) {
+      //clip of g in the current coordinates
+      int cx = g.getClipX() - g.getTranslateX();
+      int cy = g.getClipY() - g.getTranslateY();
+      int x1 = Math.max(x, cx);
+      int y1 = Math.max(y, cy);
+      int x2 = Math.min(x + w, cx + g.getClipWidth());
+      int y2 = Math.min(y + h, cy + g.getClipHeight());
+      if (x2 <= x1 || y2 <= y1) {
+         return;
+      }
+      x = x1;
+      y = y1;
+      w = x2 - x1;
+      h = y2 - y1;
+      int numSteps = steps[0];
+      //convert to the colors painted by the primitives
+      for (int k = 0; k < numSteps; k++) {
+         int index = 1 + k * STEP_SIZE + 4;
+         steps[index] = 0xFF000000 | g.getDisplayColor(steps[index]);
+      }
+      int outColor = 0;
+      if (isFillArea) {
+         outColor = 0xFF000000 | g.getDisplayColor(baseColor);
+      }
+      RgbCache cache = drc.getCache();
+      int[] data = cache.borrowScratch(w * h);
+      int pixelIndex = 0;
+      for (int j = 0; j < h; j++) {
+         int py = y + j;
+         for (int i = 0; i < w; i++) {
+            int px = x + i;
+            int k = -1;
+            if (isNested) {
+               int lo = 0;
+               int hi = numSteps - 1;
+               while (lo <= hi) {
+                  int mid = (lo + hi) >>> 1;
+                  if (isInside(steps, mid, shape, arcw, arch, px, py)) {
+                     k = mid;
+                     lo = mid + 1;
+                  } else {
+                     hi = mid - 1;
+                  }
+               }
+            } else {
+               for (int s = numSteps - 1; s >= 0; s--) {
+                  if (isInside(steps, s, shape, arcw, arch, px, py)) {
+                     k = s;
+                     break;
+                  }
+               }
+            }
+            if (k == -1) {
+               data[pixelIndex] = outColor;
+            } else {
+               data[pixelIndex] = steps[1 + k * STEP_SIZE + 4];
+            }
+            pixelIndex++;
+         }
+      }
+      g.drawRGB(data, 0, w, x, y, w, h, true);
+      cache.returnScratch(data);
+   }
+
+   /**
+    * Is the center of pixel px,py inside the shape of the step.
+    * <br>
+    * Computations are done in doubled coordinates so that pixel centers are integers.
+    */
+   private boolean isInside(int[] steps, int step, int shape, int arcw, int arch, int px, int py) {
+      int index = 1 + step * STEP_SIZE;
+      int rx = steps[index];
+      int ry = steps[index + 1];
+      int rw = steps[index + 2];
+      int rh = steps[index + 3];
+      if (rw <= 0 || rh <= 0 || px < rx || py < ry || px >= rx + rw || py >= ry + rh) {
+         return false;
+      }
+      int cx2 = px + px + 1;
+      int cy2 = py + py + 1;
+      switch (shape) {
+         case SHAPE_0_ROUND_RECT:
+            int aw = Math.min(arcw, rw);
+            int ah = Math.min(arch, rh);
+            if (aw <= 0 || ah <= 0) {
+               return true;
+            }
+            int ex = 0;
+            if (cx2 < rx + rx + aw) {
+               ex = cx2 - (rx + rx + aw);
+            } else if (cx2 > 2 * (rx + rw) - aw) {
+               ex = cx2 - (2 * (rx + rw) - aw);
+            }
+            int ey = 0;
+            if (cy2 < ry + ry + ah) {
+               ey = cy2 - (ry + ry + ah);
+            } else if (cy2 > 2 * (ry + rh) - ah) {
+               ey = cy2 - (2 * (ry + rh) - ah);
+            }
+            if (ex == 0 || ey == 0) {
+               return true;
+            }
+            //corner ellipse of radii aw/2 ah/2, in doubled coordinates
+            return (long) ex * ex * ah * ah + (long) ey * ey * aw * aw <= (long) aw * aw * ah * ah;
+         case SHAPE_1_ELLIPSE:
+            long dx = cx2 - (rx + rx + rw);
+            long dy = cy2 - (ry + ry + rh);
+            return dx * dx * rh * rh + dy * dy * rw * rw <= (long) rw * rw * rh * rh;
+         case SHAPE_2_LOSANGE:
+            //vertices are at the integer middles like the triangles of the primitive path
+            int midx2 = 2 * (rx + rw / 2);
+            int midy2 = 2 * (ry + rh / 2);
+            long ddx = cx2 - midx2;
+            long ddy = cy2 - midy2;
+            long a = ddx < 0 ? midx2 - rx - rx : rx + rx + rw + rw - midx2;
+            long b = ddy < 0 ? midy2 - ry - ry : ry + ry + rh + rh - midy2;
+            if (ddx < 0) {
+               ddx = -ddx;
+            }
+            if (ddy < 0) {
+               ddy = -ddy;
+            }
+            return ddx * b + ddy * a <= a * b;
+         default:
+            throw new IllegalArgumentException("shape=" + shape);
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DrawerGradient.class, 240);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DrawerGradient.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -64,7 +64,16 @@ public class DrawerTriangle extends ObjectDrw implements ITechFigure, IBOFigTria
             int val = 0;
             ColorIterator ci = drc.getColorFunctionFactory().getColorIterator(color, grad, gradSize);
             int count = 0;
+            int[] r = new int[4];
+            //plain diamonds on a RgbImage are rasterized with each pixel computed once
+            DrawerGradient drawer = drc.getFigureOperator().getDrawerGradient();
+            boolean isRaster = overStep == 0 && isLosangeDiamond(p) && drawer.isRasterizable(g);
+            int[] steps = null;
+            if (isRaster) {
+               steps = drawer.createSteps(gradSize);
+            }
             while ((count = ci.iterateTotalSize(g)) != -1) {
+               boolean isStep = true;
                int countTan = (int) (Math.tan(beta) * (double) (count));
                int countAlpha = (int) (cosalpha * (double) (count));
                int countAlphaD = (int) ((double) (count) / cosalpha);
@@ -76,49 +85,99 @@ public class DrawerTriangle extends ObjectDrw implements ITechFigure, IBOFigTria
                int c2 = count << 1;
                switch (typeGrad) {
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_0_SQUARE:
-                     drawShapeLosange(g, x + count, y + count, w - c2, h - c2, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y + count;
+                     r[2] = w - c2;
+                     r[3] = h - c2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_1_FULLVERTICAL:
-                     drawShapeLosange(g, x + count, y, w - c2, h, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y;
+                     r[2] = w - c2;
+                     r[3] = h;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_2_FULLHORIZ:
-                     drawShapeLosange(g, x, y + count, w, h - c2, p, overStep);
+                     r[0] = x;
+                     r[1] = y + count;
+                     r[2] = w;
+                     r[3] = h - c2;
                      break;
 
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_3_FULLDIAGDOWN:
-                     drawShapeLosange(g, x + w / 2 - countTan, y + countBeta, (int) (w / 2 + countAlphaD), h - countBeta * 2, p, overStep);
+                     r[0] = x + w / 2 - countTan;
+                     r[1] = y + countBeta;
+                     r[2] = (int) (w / 2 + countAlphaD);
+                     r[3] = h - countBeta * 2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_4_FULLDIAGUP:
-                     drawShapeLosange(g, x + countAlphaD, y + countBetaD, w - c2, h - c2, p, overStep);
+                     r[0] = x + countAlphaD;
+                     r[1] = y + countBetaD;
+                     r[2] = w - c2;
+                     r[3] = h - c2;
                      break;
 
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_5_TOP:
-                     drawShapeLosange(g, x + count, y, w - c2, h - count, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y;
+                     r[2] = w - c2;
+                     r[3] = h - count;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_6_BOT:
-                     drawShapeLosange(g, x + count, y + count, w - c2, h - count, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y + count;
+                     r[2] = w - c2;
+                     r[3] = h - count;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_7_LEFT:
-                     drawShapeLosange(g, x, y + count, w - c2, h - c2, p, overStep);
+                     r[0] = x;
+                     r[1] = y + count;
+                     r[2] = w - c2;
+                     r[3] = h - c2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_8_RIGHT:
-                     drawShapeLosange(g, x + count, y + count, w - count, h - c2, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y + count;
+                     r[2] = w - count;
+                     r[3] = h - c2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_01_SQUARE:
-                     drawShapeLosange(g, x + count, y, w - count, h, p, overStep);
+                     r[0] = x + count;
+                     r[1] = y;
+                     r[2] = w - count;
+                     r[3] = h;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_02_SQUARE:
-                     drawShapeLosange(g, x + (int) (count * cosbeta), y + (int) (count * cosalpha), w - c2, h - c2, p, overStep);
+                     r[0] = x + (int) (count * cosbeta);
+                     r[1] = y + (int) (count * cosalpha);
+                     r[2] = w - c2;
+                     r[3] = h - c2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_03_SQUARE:
-                     drawShapeLosange(g, x + w / 2 - count, y + count, (int) (w / 2 + (cosalpha * count)), h - c2, p, overStep);
+                     r[0] = x + w / 2 - count;
+                     r[1] = y + count;
+                     r[2] = (int) (w / 2 + (cosalpha * count));
+                     r[3] = h - c2;
                      break;
                   case ITechGradient.GRADIENT_TYPE_LOSANGE_04_SQUARE:
-                     drawShapeLosange(g, x + count / 2, y + count, w - count, h - c2, p, overStep);
+                     r[0] = x + count / 2;
+                     r[1] = y + count;
+                     r[2] = w - count;
+                     r[3] = h - c2;
                      break;
                   default:
+                     isStep = false;
                      break;
                }
+               if (isStep) {
+                  if (isRaster) {
+                     steps = drawer.addStep(steps, r[0], r[1], r[2], r[3], ci.getCurrentColor());
+                  } else {
+                     drawShapeLosange(g, r[0], r[1], r[2], r[3], p, overStep);
+                  }
+               }
+            }
+            if (isRaster) {
+               drawer.raster(g, x, y, w, h, DrawerGradient.SHAPE_2_LOSANGE, 0, 0, steps, false, false, 0);
             }
          }
       } else if (type == ITechFigure.FIG_LOSANGE_TYPE_1_TRIANGLE) {
@@ -159,6 +218,8 @@ public class DrawerTriangle extends ObjectDrw implements ITechFigure, IBOFigTria
    private void drawFigLosangeAsAngles(GraphicsX g, int x, int y, int w, int h, ByteObject p) {
       ByteObject trig = p.getSubFirst(IBOTypesDrawX.TYPE_DRWX_00_FIGURE);
       int angle = trig.get2(IBOFigTriangle.FIG_TRIANGLE_OFFSET_03_ANGLE2);
+      //the angle of the second triangle is set on a copy. the shared definition is not modified
+      trig = trig.cloneCopyHeadRefParams();
       int h1 = h / 2;
       int h2 = h - h1;
       int w1 = w / 2;
@@ -183,7 +244,6 @@ public class DrawerTriangle extends ObjectDrw implements ITechFigure, IBOFigTria
          default:
             break;
       }
-      trig.setValue(IBOFigTriangle.FIG_TRIANGLE_OFFSET_03_ANGLE2, angle, 2);
    }
 
    /**
@@ -214,6 +274,22 @@ public class DrawerTriangle extends ObjectDrw implements ITechFigure, IBOFigTria
       }
    }
 
+   /**
+    * True when {@link DrawerTriangle#drawShapeLosange(GraphicsX, int, int, int, int, ByteObject, int)} draws a plain diamond
+    * with an overstep of zero. Papillon and contour shapes are not diamonds.
+    * @param p
+    * @return
+    */
+   private boolean isLosangeDiamond(ByteObject p) {
+      if (p.hasFlag(IBOFigLosange.FIG_LOSANGE_OFFSET_1_FLAG, IBOFigLosange.FIG_LOSANGE_FLAG_4_NOED_PAPILLION)) {
+         return false;
+      }
+      if (p.hasFlag(IBOFigLosange.FIG_LOSANGE_OFFSET_1_FLAG, IBOFigLosange.FIG_LOSANGE_FLAG_3_CONTOUR)) {
+         return false;
+      }
+      return true;
+   }
+
    private void drawShapeLosange(GraphicsX g, int x, int y, int w, int h, ByteObject p, int ostep) {
       int px = w / 2;
       int py = h / 2;
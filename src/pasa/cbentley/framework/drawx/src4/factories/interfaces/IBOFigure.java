@@ -344,7 +344,18 @@ public interface IBOFigure extends IByteObject {
     */
    public static final int FIG_FLAGZ_4_LAYOUT          = 1 << 3;
 
-   public static final int FIG_FLAGZ_5_                = 1 << 4;
+   /**
+    * The figure is never drawn from the figure image cache.
+    * <br>
+    * Set it for figures whose drawing changes between calls with the same definition.
+    * See {@link pasa.cbentley.framework.drawx.src4.factories.FigureCache}
+    */
+   public static final int FIG_FLAGZ_5_NO_CACHE        = 1 << 4;
+
+   /**
+    * @deprecated use {@link IBOFigure#FIG_FLAGZ_5_NO_CACHE}
+    */
+   public static final int FIG_FLAGZ_5_                = FIG_FLAGZ_5_NO_CACHE;
 
    public static final int FIG_FLAGZ_6_                = 1 << 5;
 
@@ -19,6 +19,20 @@ public interface IBOScaler extends IByteObject, ITechScaler {
     */
    public static final int SCALE_FLAG_01_FRAMEWORK   = 1;
 
+   /**
+    * Rows are resampled by several threads. See {@link pasa.cbentley.framework.drawx.src4.factories.ScaleOperator#setNumThreads(int)}
+    * <br>
+    * Used by {@link ITechScaler#SCALER_ID_2_BI_CUBIC} and {@link ITechScaler#SCALER_ID_3_LANCZOS_3}
+    */
+   public static final int SCALE_FLAG_02_PARALLEL    = 1 << 1;
+
+   /**
+    * Image is halved by 2x2 boxes before the area average. Faster, slightly softer.
+    * <br>
+    * Used by {@link ITechScaler#SCALER_ID_4_AREA_AVERAGE}
+    */
+   public static final int SCALE_FLAG_03_HALVING     = 1 << 2;
+
    /**
     * 
     */
@@ -41,6 +55,8 @@ public interface IBOScaler extends IByteObject, ITechScaler {
     * <li> {@link ITechScaler#SCALER_ID_0_LINEAR}
     * <li> {@link ITechScaler#SCALER_ID_1_BI_LINEAR}
     * <li> {@link ITechScaler#SCALER_ID_2_BI_CUBIC}
+    * <li> {@link ITechScaler#SCALER_ID_3_LANCZOS_3}
+    * <li> {@link ITechScaler#SCALER_ID_4_AREA_AVERAGE}
     */
    public static final int SCALE_OFFSET_03_ID1       = SCALE_BASE_OFFSET + 2;
 
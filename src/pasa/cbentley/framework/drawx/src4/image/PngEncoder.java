@@ -10,30 +10,221 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import pasa.cbentley.core.src4.logging.IStringable;
-import pasa.cbentley.core.src4.memory.IMemory;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
 import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.tech.ITechPngEncoder;
 
 /**
  * Move it to its own code context for imaging ?
+ * <br>
+ * <br>
+ * {@link PngEncoder#writePNG(int[], int, int, int, int, String, byte[], OutputStream)} streams the rows to an {@link OutputStream}.
+ * Each row is filtered, see {@link PngEncoder#setFilter(int)}, and compressed by a {@link ZlibDeflater}, see {@link PngEncoder#setLevel(int)}.
+ * Memory is 4 rows, the deflate window and a 32K IDAT chunk buffer, whatever the size of the image.
  * @author Charles Bentley
  *
  */
-public class PngEncoder {
+public class PngEncoder implements ITechPngEncoder {
 
-   public static final String CHUNK_DATA_LOAD_AS_TEXT = "tEXt";
+   public static final String  CHUNK_DATA_LOAD_AS_TEXT = "tEXt";
 
-   public static final String CHUNK_ITXT              = "iTXt";
+   public static final String  CHUNK_ITXT              = "iTXt";
 
-   private DrwCtx         drc;
+   private static final byte[] SIGNATURE               = new byte[] { (byte) 137, (byte) 80, (byte) 78, (byte) 71, (byte) 13, (byte) 10, (byte) 26, (byte) 10 };
+
+   private DrwCtx              drc;
+
+   private int                 filter                  = PNG_FILTER_5_ADAPTIVE;
+
+   private int                 level                   = PNG_LEVEL_6_DEFAULT;
 
    public PngEncoder(DrwCtx drc) {
       this.drc = drc;
    }
 
+   /**
+    * Filters the row cur with the given filter.
+    * @param type {@link ITechPngEncoder#PNG_FILTER_0_NONE} to {@link ITechPngEncoder#PNG_FILTER_4_PAETH}
+    * @param cur
+    * @param prior row above. zeros for the first row
+    * @param len
+    * @param dst filter type at 0, then the filtered bytes
+    * @param bpp bytes per pixel
+    * @param limit stops when the sum is bigger
+    * @return sum of the absolute values of the filtered bytes, as signed bytes
+    */
+   private static int filterRow(int type, byte[] cur, byte[] prior, int len, byte[] dst, int bpp, int limit) {
+      dst[0] = (byte) type;
+      int sum = 0;
+      for (int i = 0; i < len && sum <= limit; i++) {
+         int x = cur[i] & 0xFF;
+         int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+         int b = prior[i] & 0xFF;
+         int v;
+         switch (type) {
+            case PNG_FILTER_1_SUB:
+               v = x - a;
+               break;
+            case PNG_FILTER_2_UP:
+               v = x - b;
+               break;
+            case PNG_FILTER_3_AVERAGE:
+               v = x - ((a + b) >> 1);
+               break;
+            case PNG_FILTER_4_PAETH:
+               int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+               int p = a + b - c;
+               int pa = p > a ? p - a : a - p;
+               int pb = p > b ? p - b : b - p;
+               int pc = p > c ? p - c : c - p;
+               if (pa <= pb && pa <= pc) {
+                  v = x - a;
+               } else if (pb <= pc) {
+                  v = x - b;
+               } else {
+                  v = x - c;
+               }
+               break;
+            default:
+               v = x;
+               break;
+         }
+         byte bv = (byte) v;
+         dst[i + 1] = bv;
+         sum += bv < 0 ? -bv : bv;
+      }
+      return sum;
+   }
+
+   public int getFilter() {
+      return filter;
+   }
+
+   public int getLevel() {
+      return level;
+   }
+
+   /**
+    * Row filter of the encoded images.
+    * @param filter {@link ITechPngEncoder#PNG_FILTER_0_NONE} to {@link ITechPngEncoder#PNG_FILTER_5_ADAPTIVE}
+    */
+   public void setFilter(int filter) {
+      if (filter < PNG_FILTER_0_NONE || filter > PNG_FILTER_5_ADAPTIVE) {
+         throw new IllegalArgumentException("filter=" + filter);
+      }
+      this.filter = filter;
+   }
+
+   /**
+    * Deflate level of the encoded images.
+    * @param level {@link ITechPngEncoder#PNG_LEVEL_0_STORED} to {@link ITechPngEncoder#PNG_LEVEL_9_BEST}
+    */
+   public void setLevel(int level) {
+      if (level < PNG_LEVEL_0_STORED || level > PNG_LEVEL_9_BEST) {
+         throw new IllegalArgumentException("level=" + level);
+      }
+      this.level = level;
+   }
+
+   /**
+    * Writes the region x,y,w,h of img as a PNG to os.
+    * Premultiplied pixels are written straight.
+    * @param img
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param os is not closed
+    * @throws IOException
+    * @throws IllegalArgumentException when the region is not inside the image
+    */
+   public void writePNG(RgbImage img, int x, int y, int w, int h, OutputStream os) throws IOException {
+      if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > img.getWidth() || y + h > img.getHeight()) {
+         throw new IllegalArgumentException("x=" + x + " y=" + y + " w=" + w + " h=" + h);
+      }
+      int scan = img.getScanLength();
+      int offset = img.getOffset() + img.getM() + x + scan * (img.getN() + y);
+      writePNG(img.getRgbData(), offset, scan, w, h, img.isPremultiplied(), null, null, os);
+   }
+
+   /**
+    * Writes the ARGB pixels as a PNG to os, row by row.
+    * @param rgb
+    * @param offset index of the first pixel
+    * @param scan
+    * @param w
+    * @param h
+    * @param txt iTXt chunk when not null
+    * @param extra tEXt chunk when not null
+    * @param os is not closed
+    * @throws IOException
+    */
+   public void writePNG(int[] rgb, int offset, int scan, int w, int h, String txt, byte[] extra, OutputStream os) throws IOException {
+      writePNG(rgb, offset, scan, w, h, false, txt, extra, os);
+   }
+
+   /**
+    * @param isPremultiplied when true, pixels are unpremultiplied row by row as they are converted. PNG stores straight pixels.
+    */
+   private void writePNG(int[] rgb, int offset, int scan, int w, int h, boolean isPremultiplied, String txt, byte[] extra, OutputStream os) throws IOException {
+      os.write(SIGNATURE);
+      os.write(createHeaderChunk(w, h));
+      if (txt != null) {
+         os.write(createTextUTFChunk(txt.getBytes("UTF-8")));
+      }
+      if (extra != null) {
+         os.write(createTextChunk(extra));
+      }
+      IDATOutputStream idat = new IDATOutputStream(os);
+      ZlibDeflater zlib = new ZlibDeflater(idat, level);
+      int len = w * 4;
+      byte[] prior = new byte[len];
+      byte[] cur = new byte[len];
+      byte[] filtered = new byte[len + 1];
+      byte[] best = new byte[len + 1];
+      for (int y = 0; y < h; y++) {
+         int index = offset + y * scan;
+         int count = 0;
+         for (int x = 0; x < w; x++) {
+            int p = rgb[index++];
+            if (isPremultiplied) {
+               p = BlendKernel.unpremultiply(p);
+            }
+            cur[count++] = (byte) (p >> 16);
+            cur[count++] = (byte) (p >> 8);
+            cur[count++] = (byte) p;
+            cur[count++] = (byte) (p >> 24);
+         }
+         if (filter == PNG_FILTER_5_ADAPTIVE) {
+            int bestSum = filterRow(PNG_FILTER_0_NONE, cur, prior, len, best, 4, Integer.MAX_VALUE);
+            for (int type = PNG_FILTER_1_SUB; type <= PNG_FILTER_4_PAETH; type++) {
+               int sum = filterRow(type, cur, prior, len, filtered, 4, bestSum);
+               if (sum < bestSum) {
+                  bestSum = sum;
+                  byte[] t = best;
+                  best = filtered;
+                  filtered = t;
+               }
+            }
+            zlib.write(best, 0, len + 1);
+         } else {
+            filterRow(filter, cur, prior, len, filtered, 4, Integer.MAX_VALUE);
+            zlib.write(filtered, 0, len + 1);
+         }
+         byte[] t = prior;
+         prior = cur;
+         cur = t;
+      }
+      zlib.finish();
+      idat.finish();
+      os.write(createTrailerChunk());
+   }
+
    public IImage toImage(int width, int height, byte[] alpha, byte[] red, byte[] green, byte[] blue) {
       try {
          byte[] png = toPNG(width, height, alpha, red, green, blue);
@@ -45,14 +236,14 @@ public class PngEncoder {
    }
 
    /**
-    * Extra bytes
+    * Extra bytes. Premultiplied pixels are encoded straight.
     * @param img
     * @param data
     * @param extra
     * @return
     */
    public byte[] encodePNG(RgbImage img, String data, byte[] extra) {
-      return encodePNG(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), data, extra);
+      return encodePNG(img.getRgbData(), img.getOffset(), img.getScanLength(), img.getM(), img.getN(), img.getWidth(), img.getHeight(), img.isPremultiplied(), data, extra);
    }
 
    /**
@@ -151,28 +342,22 @@ public class PngEncoder {
       return null;
    }
 
+   /**
+    * Encodes with the filter and level of this encoder. See {@link PngEncoder#writePNG(int[], int, int, int, int, String, byte[], OutputStream)}
+    */
    public byte[] encodePNG(int[] rgb, int offset, int scan, int m, int n, int w, int h, String data, byte[] extra) {
-      int len = w * h;
-      IMemory mem = drc.getMem();
-      byte[] alpha = mem.createByteArray(len);
-      byte[] red = mem.createByteArray(len);
-      byte[] green = mem.createByteArray(len);
-      byte[] blue = mem.createByteArray(len);
-
-      int count = 0;
-      for (int i = 0; i < h; i++) {
-         int index = offset + m + (scan * (n + i));
-         for (int j = 0; j < w; j++) {
-            int p = rgb[index];
-            alpha[count] = (byte) ((p >> 24) & 0xff);
-            red[count] = (byte) ((p >> 16) & 0xff);
-            green[count] = (byte) ((p >> 8) & 0xff);
-            blue[count] = (byte) ((p >> 0) & 0xff);
-            index++;
-            count++;
-         }
+      return encodePNG(rgb, offset, scan, m, n, w, h, false, data, extra);
+   }
+
+   private byte[] encodePNG(int[] rgb, int offset, int scan, int m, int n, int w, int h, boolean isPremultiplied, String data, byte[] extra) {
+      ByteArrayOutputStream png = new ByteArrayOutputStream(1024 + w * h);
+      try {
+         writePNG(rgb, offset + m + scan * n, scan, w, h, isPremultiplied, data, extra, png);
+      } catch (IOException e) {
+         //a ByteArrayOutputStream does not throw. an encoding bug must not give a truncated png
+         throw new RuntimeException(e.toString());
       }
-      return toPNG(w, h, alpha, red, green, blue, data, extra);
+      return png.toByteArray();
    }
 
    public byte[] encodePNG(int[] rgb, int w, int h) throws IOException {
@@ -323,12 +508,17 @@ public class PngEncoder {
    }
 
    public static int updateCRC(int crc, byte[] raw) {
+      return updateCRC(crc, raw, 0, raw.length);
+   }
+
+   public static int updateCRC(int crc, byte[] raw, int offset, int len) {
       if (crcTable == null) {
          createCRCTable();
       }
-
-      for (int i = 0; i < raw.length; i++) {
-         crc = crcTable[(crc ^ raw[i]) & 0xFF] ^ (crc >>> 8);
+      int[] table = crcTable;
+      int end = offset + len;
+      for (int i = offset; i < end; i++) {
+         crc = table[(crc ^ raw[i]) & 0xFF] ^ (crc >>> 8);
       }
 
       return crc;
@@ -337,8 +527,8 @@ public class PngEncoder {
    /* This method is called to encode the image data as a zlib
       block as required by the PNG specification. This file comes
       with a minimal ZLIB encoder which uses uncompressed deflate
-      blocks (fast, short, easy, but no compression). If you want
-      compression, call another encoder (such as JZLib?) here. */
+      blocks (fast, short, easy, but no compression). Compressed
+      images are written by writePNG with a ZlibDeflater. */
    public static byte[] toZLIB(byte[] raw) throws IOException {
       return ZLIB.toZLIB(raw);
    }
@@ -379,13 +569,75 @@ class ZLIB {
    }
 
    private static int calcADLER32(byte[] raw) {
-      int s1 = 1;
-      int s2 = 0;
-      for (int i = 0; i < raw.length; i++) {
-         int abs = raw[i] >= 0 ? raw[i] : (raw[i] + 256);
-         s1 = (s1 + abs) % 65521;
-         s2 = (s2 + s1) % 65521;
+      return ZlibDeflater.adler32(1, raw, 0, raw.length);
+   }
+}
+
+/**
+ * Writes the zlib stream as IDAT chunks of at most 32K
+ */
+class IDATOutputStream extends OutputStream {
+
+   private static final byte[] ID  = { (byte) 'I', (byte) 'D', (byte) 'A', (byte) 'T' };
+
+   private final byte[]        buf = new byte[1 << 15];
+
+   private int                 count;
+
+   private final OutputStream  out;
+
+   IDATOutputStream(OutputStream out) {
+      this.out = out;
+   }
+
+   /**
+    * Writes the last chunk
+    * @throws IOException
+    */
+   void finish() throws IOException {
+      if (count > 0) {
+         writeChunk();
+      }
+   }
+
+   public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+         int n = buf.length - count;
+         if (n > len) {
+            n = len;
+         }
+         System.arraycopy(b, off, buf, count, n);
+         count += n;
+         off += n;
+         len -= n;
+         if (count == buf.length) {
+            writeChunk();
+         }
+      }
+   }
+
+   public void write(int b) throws IOException {
+      buf[count++] = (byte) b;
+      if (count == buf.length) {
+         writeChunk();
       }
-      return (s2 << 16) + s1;
+   }
+
+   private void writeChunk() throws IOException {
+      writeInt(count);
+      out.write(ID);
+      out.write(buf, 0, count);
+      int crc = 0xFFFFFFFF;
+      crc = PngEncoder.updateCRC(crc, ID);
+      crc = PngEncoder.updateCRC(crc, buf, 0, count);
+      writeInt(~crc);
+      count = 0;
+   }
+
+   private void writeInt(int v) throws IOException {
+      out.write(v >>> 24);
+      out.write(v >>> 16);
+      out.write(v >>> 8);
+      out.write(v);
    }
 }
@@ -0,0 +1,896 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+
+package pasa.cbentley.framework.drawx.src4.image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming zlib compressor (RFC 1950) with deflate blocks (RFC 1951), in plain Java for platforms without java.util.zip.
+ * <br>
+ * <br>
+ * Bytes given to {@link ZlibDeflater#write(byte[], int, int)} are compressed as they come and written to the {@link OutputStream}.
+ * Memory is a 64K sliding window, the hash chains of the last 32K positions and a buffer of 16K symbols.
+ * <br>
+ * <br>
+ * Strings are matched with hash chains and lazy evaluation, like zlib. The level sets the search effort.
+ * <li>0 : stored blocks, no compression
+ * <li>1 : fast
+ * <li>6 : default
+ * <li>9 : best
+ * <br>
+ * <br>
+ * Each block of symbols is written with the smallest of the dynamic Huffman codes, the fixed codes or stored bytes.
+ * <br>
+ * {@link ZlibDeflater#finish()} must be called once after the last byte. The {@link OutputStream} is not closed.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class ZlibDeflater {
+
+   private static final int[]  BL_ORDER         = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+   /**
+    * Search effort for levels 0 to 9.
+    * Matches are not searched at the next position when the current match is at least {@link ZlibDeflater#CONFIG_LAZY} long
+    */
+   private static final int[]  CONFIG_CHAIN     = { 0, 4, 8, 32, 16, 32, 128, 256, 1024, 4096 };
+
+   private static final int[]  CONFIG_GOOD      = { 0, 4, 4, 4, 4, 8, 8, 8, 32, 32 };
+
+   private static final int[]  CONFIG_LAZY      = { 0, 4, 5, 6, 4, 16, 16, 32, 128, 258 };
+
+   private static final int[]  CONFIG_NICE      = { 0, 8, 16, 32, 16, 32, 128, 128, 258, 258 };
+
+   private static final int[]  BASE_DIST        = new int[30];
+
+   private static final int[]  BASE_LENGTH      = new int[29];
+
+   /**
+    * Distance code of distance-1 below 256, then of (distance-1) >> 7 from 256
+    */
+   private static final int[]  DIST_CODE        = new int[512];
+
+   private static final int[]  EXTRA_DBITS      = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+
+   private static final int[]  EXTRA_LBITS      = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+
+   private static final int[]  FIXED_DIST_CODES = new int[30];
+
+   private static final int[]  FIXED_DIST_LENS  = new int[30];
+
+   /**
+    * 288 codes. 286 and 287 are never used but take part in the construction of the fixed codes
+    */
+   private static final int[]  FIXED_LIT_CODES  = new int[288];
+
+   private static final int[]  FIXED_LIT_LENS   = new int[288];
+
+   private static final int    HASH_BITS        = 15;
+
+   private static final int    HASH_MASK        = (1 << HASH_BITS) - 1;
+
+   /**
+    * Length code of length-3, 0 to 28
+    */
+   private static final int[]  LENGTH_CODE      = new int[256];
+
+   private static final int    MAX_MATCH        = 258;
+
+   private static final int    MIN_MATCH        = 3;
+
+   private static final int    MIN_LOOKAHEAD    = MAX_MATCH + MIN_MATCH + 1;
+
+   private static final int    NUM_DIST         = 30;
+
+   private static final int    NUM_LIT          = 286;
+
+   /**
+    * Maximum size of a stored block
+    */
+   private static final int    STORED_MAX       = 65535;
+
+   private static final int    SYM_BUF_SIZE     = 1 << 14;
+
+   /**
+    * Matches of 3 bytes further than this cost more than 3 literals
+    */
+   private static final int    TOO_FAR          = 4096;
+
+   private static final int    WSIZE            = 1 << 15;
+
+   private static final int    MAX_DIST         = WSIZE - MIN_LOOKAHEAD;
+
+   private static final int    WMASK            = WSIZE - 1;
+
+   static {
+      int length = 0;
+      for (int code = 0; code < 28; code++) {
+         BASE_LENGTH[code] = length;
+         for (int n = 0; n < (1 << EXTRA_LBITS[code]); n++) {
+            LENGTH_CODE[length++] = code;
+         }
+      }
+      //length 258 has its own code
+      LENGTH_CODE[255] = 28;
+      BASE_LENGTH[28] = 255;
+      int dist = 0;
+      for (int code = 0; code < 16; code++) {
+         BASE_DIST[code] = dist;
+         for (int n = 0; n < (1 << EXTRA_DBITS[code]); n++) {
+            DIST_CODE[dist++] = code;
+         }
+      }
+      dist >>= 7;
+      for (int code = 16; code < NUM_DIST; code++) {
+         BASE_DIST[code] = dist << 7;
+         for (int n = 0; n < (1 << (EXTRA_DBITS[code] - 7)); n++) {
+            DIST_CODE[256 + dist++] = code;
+         }
+      }
+      for (int i = 0; i < FIXED_LIT_LENS.length; i++) {
+         if (i < 144) {
+            FIXED_LIT_LENS[i] = 8;
+         } else if (i < 256) {
+            FIXED_LIT_LENS[i] = 9;
+         } else if (i < 280) {
+            FIXED_LIT_LENS[i] = 7;
+         } else {
+            FIXED_LIT_LENS[i] = 8;
+         }
+      }
+      for (int i = 0; i < NUM_DIST; i++) {
+         FIXED_DIST_LENS[i] = 5;
+      }
+      buildCodes(FIXED_LIT_LENS, FIXED_LIT_CODES, 15);
+      buildCodes(FIXED_DIST_LENS, FIXED_DIST_CODES, 15);
+   }
+
+   /**
+    * Number of bytes summed between two modulos of {@link ZlibDeflater#adler32(int, byte[], int, int)}.
+    * <br>
+    * zlib uses 5552 for unsigned 32 bits sums. With signed ints, s2 stays below 2^31 - 1 for 3800 bytes of 0xFF.
+    */
+   private static final int ADLER_NMAX = 3800;
+
+   /**
+    * Updates an Adler-32 checksum. The modulo is done every {@link ZlibDeflater#ADLER_NMAX} bytes, before the signed int s2 overflows.
+    * @param adler 1 for a new checksum
+    * @param b
+    * @param off
+    * @param len
+    * @return
+    */
+   public static int adler32(int adler, byte[] b, int off, int len) {
+      int s1 = adler & 0xFFFF;
+      int s2 = adler >>> 16;
+      while (len > 0) {
+         int n = len < ADLER_NMAX ? len : ADLER_NMAX;
+         len -= n;
+         while (n-- > 0) {
+            s1 += b[off++] & 0xFF;
+            s2 += s1;
+         }
+         s1 %= 65521;
+         s2 %= 65521;
+      }
+      return (s2 << 16) | s1;
+   }
+
+   /**
+    * Canonical codes from the code lengths, bit reversed for writing LSB first
+    * @param lens
+    * @param codes
+    * @param maxBits
+    */
+   private static void buildCodes(int[] lens, int[] codes, int maxBits) {
+      int[] blCount = new int[maxBits + 1];
+      for (int i = 0; i < lens.length; i++) {
+         blCount[lens[i]]++;
+      }
+      blCount[0] = 0;
+      int[] nextCode = new int[maxBits + 1];
+      int code = 0;
+      for (int bits = 1; bits <= maxBits; bits++) {
+         code = (code + blCount[bits - 1]) << 1;
+         nextCode[bits] = code;
+      }
+      for (int i = 0; i < lens.length; i++) {
+         int len = lens[i];
+         if (len != 0) {
+            int c = nextCode[len]++;
+            int r = 0;
+            for (int k = 0; k < len; k++) {
+               r = (r << 1) | (c & 1);
+               c >>= 1;
+            }
+            codes[i] = r;
+         }
+      }
+   }
+
+   /**
+    * Huffman code lengths of at most maxBits for the frequencies.
+    * <br>
+    * When the tree is too deep, frequencies are halved and the tree is built again.
+    * <br>
+    * At least 2 symbols get a code so that the code is complete.
+    * @param freq
+    * @param lens
+    * @param maxBits
+    */
+   private static void buildLengths(int[] freq, int[] lens, int maxBits) {
+      int n = freq.length;
+      int[] f = new int[n];
+      int[] leaves = new int[n];
+      int count = 0;
+      for (int i = 0; i < n; i++) {
+         lens[i] = 0;
+         f[i] = freq[i];
+         if (f[i] != 0) {
+            leaves[count++] = i;
+         }
+      }
+      if (count < 2) {
+         int used = count == 1 ? leaves[0] : 0;
+         lens[used] = 1;
+         lens[used == 0 ? 1 : 0] = 1;
+         return;
+      }
+      int[] weight = new int[2 * count];
+      int[] parent = new int[2 * count];
+      while (true) {
+         //leaves sorted by weight. leaf k is node k
+         for (int i = 1; i < count; i++) {
+            int s = leaves[i];
+            int j = i - 1;
+            while (j >= 0 && f[leaves[j]] > f[s]) {
+               leaves[j + 1] = leaves[j];
+               j--;
+            }
+            leaves[j + 1] = s;
+         }
+         for (int i = 0; i < count; i++) {
+            weight[i] = f[leaves[i]];
+         }
+         //two queues. leaves in order, then the internal nodes in order of creation
+         int nextLeaf = 0;
+         int nextNode = count;
+         int numNodes = count;
+         while (numNodes < 2 * count - 1) {
+            int a;
+            if (nextLeaf < count && (nextNode >= numNodes || weight[nextLeaf] <= weight[nextNode])) {
+               a = nextLeaf++;
+            } else {
+               a = nextNode++;
+            }
+            int b;
+            if (nextLeaf < count && (nextNode >= numNodes || weight[nextLeaf] <= weight[nextNode])) {
+               b = nextLeaf++;
+            } else {
+               b = nextNode++;
+            }
+            weight[numNodes] = weight[a] + weight[b];
+            parent[a] = numNodes;
+            parent[b] = numNodes;
+            numNodes++;
+         }
+         //depth of each node. root is the last node
+         int root = numNodes - 1;
+         weight[root] = 0;
+         for (int i = root - 1; i >= 0; i--) {
+            weight[i] = weight[parent[i]] + 1;
+         }
+         int maxLen = 0;
+         for (int i = 0; i < count; i++) {
+            if (weight[i] > maxLen) {
+               maxLen = weight[i];
+            }
+         }
+         if (maxLen <= maxBits) {
+            for (int i = 0; i < count; i++) {
+               lens[leaves[i]] = weight[i];
+            }
+            return;
+         }
+         for (int i = 0; i < count; i++) {
+            f[leaves[i]] = (f[leaves[i]] + 1) >> 1;
+         }
+      }
+   }
+
+   private static int distCode(int dist) {
+      return dist < 256 ? DIST_CODE[dist] : DIST_CODE[256 + (dist >> 7)];
+   }
+
+   private int          adler        = 1;
+
+   private int          bitBuf;
+
+   private int          bitCount;
+
+   /**
+    * Window index of the first byte of the current block. Negative when the window slid over it.
+    */
+   private int          blockStart;
+
+   private final int[]  distFreq     = new int[NUM_DIST];
+
+   private final int[]  distCodes    = new int[NUM_DIST];
+
+   private final int[]  distLens     = new int[NUM_DIST];
+
+   /**
+    * Number of bytes in {@link ZlibDeflater#window}
+    */
+   private int          fill;
+
+   private int          goodLength;
+
+   private final int[]  head;
+
+   private boolean      isFinished;
+
+   private final int    level;
+
+   private final int[]  litCodes     = new int[NUM_LIT];
+
+   private final int[]  litFreq      = new int[NUM_LIT];
+
+   private final int[]  litLens      = new int[NUM_LIT];
+
+   private boolean      matchAvailable;
+
+   private int          matchLength  = MIN_MATCH - 1;
+
+   private int          matchStart;
+
+   private int          maxChain;
+
+   private int          maxLazy;
+
+   private int          niceLength;
+
+   private final OutputStream out;
+
+   private final byte[] outBuf       = new byte[1 << 14];
+
+   private int          outCount;
+
+   /**
+    * Window index of the next byte to compress
+    */
+   private int          pos;
+
+   private final int[]  prev;
+
+   private int          prevLength;
+
+   private int          prevMatch;
+
+   private int          symCount;
+
+   /**
+    * 0 for a literal
+    */
+   private final char[] symDist;
+
+   /**
+    * literal or length - 3
+    */
+   private final char[] symLit;
+
+   private final byte[] window       = new byte[2 * WSIZE];
+
+   /**
+    *
+    * @param out receives the zlib stream
+    * @param level 0 to 9
+    * @throws IllegalArgumentException when level is not in 0..9
+    */
+   public ZlibDeflater(OutputStream out, int level) {
+      if (level < 0 || level > 9) {
+         throw new IllegalArgumentException("level=" + level);
+      }
+      this.out = out;
+      this.level = level;
+      if (level == 0) {
+         head = null;
+         prev = null;
+         symDist = null;
+         symLit = null;
+      } else {
+         head = new int[1 << HASH_BITS];
+         prev = new int[WSIZE];
+         for (int i = 0; i < head.length; i++) {
+            head[i] = -1;
+         }
+         symDist = new char[SYM_BUF_SIZE];
+         symLit = new char[SYM_BUF_SIZE];
+         goodLength = CONFIG_GOOD[level];
+         maxLazy = CONFIG_LAZY[level];
+         niceLength = CONFIG_NICE[level];
+         maxChain = CONFIG_CHAIN[level];
+      }
+      //CM 8 with a 32K window. FLEVEL hints the level
+      int flg;
+      if (level < 2) {
+         flg = 0x01;
+      } else if (level < 6) {
+         flg = 0x5E;
+      } else if (level == 6) {
+         flg = 0x9C;
+      } else {
+         flg = 0xDA;
+      }
+      outBuf[0] = (byte) 0x78;
+      outBuf[1] = (byte) flg;
+      outCount = 2;
+   }
+
+   private void compressBlock(int[] lCodes, int[] lLens, int[] dCodes, int[] dLens) throws IOException {
+      for (int i = 0; i < symCount; i++) {
+         int v = symLit[i];
+         int d = symDist[i];
+         if (d == 0) {
+            writeBits(lCodes[v], lLens[v]);
+         } else {
+            int c = LENGTH_CODE[v];
+            writeBits(lCodes[c + 257], lLens[c + 257]);
+            int extra = EXTRA_LBITS[c];
+            if (extra != 0) {
+               writeBits(v - BASE_LENGTH[c], extra);
+            }
+            d--;
+            c = distCode(d);
+            writeBits(dCodes[c], dLens[c]);
+            extra = EXTRA_DBITS[c];
+            if (extra != 0) {
+               writeBits(d - BASE_DIST[c], extra);
+            }
+         }
+      }
+      writeBits(lCodes[256], lLens[256]);
+   }
+
+   /**
+    * Compresses the window until the lookahead is too short for a full match. With flush, until the end of the window.
+    * @param flush
+    * @throws IOException
+    */
+   private void deflate(boolean flush) throws IOException {
+      while (true) {
+         if (fill - pos < MIN_LOOKAHEAD) {
+            if (!flush || pos >= fill) {
+               break;
+            }
+         }
+         int hashHead = -1;
+         if (pos + MIN_MATCH <= fill) {
+            hashHead = insertString(pos);
+         }
+         prevLength = matchLength;
+         prevMatch = matchStart;
+         matchLength = MIN_MATCH - 1;
+         if (hashHead >= 0 && prevLength < maxLazy && pos - hashHead <= MAX_DIST) {
+            matchLength = longestMatch(hashHead);
+            if (matchLength == MIN_MATCH && pos - matchStart > TOO_FAR) {
+               matchLength = MIN_MATCH - 1;
+            }
+         }
+         if (prevLength >= MIN_MATCH && matchLength <= prevLength) {
+            //match at the previous position is better
+            int maxInsert = fill - MIN_MATCH;
+            tally(pos - 1 - prevMatch, prevLength - MIN_MATCH);
+            int n = prevLength - 2;
+            do {
+               pos++;
+               if (pos <= maxInsert) {
+                  insertString(pos);
+               }
+            } while (--n != 0);
+            matchAvailable = false;
+            matchLength = MIN_MATCH - 1;
+            pos++;
+            if (symCount == SYM_BUF_SIZE) {
+               flushBlock(false);
+            }
+         } else if (matchAvailable) {
+            tally(0, window[pos - 1] & 0xFF);
+            pos++;
+            if (symCount == SYM_BUF_SIZE) {
+               flushBlock(false);
+            }
+         } else {
+            matchAvailable = true;
+            pos++;
+         }
+      }
+      if (flush && matchAvailable) {
+         tally(0, window[pos - 1] & 0xFF);
+         matchAvailable = false;
+      }
+   }
+
+   /**
+    * Writes the remaining bytes, the final block and the checksum. Flushes the {@link OutputStream}, but does not close it.
+    * @throws IOException
+    */
+   public void finish() throws IOException {
+      if (isFinished) {
+         return;
+      }
+      isFinished = true;
+      if (level == 0) {
+         writeStored(0, fill, true);
+      } else {
+         deflate(true);
+         flushBlock(true);
+      }
+      if (bitCount > 0) {
+         putByte(bitBuf);
+         bitBuf = 0;
+         bitCount = 0;
+      }
+      putByte(adler >>> 24);
+      putByte(adler >>> 16);
+      putByte(adler >>> 8);
+      putByte(adler);
+      if (outCount > 0) {
+         out.write(outBuf, 0, outCount);
+         outCount = 0;
+      }
+      out.flush();
+   }
+
+   /**
+    * Writes the symbols as a block with the smallest encoding
+    * @param last
+    * @throws IOException
+    */
+   private void flushBlock(boolean last) throws IOException {
+      litFreq[256] = 1;
+      buildLengths(litFreq, litLens, 15);
+      buildLengths(distFreq, distLens, 15);
+      int hlit = NUM_LIT;
+      while (hlit > 257 && litLens[hlit - 1] == 0) {
+         hlit--;
+      }
+      int hdist = NUM_DIST;
+      while (hdist > 1 && distLens[hdist - 1] == 0) {
+         hdist--;
+      }
+      //code lengths of both trees, run length encoded
+      int n = hlit + hdist;
+      int[] all = new int[n];
+      System.arraycopy(litLens, 0, all, 0, hlit);
+      System.arraycopy(distLens, 0, all, hlit, hdist);
+      int[] rleSym = new int[n];
+      int[] rleExtra = new int[n];
+      int rleCount = 0;
+      int i = 0;
+      while (i < n) {
+         int cur = all[i];
+         int run = 1;
+         while (i + run < n && all[i + run] == cur) {
+            run++;
+         }
+         i += run;
+         if (cur == 0) {
+            while (run >= 11) {
+               int k = run < 138 ? run : 138;
+               rleSym[rleCount] = 18;
+               rleExtra[rleCount++] = k - 11;
+               run -= k;
+            }
+            if (run >= 3) {
+               rleSym[rleCount] = 17;
+               rleExtra[rleCount++] = run - 3;
+               run = 0;
+            }
+         } else {
+            rleSym[rleCount++] = cur;
+            run--;
+            while (run >= 3) {
+               int k = run < 6 ? run : 6;
+               rleSym[rleCount] = 16;
+               rleExtra[rleCount++] = k - 3;
+               run -= k;
+            }
+         }
+         while (run > 0) {
+            rleSym[rleCount++] = cur;
+            run--;
+         }
+      }
+      int[] blFreq = new int[19];
+      for (int k = 0; k < rleCount; k++) {
+         blFreq[rleSym[k]]++;
+      }
+      int[] blLens = new int[19];
+      int[] blCodes = new int[19];
+      buildLengths(blFreq, blLens, 7);
+      int hclen = 19;
+      while (hclen > 4 && blLens[BL_ORDER[hclen - 1]] == 0) {
+         hclen--;
+      }
+
+      //sizes in bits
+      int extraBits = 0;
+      int fixedBits = 3;
+      int dynBits = 3 + 14 + 3 * hclen;
+      for (int k = 0; k < NUM_LIT; k++) {
+         int f = litFreq[k];
+         if (f != 0) {
+            fixedBits += f * FIXED_LIT_LENS[k];
+            dynBits += f * litLens[k];
+            if (k > 256) {
+               extraBits += f * EXTRA_LBITS[k - 257];
+            }
+         }
+      }
+      for (int k = 0; k < NUM_DIST; k++) {
+         int f = distFreq[k];
+         if (f != 0) {
+            fixedBits += f * FIXED_DIST_LENS[k];
+            dynBits += f * distLens[k];
+            extraBits += f * EXTRA_DBITS[k];
+         }
+      }
+      for (int k = 0; k < rleCount; k++) {
+         int s = rleSym[k];
+         dynBits += blLens[s];
+         if (s == 16) {
+            dynBits += 2;
+         } else if (s == 17) {
+            dynBits += 3;
+         } else if (s == 18) {
+            dynBits += 7;
+         }
+      }
+      fixedBits += extraBits;
+      dynBits += extraBits;
+      //a literal waiting for the next position is not in this block
+      int blockEnd = matchAvailable ? pos - 1 : pos;
+      int storedBits = Integer.MAX_VALUE;
+      if (blockStart >= 0) {
+         int rawLen = blockEnd - blockStart;
+         int numStored = rawLen == 0 ? 1 : (rawLen + STORED_MAX - 1) / STORED_MAX;
+         storedBits = (rawLen + 5 * numStored) * 8 + 7;
+      }
+
+      int lastBit = last ? 1 : 0;
+      if (storedBits <= fixedBits && storedBits <= dynBits) {
+         writeStored(blockStart, blockEnd - blockStart, last);
+      } else if (fixedBits <= dynBits) {
+         writeBits(lastBit | (1 << 1), 3);
+         compressBlock(FIXED_LIT_CODES, FIXED_LIT_LENS, FIXED_DIST_CODES, FIXED_DIST_LENS);
+      } else {
+         buildCodes(litLens, litCodes, 15);
+         buildCodes(distLens, distCodes, 15);
+         buildCodes(blLens, blCodes, 7);
+         writeBits(lastBit | (2 << 1), 3);
+         writeBits(hlit - 257, 5);
+         writeBits(hdist - 1, 5);
+         writeBits(hclen - 4, 4);
+         for (int k = 0; k < hclen; k++) {
+            writeBits(blLens[BL_ORDER[k]], 3);
+         }
+         for (int k = 0; k < rleCount; k++) {
+            int s = rleSym[k];
+            writeBits(blCodes[s], blLens[s]);
+            if (s == 16) {
+               writeBits(rleExtra[k], 2);
+            } else if (s == 17) {
+               writeBits(rleExtra[k], 3);
+            } else if (s == 18) {
+               writeBits(rleExtra[k], 7);
+            }
+         }
+         compressBlock(litCodes, litLens, distCodes, distLens);
+      }
+      for (int k = 0; k < NUM_LIT; k++) {
+         litFreq[k] = 0;
+      }
+      for (int k = 0; k < NUM_DIST; k++) {
+         distFreq[k] = 0;
+      }
+      symCount = 0;
+      blockStart = blockEnd;
+   }
+
+   public int getLevel() {
+      return level;
+   }
+
+   /**
+    * Inserts the string at p in its hash chain
+    * @param p
+    * @return the previous head of the chain, -1 if none
+    */
+   private int insertString(int p) {
+      int h = (((window[p] & 0xFF) << 10) ^ ((window[p + 1] & 0xFF) << 5) ^ (window[p + 2] & 0xFF)) & HASH_MASK;
+      int old = head[h];
+      prev[p & WMASK] = old;
+      head[h] = p;
+      return old;
+   }
+
+   /**
+    * Longest match at {@link ZlibDeflater#pos} in the hash chain starting at cur. Sets {@link ZlibDeflater#matchStart}
+    * @param cur
+    * @return the length of the best match, {@link ZlibDeflater#prevLength} when none is longer
+    */
+   private int longestMatch(int cur) {
+      int chain = maxChain;
+      int bestLen = prevLength;
+      int maxLen = fill - pos;
+      if (maxLen > MAX_MATCH) {
+         maxLen = MAX_MATCH;
+      }
+      if (bestLen >= maxLen) {
+         return bestLen;
+      }
+      int nice = niceLength < maxLen ? niceLength : maxLen;
+      if (prevLength >= goodLength) {
+         chain >>= 2;
+      }
+      int limit = pos - MAX_DIST;
+      byte[] win = window;
+      int scan = pos;
+      while (cur > limit && cur >= 0 && chain-- > 0) {
+         if (win[cur + bestLen] == win[scan + bestLen] && win[cur] == win[scan]) {
+            int len = 1;
+            while (len < maxLen && win[cur + len] == win[scan + len]) {
+               len++;
+            }
+            if (len > bestLen) {
+               bestLen = len;
+               matchStart = cur;
+               if (len >= nice) {
+                  break;
+               }
+            }
+         }
+         int next = prev[cur & WMASK];
+         if (next >= cur) {
+            break;
+         }
+         cur = next;
+      }
+      return bestLen;
+   }
+
+   private void putByte(int b) throws IOException {
+      outBuf[outCount++] = (byte) b;
+      if (outCount == outBuf.length) {
+         out.write(outBuf, 0, outCount);
+         outCount = 0;
+      }
+   }
+
+   /**
+    * Moves the upper half of the window down. Positions below are dropped from the hash chains.
+    */
+   private void slide() {
+      System.arraycopy(window, WSIZE, window, 0, WSIZE);
+      fill -= WSIZE;
+      pos -= WSIZE;
+      matchStart -= WSIZE;
+      blockStart -= WSIZE;
+      for (int i = 0; i < head.length; i++) {
+         int v = head[i];
+         head[i] = v >= WSIZE ? v - WSIZE : -1;
+      }
+      for (int i = 0; i < prev.length; i++) {
+         int v = prev[i];
+         prev[i] = v >= WSIZE ? v - WSIZE : -1;
+      }
+   }
+
+   /**
+    *
+    * @param dist 0 for a literal
+    * @param litLen literal or match length - 3
+    */
+   private void tally(int dist, int litLen) {
+      symDist[symCount] = (char) dist;
+      symLit[symCount] = (char) litLen;
+      symCount++;
+      if (dist == 0) {
+         litFreq[litLen]++;
+      } else {
+         litFreq[LENGTH_CODE[litLen] + 257]++;
+         distFreq[distCode(dist - 1)]++;
+      }
+   }
+
+   /**
+    * Compresses len bytes
+    * @param b
+    * @param off
+    * @param len
+    * @throws IOException
+    * @throws IllegalStateException after {@link ZlibDeflater#finish()}
+    */
+   public void write(byte[] b, int off, int len) throws IOException {
+      if (isFinished) {
+         throw new IllegalStateException("finished");
+      }
+      adler = adler32(adler, b, off, len);
+      if (level == 0) {
+         while (len > 0) {
+            int n = STORED_MAX - fill;
+            if (n > len) {
+               n = len;
+            }
+            System.arraycopy(b, off, window, fill, n);
+            fill += n;
+            off += n;
+            len -= n;
+            if (fill == STORED_MAX) {
+               writeStored(0, fill, false);
+               fill = 0;
+            }
+         }
+         return;
+      }
+      while (len > 0) {
+         if (fill == window.length) {
+            slide();
+         }
+         int n = window.length - fill;
+         if (n > len) {
+            n = len;
+         }
+         System.arraycopy(b, off, window, fill, n);
+         fill += n;
+         off += n;
+         len -= n;
+         deflate(false);
+      }
+   }
+
+   private void writeBits(int value, int numBits) throws IOException {
+      bitBuf |= value << bitCount;
+      bitCount += numBits;
+      while (bitCount >= 8) {
+         putByte(bitBuf);
+         bitBuf >>>= 8;
+         bitCount -= 8;
+      }
+   }
+
+   /**
+    * Writes the window bytes as stored blocks
+    * @param start
+    * @param len
+    * @param last
+    * @throws IOException
+    */
+   private void writeStored(int start, int len, boolean last) throws IOException {
+      do {
+         int n = len < STORED_MAX ? len : STORED_MAX;
+         len -= n;
+         int lastBit = (last && len == 0) ? 1 : 0;
+         writeBits(lastBit, 3);
+         if (bitCount > 0) {
+            writeBits(0, 8 - bitCount);
+         }
+         putByte(n);
+         putByte(n >>> 8);
+         putByte(~n);
+         putByte(~n >>> 8);
+         if (outCount > 0) {
+            out.write(outBuf, 0, outCount);
+            outCount = 0;
+         }
+         out.write(window, start, n);
+         start += n;
+      } while (len > 0);
+   }
+}
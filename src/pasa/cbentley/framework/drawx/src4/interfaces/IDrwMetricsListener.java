@@ -0,0 +1,24 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.interfaces;
+
+import pasa.cbentley.framework.drawx.src4.ctx.DrwFrameMetrics;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwMetrics;
+
+/**
+ * Receives the metrics of each frame ended on {@link DrwMetrics}
+ * <br>
+ * Called in the thread that ends the frame. Keep it short, the next frame waits.
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface IDrwMetricsListener {
+
+   /**
+    * The frame is not modified anymore. It can be kept.
+    * @param frame
+    */
+   public void frameMetrics(DrwFrameMetrics frame);
+}
@@ -33,6 +33,14 @@ public class BuildLineData extends ObjectDrw {
       lastSpaceIndex = offsetLine;
    }
 
+   /**
+    * Empties the data for a new line
+    */
+   void reset() {
+      buf.clear();
+      lastSpaceIndex = -2;
+   }
+
    public BufferObject getChars() {
       return buf;
    }
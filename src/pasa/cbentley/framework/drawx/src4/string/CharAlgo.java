@@ -29,6 +29,21 @@ public class CharAlgo extends ObjectDrw {
       super(drc);
    }
 
+   /**
+    * Clears the char for reuse by {@link LineAlgo}. Same state as a new {@link CharAlgo}.
+    */
+   void reset() {
+      c = 0;
+      height = 0;
+      isEther = false;
+      offsetLine = 0;
+      offsetStringer = 0;
+      width = 0;
+      mapOp = 0;
+      mapData = null;
+      mapChar = 0;
+   }
+
    public char getC() {
       return c;
    }
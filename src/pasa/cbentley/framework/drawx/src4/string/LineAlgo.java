@@ -15,6 +15,14 @@ import pasa.cbentley.framework.drawx.src4.utils.AnchorUtils;
 /**
  * LineAlgo tracks computations for {@link Stringer} when formatting text.
  * 
+ * <p>
+ * A {@link LineAlgo} is reused for all the layouts of its {@link Stringer}. {@link LineAlgo#init()} resets it.
+ * <br>
+ * {@link CharAlgo}s are taken from a pool and given back when their line is built.
+ * Lines of a previous layout are given back with {@link LineAlgo#recycleLines(LineStringer[], int, int)}.
+ * <br>
+ * Objects created during a layout are counted by {@link TextStats#getAllocations()}.
+ * </p>
  * @author Charles Bentley
  *
  */
@@ -22,6 +30,16 @@ public class LineAlgo extends ObjectDrw {
 
    private CharAlgo            charCurrent;
 
+   /**
+    * {@link CharAlgo}s ready for reuse
+    */
+   private final BufferObject  charPool;
+
+   /**
+    * Reused buffer for {@link LineAlgo#doWrapLineAnywhere()}
+    */
+   private BufferObject        charsAnywhere;
+
    private BufferObject        charsForNextLine;
 
    private int                 dy;
@@ -32,8 +50,18 @@ public class LineAlgo extends ObjectDrw {
 
    Enumeration                 intervals;
 
+   /**
+    * False when a {@link CharAlgo} may be shared by 2 lines. Hidden chars with {@link ITechStringer#WORDWRAP_2_NICE_WORD}
+    */
+   private boolean             isRecycleChars;
+
    private boolean             isShowHiddenChars;
 
+   /**
+    * Incremental mode. The start of the next line is known with the next char
+    */
+   private boolean             isSyncPending;
+
    private boolean             isStop;
 
    private boolean             isTestWidth;
@@ -48,6 +76,11 @@ public class LineAlgo extends ObjectDrw {
 
    private LineStringer        linePrevious;
 
+   /**
+    * {@link LineStringer}s ready for reuse
+    */
+   private final BufferObject  linePool;
+
    private char                markupEndChar   = '〗';
 
    /**
@@ -63,6 +96,37 @@ public class LineAlgo extends ObjectDrw {
 
    private int                 numTabsInLine;
 
+   /**
+    * Incremental mode. Lines of the previous layout. null in full mode.
+    */
+   private LineStringer[]      oldLines;
+
+   /**
+    * Incremental mode. Lines of {@link LineAlgo#oldLines} before this index are not reused.
+    */
+   private int                 oldLineReuseMin;
+
+   /**
+    * Incremental mode. Next candidate line of {@link LineAlgo#oldLines} for synchronization.
+    */
+   private int                 oldLineSync;
+
+   private int                 editIndex;
+
+   private int                 editInserted;
+
+   private int                 editRemoved;
+
+   /**
+    * Chars before this offset are not broken. 0 in full mode.
+    */
+   private int                 startOffset;
+
+   /**
+    * Incremental mode. Index of the previous line from which the old layout is valid again. -1 if none.
+    */
+   private int                 syncLine        = -1;
+
    private TextStats           stats;
 
    private Stringer            stringer;
@@ -81,7 +145,10 @@ public class LineAlgo extends ObjectDrw {
    public LineAlgo(Stringer stringer) {
       super(stringer.getDRC());
       this.stringer = stringer;
-
+      stats = new TextStats(drc);
+      finalLines = new BufferObject(stringer.getUC());
+      charPool = new BufferObject(stringer.getUC());
+      linePool = new BufferObject(stringer.getUC());
    }
 
    private void buildLineNormal() {
@@ -106,17 +173,21 @@ public class LineAlgo extends ObjectDrw {
 
       }
 
-      lineCurrent.build();
+      if (isRecycleChars) {
+         lineCurrent.build(charPool);
+      } else {
+         lineCurrent.build();
+      }
 
       //
       linePrevious = lineCurrent;
 
-      LineStringer nextLine = new LineStringer(stringer);
+      LineStringer nextLine = createLine();
       if (charsForNextLine != null && !charsForNextLine.isEmpty()) {
          CharAlgo ca = (CharAlgo) charsForNextLine.removeFirst();
          boolean isSpace = ca.getC() == StringUtils.ENGLISH_SPACE;
          if (isSpace && stringer.getFormatWordWrap() == ITechStringer.WORDWRAP_2_NICE_WORD) {
-
+            recycleChar(ca);
          } else {
             nextLine.addChar(ca);
             if (isSpace) {
@@ -135,6 +206,14 @@ public class LineAlgo extends ObjectDrw {
       lineCurrent = nextLine;
       lineLengthAtPrevioustab = 0;
 
+      if (oldLines != null && !isStop) {
+         if (nextLine.getLengthInStringer() == 0) {
+            //next line starts with the next char in the loop
+            isSyncPending = true;
+         } else {
+            checkSync(nextLine.getOffset());
+         }
+      }
    }
 
    private void buildLineTooMuchWidth() {
@@ -164,11 +243,65 @@ public class LineAlgo extends ObjectDrw {
       buildLineNormal();
    }
 
+   /**
+    * Incremental mode. Stops the algo when the new line starting at offsetLineStart starts on the same char as a previous line after the edition.
+    * <br>
+    * Chars from there are the same as before the edition, so the previous lines are valid again.
+    * @param offsetLineStart
+    */
+   private void checkSync(int offsetLineStart) {
+      if (offsetLineStart < editIndex + editInserted) {
+         return;
+      }
+      int delta = editInserted - editRemoved;
+      while (oldLineSync < oldLines.length) {
+         LineStringer old = oldLines[oldLineSync];
+         int oldStart = old.getOffset();
+         if (oldStart < editIndex + editRemoved || oldStart + delta < offsetLineStart) {
+            oldLineSync++;
+            continue;
+         }
+         if (oldStart + delta == offsetLineStart && oldLineSync >= oldLineReuseMin && !old.isFictiveLine() && old.isRealModelLine() == lineCurrent.isRealModelLine()) {
+            syncLine = oldLineSync;
+            isStop = true;
+         }
+         return;
+      }
+   }
+
+   /**
+    * {@link CharAlgo} from the pool or a new one
+    * @return
+    */
+   private CharAlgo createCharAlgo() {
+      if (charPool.isEmpty()) {
+         stats.incrementAllocations();
+         return new CharAlgo(drc);
+      }
+      CharAlgo ca = (CharAlgo) charPool.removeLast();
+      ca.reset();
+      return ca;
+   }
+
+   /**
+    * {@link LineStringer} from the pool or a new one
+    * @return
+    */
+   private LineStringer createLine() {
+      if (linePool.isEmpty()) {
+         stats.incrementAllocations();
+         return new LineStringer(stringer);
+      }
+      LineStringer line = (LineStringer) linePool.removeLast();
+      line.reset();
+      return line;
+   }
+
    /**
     * 
     */
    void createNewLineEmptyFictive() {
-      LineStringer line = new LineStringer(stringer);
+      LineStringer line = createLine();
       int offset = 0;
       if (linePrevious != null) {
          offset = linePrevious.getOffsetStringerLastChar() + 1;
@@ -246,7 +379,12 @@ public class LineAlgo extends ObjectDrw {
    private void doWrapLineAnywhere() {
       //simply removes last char
       CharAlgo ca = lineCurrent.removeLastChar();
-      charsForNextLine = new BufferObject(getUC());
+      if (charsAnywhere == null) {
+         stats.incrementAllocations();
+         charsAnywhere = new BufferObject(getUC());
+      }
+      charsAnywhere.clear();
+      charsForNextLine = charsAnywhere;
       charsForNextLine.add(ca);
       if (ca.getC() == StringUtils.ENGLISH_SPACE) {
          lineCurrent.incrementNumOfSpaces(-1);
@@ -299,7 +437,20 @@ public class LineAlgo extends ObjectDrw {
    }
 
    public LineStringer[] getLines() {
-      LineStringer[] lines = new LineStringer[finalLines.getSize()];
+      return getLines(null);
+   }
+
+   /**
+    * Lines of the layout
+    * @param reuse array filled when it has the right size. May be null
+    * @return
+    */
+   public LineStringer[] getLines(LineStringer[] reuse) {
+      LineStringer[] lines = reuse;
+      if (lines == null || lines.length != finalLines.getSize()) {
+         stats.incrementAllocations();
+         lines = new LineStringer[finalLines.getSize()];
+      }
       finalLines.appendBufferToArrayAt(lines, 0);
       return lines;
    }
@@ -308,20 +459,27 @@ public class LineAlgo extends ObjectDrw {
       return stats;
    }
 
+   /**
+    * Index of the previous line from which lines given to {@link LineAlgo#startIncremental(LineStringer[], int, int, int, int)} are valid again.
+    * @return -1 when the algo reached the end of the text
+    */
+   public int getSyncLine() {
+      return syncLine;
+   }
+
    /**
     * Based on Stringer state, init the intervals and stuff.
     * 
     * If Stringer is empty or without style
     */
    public void init() {
-
-      stats = new TextStats(drc);
+      resetAlgo();
+      stats.reset();
+      finalLines.clear();
 
       IntIntervals leaves = stringer.getIntervalsOfLeaves();
       this.intervals = leaves.getIntervalEnumeration();
 
-      finalLines = new BufferObject(stringer.getUC());
-
       maxLineWidth = stringer.getBreakW();
       if (maxLineWidth <= 0) {
          maxLineWidth = Integer.MAX_VALUE; //ignore
@@ -359,9 +517,63 @@ public class LineAlgo extends ObjectDrw {
       isTrimArtifact = stringer.isTrimArtifacts();
 
       isShowHiddenChars = stringer.isShowHiddenChars();
-      lineCurrent = new LineStringer(stringer);
+      isRecycleChars = !isShowHiddenChars;
+      lineCurrent = createLine();
    }
    
+   /**
+    * Gives back the lines [from, to[ of a previous layout. They must not be used anymore.
+    * <br>
+    * Lines are reused by the next layouts.
+    * @param lines
+    * @param from
+    * @param to
+    */
+   public void recycleLines(LineStringer[] lines, int from, int to) {
+      for (int i = from; i < to; i++) {
+         linePool.add(lines[i]);
+      }
+   }
+
+   private void recycleChar(CharAlgo ca) {
+      if (isRecycleChars) {
+         charPool.add(ca);
+      }
+   }
+
+   /**
+    * State of a new algo, pools are kept
+    */
+   private void resetAlgo() {
+      charCurrent = null;
+      charsForNextLine = null;
+      dy = 0;
+      fontHeight = 0;
+      intervals = null;
+      isStop = false;
+      isSyncPending = false;
+      lastChar = 0;
+      lastTabOffsetEnd = 0;
+      lastTabOffsetStringer = 0;
+      lineCurrent = null;
+      lineFirstWithTabs = null;
+      lineLengthAtPrevioustab = 0;
+      linePrevious = null;
+      numTabsInLine = 0;
+      oldLines = null;
+      oldLineReuseMin = 0;
+      oldLineSync = 0;
+      editIndex = 0;
+      editInserted = 0;
+      editRemoved = 0;
+      startOffset = 0;
+      style = null;
+      styleInterval = null;
+      syncLine = -1;
+      tabCols = null;
+      tabLineCounter = 0;
+   }
+
    private boolean isJustifiedText() {
       return stringer.getSpaceTrimManager() == ITechStringer.SPACETRIM_2_JUSTIFIED && maxLineWidth != Integer.MAX_VALUE;
    }
@@ -431,7 +643,7 @@ public class LineAlgo extends ObjectDrw {
       //this offset is stringer srcChar relative
       int offset = styleInterval.getOffset();
       int len = styleInterval.getLen();
-      for (int srcOffsetRelative = offset; srcOffsetRelative < offset + len; srcOffsetRelative++) {
+      for (int srcOffsetRelative = Math.max(offset, startOffset); srcOffsetRelative < offset + len; srcOffsetRelative++) {
          //are we still in the current line
          char cc = stringer.getCharSourceAtRelative(srcOffsetRelative);
 
@@ -451,8 +663,15 @@ public class LineAlgo extends ObjectDrw {
    }
 
    private void loopWorkOnCharacter(int srcOffsetRelative, char cc) {
+      if (isSyncPending) {
+         isSyncPending = false;
+         checkSync(srcOffsetRelative);
+         if (isStop) {
+            return;
+         }
+      }
       this.lastChar = cc;
-      charCurrent = new CharAlgo(drc);
+      charCurrent = createCharAlgo();
       charCurrent.setC(cc);
 
       //in all cases. we need its width
@@ -513,7 +732,7 @@ public class LineAlgo extends ObjectDrw {
             doSpecialSpaceFor(StringUtils.LINE_BREAK_RETURN);
          } else {
             //remove
-            lineCurrent.removeLastChar();
+            recycleChar(lineCurrent.removeLastChar());
          }
 
          //does nothing.. but check if \n follows
@@ -538,7 +757,7 @@ public class LineAlgo extends ObjectDrw {
             doSpecialSpaceFor(StringUtils.GENDER_FEMALE);
          } else {
             //remove
-            lineCurrent.removeLastChar();
+            recycleChar(lineCurrent.removeLastChar());
          }
 
          buildLineNormal();
@@ -567,7 +786,7 @@ public class LineAlgo extends ObjectDrw {
             doSpecialSpaceFor(StringUtils.LINE_BREAK_RETURN);
          } else {
             //remove
-            lineCurrent.removeLastChar();
+            recycleChar(lineCurrent.removeLastChar());
          }
 
          buildLineNormal();
@@ -612,8 +831,11 @@ public class LineAlgo extends ObjectDrw {
       if (stringer.lengthChars == 0) {
          //do nothing
       } else {
-         while (intervals.hasMoreElements()) {
+         while (syncLine == -1 && intervals.hasMoreElements()) {
             styleInterval = (IntInterval) intervals.nextElement();
+            if (styleInterval.getOffset() + styleInterval.getLen() <= startOffset) {
+               continue;
+            }
             style = ((StringFxLeaf) styleInterval.getPayload()).getFx();
 
             int fontH = style.getFontHeight();
@@ -626,7 +848,9 @@ public class LineAlgo extends ObjectDrw {
 
       //case 1 when no chars. we have a single empty line
       //case 2 when it ends with \n. create the same scneario with an "fictive" line 
-      if (stringer.lengthChars == 0 || lastChar == StringUtils.NEW_LINE) {
+      if (syncLine != -1) {
+         //remaining lines are given by the previous layout
+      } else if (stringer.lengthChars == 0 || lastChar == StringUtils.NEW_LINE) {
          createNewLineEmptyFictive();
       } else {
          if (!isStop) {
@@ -637,6 +861,48 @@ public class LineAlgo extends ObjectDrw {
 
    }
 
+   /**
+    * Breaks lines again after an edition of the chars, starting with line lineStart of the previous layout.
+    * <br>
+    * <br>
+    * removed chars were deleted at index, then inserted chars were inserted at index.
+    * <br>
+    * The algo stops as soon as a new line starts on the same char as a previous line after the edition.
+    * {@link LineAlgo#getLines()} returns the new lines replacing the previous lines [lineStart, {@link LineAlgo#getSyncLine()}[
+    * <br>
+    * <br>
+    * Lines must not depend on previous lines. No tab columns, no page breaks, no max lines and no height trims.
+    * <br>
+    * PRE: {@link LineAlgo#init()} was called.
+    * @param oldLines lines of the previous layout
+    * @param lineStart index of the first line to break again. Its offset is not modified by the edition.
+    * @param index
+    * @param removed
+    * @param inserted
+    */
+   public void startIncremental(LineStringer[] oldLines, int lineStart, int index, int removed, int inserted) {
+      this.oldLines = oldLines;
+      this.editIndex = index;
+      this.editRemoved = removed;
+      this.editInserted = inserted;
+      this.oldLineSync = lineStart + 1;
+      //mapped lines cannot be shifted
+      oldLineReuseMin = 0;
+      for (int i = oldLines.length - 1; i > lineStart; i--) {
+         if (oldLines[i].hasCharMapper()) {
+            oldLineReuseMin = i + 1;
+            break;
+         }
+      }
+      LineStringer lineFirst = oldLines[lineStart];
+      startOffset = lineFirst.getOffset();
+      lineCurrent.setRealModelLine(lineFirst.isRealModelLine());
+      if (lineStart > 0) {
+         linePrevious = oldLines[lineStart - 1];
+      }
+      start();
+   }
+
    private LineStringer lineFirstWithTabs;
 
    private int          lastTabOffsetStringer;
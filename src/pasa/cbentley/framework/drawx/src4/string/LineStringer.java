@@ -51,6 +51,18 @@ public class LineStringer extends ObjectDrw {
     */
    int[]                 charsWidth;
 
+   /**
+    * Array of a previous use of this line, reused when the new line has the same number of visible chars
+    */
+   private int[]         charsWidthSpare;
+
+   /**
+    * Prefix sums of {@link LineStringer#charsWidth}. charsX[i] is the width of the chars before i.
+    * <br>
+    * Built on demand. Null when invalid.
+    */
+   private int[]         charsX;
+
    private boolean       hasDifferentFonts;
 
    private int           index;
@@ -94,6 +106,11 @@ public class LineStringer extends ObjectDrw {
     */
    private BuildLineData model;
 
+   /**
+    * Empty {@link BuildLineData} kept after {@link LineStringer#build()} for {@link LineStringer#reset()}
+    */
+   private BuildLineData modelSpare;
+
    private int           numOfSpaces;
 
    private int           offset;
@@ -253,6 +270,14 @@ public class LineStringer extends ObjectDrw {
     * This method builds the charmap if any
     */
    public void build() {
+      build(null);
+   }
+
+   /**
+    * Builds the line and gives its {@link CharAlgo}s to charPool
+    * @param charPool null when chars are not reused
+    */
+   public void build(BufferObject charPool) {
       if (model == null) {
          throw new IllegalStateException("Cannot build a line with nothing in it");
       }
@@ -269,7 +294,7 @@ public class LineStringer extends ObjectDrw {
       //fill up charWidths for the visible chars
       if (charsWidth == null) {
          int num = getNumCharVisible();
-         charsWidth = new int[num];
+         charsWidth = createCharsWidth(num);
       }
 
       //chars that were from model
@@ -279,11 +304,76 @@ public class LineStringer extends ObjectDrw {
       while ((ca = (CharAlgo) chars.removeFirst()) != null) {
          charsWidth[count] += ca.getWidth();
          count++;
+         if (charPool != null) {
+            charPool.add(ca);
+         }
       }
+      charsX = null;
+      modelSpare = model;
       model = null;
 
    }
 
+   /**
+    * Zeroed array of num ints. Reuses {@link LineStringer#charsWidthSpare} when it has the right size.
+    * @param num
+    * @return
+    */
+   private int[] createCharsWidth(int num) {
+      int[] ar = charsWidthSpare;
+      charsWidthSpare = null;
+      if (ar != null && ar.length == num) {
+         for (int i = 0; i < num; i++) {
+            ar[i] = 0;
+         }
+         return ar;
+      }
+      return new int[num];
+   }
+
+   /**
+    * Clears the line for reuse by {@link LineAlgo}. Same state as a new line.
+    * <br>
+    * The {@link BuildLineData} and the char widths array are kept.
+    */
+   void reset() {
+      if (model == null) {
+         model = modelSpare;
+         modelSpare = null;
+         if (model == null) {
+            model = new BuildLineData(drc);
+         }
+      }
+      model.reset();
+      if (charsWidth != null) {
+         charsWidthSpare = charsWidth;
+      }
+      charsHeight = null;
+      charsWidth = null;
+      charsX = null;
+      hasDifferentFonts = false;
+      index = 0;
+      isFictiveLine = false;
+      isJustified = false;
+      isMonospaced = false;
+      isRealModelLine = false;
+      isSpaceOut = false;
+      len = 0;
+      lineFx = null;
+      lineID = -1;
+      map = null;
+      numOfSpaces = 0;
+      offset = 0;
+      pixelsH = 0;
+      pixelsW = 0;
+      state = 0;
+      widthMono = 0;
+      wordBreaks = null;
+      x = 0;
+      y = 0;
+      isAbsoluteXY = false;
+   }
+
    public void buildMap() {
       if (map != null) {
          int lineOffset = getOffset();
@@ -366,7 +456,8 @@ public class LineStringer extends ObjectDrw {
 
    public void enableCharWidths() {
       if (charsWidth == null) {
-         charsWidth = new int[len];
+         charsWidth = createCharsWidth(len);
+         charsX = null;
       }
    }
 
@@ -403,6 +494,16 @@ public class LineStringer extends ObjectDrw {
       }
    }
 
+   /**
+    * True when the line maps its chars, for special chars, trims or hidden chars.
+    * <br>
+    * Unlike {@link LineStringer#getCharMapper()}, does not create the mapper.
+    * @return
+    */
+   public boolean hasCharMapper() {
+      return map != null;
+   }
+
    public CharMapper getCharMapper() {
       if (map == null) {
          map = new CharMapper(this.getUC());
@@ -438,12 +539,27 @@ public class LineStringer extends ObjectDrw {
       if (charsWidth == null) {
          return len * widthMono;
       } else {
+         int[] px = getCharsX();
+         return px[indexRelative + len] - px[indexRelative];
+      }
+   }
+
+   /**
+    * Prefix sums of the char widths, computed once after each width change.
+    * @return array of size charsWidth.length + 1
+    */
+   private int[] getCharsX() {
+      if (charsX == null || charsX.length != charsWidth.length + 1) {
+         int[] px = new int[charsWidth.length + 1];
          int sum = 0;
-         for (int i = 0; i < len; i++) {
-            sum += charsWidth[indexRelative + i];
+         for (int i = 0; i < charsWidth.length; i++) {
+            px[i] = sum;
+            sum += charsWidth[i];
          }
-         return sum;
+         px[charsWidth.length] = sum;
+         charsX = px;
       }
+      return charsX;
    }
 
    /**
@@ -489,10 +605,7 @@ public class LineStringer extends ObjectDrw {
       if (charsWidth == null) {
          m = offsetLine * widthMono;
       } else {
-         for (int i = 0; i < offsetLine; i++) {
-            int w = charsWidth[i];
-            m += w;
-         }
+         m = getCharsX()[offsetLine];
       }
       return x + m;
    }
@@ -659,6 +772,7 @@ public class LineStringer extends ObjectDrw {
     */
    public void incrementCharWidth(int offsetRel, int val) {
       charsWidth[offsetRel] += val;
+      charsX = null;
       pixelsW += val;
    }
 
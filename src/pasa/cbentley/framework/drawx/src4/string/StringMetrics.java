@@ -97,6 +97,14 @@ public class StringMetrics extends ObjectDrw implements IStringable, ITechString
 
    private int            lineBiggestW;
 
+   /**
+    * Reused for all the layouts of the {@link Stringer}. Created on the first layout.
+    */
+   private LineAlgo       lineAlgo;
+
+   /**
+    * Lines of the last layout. They are recycled by the next layout, so references to lines must not be kept across layouts.
+    */
    private LineStringer[] lines;
 
    /**
@@ -366,14 +374,17 @@ public class StringMetrics extends ObjectDrw implements IStringable, ITechString
    }
 
    /**
-    * 
+    * Binary search over the line start offsets. Lines are sorted by {@link LineStringer#getOffset()}.
+    * <br>
+    * Empty lines, such as fictive form feed lines, share their offset with the next line and contain no index.
     * @param indexRelative
     * @return -1 if index is not inside any lines
     */
    public int getLineIndexFromCharIndex(int indexRelative) {
       //#debug
       checkStateLine();
-      for (int i = 0; i < lines.length; i++) {
+      int found = getLineIndexStartingBefore(indexRelative);
+      for (int i = found; i >= 0 && lines[i].getOffset() == lines[found].getOffset(); i--) {
          if (lines[i].isInside(indexRelative)) {
             return i;
          }
@@ -381,16 +392,34 @@ public class StringMetrics extends ObjectDrw implements IStringable, ITechString
       return -1;
    }
 
-   public LineStringer getLineFromCharIndex(int indexRelative) {
-      //#debug
-      checkStateLine();
-      for (int i = 0; i < lines.length; i++) {
-         if (lines[i].isInside(indexRelative)) {
-            lines[i].setLineID(i);
-            return lines[i];
+   /**
+    * Last line whose offset is smaller or equal to index
+    * @param indexRelative
+    * @return -1 if none
+    */
+   private int getLineIndexStartingBefore(int indexRelative) {
+      int lo = 0;
+      int hi = lines.length - 1;
+      int found = -1;
+      while (lo <= hi) {
+         int mid = (lo + hi) >>> 1;
+         if (lines[mid].getOffset() <= indexRelative) {
+            found = mid;
+            lo = mid + 1;
+         } else {
+            hi = mid - 1;
          }
       }
-      return null;
+      return found;
+   }
+
+   public LineStringer getLineFromCharIndex(int indexRelative) {
+      int i = getLineIndexFromCharIndex(indexRelative);
+      if (i == -1) {
+         return null;
+      }
+      lines[i].setLineID(i);
+      return lines[i];
    }
 
    public String getLineString(int lineIndex) {
@@ -550,11 +579,14 @@ public class StringMetrics extends ObjectDrw implements IStringable, ITechString
          stringer.chars = new char[0];
       }
 
-      LineAlgo lineAlgo = new LineAlgo(stringer);
+      LineAlgo lineAlgo = getLineAlgo();
+      if (lines != null) {
+         lineAlgo.recycleLines(lines, 0, lines.length);
+      }
       lineAlgo.init();
       lineAlgo.start();
 
-      lines = lineAlgo.getLines();
+      lines = lineAlgo.getLines(lines);
       //we have all ours lines
       for (int i = 0; i < lines.length; i++) {
          lines[i].setIndex(i);
@@ -569,6 +601,139 @@ public class StringMetrics extends ObjectDrw implements IStringable, ITechString
 
    }
 
+   /**
+    * Updates the lines after an edition of the chars by {@link StringerEditor}.
+    * <br>
+    * <br>
+    * removed chars were deleted at index, then inserted chars were inserted at index.
+    * Leaves were shifted with {@link Stringer#shiftLeaves(int, int, int)}.
+    * <br>
+    * <br>
+    * Lines are broken again from the line of the edition, one line before when lines are broken on a width,
+    * until a new line starts on the same char as a line after the edition.
+    * Following lines are reused with a shifted offset.
+    * <br>
+    * Falls back to {@link StringMetrics#meterString()} when lines depend on previous lines.
+    * Tab columns, page breaks, max lines and height trims.
+    * <br>
+    * Does nothing when not yet metered.
+    * @param index
+    * @param removed
+    * @param inserted
+    */
+   void meterStringEdit(int index, int removed, int inserted) {
+      stringer.setFlagState(ITechStringer.STATE_06_CHAR_POSITIONS, false);
+      if (lines == null) {
+         return;
+      }
+      if (!isIncrementalCapable()) {
+         meterString();
+         return;
+      }
+      int lineStart = getLineIndexStartingBefore(index);
+      if (lineStart == -1) {
+         lineStart = 0;
+      }
+      if (lineStart > 0 && stringer.getBreakW() > 0) {
+         //words at the start of the edited line may go up
+         lineStart--;
+      }
+      while (lineStart > 0 && lines[lineStart].isFictiveLine()) {
+         lineStart--;
+      }
+      if (lines[lineStart].getOffset() >= stringer.lengthChars) {
+         meterString();
+         return;
+      }
+
+      LineAlgo lineAlgo = getLineAlgo();
+      lineAlgo.init();
+      lineAlgo.startIncremental(lines, lineStart, index, removed, inserted);
+
+      LineStringer[] linesNew = lineAlgo.getLines();
+      int syncLine = lineAlgo.getSyncLine();
+      int numTail = 0;
+      if (syncLine != -1) {
+         numTail = lines.length - syncLine;
+      }
+      LineStringer[] ar = new LineStringer[lineStart + linesNew.length + numTail];
+      System.arraycopy(lines, 0, ar, 0, lineStart);
+      System.arraycopy(linesNew, 0, ar, lineStart, linesNew.length);
+      int delta = inserted - removed;
+      int dest = lineStart + linesNew.length;
+      for (int i = 0; i < numTail; i++) {
+         LineStringer line = lines[syncLine + i];
+         line.setOffset(line.getOffset() + delta);
+         ar[dest + i] = line;
+      }
+      int lineEnd = lines.length;
+      if (syncLine != -1) {
+         lineEnd = syncLine;
+      }
+      lineAlgo.recycleLines(lines, lineStart, lineEnd);
+      lines = ar;
+
+      //same values as TextStats would give for all the lines
+      lineBiggestH = 0;
+      lineBiggestW = 0;
+      ph = 0;
+      for (int i = 0; i < lines.length; i++) {
+         LineStringer line = lines[i];
+         line.setIndex(i);
+         line.setLineID(i);
+         ph += line.getPixelsH();
+         if (line.getPixelsH() > lineBiggestH) {
+            lineBiggestH = line.getPixelsH();
+         }
+         if (line.getPixelsW() > lineBiggestW) {
+            lineBiggestW = line.getPixelsW();
+         }
+      }
+      pw = lineBiggestW;
+      //etalon may only grow with an edition
+      charBiggestW = Math.max(charBiggestW, lineAlgo.getStats().getCharBiggestWidth());
+
+      positionString(stringer.areaW, stringer.areaH);
+   }
+
+   /**
+    * True when a line only depends on the chars from its start.
+    * @return
+    */
+   private boolean isIncrementalCapable() {
+      if (stringer.getBreakMaxLines() > 0) {
+         return false;
+      }
+      if (stringer.getBreakH() > 0 && stringer.getFormatLineWrap() != ITechStringer.LINEWRAP_0_NONE) {
+         return false;
+      }
+      if (stringer.getTabManager() == ITechStringer.SPECIALS_TAB_5_COLUMN) {
+         return false;
+      }
+      if (stringer.getDirectiveFormFeed() == ITechStringer.SPECIALS_FORMFEED_3_NEW_PAGE) {
+         return false;
+      }
+      return !stringer.hasFlagState(ITechStringer.STATE_04_TRIMMED);
+   }
+
+   private LineAlgo getLineAlgo() {
+      if (lineAlgo == null) {
+         lineAlgo = new LineAlgo(stringer);
+      }
+      return lineAlgo;
+   }
+
+   /**
+    * Objects created by the last layout, see {@link TextStats#getAllocations()}
+    * @return -1 when not yet metered
+    */
+   public int getLayoutAllocations() {
+      if (lineAlgo == null) {
+         return -1;
+      }
+      return lineAlgo.getStats().getAllocations();
+   }
+
    public void positionString(int width, int height) {
       int dy = 0;
       ByteObject anchor = stringer.anchor;
@@ -111,6 +111,19 @@ public class StringStyleLayer extends ObjectDrw {
       return intervals.removeIntervalExact(val);
    }
 
+   /**
+    * Shifts the intervals in place after an edition of the chars.
+    * <br>
+    * Intervals grow when chars are inserted strictly inside them.
+    * @param index
+    * @param removed
+    * @param inserted
+    * @see Stringer#shiftLeaves(int, int, int)
+    */
+   void shiftIntervals(int index, int removed, int inserted) {
+      st.shiftIntervals(intervals, index, removed, inserted, false);
+   }
+
    /**
     * Creates a new {@link StringInterval} overlaying current style with the given styleID
     * 
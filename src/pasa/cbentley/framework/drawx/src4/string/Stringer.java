@@ -1051,6 +1051,96 @@ public class Stringer extends ObjectDrw implements IStringable, ITechFigure, IBO
       return intervalOfStringLeaves;
    }
 
+   /**
+    * Shifts the leaves and the style layer intervals in place after an edition of the chars.
+    * <br>
+    * <br>
+    * removed chars were deleted at index, then inserted chars were inserted at index.
+    * <li>Intervals after the edition are shifted.
+    * <li>Intervals overlapping deleted chars shrink. Intervals left empty are removed.
+    * <li>Inserted chars take the leaf of the char before them, the first leaf when inserted at 0.
+    * <br>
+    * <br>
+    * Fx of the leaves are kept. No merge of style layers is done.
+    * @param index
+    * @param removed
+    * @param inserted
+    * @return false when there are no leaves for the inserted chars. Leaves must be built again with {@link Stringer#buildTextEffects()}.
+    */
+   public boolean shiftLeaves(int index, int removed, int inserted) {
+      if (intervalOfStringLeaves == null || intervalOfStringLeaves.getSize() == 0) {
+         return false;
+      }
+      boolean isCovered = shiftIntervals(intervalOfStringLeaves, index, removed, inserted, true);
+      if (styleLayers != null) {
+         for (int i = 0; i < styleLayers.length; i++) {
+            styleLayers[i].shiftIntervals(index, removed, inserted);
+         }
+      }
+      if (intervalOfWords != null) {
+         intervalOfWords.clear();
+      }
+      return isCovered;
+   }
+
+   /**
+    * Position p before the edition is mapped to
+    * <li>p when before index
+    * <li>index when inside the removed chars
+    * <li>p - removed after them
+    * <br>
+    * Then positions at or after index are shifted by inserted, unless the interval grows.
+    * 
+    * @param ii
+    * @param index
+    * @param removed
+    * @param inserted
+    * @param isCover true when intervals cover all the chars like leaves. The interval ending at index grows.
+    * Otherwise only intervals with index strictly inside grow.
+    * @return true when inserted chars are inside an interval
+    */
+   boolean shiftIntervals(IntIntervals ii, int index, int removed, int inserted, boolean isCover) {
+      boolean isGrown = false;
+      int indexEnd = index + removed;
+      for (int i = ii.getSize() - 1; i >= 0; i--) {
+         IntInterval interval = ii.getInterval(i);
+         int offset = interval.getOffset();
+         int offsetEnd = offset + interval.getLen();
+         if (offset > indexEnd) {
+            offset -= removed;
+         } else if (offset > index) {
+            offset = index;
+         }
+         if (offsetEnd > indexEnd) {
+            offsetEnd -= removed;
+         } else if (offsetEnd > index) {
+            offsetEnd = index;
+         }
+         if (offsetEnd <= offset) {
+            ii.removeIntervalExact(interval);
+            continue;
+         }
+         if (inserted > 0) {
+            boolean isGrow = false;
+            if (isCover) {
+               isGrow = (offset < index && index <= offsetEnd) || (index == 0 && offset == 0);
+            } else {
+               isGrow = offset < index && index < offsetEnd;
+            }
+            if (isGrow) {
+               offsetEnd += inserted;
+               isGrown = true;
+            } else if (offset >= index) {
+               offset += inserted;
+               offsetEnd += inserted;
+            }
+         }
+         interval.setOffset(offset);
+         interval.setLen(offsetEnd - offset);
+      }
+      return isGrown || inserted == 0;
+   }
+
    public IntIntervals getIntervalsOfWords() {
       if (intervalOfWords == null) {
          intervalOfWords = new IntIntervals(getUC());
@@ -2,7 +2,6 @@ package pasa.cbentley.framework.drawx.src4.string;
 
 import pasa.cbentley.byteobjects.src4.core.ByteObject;
 import pasa.cbentley.core.src4.helpers.StringBBuilder;
-import pasa.cbentley.core.src4.structs.IntInterval;
 import pasa.cbentley.core.src4.utils.CharUtils;
 import pasa.cbentley.core.src4.utils.StringUtils;
 import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
@@ -12,6 +11,10 @@ import pasa.cbentley.framework.drawx.src4.string.interfaces.ITechStringer;
 /**
  * Edition always resets the Stringer offset to zero by creating a new array
  * 
+ * <p>
+ * Inserts and deletes shift the leaves in place with {@link Stringer#shiftLeaves(int, int, int)}
+ * and only break again the lines around the edition with {@link StringMetrics#meterStringEdit(int, int, int)}.
+ * </p>
  * @author Charles Bentley
  *
  */
@@ -100,13 +103,14 @@ public class StringerEditor extends ObjectDrw {
     * @param c
     */
    public void appendChar(char c) {
-      editionStartChecks(1);
+      editionBufferChecks(1);
 
       //gets the style at the last offset.. use the same style
-      //get last line and see if a rebuild is necessary
+      //only the last line is broken again
       int index = stringer.offsetChars + stringer.lengthChars;
       stringer.chars[index] = c;
       stringer.lengthChars++;
+      editRelayout(index, 0, 1);
    }
 
    /**
@@ -153,36 +157,18 @@ public class StringerEditor extends ObjectDrw {
     * @param len
     */
    public void deleteCharsAt(int indexRelative, int len) {
-
-      //dumb non optimize way is to delete char and rebuild everything
-
-      //TODO what if we delete inside a style interval ?
+      editionBufferChecks(0);
       int offsetStart = stringer.offsetChars + indexRelative + len;
       int offsetEnd = stringer.offsetChars + stringer.lengthChars - 1;
       CharUtils.shiftCharDown(stringer.chars, len, offsetStart, offsetEnd);
       stringer.lengthChars -= len;
 
-      //TODO get the interval in which we are and reduce its size
-      //if interval was
-      
-      IntInterval intervalForIndex = stringer.getIntervalForStringerIndex(indexRelative);
-      
-      int distanceToEnd = intervalForIndex.getDistanceToEnd(indexRelative);
-      
-      int indexRelativeEnd = indexRelative + len;
-      boolean isEndInside = intervalForIndex.isInside(indexRelativeEnd);
-      
-      if(isEndInside) {
-         intervalForIndex.incrLen(-len);
+      //intervals inside the deletion are removed, intervals after are shifted
+      if (stringer.shiftLeaves(indexRelative, len, 0)) {
+         stringer.getMetrics().meterStringEdit(indexRelative, len, 0);
       } else {
-         //remove until the end and check end + 1 
-         IntInterval deletion = new IntInterval(getUC(), indexRelative, len);
-         IntInterval[] intersection = stringer.getIntervalsOfLeaves().getIntersection(deletion);
-         
-         throw new RuntimeException();
+         stringer.resetFigure();
       }
-      
-      rebuildAll();
       //      //deleting a char may require a full computation.. the line decides
       //      LineStringer line = stringer.getMetrics().getLineFromCharIndex(indexRelative);
       //      
@@ -203,9 +189,20 @@ public class StringerEditor extends ObjectDrw {
 
    }
 
-   private void rebuildAll() {
-      StringMetrics metrics = stringer.getMetrics();
-      metrics.meterString();
+   /**
+    * Shifts the leaves and breaks again the lines around the edition.
+    * <br>
+    * When leaves cannot be shifted, the figure is reset like {@link StringerEditor#editionStartChecks(int)}.
+    * @param index
+    * @param removed
+    * @param inserted
+    */
+   private void editRelayout(int index, int removed, int inserted) {
+      if (stringer.shiftLeaves(index, removed, inserted)) {
+         stringer.getMetrics().meterStringEdit(index, removed, inserted);
+      } else {
+         stringer.resetFigure();
+      }
    }
 
    /**
@@ -226,9 +223,11 @@ public class StringerEditor extends ObjectDrw {
     * @param index
     */
    public void deleteChar(int index) {
-      editionStartChecks(1);
+      editionBufferChecks(1);
       CharUtils.shiftCharDown(stringer.chars, 1, index, stringer.lengthChars);
       stringer.lengthChars -= 1;
+      //the char before index was shifted over
+      editRelayout(index - 1, 1, 0);
    }
 
    /**
@@ -236,6 +235,15 @@ public class StringerEditor extends ObjectDrw {
     * 
     */
    public void editionStartChecks(int sizeIncrease) {
+      editionBufferChecks(sizeIncrease);
+      stringer.resetFigure();
+   }
+
+   /**
+    * Buffer part of {@link StringerEditor#editionStartChecks(int)}. Leaves and lines are kept.
+    * @param sizeIncrease
+    */
+   private void editionBufferChecks(int sizeIncrease) {
       if (stringer.chars == null) {
          stringer.chars = new char[0];
          stringer.getStyleLayers();
@@ -253,7 +261,6 @@ public class StringerEditor extends ObjectDrw {
          stringer.chars = getUC().getMem().increaseCapacity(stringer.chars, lenIncrease);
       }
       stringer.setEditingTrue();
-      stringer.resetFigure();
    }
 
    public int getCaretIndex() {
@@ -273,19 +280,19 @@ public class StringerEditor extends ObjectDrw {
     * @param index
     */
    public void insertChar(char c, int index) {
-      editionStartChecks(1);
+      editionBufferChecks(1);
       CharUtils.shiftCharUp(stringer.chars, 1, index, stringer.lengthChars);
       stringer.chars[index] = c;
       stringer.lengthChars += 1;
-
+      editRelayout(index, 0, 1);
    }
 
    public void insertChar(char[] cs, int offset, int len, int index) {
-      editionStartChecks(len);
+      editionBufferChecks(len);
       CharUtils.shiftCharUp(stringer.chars, len, index, stringer.lengthChars);
       System.arraycopy(cs, offset, stringer.chars, index, len);
       stringer.lengthChars += len;
-
+      editRelayout(index, 0, len);
    }
 
    public void replaceChar(char c, int index) {
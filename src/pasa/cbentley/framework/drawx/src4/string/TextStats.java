@@ -6,6 +6,13 @@ import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
 
 public class TextStats extends ObjectDrw {
 
+   /**
+    * Number of objects and arrays created by the {@link LineAlgo} during the layout.
+    * <br>
+    * Zero when all chars and lines were taken from the pools of the algo.
+    */
+   private int     allocations;
+
    private int     biggestLineH;
 
    private int     biggestLineW;
@@ -44,6 +51,35 @@ public class TextStats extends ObjectDrw {
       super(drc);
    }
 
+   public int getAllocations() {
+      return allocations;
+   }
+
+   public void incrementAllocations() {
+      allocations++;
+   }
+
+   /**
+    * Same state as a new {@link TextStats} for a new layout
+    */
+   public void reset() {
+      allocations = 0;
+      biggestLineH = 0;
+      biggestLineW = 0;
+      charBiggestWidth = 0;
+      hasZeroWidthChars = false;
+      isTestHeight = false;
+      isTrimmedH = false;
+      isTrimmedW = false;
+      linesTotalH = 0;
+      maxHeight = 0;
+      sameCharWidthFact = false;
+      sameCharWidthFactValue = 0;
+      tempDiffFontHeights = false;
+      tempMaxLineHeight = 0;
+      tabLineCount = 0;
+   }
+
    public int getBiggestLineH() {
       return biggestLineH;
    }
@@ -173,6 +209,7 @@ public class TextStats extends ObjectDrw {
       dc.appendVarWithNewLine("linesTotalH", getLinesTotalH());
       dc.appendVarWithSpace("isTrimmedH", isTrimmedH);
       dc.appendVarWithSpace("isTrimmedW", isTrimmedW);
+      dc.appendVarWithNewLine("allocations", allocations);
    }
 
    public void toString1Line(Dctx dc) {
@@ -16,12 +16,14 @@ import pasa.cbentley.core.src4.utils.BitUtils;
 import pasa.cbentley.core.src4.utils.interfaces.IColors;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwMetrics;
 import pasa.cbentley.framework.drawx.src4.ctx.IBOTypesDrawX;
 import pasa.cbentley.framework.drawx.src4.ctx.IToStringFlagsDrw;
 import pasa.cbentley.framework.drawx.src4.ctx.ToStringStaticDrawx;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
 import pasa.cbentley.framework.drawx.src4.factories.FigureOperator;
 import pasa.cbentley.framework.drawx.src4.factories.interfaces.IBOFigure;
+import pasa.cbentley.framework.drawx.src4.tech.ITechDrwMetrics;
 import pasa.cbentley.framework.drawx.src4.tech.ITechFigure;
 import pasa.cbentley.framework.drawx.src4.tech.ITechStyle;
 import pasa.cbentley.layouter.src4.ctx.IBOTypesLayout;
@@ -33,7 +35,24 @@ import pasa.cbentley.layouter.src4.tech.ITechLayout;
 
 public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITechFigure, IBOTypesDrawX, IBOTblr, ITechStyleCache {
 
-   protected final DrwCtx dc;
+   /**
+    * Number of {@link StylePlan} kept by {@link StyleOperator#getStylePlan(ByteObject, int, int)}
+    */
+   public static final int PLANS_SIZE = 16;
+
+   protected final DrwCtx  dc;
+
+   /**
+    * Most recently used first
+    */
+   private StylePlan[]     plans      = new StylePlan[PLANS_SIZE];
+
+   /**
+    * Default font when the plans were built. Font dependant TBLR values are stale when it changes.
+    */
+   private IMFont          plansFont;
+
+   private int             statPlanBuilds;
 
    public StyleOperator(DrwCtx dc) {
       super(dc.getBOC());
@@ -131,9 +150,15 @@ public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITech
     * @param style
     */
    public void drawStyle(GraphicsX g, int x, int y, int w, int h, ByteObject style) {
-      int[] areas = computeNewStyleAreas(x, y, w, h, style);
-      drawStyleBg(style, g, x, y, w, h, areas);
-      drawStyleFg(style, g, x, y, w, h, areas);
+      DrwMetrics metrics = dc.getMetrics();
+      long start = metrics.spanStart();
+      StylePlan plan = getStylePlan(style, w, h);
+      try {
+         plan.drawStyle(g, x, y);
+      } finally {
+         releaseStylePlan(plan);
+         metrics.spanEnd(ITechDrwMetrics.METRICS_SPAN_1_DRAW_STYLE, start);
+      }
    }
 
    /**
@@ -382,6 +407,73 @@ public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITech
       return f.substringWidth(str, 0, str.length());
    }
 
+   /**
+    * The {@link StylePlan} of style for a w,h area. Areas of the plan are relative to 0,0.
+    * <br>
+    * <br>
+    * The last {@link StyleOperator#PLANS_SIZE} plans are kept. Rows of a list drawn with the same style and size
+    * decode the style once, whatever their x,y.
+    * <br>
+    * The evicted plan is rebuilt in place when no thread is drawing it.
+    * The returned plan is pinned. Caller draws it outside the lock and must call {@link StyleOperator#releaseStylePlan(StylePlan)}.
+    * @param style
+    * @param w
+    * @param h
+    * @return a valid plan
+    */
+   public synchronized StylePlan getStylePlan(ByteObject style, int w, int h) {
+      IMFont font = dc.getCoreDrawCtx().getFontFactory().getDefaultFont();
+      if (font != plansFont) {
+         invalidateStylePlans();
+         plansFont = font;
+      }
+      StylePlan[] plans = this.plans;
+      int index = plans.length - 1;
+      for (int i = 0; i < plans.length; i++) {
+         StylePlan plan = plans[i];
+         if (plan == null) {
+            index = i;
+            break;
+         }
+         if (plan.isValid(style, w, h)) {
+            index = i;
+            break;
+         }
+      }
+      StylePlan plan = plans[index];
+      if (plan == null || !plan.isValid(style, w, h)) {
+         statPlanBuilds++;
+         if (plan == null || plan.users != 0) {
+            //evicted plan is being drawn by another thread. its arrays cannot be reused
+            plan = new StylePlan(dc);
+         }
+         plan.build(style, w, h);
+      }
+      plan.users++;
+      //move to front
+      for (int i = index; i > 0; i--) {
+         plans[i] = plans[i - 1];
+      }
+      plans[0] = plan;
+      return plan;
+   }
+
+   /**
+    * Unpins a plan returned by {@link StyleOperator#getStylePlan(ByteObject, int, int)}
+    * @param plan
+    */
+   public synchronized void releaseStylePlan(StylePlan plan) {
+      plan.users--;
+   }
+
+   /**
+    * Number of {@link StylePlan} builds since creation
+    * @return
+    */
+   public int getStatPlanBuilds() {
+      return statPlanBuilds;
+   }
+
    public ByteObject getStyleAnchor(ByteObject style) {
       return style.getSubFirst(IBOTypesDrawX.TYPE_DRWX_03_BOX);
    }
@@ -1259,6 +1351,31 @@ public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITech
       return getStyleLeftWConsumed(style, c) + getStyleRightWConsumed(style, c);
    }
 
+   /**
+    * Invalidates the {@link StylePlan}s of that style. Must be called when a style is modified outside {@link StyleOperator}.
+    * @param style
+    */
+   public synchronized void invalidateStylePlan(ByteObject style) {
+      for (int i = 0; i < plans.length; i++) {
+         if (plans[i] != null && plans[i].getStyle() == style) {
+            plans[i].invalidate();
+         }
+      }
+   }
+
+   /**
+    * Invalidates all {@link StylePlan}s. Called when the layout context changes, since TBLR values may depend on it.
+    * <br>
+    * {@link DrwCtx} calls it when its settings are applied. A change of default font is detected by {@link StyleOperator#getStylePlan(ByteObject, int, int)}.
+    */
+   public synchronized void invalidateStylePlans() {
+      for (int i = 0; i < plans.length; i++) {
+         if (plans[i] != null) {
+            plans[i].invalidate();
+         }
+      }
+   }
+
    public boolean isOpaqueBgLayersStyle(ByteObject style) {
       int[] areas = computeNewStyleAreas(0, 0, 10, 10, style);
       return isOpaqueBgLayersStyle(style, areas);
@@ -1564,6 +1681,7 @@ public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITech
       val = BitUtils.setBit(val, n, BitUtils.getBit(1, anc));
       val = BitUtils.setBit(val, n + 1, BitUtils.getBit(2, anc));
       style.setValue(off, val, 1);
+      invalidateStylePlan(style);
    }
 
    public void setGAnchors2Content(ByteObject style) {
@@ -1726,6 +1844,7 @@ public class StyleOperator extends BOAbstractOperator implements IBOStyle, ITech
          int pos = getStyleElementPosition(style, pointer, flag);
          style.insertByteObject(item, pos);
       }
+      invalidateStylePlan(style);
    }
 
    //#mdebug
@@ -0,0 +1,314 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.style;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.core.src4.interfaces.C;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.utils.BitUtils;
+import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.ctx.ObjectDrw;
+import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.factories.FigureOperator;
+import pasa.cbentley.framework.drawx.src4.tech.ITechStyle;
+import pasa.cbentley.layouter.src4.engine.LayoutableRect;
+
+/**
+ * Compiled form of a style {@link ByteObject} for a given w,h. Used by {@link StyleOperator#drawStyle(GraphicsX, int, int, int, int, ByteObject)}.
+ * <br>
+ * <br>
+ * Drawing a style from its {@link ByteObject} reads the flags, counts flag bits to find the sub objects of each figure layer,
+ * reads the anchor bits and computes the TBLR values for each paint.
+ * <br>
+ * The plan does it once with {@link StylePlan#build(ByteObject, int, int)} and keeps
+ * <li>the figures of the 4 background and the 4 foreground layers, in drawing order
+ * <li>the offset in the areas array of the anchor of each figure
+ * <li>the areas, relative to 0,0. See {@link StyleCache#getStyleAreas()} for the layout of the 16 values.
+ * <li>the TBLR values of margin, border and padding
+ * <br>
+ * The plan is drawn at any x,y. A list view drawing the same style for each of its rows decodes the style once.
+ * <br>
+ * <br>
+ * A plan is valid for the style reference and the w,h given to build. {@link StyleOperator} invalidates plans when it modifies a style,
+ * when the default font changes and with {@link StyleOperator#invalidateStylePlans()} when the layout context changes.
+ * Code modifying a style directly must call {@link StyleOperator#invalidateStylePlan(ByteObject)}.
+ * <br>
+ * Arrays are reused when the plan is rebuilt. {@link StyleOperator} only rebuilds a plan no thread is drawing,
+ * see {@link StyleOperator#getStylePlan(ByteObject, int, int)} and {@link StyleOperator#releaseStylePlan(StylePlan)}.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class StylePlan extends ObjectDrw implements IBOStyle, ITechStyleCache {
+
+   /**
+    * 16 values, relative to 0,0
+    */
+   private int[]            areas    = new int[16];
+
+   /**
+    * Offset in {@link StylePlan#areas} of the x of each figure
+    */
+   private int[]            figAreas = new int[8];
+
+   /**
+    * Number of background figures. They come first in {@link StylePlan#figures}
+    */
+   private int              figBgCount;
+
+   private int              figCount;
+
+   /**
+    * Resolved figures of the layers, background layers first.
+    */
+   private ByteObject[]     figures  = new ByteObject[8];
+
+   private int              h;
+
+   private volatile boolean isValid;
+
+   private LayoutableRect   rect;
+
+   private ByteObject       style;
+
+   /**
+    * Top, Bottom, Left, Right for margin, border and padding.
+    */
+   private int[]            tblr     = new int[12];
+
+   /**
+    * Number of threads drawing the plan. Guarded by the lock of {@link StyleOperator}
+    */
+   int                      users;
+
+   private int              w;
+
+   public StylePlan(DrwCtx drc) {
+      super(drc);
+   }
+
+   /**
+    * Compiles the style for the w,h context
+    * @param style
+    * @param w
+    * @param h
+    */
+   void build(ByteObject style, int w, int h) {
+      StyleOperator styleOp = drc.getStyleOperator();
+      this.style = style;
+      this.w = w;
+      this.h = h;
+      if (rect == null) {
+         rect = new LayoutableRect(drc.getLAC(), w, h);
+      }
+      rect.set(0, 0, w, h);
+
+      for (int i = 0; i < tblr.length; i++) {
+         tblr[i] = 0;
+      }
+      if (style.hasFlag(STYLE_OFFSET_1_FLAG_A, STYLE_FLAG_A_5_MARGIN)) {
+         for (int pos = 0; pos < 4; pos++) {
+            tblr[pos] = styleOp.getStyleMargin(style, pos, rect);
+         }
+      }
+      if (style.hasFlag(STYLE_OFFSET_1_FLAG_A, STYLE_FLAG_A_4_BORDER)) {
+         for (int pos = 0; pos < 4; pos++) {
+            tblr[4 + pos] = styleOp.getStyleBorder(style, pos, rect);
+         }
+      }
+      if (style.hasFlag(STYLE_OFFSET_1_FLAG_A, STYLE_FLAG_A_3_PADDING)) {
+         for (int pos = 0; pos < 4; pos++) {
+            tblr[8 + pos] = styleOp.getStylePadding(style, pos, rect);
+         }
+      }
+      buildAreas();
+
+      for (int i = 0; i < figCount; i++) {
+         figures[i] = null;
+      }
+      figCount = 0;
+      int bgPoints = style.get1(STYLE_OFFSET_7_BG_POINTS1);
+      int fgPoints = style.get1(STYLE_OFFSET_8_FG_POINTS1);
+      buildFigure(styleOp, STYLE_FLAG_B_1_BG, bgPoints, 1);
+      buildFigure(styleOp, STYLE_FLAG_B_2_BG, bgPoints, 3);
+      buildFigure(styleOp, STYLE_FLAG_B_3_BG, bgPoints, 5);
+      buildFigure(styleOp, STYLE_FLAG_B_4_BG, bgPoints, 7);
+      figBgCount = figCount;
+      buildFigure(styleOp, STYLE_FLAG_B_5_FG, fgPoints, 1);
+      buildFigure(styleOp, STYLE_FLAG_B_6_FG, fgPoints, 3);
+      buildFigure(styleOp, STYLE_FLAG_B_7_FG, fgPoints, 5);
+      buildFigure(styleOp, STYLE_FLAG_B_8_FG, fgPoints, 7);
+      isValid = true;
+   }
+
+   /**
+    * Same computation as {@link StyleOperator#computeNewStyleAreas(int, int, int, int, ByteObject, pasa.cbentley.layouter.src4.interfaces.ILayoutable)}
+    * from the TBLR values.
+    */
+   private void buildAreas() {
+      int x = tblr[2];
+      int y = tblr[0];
+      int cw = w - tblr[2] - tblr[3];
+      int ch = h - tblr[0] - tblr[1];
+      areas[OFFSET_MARGIN_X] = 0;
+      areas[OFFSET_MARGIN_Y] = 0;
+      areas[OFFSET_MARGIN_W] = w;
+      areas[OFFSET_MARGIN_H] = h;
+      areas[OFFSET_BORDER_X_0] = x;
+      areas[OFFSET_BORDER_Y_1] = y;
+      areas[OFFSET_BORDER_W_2] = cw;
+      areas[OFFSET_BORDER_H_3] = ch;
+      x += tblr[6];
+      y += tblr[4];
+      cw = cw - tblr[6] - tblr[7];
+      ch = ch - tblr[4] - tblr[5];
+      areas[OFFSET_PADDING_X] = x;
+      areas[OFFSET_PADDING_Y] = y;
+      areas[OFFSET_PADDING_W] = cw;
+      areas[OFFSET_PADDING_H] = ch;
+      x += tblr[10];
+      y += tblr[8];
+      cw = cw - tblr[10] - tblr[11];
+      ch = ch - tblr[8] - tblr[9];
+      areas[OFFSET_CONTENT_X] = x;
+      areas[OFFSET_CONTENT_Y] = y;
+      areas[OFFSET_CONTENT_W] = cw;
+      areas[OFFSET_CONTENT_H] = ch;
+   }
+
+   private void buildFigure(StyleOperator styleOp, int flag, int points, int anc) {
+      ByteObject fig = styleOp.getStyleDrw(style, STYLE_OFFSET_2_FLAG_B, flag);
+      if (fig != null) {
+         int p = (BitUtils.getBit(anc + 1, points) << 1) + BitUtils.getBit(anc, points);
+         figures[figCount] = fig;
+         figAreas[figCount] = p * 4;
+         figCount++;
+      }
+   }
+
+   /**
+    * Draws the background layers at x,y
+    * @param g
+    * @param x
+    * @param y
+    */
+   public void drawBg(GraphicsX g, int x, int y) {
+      FigureOperator figOp = drc.getFigureOperator();
+      for (int i = 0; i < figBgCount; i++) {
+         drawFigure(figOp, g, x, y, i);
+      }
+   }
+
+   /**
+    * Draws the foreground layers at x,y
+    * @param g
+    * @param x
+    * @param y
+    */
+   public void drawFg(GraphicsX g, int x, int y) {
+      FigureOperator figOp = drc.getFigureOperator();
+      for (int i = figBgCount; i < figCount; i++) {
+         drawFigure(figOp, g, x, y, i);
+      }
+   }
+
+   private void drawFigure(FigureOperator figOp, GraphicsX g, int x, int y, int i) {
+      int p = figAreas[i];
+      figOp.paintFigure(g, x + areas[p], y + areas[p + 1], areas[p + 2], areas[p + 3], figures[i]);
+   }
+
+   /**
+    * Draws the style, background then foreground, at x,y
+    * @param g
+    * @param x
+    * @param y
+    */
+   public void drawStyle(GraphicsX g, int x, int y) {
+      FigureOperator figOp = drc.getFigureOperator();
+      for (int i = 0; i < figCount; i++) {
+         drawFigure(figOp, g, x, y, i);
+      }
+   }
+
+   /**
+    * The areas relative to 0,0. Do not modify.
+    * <br>
+    * See {@link StyleCache#getStyleAreas()}
+    * @return
+    */
+   public int[] getAreas() {
+      return areas;
+   }
+
+   public int getH() {
+      return h;
+   }
+
+   public ByteObject getStyle() {
+      return style;
+   }
+
+   /**
+    * TBLR value of margin, border or padding
+    * @param anc {@link ITechStyle#STYLE_ANC_0_BORDER}, {@link ITechStyle#STYLE_ANC_1_MARGIN} or {@link ITechStyle#STYLE_ANC_3_PADDING}
+    * @param pos {@link C#POS_0_TOP}, {@link C#POS_1_BOT}, {@link C#POS_2_LEFT} or {@link C#POS_3_RIGHT}
+    * @return
+    */
+   public int getTBLR(int anc, int pos) {
+      int offset = 0;
+      if (anc == ITechStyle.STYLE_ANC_0_BORDER) {
+         offset = 4;
+      } else if (anc == ITechStyle.STYLE_ANC_3_PADDING) {
+         offset = 8;
+      }
+      return tblr[offset + pos];
+   }
+
+   public int getW() {
+      return w;
+   }
+
+   public void invalidate() {
+      isValid = false;
+   }
+
+   /**
+    * True when the plan was built for that style reference and that size
+    * @param style
+    * @param w
+    * @param h
+    * @return
+    */
+   public boolean isValid(ByteObject style, int w, int h) {
+      return isValid && this.style == style && this.w == w && this.h == h;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, StylePlan.class, 260);
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      dc.nlLvl("areas", areas, 4);
+      dc.nlLvl("tblr", tblr, 4);
+      dc.nlLvl(style, "Style");
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("isValid", isValid);
+      dc.appendVarWithSpace("users", users);
+      dc.appendVarWithSpace("w", w);
+      dc.appendVarWithSpace("h", h);
+      dc.appendVarWithSpace("figures", figCount);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, StylePlan.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
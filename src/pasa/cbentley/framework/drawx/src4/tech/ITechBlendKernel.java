@@ -0,0 +1,81 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.tech;
+
+import pasa.cbentley.byteobjects.src4.objects.color.BlendOp;
+import pasa.cbentley.byteobjects.src4.objects.color.ITechBlend;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
+
+/**
+ * Identifies the row kernels of {@link BlendKernel}.
+ * <br>
+ * <br>
+ * A kernel is chosen once per blend call from the {@link BlendOp} mode and alpha mode, and the pixel formats,
+ * straight or premultiplied, of the source and the destination.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechBlendKernel {
+
+   /**
+    * Generic kernel. Calls {@link BlendOp#blendPixel(int, int)} for every pixel.
+    * <br>
+    * Used for all the blending modes without a specialized kernel.
+    */
+   public static final int KERNEL_0_GENERIC         = 0;
+
+   /**
+    * Source pixels replace destination pixels. Rows are copied with {@link System#arraycopy(Object, int, Object, int, int)}.
+    * <br>
+    * <li>{@link ITechBlend#BLENDING_01_SRC} with the default alpha mode.
+    * <li>{@link ITechBlend#BLENDING_00_OVER} when the source is known to be fully opaque.
+    */
+   public static final int KERNEL_1_COPY            = 1;
+
+   /**
+    * Source pixels replace destination pixels with their alpha channel forced to 255.
+    * <br>
+    * {@link ITechBlend#ALPHA_1_255} alpha mode with {@link ITechBlend#BLENDING_00_OVER} or {@link ITechBlend#BLENDING_01_SRC}
+    */
+   public static final int KERNEL_2_OPAQUE          = 2;
+
+   /**
+    * Straight alpha Porter-Duff SRC_OVER. {@link ITechBlend#BLENDING_00_OVER} with default alpha mode.
+    */
+   public static final int KERNEL_3_SRC_OVER        = 3;
+
+   /**
+    * Premultiplied alpha SRC_OVER. Both source and destination pixels are premultiplied.
+    */
+   public static final int KERNEL_4_SRC_OVER_PRE    = 4;
+
+   /**
+    * Premultiplied alpha SRC. Same as {@link ITechBlendKernel#KERNEL_1_COPY}, kept for symmetry of the premultiplied lookup.
+    */
+   public static final int KERNEL_5_SRC_PRE         = 5;
+
+   /**
+    * Straight source SRC_OVER a premultiplied destination. The source is premultiplied on the fly.
+    */
+   public static final int KERNEL_6_SRC_OVER_TO_PRE = 6;
+
+   /**
+    * Straight source pixels are premultiplied into the destination.
+    */
+   public static final int KERNEL_7_SRC_TO_PRE      = 7;
+
+   /**
+    * Straight source, premultiplied destination. {@link BlendOp#blendPixel(int, int)} is called on the unpremultiplied destination pixel
+    * and the result is premultiplied.
+    */
+   public static final int KERNEL_8_GENERIC_TO_PRE  = 8;
+
+   /**
+    * Premultiplied source and destination. Both pixels are unpremultiplied for {@link BlendOp#blendPixel(int, int)}.
+    */
+   public static final int KERNEL_9_GENERIC_PRE     = 9;
+
+}
@@ -0,0 +1,104 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.tech;
+
+import pasa.cbentley.framework.drawx.src4.engine.DisplayList;
+
+/**
+ * Operations and layout of a {@link DisplayList}.
+ * <br>
+ * <br>
+ * An operation is {@link ITechDisplayList#DL_OP_SIZE} ints. The bounding box is clipped by the clip of its state.
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechDisplayList {
+
+   public static final int DL_OP_01_ARC             = 1;
+
+   public static final int DL_OP_02_FILL_ARC        = 2;
+
+   public static final int DL_OP_03_LINE            = 3;
+
+   public static final int DL_OP_04_RECT            = 4;
+
+   public static final int DL_OP_05_FILL_RECT       = 5;
+
+   public static final int DL_OP_06_ROUND_RECT      = 6;
+
+   public static final int DL_OP_07_FILL_ROUND_RECT = 7;
+
+   public static final int DL_OP_08_TRIANGLE        = 8;
+
+   public static final int DL_OP_09_FILL_TRIANGLE   = 9;
+
+   public static final int DL_OP_10_STRING          = 10;
+
+   public static final int DL_OP_11_SUBSTRING       = 11;
+
+   /**
+    * The chars are copied
+    */
+   public static final int DL_OP_12_CHARS           = 12;
+
+   public static final int DL_OP_13_CHAR            = 13;
+
+   /**
+    * Immutable images are referenced. Regions of mutable images are copied into a new image.
+    */
+   public static final int DL_OP_14_REGION          = 14;
+
+   /**
+    * The pixels are copied
+    */
+   public static final int DL_OP_15_RGB             = 15;
+
+   public static final int DL_OFFSET_00_CODE        = 0;
+
+   /**
+    * Index of the state of the operation
+    */
+   public static final int DL_OFFSET_01_STATE       = 1;
+
+   public static final int DL_OFFSET_02_BX          = 2;
+
+   public static final int DL_OFFSET_03_BY          = 3;
+
+   public static final int DL_OFFSET_04_BW          = 4;
+
+   public static final int DL_OFFSET_05_BH          = 5;
+
+   /**
+    * First of the 8 arguments of the operation
+    */
+   public static final int DL_OFFSET_06_ARGS        = 6;
+
+   /**
+    * Index of the referenced object. -1 for none.
+    */
+   public static final int DL_OFFSET_14_REF         = 14;
+
+   public static final int DL_OP_SIZE               = 15;
+
+   public static final int DL_STATE_0_COLOR         = 0;
+
+   public static final int DL_STATE_1_ALPHA         = 1;
+
+   /**
+    * -1 when unknown
+    */
+   public static final int DL_STATE_2_STROKE        = 2;
+
+   public static final int DL_STATE_3_CLIP_X        = 3;
+
+   public static final int DL_STATE_4_CLIP_Y        = 4;
+
+   public static final int DL_STATE_5_CLIP_W        = 5;
+
+   public static final int DL_STATE_6_CLIP_H        = 6;
+
+   public static final int DL_STATE_SIZE            = 7;
+
+}
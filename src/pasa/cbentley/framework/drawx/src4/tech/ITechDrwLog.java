@@ -0,0 +1,47 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.tech;
+
+import pasa.cbentley.framework.drawx.src4.ctx.DrwLog;
+
+/**
+ * Categories of the debug events of {@link DrwLog}. Flags that can be combined.
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechDrwLog {
+
+   /**
+    * RgbImage blending of int arrays
+    */
+   public static final int DRWLOG_1_BLEND       = 1 << 0;
+
+   /**
+    * Merge of the primitive layer into the rgb array
+    */
+   public static final int DRWLOG_2_MERGE       = 1 << 1;
+
+   public static final int DRWLOG_3_DRAW_RGB    = 1 << 2;
+
+   public static final int DRWLOG_4_DRAW_REGION = 1 << 3;
+
+   /**
+    * Figure painting
+    */
+   public static final int DRWLOG_5_FIGURE      = 1 << 4;
+
+   /**
+    * GraphicsX state. Clip, dimension, translation and colors
+    */
+   public static final int DRWLOG_6_GRAPHICS    = 1 << 5;
+
+   /**
+    * RgbImage state. Reloads and area queries
+    */
+   public static final int DRWLOG_7_IMAGE       = 1 << 6;
+
+   public static final int DRWLOG_ALL           = (1 << 7) - 1;
+
+}
@@ -0,0 +1,45 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.tech;
+
+import pasa.cbentley.framework.drawx.src4.ctx.DrwMetrics;
+
+/**
+ * Timing spans and sizes of {@link DrwMetrics}
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechDrwMetrics {
+
+   /**
+    * {@link pasa.cbentley.framework.drawx.src4.factories.FigureOperator#paintFigure(pasa.cbentley.framework.drawx.src4.engine.GraphicsX, int, int, int, int, pasa.cbentley.byteobjects.src4.core.ByteObject)}.
+    * <br>
+    * Outermost calls of a thread only. Sub figures are part of the time of their parent figure.
+    */
+   public static final int METRICS_SPAN_0_PAINT_FIGURE  = 0;
+
+   /**
+    * {@link pasa.cbentley.framework.drawx.src4.style.StyleOperator#drawStyle(pasa.cbentley.framework.drawx.src4.engine.GraphicsX, int, int, int, int, pasa.cbentley.byteobjects.src4.core.ByteObject)}
+    */
+   public static final int METRICS_SPAN_1_DRAW_STYLE    = 1;
+
+   /**
+    * Merge of the primitive layer into the rgb image of a {@link pasa.cbentley.framework.drawx.src4.engine.GraphicsX}
+    */
+   public static final int METRICS_SPAN_2_MERGE         = 2;
+
+   /**
+    * {@link pasa.cbentley.framework.drawx.src4.engine.GraphicsX#paintToScreen(pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics, int)}
+    */
+   public static final int METRICS_SPAN_3_PAINT_TO_SCREEN = 3;
+
+   public static final int METRICS_SPAN_NUM             = 4;
+
+   /**
+    * Number of frames kept by {@link DrwMetrics} by default
+    */
+   public static final int METRICS_DEFAULT_FRAMES       = 60;
+
+}
@@ -106,6 +106,23 @@ public interface ITechGraphicsX extends ITech {
     */
    public static final int OPTION_1_PASS_TRHOUGH         = 1;
 
+   /**
+    * In {@link ITechGraphicsX#MODE_2_RGB_IMAGE} and {@link ITechGraphicsX#MODE_3_RGB}, primitives are drawn on the platform image layer
+    * and merged into the int[] array.
+    * <br>
+    * By default they are rasterized directly into the int[] array by {@link pasa.cbentley.framework.drawx.src4.engine.RgbRasterizer}.
+    */
+   public static final int OPTION_2_PRIMITIVES_ON_LAYER  = 1 << 1;
+
+   /**
+    * In {@link ITechGraphicsX#MODE_3_RGB}, the {@link pasa.cbentley.framework.drawx.src4.engine.GraphicsX} never switches to {@link ITechGraphicsX#MODE_2_RGB_IMAGE}.
+    * <br>
+    * Primitives which cannot be rasterized in the int[] array throw an {@link IllegalStateException}.
+    * <br>
+    * Used by tiles painting the same image in several threads. See {@link pasa.cbentley.framework.drawx.src4.factories.FigureTilePainter}
+    */
+   public static final int OPTION_3_RGB_ONLY             = 1 << 2;
+
    public static final int PRIMITIVE_COLOR_ALT           = ColorUtils.FULLY_OPAQUE_CYAN;
 
    public static final int PRIMITIVE_COLOR_BASE          = ColorUtils.FULLY_OPAQUE_PURPLE;
@@ -0,0 +1,61 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.drawx.src4.tech;
+
+import pasa.cbentley.framework.drawx.src4.image.PngEncoder;
+import pasa.cbentley.framework.drawx.src4.image.ZlibDeflater;
+
+/**
+ * Row filters and compression levels of {@link PngEncoder}
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechPngEncoder {
+
+   /**
+    * Bytes of the row as they are
+    */
+   public static final int PNG_FILTER_0_NONE      = 0;
+
+   /**
+    * Difference with the pixel on the left
+    */
+   public static final int PNG_FILTER_1_SUB       = 1;
+
+   /**
+    * Difference with the pixel above
+    */
+   public static final int PNG_FILTER_2_UP        = 2;
+
+   /**
+    * Difference with the average of the pixels on the left and above
+    */
+   public static final int PNG_FILTER_3_AVERAGE   = 3;
+
+   /**
+    * Difference with the Paeth predictor of the pixels on the left, above and above left
+    */
+   public static final int PNG_FILTER_4_PAETH     = 4;
+
+   /**
+    * Each row is written with the filter giving the smallest sum of absolute differences
+    */
+   public static final int PNG_FILTER_5_ADAPTIVE  = 5;
+
+   /**
+    * Uncompressed deflate blocks
+    */
+   public static final int PNG_LEVEL_0_STORED     = 0;
+
+   public static final int PNG_LEVEL_1_FASTEST    = 1;
+
+   /**
+    * Level of {@link ZlibDeflater} by default
+    */
+   public static final int PNG_LEVEL_6_DEFAULT    = 6;
+
+   public static final int PNG_LEVEL_9_BEST       = 9;
+
+}
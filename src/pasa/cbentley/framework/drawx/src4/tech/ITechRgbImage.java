@@ -104,7 +104,14 @@ public interface ITechRgbImage {
     * Merge with MemAgent framework is reloading/soft reference
     */
    int FLAG_20_RELOADABLE            = 1 << 19;
-   int FLAG_21                       = 1 << 20;
+   /**
+    * Pixels of the rgb array are premultiplied ARGB. Color channels are already multiplied by the alpha.
+    * <br>
+    * Only read on the root image. Regions share the pixel format of their root.
+    * <br>
+    * Set with {@link RgbImage#setPremultiplied(boolean)}
+    */
+   int FLAG_21_PREMULTIPLIED         = 1 << 20;
    /**
     * RgbImage will not be drawn by {@link GraphicsX}
     */
@@ -26,7 +26,19 @@ public interface ITechScaler extends IBOPass {
     */
    public static final int SCALER_ID_2_BI_CUBIC      = 2;
 
-   public static final int SCALER_ID_MAX_CK          = 2;
+   /**
+    * algo for scaling is Lanczos with 3 lobes. Sharper than bi cubic for downscaling.
+    * {@link ScaleOperator#getScaledLanczos3(pasa.cbentley.framework.drawx.src4.engine.RgbImage, int, int)}
+    */
+   public static final int SCALER_ID_3_LANCZOS_3     = 3;
+
+   /**
+    * algo for downscaling is the average of the covered source area. Best for large reductions such as thumbnails.
+    * {@link ScaleOperator#getScaledAreaAverage(pasa.cbentley.framework.drawx.src4.engine.RgbImage, int, int, boolean)}
+    */
+   public static final int SCALER_ID_4_AREA_AVERAGE  = 4;
+
+   public static final int SCALER_ID_MAX_CK          = 4;
 
    /**
     * Scaler does nothing
@@ -4,14 +4,25 @@
  */
 package pasa.cbentley.framework.drawx.src4.utils;
 
+import pasa.cbentley.core.src4.utils.TransformUtils;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
 import pasa.cbentley.framework.drawx.src4.ctx.DrwCtx;
+import pasa.cbentley.framework.drawx.src4.engine.BlendKernel;
 import pasa.cbentley.framework.drawx.src4.engine.RgbImage;
+import pasa.cbentley.framework.drawx.src4.tech.ITechRgbImage;
 
 /**
  * 
  * Implementation is at {@link RgbImageRotateUtils#rotate(int[], int, int, int, int, int, double, double, int[], int, int)}
- * 
+ * <br>
+ * <br>
+ * Rotated pixels are written row after row. The source position of a pixel is stepped from the previous pixel of the row
+ * with 16.16 fixed point increments, so a pixel costs two additions.
+ * <br>
+ * Multiples of 90 degrees are exact and use {@link TransformUtils}.
+ * <br>
+ * Bilinear sampling is done by {@link RgbImageRotateUtils#rotateBilinear(int[], int, int, int, double, double, int[], int, int)}.
+ * Premultiplied pixels, see {@link RgbImage#isPremultiplied()}, are interpolated channel by channel without the alpha weighting.
  * 
  * @author Charles Bentley
  *
@@ -24,6 +35,25 @@ public class RgbImageRotateUtils {
       this.drc = drc;
    }
 
+   /**
+    * Height of the array returned by {@link RgbImageRotateUtils#rotate(int[], int, int, int, int, boolean)}
+    * @param degree
+    * @param width
+    * @param heigth
+    * @return
+    */
+   public final int getRotatedHeight(int degree, int width, int heigth) {
+      int transform = getTransform90(degree);
+      if (transform == IImage.TRANSFORM_0_NONE || transform == IImage.TRANSFORM_3_ROT_180) {
+         return heigth;
+      } else if (transform != -1) {
+         return width;
+      }
+      double degreeCos = Math.cos(Math.PI * degree / 180);
+      double degreeSin = Math.sin(Math.PI * degree / 180);
+      return getRotatedHeight(degree, width, heigth, degreeCos, degreeSin);
+   }
+
    /**
     * 
     * @param degree
@@ -77,6 +107,25 @@ public class RgbImageRotateUtils {
       return nar;
    }
 
+   /**
+    * Width of the array returned by {@link RgbImageRotateUtils#rotate(int[], int, int, int, int, boolean)}
+    * @param degree
+    * @param width
+    * @param heigth
+    * @return
+    */
+   public final int getRotatedWidth(int degree, int width, int heigth) {
+      int transform = getTransform90(degree);
+      if (transform == IImage.TRANSFORM_0_NONE || transform == IImage.TRANSFORM_3_ROT_180) {
+         return width;
+      } else if (transform != -1) {
+         return heigth;
+      }
+      double degreeCos = Math.cos(Math.PI * degree / 180);
+      double degreeSin = Math.sin(Math.PI * degree / 180);
+      return getRotatedWidth(degree, width, heigth, degreeCos, degreeSin);
+   }
+
    /**
     * 
     * @param degree
@@ -133,13 +182,40 @@ public class RgbImageRotateUtils {
    }
 
    /**
+    * The {@link IImage} transform for a multiple of 90 degrees. Positive degrees rotate counter clockwise.
+    * @param degree
+    * @return -1 if degree is not a multiple of 90
+    */
+   public static int getTransform90(int degree) {
+      if (degree % 90 != 0) {
+         return -1;
+      }
+      int d = ((degree % 360) + 360) % 360;
+      switch (d) {
+         case 0:
+            return IImage.TRANSFORM_0_NONE;
+         case 90:
+            return IImage.TRANSFORM_6_ROT_270;
+         case 180:
+            return IImage.TRANSFORM_3_ROT_180;
+         default:
+            return IImage.TRANSFORM_5_ROT_90;
+      }
+   }
+
+   /**
+    * Nearest neighbour rotation of the source around its center into rotatedRGB, around the center of the rotated area.
+    * <br>
+    * <br>
+    * Row major. For each rotated row, the source position of the first pixel is computed once. Next pixels add
+    * cos and sin in 16.16 fixed point.
     * 
     * @param sourceRgbData
     * @param width
     * @param height
-    * @param referenceX
-    * @param referenceY
-    * @param backgroundColor
+    * @param referenceX not used. The rotated area is centered
+    * @param referenceY not used
+    * @param backgroundColor color of pixels outside the source
     * @param degreeCos
     * @param degreeSin
     * @param rotatedRGB
@@ -150,34 +226,247 @@ public class RgbImageRotateUtils {
       //3/01/2016.. it took me 4 hours to find this bug. you need to make the reference point from the rotated dimension.
       referenceX = rotatedWidth / 2;
       referenceY = rotatedHeight / 2;
-      int halfOfWidth = width / 2;
-      int halfOfHeigth = height / 2;
-      int refX, refY, newX, newY, srcXY;
-      for (int x = 0; x < rotatedWidth; x++) {
-         for (int y = 0; y < rotatedHeight; y++) {
-            refX = x - referenceX;
-            refY = y - referenceY;
-            newX = (int) (refX * degreeCos - refY * degreeSin);
-            newY = (int) (refX * degreeSin + refY * degreeCos);
-            newX += halfOfWidth;
-            newY += (halfOfHeigth);
-            if (newX >= 0 && newX < width && newY >= 0 && newY < height) {
-               srcXY = newX + newY * width;
-               rotatedRGB[x + y * rotatedWidth] = sourceRgbData[srcXY];
+      int cosF = toFixed(degreeCos);
+      int sinF = toFixed(degreeSin);
+      int halfOfWidthF = (width / 2) << 16;
+      int halfOfHeigthF = (height / 2) << 16;
+      int index = 0;
+      for (int y = 0; y < rotatedHeight; y++) {
+         int refY = y - referenceY;
+         int refX = -referenceX;
+         int fx = refX * cosF - refY * sinF + halfOfWidthF;
+         int fy = refX * sinF + refY * cosF + halfOfHeigthF;
+         for (int x = 0; x < rotatedWidth; x++) {
+            int sx = fx >> 16;
+            int sy = fy >> 16;
+            if (sx >= 0 && sx < width && sy >= 0 && sy < height) {
+               rotatedRGB[index] = sourceRgbData[sx + sy * width];
             } else {
-               rotatedRGB[x + y * rotatedWidth] = backgroundColor;
+               rotatedRGB[index] = backgroundColor;
             }
+            index++;
+            fx += cosF;
+            fy += sinF;
          }
       }
    }
 
+   /**
+    * Same as {@link RgbImageRotateUtils#rotate(int[], int, int, int, int, int, double, double, int[], int, int)} with bilinear sampling.
+    * <br>
+    * <br>
+    * Each rotated pixel blends the 4 source pixels around its position, with 8 bits weights.
+    * Colors are weighted by alpha. Neighbours outside the source take backgroundColor, which smooths the edges.
+    * @param sourceRgbData
+    * @param width
+    * @param height
+    * @param backgroundColor
+    * @param degreeCos
+    * @param degreeSin
+    * @param rotatedRGB
+    * @param rotatedWidth
+    * @param rotatedHeight
+    */
+   public void rotateBilinear(int[] sourceRgbData, int width, int height, int backgroundColor, double degreeCos, double degreeSin, int[] rotatedRGB, int rotatedWidth, int rotatedHeight) {
+      rotateBilinear(sourceRgbData, width, height, backgroundColor, degreeCos, degreeSin, rotatedRGB, rotatedWidth, rotatedHeight, false);
+   }
+
+   /**
+    * Bilinear rotation of straight or premultiplied pixels.
+    * <br>
+    * <br>
+    * Premultiplied pixels are blended by {@link RgbImageRotateUtils#blend4Pre(int, int, int, int, int, int)}, without divisions.
+    * @param sourceRgbData
+    * @param width
+    * @param height
+    * @param backgroundColor straight ARGB
+    * @param degreeCos
+    * @param degreeSin
+    * @param rotatedRGB
+    * @param rotatedWidth
+    * @param rotatedHeight
+    * @param isPremultiplied true when sourceRgbData pixels are premultiplied. rotatedRGB pixels are premultiplied too.
+    */
+   public void rotateBilinear(int[] sourceRgbData, int width, int height, int backgroundColor, double degreeCos, double degreeSin, int[] rotatedRGB, int rotatedWidth, int rotatedHeight, boolean isPremultiplied) {
+      if (isPremultiplied) {
+         backgroundColor = BlendKernel.premultiply(backgroundColor);
+      }
+      int referenceX = rotatedWidth / 2;
+      int referenceY = rotatedHeight / 2;
+      int cosF = toFixed(degreeCos);
+      int sinF = toFixed(degreeSin);
+      //sample at pixel centers
+      int halfOfWidthF = ((width / 2) << 16) - 0x8000 + (cosF - sinF) / 2;
+      int halfOfHeigthF = ((height / 2) << 16) - 0x8000 + (sinF + cosF) / 2;
+      int index = 0;
+      for (int y = 0; y < rotatedHeight; y++) {
+         int refY = y - referenceY;
+         int refX = -referenceX;
+         int fx = refX * cosF - refY * sinF + halfOfWidthF;
+         int fy = refX * sinF + refY * cosF + halfOfHeigthF;
+         for (int x = 0; x < rotatedWidth; x++) {
+            int sx = fx >> 16;
+            int sy = fy >> 16;
+            if (sx >= 0 && sx < width - 1 && sy >= 0 && sy < height - 1) {
+               int i = sx + sy * width;
+               if (isPremultiplied) {
+                  rotatedRGB[index] = blend4Pre(sourceRgbData[i], sourceRgbData[i + 1], sourceRgbData[i + width], sourceRgbData[i + width + 1], (fx >> 8) & 0xFF, (fy >> 8) & 0xFF);
+               } else {
+                  rotatedRGB[index] = blend4(sourceRgbData[i], sourceRgbData[i + 1], sourceRgbData[i + width], sourceRgbData[i + width + 1], (fx >> 8) & 0xFF, (fy >> 8) & 0xFF);
+               }
+            } else if (sx >= -1 && sx < width && sy >= -1 && sy < height) {
+               //edge. missing neighbours are background
+               int p00 = getPixel(sourceRgbData, width, height, sx, sy, backgroundColor);
+               int p10 = getPixel(sourceRgbData, width, height, sx + 1, sy, backgroundColor);
+               int p01 = getPixel(sourceRgbData, width, height, sx, sy + 1, backgroundColor);
+               int p11 = getPixel(sourceRgbData, width, height, sx + 1, sy + 1, backgroundColor);
+               if (isPremultiplied) {
+                  rotatedRGB[index] = blend4Pre(p00, p10, p01, p11, (fx >> 8) & 0xFF, (fy >> 8) & 0xFF);
+               } else {
+                  rotatedRGB[index] = blend4(p00, p10, p01, p11, (fx >> 8) & 0xFF, (fy >> 8) & 0xFF);
+               }
+            } else {
+               rotatedRGB[index] = backgroundColor;
+            }
+            index++;
+            fx += cosF;
+            fy += sinF;
+         }
+      }
+   }
+
+   private static int getPixel(int[] data, int width, int height, int x, int y, int backgroundColor) {
+      if (x >= 0 && x < width && y >= 0 && y < height) {
+         return data[x + y * width];
+      }
+      return backgroundColor;
+   }
+
+   /**
+    * Bilinear blend of 4 pixels
+    * @param p00 top left
+    * @param p10 top right
+    * @param p01 bottom left
+    * @param p11 bottom right
+    * @param fx 0-255 weight of the right pixels
+    * @param fy 0-255 weight of the bottom pixels
+    * @return
+    */
+   private static int blend4(int p00, int p10, int p01, int p11, int fx, int fy) {
+      if (p00 == p10 && p00 == p01 && p00 == p11) {
+         return p00;
+      }
+      int w11 = fx * fy;
+      int w10 = (fx << 8) - w11;
+      int w01 = (fy << 8) - w11;
+      int w00 = 65536 - w10 - w01 - w11;
+      //alpha weights, 16 bits
+      int a00 = ((p00 >>> 24) * w00) >> 8;
+      int a10 = ((p10 >>> 24) * w10) >> 8;
+      int a01 = ((p01 >>> 24) * w01) >> 8;
+      int a11 = ((p11 >>> 24) * w11) >> 8;
+      int sa = a00 + a10 + a01 + a11;
+      if (sa == 0) {
+         return 0;
+      }
+      int half = sa >> 1;
+      int r = (a00 * ((p00 >> 16) & 0xFF) + a10 * ((p10 >> 16) & 0xFF) + a01 * ((p01 >> 16) & 0xFF) + a11 * ((p11 >> 16) & 0xFF) + half) / sa;
+      int g = (a00 * ((p00 >> 8) & 0xFF) + a10 * ((p10 >> 8) & 0xFF) + a01 * ((p01 >> 8) & 0xFF) + a11 * ((p11 >> 8) & 0xFF) + half) / sa;
+      int b = (a00 * (p00 & 0xFF) + a10 * (p10 & 0xFF) + a01 * (p01 & 0xFF) + a11 * (p11 & 0xFF) + half) / sa;
+      int a = (sa + 128) >> 8;
+      if (a > 255) {
+         a = 255;
+      }
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   /**
+    * Bilinear blend of 4 premultiplied pixels. Each channel is interpolated on its own.
+    * @param p00 top left
+    * @param p10 top right
+    * @param p01 bottom left
+    * @param p11 bottom right
+    * @param fx 0-255 weight of the right pixels
+    * @param fy 0-255 weight of the bottom pixels
+    * @return
+    */
+   private static int blend4Pre(int p00, int p10, int p01, int p11, int fx, int fy) {
+      if (p00 == p10 && p00 == p01 && p00 == p11) {
+         return p00;
+      }
+      int w11 = fx * fy;
+      int w10 = (fx << 8) - w11;
+      int w01 = (fy << 8) - w11;
+      int w00 = 65536 - w10 - w01 - w11;
+      int a = ((p00 >>> 24) * w00 + (p10 >>> 24) * w10 + (p01 >>> 24) * w01 + (p11 >>> 24) * w11 + 0x8000) >> 16;
+      int r = (((p00 >> 16) & 0xFF) * w00 + ((p10 >> 16) & 0xFF) * w10 + ((p01 >> 16) & 0xFF) * w01 + ((p11 >> 16) & 0xFF) * w11 + 0x8000) >> 16;
+      int g = (((p00 >> 8) & 0xFF) * w00 + ((p10 >> 8) & 0xFF) * w10 + ((p01 >> 8) & 0xFF) * w01 + ((p11 >> 8) & 0xFF) * w11 + 0x8000) >> 16;
+      int b = ((p00 & 0xFF) * w00 + (p10 & 0xFF) * w10 + (p01 & 0xFF) * w01 + (p11 & 0xFF) * w11 + 0x8000) >> 16;
+      return (a << 24) | (r << 16) | (g << 8) | b;
+   }
+
+   private static int toFixed(double v) {
+      if (v < 0) {
+         return (int) (v * 65536 - 0.5);
+      }
+      return (int) (v * 65536 + 0.5);
+   }
+
    public final int[] rotate(int[] sourceRgbData, int width, int height, int degree, int referenceX, int referenceY, int backgroundColor) {
+      return rotate(sourceRgbData, width, height, degree, backgroundColor, false);
+   }
+
+   /**
+    * Rotates the source around its center into a new array sized by {@link RgbImageRotateUtils#getRotatedWidth(int, int, int, double, double)}
+    * and {@link RgbImageRotateUtils#getRotatedHeight(int, int, int, double, double)}.
+    * <br>
+    * Multiples of 90 degrees are exact copies by {@link TransformUtils}.
+    * @param sourceRgbData width x height pixels
+    * @param width
+    * @param height
+    * @param degree positive is counter clockwise
+    * @param backgroundColor
+    * @param isBilinear true for bilinear sampling, false for nearest
+    * @return
+    */
+   public final int[] rotate(int[] sourceRgbData, int width, int height, int degree, int backgroundColor, boolean isBilinear) {
+      return rotate(sourceRgbData, width, height, degree, backgroundColor, isBilinear, false);
+   }
+
+   /**
+    * 
+    * @param sourceRgbData
+    * @param width
+    * @param height
+    * @param degree positive is counter clockwise
+    * @param backgroundColor straight ARGB
+    * @param isBilinear true for bilinear sampling, false for nearest
+    * @param isPremultiplied true when sourceRgbData pixels are premultiplied. Rotated pixels are premultiplied too.
+    * @return
+    */
+   public final int[] rotate(int[] sourceRgbData, int width, int height, int degree, int backgroundColor, boolean isBilinear, boolean isPremultiplied) {
+      int transform = getTransform90(degree);
+      if (transform != -1) {
+         if (transform == IImage.TRANSFORM_0_NONE) {
+            int[] copy = new int[width * height];
+            System.arraycopy(sourceRgbData, 0, copy, 0, copy.length);
+            return copy;
+         }
+         return TransformUtils.transform(sourceRgbData, width, height, transform);
+      }
       double degreeCos = Math.cos(Math.PI * degree / 180);
       double degreeSin = Math.sin(Math.PI * degree / 180);
       int rotatedWidth = getRotatedWidth(degree, width, height, degreeCos, degreeSin);
       int rotatedHeight = getRotatedHeight(degree, width, height, degreeCos, degreeSin);
       int[] rotatedRgb = new int[rotatedHeight * rotatedWidth];
-      rotate(sourceRgbData, width, height, referenceX, referenceY, backgroundColor, degreeCos, degreeSin, rotatedRgb, rotatedWidth, rotatedHeight);
+      if (isBilinear) {
+         rotateBilinear(sourceRgbData, width, height, backgroundColor, degreeCos, degreeSin, rotatedRgb, rotatedWidth, rotatedHeight, isPremultiplied);
+      } else {
+         if (isPremultiplied) {
+            backgroundColor = BlendKernel.premultiply(backgroundColor);
+         }
+         rotate(sourceRgbData, width, height, 0, 0, backgroundColor, degreeCos, degreeSin, rotatedRgb, rotatedWidth, rotatedHeight);
+      }
       return rotatedRgb;
    }
 
@@ -224,16 +513,18 @@ public class RgbImageRotateUtils {
     * @return
     */
    public IImage rotate(RgbImage image, int angle, int referenceX, int referenceY, int bgColor) {
-      int[] rgbData = image.getRgbData();
+      int[] rgbData = null;
+      if (image.isPremultiplied()) {
+         //host images take straight pixels
+         rgbData = image.getRgbCopy();
+      } else {
+         rgbData = image.getRgbData();
+      }
       int width = image.getWidth();
       int height = image.getHeight();
-      double degreeCos = Math.cos(Math.PI * angle / 180);
-      double degreeSin = Math.sin(Math.PI * angle / 180);
-      int rotatedWidth = getRotatedWidth(angle, width, height, degreeCos, degreeSin);
-      int rotatedHeight = getRotatedHeight(angle, width, height, degreeCos, degreeSin);
-      int[] rotatedRgbData = new int[rotatedWidth * rotatedHeight];
-      rotate(rgbData, width, height, referenceX, referenceY, bgColor, degreeCos, degreeSin, rotatedRgbData, rotatedWidth, rotatedHeight);
-
+      int[] rotatedRgbData = rotate(rgbData, width, height, angle, bgColor, false);
+      int rotatedWidth = getRotatedWidth(angle, width, height);
+      int rotatedHeight = getRotatedHeight(angle, width, height);
       return drc.getImageFactory().createRGBImage(rotatedRgbData, rotatedWidth, rotatedHeight, true);
    }
 
@@ -279,19 +570,33 @@ public class RgbImageRotateUtils {
     * @return
     */
    public RgbImage rotateRGB(RgbImage image, int angle, int referenceX, int referenceY, int bgColor) {
+      return rotateRGB(image, angle, bgColor, false);
+   }
+
+   /**
+    * Rotating a NULL image returns NULL
+    * <br>
+    * The rotated image has the pixel format of image. See {@link RgbImage#isPremultiplied()}
+    * @param image
+    * @param angle positive is counter clockwise
+    * @param bgColor
+    * @param isBilinear true for bilinear sampling
+    * @return
+    */
+   public RgbImage rotateRGB(RgbImage image, int angle, int bgColor, boolean isBilinear) {
       if (image.isNullImage()) {
          return image;
       }
       int[] rgbData = image.getRgbData();
       int width = image.getWidth();
       int height = image.getHeight();
-      double degreeCos = Math.cos(Math.PI * angle / 180);
-      double degreeSin = Math.sin(Math.PI * angle / 180);
-      int rotatedWidth = getRotatedWidth(angle, width, height, degreeCos, degreeSin);
-      int rotatedHeight = getRotatedHeight(angle, width, height, degreeCos, degreeSin);
-      int[] rotatedRgbData = new int[rotatedWidth * rotatedHeight];
-      rotate(rgbData, width, height, referenceX, referenceY, bgColor, degreeCos, degreeSin, rotatedRgbData, rotatedWidth, rotatedHeight);
-      return image.getRgbCache().createImage(rotatedRgbData, rotatedWidth, rotatedHeight);
+      boolean isPremultiplied = image.isPremultiplied();
+      int[] rotatedRgbData = rotate(rgbData, width, height, angle, bgColor, isBilinear, isPremultiplied);
+      int rotatedWidth = getRotatedWidth(angle, width, height);
+      int rotatedHeight = getRotatedHeight(angle, width, height);
+      RgbImage rotated = image.getRgbCache().createImage(rotatedRgbData, rotatedWidth, rotatedHeight);
+      rotated.setFlag(ITechRgbImage.FLAG_21_PREMULTIPLIED, isPremultiplied);
+      return rotated;
    }
 
    /**
@@ -9,6 +9,7 @@ import pasa.cbentley.core.src4.logging.Dctx;
 import pasa.cbentley.core.src4.utils.Geo2dUtils;
 import pasa.cbentley.core.src4.utils.MathUtils;
 import pasa.cbentley.framework.drawx.src4.engine.GraphicsX;
+import pasa.cbentley.framework.drawx.src4.engine.TriangleBatch;
 
 /**
  * Representation of a triangle with base being the longest segment.
@@ -409,6 +410,17 @@ public class Trig extends ObjectU {
       g.fillTriangle(x1, y1, x2, y2, xHead, yHead);
    }
 
+   /**
+    * Same as {@link Trig#draw(GraphicsX, ColorIteratorFun)} but the triangle is added to the batch.
+    * @param batch
+    * @param g receives the color iteration
+    * @param cif
+    */
+   public void draw(TriangleBatch batch, GraphicsX g, ColorIteratorFun cif) {
+      cif.iterateColor(g);
+      batch.addTriangle(x1, y1, x2, y2, xHead, yHead, g.getActiveColor());
+   }
+
    public Geo2dUtils geo() {
       return uc.getGeo2dUtils();
    }